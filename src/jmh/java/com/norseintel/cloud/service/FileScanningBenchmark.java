@@ -0,0 +1,102 @@
+package com.norseintel.cloud.service;
+
+import com.norseintel.cloud.metrics.ForensicMetrics;
+import com.norseintel.cloud.service.job.StoredUpload;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The byte-scanning routines of {@link FileForensicsService}. The search and extraction benchmarks include storing
+ * and deleting the upload, as every request does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileScanningBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Input {
+
+        @Param({"1048576", "16777216"})
+        public int size;
+
+        Path directory;
+        StoredUpload upload;
+        FileForensicsService fileForensicsService;
+
+        @Setup
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("norseintel-scanning");
+            upload = new StoredUpload(SyntheticInputs.write(directory, "input.bin", SyntheticInputs.binaryWithStrings(size)),
+                    "input.bin", "application/octet-stream");
+            ForensicMetrics metrics = SyntheticInputs.metrics(directory.resolve("stored"));
+            fileForensicsService = new FileForensicsService(SyntheticInputs.storage(metrics, directory.resolve("stored")),
+                    SyntheticInputs.cryptography(metrics));
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Signatures {
+
+        // One of each known kind, a near miss and plain text
+        final List<byte[]> headers = List.of(
+                new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 0x10, 'J', 'F'},
+                new byte[]{(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A},
+                new byte[]{'%', 'P', 'D', 'F', '-', '1', '.', '7'},
+                new byte[]{'P', 'K', 0x03, 0x04, 0x14, 0x00, 0x06, 0x00},
+                new byte[]{'M', 'Z', (byte) 0x90, 0, 3, 0, 0, 0},
+                new byte[]{'P', 'K', 0x03, 0x05, 0, 0, 0, 0},
+                Arrays.copyOf("plain text file".getBytes(StandardCharsets.US_ASCII), 16));
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> searchHexPattern(Input input) {
+        return input.fileForensicsService.searchBinaryPatterns(input.upload, SyntheticInputs.HEX_MARKER, true);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> searchTextPattern(Input input) {
+        return input.fileForensicsService.searchBinaryPatterns(input.upload, SyntheticInputs.TEXT_MARKER + "=\\w+", false);
+    }
+
+    @Benchmark
+    public List<String> extractStrings(Input input) {
+        return input.fileForensicsService.extractStringsFromBinary(input.upload, 4);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void detectFileType(Signatures signatures, Blackhole blackhole) {
+        for (byte[] header : signatures.headers) {
+            blackhole.consume(FileForensicsService.detectFileType(header));
+        }
+    }
+}
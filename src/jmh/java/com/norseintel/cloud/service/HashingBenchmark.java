@@ -0,0 +1,73 @@
+package com.norseintel.cloud.service;
+
+import com.norseintel.cloud.metrics.ForensicMetrics;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** {@link CryptographyService} file hashing across file sizes. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashingBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Input {
+
+        @Param({"65536", "1048576", "16777216"})
+        public int size;
+
+        Path directory;
+        File file;
+        CryptographyService cryptographyService;
+
+        @Setup
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("norseintel-hashing");
+            file = SyntheticInputs.write(directory, "input.bin", SyntheticInputs.randomBytes(size));
+            ForensicMetrics metrics = SyntheticInputs.metrics(directory);
+            cryptographyService = SyntheticInputs.cryptography(metrics);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Algorithm {
+
+        @Param({"MD5", "SHA-256", "SHA3-256"})
+        public String name;
+    }
+
+    @Benchmark
+    public String calculateHash(Input input, Algorithm algorithm) {
+        return input.cryptographyService.calculateHash(input.file, algorithm.name);
+    }
+
+    @Benchmark
+    public Map<String, String> calculateMultipleHashes(Input input) {
+        return input.cryptographyService.calculateMultipleHashes(input.file);
+    }
+}
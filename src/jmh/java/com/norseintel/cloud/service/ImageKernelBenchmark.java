@@ -0,0 +1,125 @@
+package com.norseintel.cloud.service;
+
+import com.norseintel.cloud.model.image.ColorFilter;
+import com.norseintel.cloud.model.image.NoiseResidualFilter;
+import com.norseintel.cloud.service.image.BlockDctAnalyzer;
+import com.norseintel.cloud.service.image.ColorFilterRenderer;
+import com.norseintel.cloud.service.image.CopyMoveDetector;
+import com.norseintel.cloud.service.image.Dct8x8;
+import com.norseintel.cloud.service.image.LumaPlane;
+import com.norseintel.cloud.service.image.NoiseResidualAnalyzer;
+import com.norseintel.cloud.service.image.PerceptualHash;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/** The pixel routines behind the image endpoints, on synthetic 4:3 images of the given width. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageKernelBenchmark {
+
+    // Same limits as the defaults of the endpoints
+    private static final int ELA_BLOCK_SIZE = 16;
+    private static final int HEATMAP_CELL_SIZE = 64;
+    private static final int NOISE_BLOCK_SIZE = 32;
+    private static final int COPY_MOVE_MAX_BLOCKS = 4_000_000;
+
+    @State(Scope.Benchmark)
+    public static class Images {
+
+        @Param({"1024", "3072"})
+        public int width;
+
+        BufferedImage image;
+        BufferedImage resaved;
+        byte[] luma;
+
+        @Setup
+        public void setUp() {
+            image = SyntheticInputs.photo(width, width * 3 / 4);
+            resaved = SyntheticInputs.jpegRoundTrip(image, 0.95f);
+            luma = LumaPlane.extract(image);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Block {
+
+        final double[] samples = new double[64];
+        final double[] coefficients = new double[64];
+        final double[] scratch = new double[64];
+
+        @Setup
+        public void setUp() {
+            SplittableRandom random = new SplittableRandom(SyntheticInputs.SEED);
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = random.nextInt(256) - 128;
+            }
+        }
+    }
+
+    @Benchmark
+    public BufferedImage differenceImage(Images images) {
+        return ImageForensicsService.createDifferenceImage(images.image, images.resaved);
+    }
+
+    @Benchmark
+    public float[][] elaBlockLevels(Images images) {
+        return ImageForensicsService.calculateElaBlockLevels(images.image, images.resaved, ELA_BLOCK_SIZE);
+    }
+
+    @Benchmark
+    public Map<ColorFilter, BufferedImage> colorFilters(Images images) {
+        return ColorFilterRenderer.render(images.image, EnumSet.allOf(ColorFilter.class));
+    }
+
+    @Benchmark
+    public byte[] lumaPlane(Images images) {
+        return LumaPlane.extract(images.image);
+    }
+
+    @Benchmark
+    public BlockDctAnalyzer.Result blockDct(Images images) {
+        return BlockDctAnalyzer.analyze(images.image, HEATMAP_CELL_SIZE);
+    }
+
+    @Benchmark
+    public NoiseResidualAnalyzer.Result noiseResidual(Images images) {
+        return NoiseResidualAnalyzer.analyze(images.luma, images.image.getWidth(), images.image.getHeight(),
+                NoiseResidualFilter.LAPLACIAN, NOISE_BLOCK_SIZE);
+    }
+
+    @Benchmark
+    public CopyMoveDetector.Result blockPatterns(Images images) {
+        return CopyMoveDetector.detect(images.image, COPY_MOVE_MAX_BLOCKS);
+    }
+
+    @Benchmark
+    public PerceptualHash.Hashes perceptualHash(Images images) {
+        return PerceptualHash.compute(images.image);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public double[] dct8x8(Block block) {
+        Dct8x8.forward(block.samples, block.coefficients, block.scratch);
+        return block.coefficients;
+    }
+}
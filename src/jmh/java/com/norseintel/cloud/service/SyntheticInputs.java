@@ -0,0 +1,148 @@
+package com.norseintel.cloud.service;
+
+import com.norseintel.cloud.metrics.ForensicMetrics;
+import com.norseintel.cloud.service.crypto.KeyPairPool;
+import com.norseintel.cloud.service.crypto.RandomnessService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic benchmark inputs, generated from a fixed seed so that every run, on every machine, measures the
+ * same bytes and pixels. Nothing is read from disk except the files these methods write themselves.
+ */
+final class SyntheticInputs {
+
+    static final long SEED = 0x5EED_F0E5_1C5L;
+    static final String HEX_MARKER = "DEADBEEF";
+    static final String TEXT_MARKER = "password";
+
+    // Distance between the embedded strings of binaryWithStrings
+    private static final int STRING_INTERVAL = 32 * 1024;
+
+    private SyntheticInputs() {
+    }
+
+    static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) random.nextInt(256);
+        }
+        return bytes;
+    }
+
+    /**
+     * Executable-like content: non-printable filler with a text line every 32 KiB that contains both markers, so
+     * string extraction and pattern search scale with the size instead of stopping at their result limits early.
+     */
+    static byte[] binaryWithStrings(int size) {
+        byte[] bytes = new byte[size];
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (0x80 | random.nextInt(128));
+        }
+        byte[] marker = hexToBytes(HEX_MARKER);
+        for (int offset = 0, n = 0; offset + STRING_INTERVAL <= size; offset += STRING_INTERVAL, n++) {
+            byte[] line = ("\nconfig_" + n + " " + TEXT_MARKER + "=hunter" + n + "\n").getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(line, 0, bytes, offset, line.length);
+            System.arraycopy(marker, 0, bytes, offset + line.length, marker.length);
+        }
+        return bytes;
+    }
+
+    /**
+     * A photo-like RGB image: smooth gradients under seeded sensor noise, with one patch copied elsewhere so the
+     * copy-move detector has a match to find.
+     */
+    static BufferedImage photo(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        SplittableRandom random = new SplittableRandom(SEED);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int red = clamp(255 * x / width + random.nextInt(-6, 7));
+                int green = clamp(255 * y / height + random.nextInt(-6, 7));
+                int blue = clamp(128 + (int) (64 * Math.sin((x + y) / 40.0)) + random.nextInt(-6, 7));
+                row[x] = red << 16 | green << 8 | blue;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+
+        int patch = Math.min(width, height) / 8;
+        int[] pixels = image.getRGB(width / 8, height / 8, patch, patch, null, 0, patch);
+        image.setRGB(width / 2, height / 2, patch, patch, pixels, 0, patch);
+        return image;
+    }
+
+    /** The image after a JPEG round trip, as Error Level Analysis compares against. */
+    static BufferedImage jpegRoundTrip(BufferedImage image, float quality) {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+            try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(buffer)) {
+                writer.setOutput(out);
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            return ImageIO.read(new ByteArrayInputStream(buffer.toByteArray()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static File write(Path directory, String name, byte[] content) throws IOException {
+        return Files.write(directory.resolve(name), content).toFile();
+    }
+
+    /** Metrics as the services record them in production, into a registry nobody reads. */
+    static ForensicMetrics metrics(Path tempDir) {
+        return new ForensicMetrics(new SimpleMeterRegistry(), tempDir.toString());
+    }
+
+    static CryptographyService cryptography(ForensicMetrics metrics) {
+        RandomnessService randomness = new RandomnessService(1, Duration.ofHours(1));
+        // Nothing pooled: the benchmarks only hash
+        KeyPairPool keyPairs = new KeyPairPool(randomness, Runnable::run, new SimpleMeterRegistry(), List.of(), 0, 1);
+        return new CryptographyService(metrics, randomness, keyPairs);
+    }
+
+    static FileStorageService storage(ForensicMetrics metrics, Path tempDir) {
+        FileStorageService storage = new FileStorageService(metrics);
+        ReflectionTestUtils.setField(storage, "tempDir", tempDir.toString());
+        return storage;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static byte[] hexToBytes(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
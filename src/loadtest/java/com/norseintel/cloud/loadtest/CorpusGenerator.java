@@ -0,0 +1,317 @@
+package com.norseintel.cloud.loadtest;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a synthetic evidence corpus: JPEGs of several sizes and qualities, a PNG, PDFs, Word and Excel files,
+ * nested and wide archives, and binaries with planted strings. Everything derives from a fixed seed, so a corpus
+ * written on one machine is byte-for-byte the corpus written on another and results stay comparable.
+ */
+public final class CorpusGenerator {
+
+    /** Kinds of corpus file, which is what scenarios select their uploads by. */
+    public enum Kind {
+        JPEG, PNG, PDF, DOCX, XLSX, ARCHIVE, BINARY
+    }
+
+    public record CorpusFile(Kind kind, Path path) {
+    }
+
+    static final long SEED = 0x10AD_7E57L;
+    static final String PLANTED_HEX = "DEADBEEF";
+    static final String PLANTED_TEXT = "password";
+
+    private static final int[] JPEG_WIDTHS = {800, 2000, 4000};
+    private static final float[] JPEG_QUALITIES = {0.7f, 0.95f};
+    private static final int[] BINARY_SIZES = {1 << 20, 16 << 20};
+    private static final int[] PDF_PAGES = {1, 40};
+
+    private CorpusGenerator() {
+    }
+
+    /** Generates the corpus into the directory, or reuses what an earlier run left there. */
+    public static List<CorpusFile> generate(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        List<CorpusFile> files = new ArrayList<>();
+
+        for (int width : JPEG_WIDTHS) {
+            for (float quality : JPEG_QUALITIES) {
+                String name = String.format(Locale.ROOT, "photo-%d-q%d.jpg", width, Math.round(quality * 100));
+                files.add(write(directory, Kind.JPEG, name, () -> jpeg(photo(width, width * 3 / 4), quality)));
+            }
+        }
+        files.add(write(directory, Kind.PNG, "screenshot-1600.png", () -> png(photo(1600, 900))));
+        for (int pages : PDF_PAGES) {
+            files.add(write(directory, Kind.PDF, "report-" + pages + "p.pdf", () -> pdf(pages)));
+        }
+        files.add(write(directory, Kind.DOCX, "memo.docx", () -> docx(200)));
+        files.add(write(directory, Kind.XLSX, "ledger.xlsx", () -> xlsx(5000)));
+        files.add(write(directory, Kind.ARCHIVE, "nested.zip", CorpusGenerator::nestedZip));
+        files.add(write(directory, Kind.ARCHIVE, "wide.zip", () -> wideZip(1000)));
+        files.add(write(directory, Kind.ARCHIVE, "bundle.tar", CorpusGenerator::tar));
+        for (int size : BINARY_SIZES) {
+            files.add(write(directory, Kind.BINARY, "dump-" + (size >> 20) + "m.bin", () -> binary(size)));
+        }
+        return files;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Path.of(args.length > 0 ? args[0] : "target/loadtest-corpus");
+        for (CorpusFile file : generate(directory)) {
+            System.out.printf("%-8s %10d  %s%n", file.kind(), Files.size(file.path()), file.path());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Content {
+        byte[] create() throws IOException;
+    }
+
+    private static CorpusFile write(Path directory, Kind kind, String name, Content content) throws IOException {
+        Path path = directory.resolve(name);
+        if (!Files.exists(path)) {
+            Path partial = directory.resolve(name + ".part");
+            Files.write(partial, content.create());
+            Files.move(partial, path);
+        }
+        return new CorpusFile(kind, path);
+    }
+
+    // Gradients, shapes and sensor-like noise, with one region cloned elsewhere as a planted copy-move
+    static BufferedImage photo(int width, int height) {
+        SplittableRandom random = new SplittableRandom(SEED ^ width);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int red = clamp(255 * x / width + random.nextInt(-8, 9));
+                int green = clamp(255 * y / height + random.nextInt(-8, 9));
+                int blue = clamp(128 + (int) (60 * Math.sin((x - y) / 50.0)) + random.nextInt(-8, 9));
+                row[x] = red << 16 | green << 8 | blue;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        for (int i = 0; i < 12; i++) {
+            graphics.setColor(new Color(random.nextInt(0x1000000)));
+            int size = width / 10 + random.nextInt(width / 8);
+            graphics.fillOval(random.nextInt(width), random.nextInt(height), size, size * 2 / 3);
+        }
+        graphics.dispose();
+
+        int patch = Math.min(width, height) / 6;
+        int[] pixels = image.getRGB(width / 10, height / 10, patch, patch, null, 0, patch);
+        image.setRGB(width - patch - width / 10, height - patch - height / 10, patch, patch, pixels, 0, patch);
+        return image;
+    }
+
+    private static byte[] jpeg(BufferedImage image, float quality) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(buffer)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return buffer.toByteArray();
+    }
+
+    private static byte[] png(BufferedImage image) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", buffer);
+        return buffer.toByteArray();
+    }
+
+    private static byte[] pdf(int pages) throws IOException {
+        SplittableRandom random = new SplittableRandom(SEED ^ pages);
+        try (PDDocument document = new PDDocument()) {
+            PDDocumentInformation information = document.getDocumentInformation();
+            information.setTitle("Incident report");
+            information.setAuthor("Synthetic Corpus");
+            for (int i = 0; i < pages; i++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 10);
+                    content.setLeading(13);
+                    content.newLineAtOffset(50, 740);
+                    for (int line = 0; line < 50; line++) {
+                        content.showText(sentence(random));
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            document.save(buffer);
+            return buffer.toByteArray();
+        }
+    }
+
+    private static byte[] docx(int paragraphs) throws IOException {
+        SplittableRandom random = new SplittableRandom(SEED ^ paragraphs);
+        try (XWPFDocument document = new XWPFDocument()) {
+            document.getProperties().getCoreProperties().setCreator("Synthetic Corpus");
+            for (int i = 0; i < paragraphs; i++) {
+                document.createParagraph().createRun().setText(sentence(random) + " " + sentence(random));
+            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            document.write(buffer);
+            return buffer.toByteArray();
+        }
+    }
+
+    private static byte[] xlsx(int rows) throws IOException {
+        SplittableRandom random = new SplittableRandom(SEED ^ rows);
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            XSSFSheet sheet = workbook.createSheet("Ledger");
+            for (int i = 0; i < rows; i++) {
+                XSSFRow row = sheet.createRow(i);
+                row.createCell(0).setCellValue("TX-" + (100000 + i));
+                row.createCell(1).setCellValue(random.nextInt(1_000_000) / 100.0);
+                row.createCell(2).setCellValue(WORDS[random.nextInt(WORDS.length)]);
+            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            workbook.write(buffer);
+            return buffer.toByteArray();
+        }
+    }
+
+    // Three levels deep: the outer archive holds documents and an archive, which holds another
+    private static byte[] nestedZip() throws IOException {
+        byte[] innermost = zip(List.of(
+                new ZipItem("evidence/dump-64k.bin", binary(64 << 10)),
+                new ZipItem("evidence/notes.txt", sentence(new SplittableRandom(SEED)).getBytes(StandardCharsets.UTF_8))));
+        byte[] inner = zip(List.of(
+                new ZipItem("case/memo.docx", docx(20)),
+                new ZipItem("case/innermost.zip", innermost)));
+        return zip(List.of(
+                new ZipItem("report.pdf", pdf(2)),
+                new ZipItem("photo.jpg", jpeg(photo(640, 480), 0.85f)),
+                new ZipItem("inner.zip", inner)));
+    }
+
+    private static byte[] wideZip(int entries) throws IOException {
+        SplittableRandom random = new SplittableRandom(SEED ^ entries);
+        List<ZipItem> items = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            items.add(new ZipItem(String.format(Locale.ROOT, "logs/%04d.log", i), sentence(random).getBytes(StandardCharsets.UTF_8)));
+        }
+        return zip(items);
+    }
+
+    private static byte[] tar() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream out = new TarArchiveOutputStream(buffer)) {
+            addTarEntry(out, "bundle/dump-256k.bin", binary(256 << 10));
+            addTarEntry(out, "bundle/report.pdf", pdf(1));
+        }
+        return buffer.toByteArray();
+    }
+
+    private static void addTarEntry(TarArchiveOutputStream out, String name, byte[] content) throws IOException {
+        TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(content.length);
+        out.putArchiveEntry(entry);
+        out.write(content);
+        out.closeArchiveEntry();
+    }
+
+    private record ZipItem(String name, byte[] content) {
+    }
+
+    private static byte[] zip(List<ZipItem> items) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(buffer)) {
+            for (ZipItem item : items) {
+                ZipEntry entry = new ZipEntry(item.name());
+                // Fixed timestamps keep the archive bytes reproducible
+                entry.setTime(0);
+                out.putNextEntry(entry);
+                out.write(item.content());
+                out.closeEntry();
+            }
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Executable-like bytes: non-printable filler with a line every 16 KiB planting credentials, URLs, e-mail
+     * addresses and a hex marker for the string extraction and pattern search endpoints to find.
+     */
+    static byte[] binary(int size) {
+        SplittableRandom random = new SplittableRandom(SEED ^ size);
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (0x80 | random.nextInt(128));
+        }
+        byte[] marker = {(byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF};
+        for (int offset = 0, n = 0; offset + (16 << 10) <= size; offset += 16 << 10, n++) {
+            String line = "\n" + PLANTED_TEXT + "=hunter" + n + " https://c2-" + n + ".example.net/beacon admin" + n
+                    + "@example.org\n";
+            byte[] planted = line.getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(planted, 0, bytes, offset, planted.length);
+            System.arraycopy(marker, 0, bytes, offset + planted.length, marker.length);
+        }
+        return bytes;
+    }
+
+    private static final String[] WORDS = {
+            "analyst", "recovered", "partition", "timestamp", "registry", "volume", "artifact", "suspect",
+            "transfer", "encrypted", "archive", "session", "network", "custody", "image", "ledger"
+    };
+
+    private static String sentence(SplittableRandom random) {
+        StringBuilder sentence = new StringBuilder();
+        int words = 8 + random.nextInt(8);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sentence.append('.').toString();
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
@@ -0,0 +1,271 @@
+package com.norseintel.cloud.loadtest;
+
+import com.norseintel.cloud.loadtest.CorpusGenerator.CorpusFile;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Drives the REST API of a running instance with the synthetic corpus and reports, per endpoint and concurrency
+ * level, throughput, latency percentiles and the heap and GC behaviour of the server. Every scenario first runs
+ * a warm-up phase whose results are discarded, then a measured phase of fixed duration in which each of the
+ * concurrent workers sends its next request as soon as the previous one is answered (a closed loop).
+ *
+ * <p>Options, all as {@code --name=value}:
+ * <ul>
+ *   <li>{@code base-url} of the server, {@code http://localhost:8080} by default</li>
+ *   <li>{@code api-key} sent in {@code X-API-Key}</li>
+ *   <li>{@code concurrency}: comma-separated levels to run each scenario at, {@code 1,4,16} by default</li>
+ *   <li>{@code warmup} and {@code duration} of the phases, such as {@code 5s} and {@code 20s}</li>
+ *   <li>{@code request-timeout} after which a request counts as failed</li>
+ *   <li>{@code scenarios}: comma-separated parts of endpoint names to restrict the run to</li>
+ *   <li>{@code corpus}: directory of the corpus, generated there when missing</li>
+ *   <li>{@code report}: CSV file the results are written to</li>
+ * </ul>
+ */
+public final class LoadTest {
+
+    private static final String[] COLUMNS = {
+            "scenario", "concurrency", "requests", "ok", "429", "503", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms",
+            "max ms", "peak heap MB", "committed MB", "gc pauses", "gc ms", "alloc MB/s"
+    };
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final String baseUrl;
+    private final String apiKey;
+    private final Duration requestTimeout;
+    private final Map<CorpusGenerator.Kind, List<byte[]>> uploads = new HashMap<>();
+    private final Map<CorpusGenerator.Kind, List<String>> uploadNames = new HashMap<>();
+    private final ServerStats serverStats;
+
+    private LoadTest(String baseUrl, String apiKey, Duration requestTimeout, List<CorpusFile> corpus) throws IOException {
+        this.baseUrl = baseUrl;
+        this.apiKey = apiKey;
+        this.requestTimeout = requestTimeout;
+        this.serverStats = new ServerStats(client, baseUrl, apiKey);
+        // Uploads are held in memory so that reading them does not count towards the latencies
+        for (CorpusFile file : corpus) {
+            uploads.computeIfAbsent(file.kind(), kind -> new ArrayList<>()).add(Files.readAllBytes(file.path()));
+            uploadNames.computeIfAbsent(file.kind(), kind -> new ArrayList<>()).add(file.path().getFileName().toString());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String baseUrl = options.getOrDefault("base-url", "http://localhost:8080");
+        String apiKey = options.getOrDefault("api-key", "badassmotherfucker");
+        int[] concurrencyLevels = Arrays.stream(options.getOrDefault("concurrency", "1,4,16").split(","))
+                .mapToInt(level -> Integer.parseInt(level.trim()))
+                .toArray();
+        Duration warmup = DurationStyle.detectAndParse(options.getOrDefault("warmup", "5s"));
+        Duration duration = DurationStyle.detectAndParse(options.getOrDefault("duration", "20s"));
+        Duration requestTimeout = DurationStyle.detectAndParse(options.getOrDefault("request-timeout", "120s"));
+        Path corpusDirectory = Path.of(options.getOrDefault("corpus", "target/loadtest-corpus"));
+        Path report = Path.of(options.getOrDefault("report", "target/loadtest-report.csv"));
+
+        List<Scenario> scenarios = Scenario.defaults();
+        if (options.containsKey("scenarios")) {
+            List<String> filters = Arrays.asList(options.get("scenarios").split(","));
+            scenarios = scenarios.stream()
+                    .filter(scenario -> filters.stream().anyMatch(filter -> scenario.name().contains(filter.trim())))
+                    .toList();
+        }
+
+        System.out.println("Generating corpus in " + corpusDirectory.toAbsolutePath());
+        LoadTest loadTest = new LoadTest(baseUrl, apiKey, requestTimeout, CorpusGenerator.generate(corpusDirectory));
+
+        List<String[]> rows = new ArrayList<>();
+        System.out.println(String.join(" | ", COLUMNS));
+        for (Scenario scenario : scenarios) {
+            for (int concurrency : concurrencyLevels) {
+                String[] row = loadTest.run(scenario, concurrency, warmup, duration);
+                System.out.println(String.join(" | ", row));
+                rows.add(row);
+            }
+        }
+        writeReport(report, rows);
+        System.out.println("Report written to " + report.toAbsolutePath());
+    }
+
+    private String[] run(Scenario scenario, int concurrency, Duration warmup, Duration duration) throws Exception {
+        drive(scenario, concurrency, warmup);
+
+        ServerStats.Snapshot before = serverStats.snapshot();
+        HeapSampler heapSampler = new HeapSampler();
+        Thread sampler = Thread.ofVirtual().start(heapSampler);
+        long start = System.nanoTime();
+        PhaseResult result = drive(scenario, concurrency, duration);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        sampler.interrupt();
+        sampler.join();
+        ServerStats.Snapshot after = serverStats.snapshot();
+
+        double peakHeap = Math.max(heapSampler.peak, Math.max(before.heapUsedBytes(), after.heapUsedBytes()));
+        return new String[]{
+                scenario.name(),
+                Integer.toString(concurrency),
+                Long.toString(result.requests()),
+                Long.toString(result.succeeded()),
+                Long.toString(result.throttled()),
+                Long.toString(result.unavailable()),
+                Long.toString(result.failed()),
+                format(result.succeeded() / seconds),
+                format(result.percentileMillis(50)),
+                format(result.percentileMillis(90)),
+                format(result.percentileMillis(99)),
+                format(result.percentileMillis(100)),
+                format(peakHeap / (1 << 20)),
+                format(after.heapCommittedBytes() / (1 << 20)),
+                Long.toString(after.gcPauses() - before.gcPauses()),
+                format(after.gcPauseMillis() - before.gcPauseMillis()),
+                format((after.allocatedBytes() - before.allocatedBytes()) / (1 << 20) / seconds)
+        };
+    }
+
+    // Runs the workers until the phase is over and merges what they recorded
+    private PhaseResult drive(Scenario scenario, int concurrency, Duration phase) throws Exception {
+        long deadline = System.nanoTime() + phase.toNanos();
+        AtomicInteger next = new AtomicInteger();
+        List<Future<PhaseResult>> workers = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                workers.add(executor.submit(() -> {
+                    PhaseResult result = new PhaseResult();
+                    while (System.nanoTime() < deadline) {
+                        HttpRequest request = request(scenario, next.getAndIncrement());
+                        long sent = System.nanoTime();
+                        try {
+                            int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                            result.record(System.nanoTime() - sent, status);
+                        } catch (IOException e) {
+                            result.recordFailure();
+                        }
+                    }
+                    return result;
+                }));
+            }
+        }
+        PhaseResult merged = new PhaseResult();
+        for (Future<PhaseResult> worker : workers) {
+            merged.add(worker.get());
+        }
+        merged.seal();
+        return merged;
+    }
+
+    private HttpRequest request(Scenario scenario, int sequence) {
+        if (scenario.method().equals("GET")) {
+            String query = scenario.parameters().isEmpty() ? "" : "?" + scenario.parameters().entrySet().stream()
+                    .map(parameter -> parameter.getKey() + "=" + URLEncoder.encode(parameter.getValue(), StandardCharsets.UTF_8))
+                    .collect(Collectors.joining("&"));
+            return newRequest(scenario.path() + query).GET().build();
+        }
+
+        String boundary = "loadtest-" + UUID.randomUUID();
+        List<byte[]> parts = new ArrayList<>();
+        scenario.parameters().forEach((name, value) -> parts.add(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + name + "\"\r\n\r\n" + value + "\r\n").getBytes(StandardCharsets.UTF_8)));
+        if (scenario.uploads()) {
+            // Round-robin over all files of the scenario's kinds, so every size and format is exercised
+            List<CorpusGenerator.Kind> kinds = scenario.kinds().stream().filter(uploads::containsKey).toList();
+            int total = kinds.stream().mapToInt(kind -> uploads.get(kind).size()).sum();
+            int index = Math.floorMod(sequence, total);
+            CorpusGenerator.Kind kind = kinds.get(0);
+            for (CorpusGenerator.Kind candidate : kinds) {
+                if (index < uploads.get(candidate).size()) {
+                    kind = candidate;
+                    break;
+                }
+                index -= uploads.get(candidate).size();
+            }
+            parts.add(("--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"file\"; filename=\"" + uploadNames.get(kind).get(index) + "\"\r\n"
+                    + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            parts.add(uploads.get(kind).get(index));
+            parts.add("\r\n".getBytes(StandardCharsets.UTF_8));
+        }
+        parts.add(("--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return newRequest(scenario.path())
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArrays(parts))
+                .build();
+    }
+
+    private HttpRequest.Builder newRequest(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("X-API-Key", apiKey)
+                .timeout(requestTimeout);
+    }
+
+    // Polls the server's heap while a phase runs, as the snapshots around it miss the peak
+    private final class HeapSampler implements Runnable {
+
+        private volatile double peak;
+
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    peak = Math.max(peak, serverStats.heapUsed());
+                    Thread.sleep(250);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                System.err.println("Heap sampling stopped: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void writeReport(Path report, List<String[]> rows) throws IOException {
+        if (report.getParent() != null) {
+            Files.createDirectories(report.getParent());
+        }
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(report))) {
+            writer.println(String.join(",", COLUMNS));
+            for (String[] row : rows) {
+                writer.println(String.join(",", row));
+            }
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Options are given as --name=value, not " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return options;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+}
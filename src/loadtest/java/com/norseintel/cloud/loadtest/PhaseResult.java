@@ -0,0 +1,81 @@
+package com.norseintel.cloud.loadtest;
+
+import java.util.Arrays;
+
+/** Latencies and outcomes of the requests one worker, or all workers of a phase together, completed. */
+final class PhaseResult {
+
+    private long[] latencies = new long[1024];
+    private int count;
+    private long succeeded;
+    private long throttled;
+    private long unavailable;
+    private long failed;
+
+    void record(long latencyNanos, int status) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = latencyNanos;
+        if (status >= 200 && status < 300) {
+            succeeded++;
+        } else if (status == 429) {
+            throttled++;
+        } else if (status == 503) {
+            unavailable++;
+        } else {
+            failed++;
+        }
+    }
+
+    /** A request that got no response at all, which counts as a failure without a latency. */
+    void recordFailure() {
+        failed++;
+    }
+
+    void add(PhaseResult other) {
+        if (count + other.count > latencies.length) {
+            latencies = Arrays.copyOf(latencies, count + other.count);
+        }
+        System.arraycopy(other.latencies, 0, latencies, count, other.count);
+        count += other.count;
+        succeeded += other.succeeded;
+        throttled += other.throttled;
+        unavailable += other.unavailable;
+        failed += other.failed;
+    }
+
+    /** Sorts the latencies; call once all workers have been added. */
+    void seal() {
+        Arrays.sort(latencies, 0, count);
+    }
+
+    long requests() {
+        return succeeded + throttled + unavailable + failed;
+    }
+
+    long succeeded() {
+        return succeeded;
+    }
+
+    long throttled() {
+        return throttled;
+    }
+
+    long unavailable() {
+        return unavailable;
+    }
+
+    long failed() {
+        return failed;
+    }
+
+    /** Nearest-rank percentile in milliseconds, of all responses including rejections. */
+    double percentileMillis(double percentile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * count);
+        return latencies[Math.max(0, rank - 1)] / 1e6;
+    }
+}
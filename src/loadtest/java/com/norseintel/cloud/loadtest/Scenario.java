@@ -0,0 +1,66 @@
+package com.norseintel.cloud.loadtest;
+
+import com.norseintel.cloud.loadtest.CorpusGenerator.Kind;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One endpoint under load. Upload scenarios post each corpus file of their kinds in turn, as multipart form data
+ * with the given parameters; the others send the parameters as a query string.
+ */
+public record Scenario(String name, String method, String path, Set<Kind> kinds, Map<String, String> parameters) {
+
+    private static final String API = "/api/v1/";
+
+    static Scenario upload(String endpoint, Set<Kind> kinds, Map<String, String> parameters) {
+        return new Scenario(endpoint, "POST", API + endpoint, kinds, parameters);
+    }
+
+    static Scenario upload(String endpoint, Kind kind) {
+        return upload(endpoint, EnumSet.of(kind), Map.of());
+    }
+
+    static Scenario form(String endpoint, Map<String, String> parameters) {
+        return new Scenario(endpoint, "POST", API + endpoint, Set.of(), parameters);
+    }
+
+    static Scenario get(String endpoint, Map<String, String> parameters) {
+        return new Scenario(endpoint, "GET", API + endpoint, Set.of(), parameters);
+    }
+
+    boolean uploads() {
+        return !kinds.isEmpty();
+    }
+
+    /** The REST surface with typical parameters, cheapest first. */
+    static List<Scenario> defaults() {
+        Set<Kind> documents = EnumSet.of(Kind.PDF, Kind.DOCX, Kind.XLSX);
+        return List.of(
+                get("info", Map.of()),
+                get("cryptography/random-key", Map.of("bits", "256")),
+                get("cryptography/ec-keypair", Map.of()),
+                get("cryptography/rsa-keypair", Map.of("keySize", "2048")),
+                form("cryptography/password-hash", Map.of("password", "correct horse battery staple")),
+                upload("cryptography/hash-file", Kind.BINARY),
+                upload("cryptography/multiple-hashes", Kind.BINARY),
+                upload("file-forensics/file-signature", EnumSet.allOf(Kind.class), Map.of()),
+                upload("file-forensics/document-analysis", documents, Map.of()),
+                upload("file-forensics/file-structure", documents, Map.of()),
+                upload("file-forensics/archive-analysis", Kind.ARCHIVE),
+                upload("file-forensics/binary-analysis", Kind.BINARY),
+                upload("file-forensics/binary-patterns", EnumSet.of(Kind.BINARY),
+                        Map.of("pattern", CorpusGenerator.PLANTED_HEX, "isHex", "true")),
+                upload("image-forensics/metadata", Kind.JPEG),
+                upload("image-forensics/jpeg-structure", Kind.JPEG),
+                upload("image-forensics/compression-analysis", Kind.JPEG),
+                upload("image-forensics/perceptual-hash", EnumSet.of(Kind.JPEG, Kind.PNG), Map.of()),
+                upload("image-forensics/error-level-analysis", Kind.JPEG),
+                upload("image-forensics/noise-map", Kind.JPEG),
+                upload("image-forensics/color-filters", Kind.JPEG),
+                upload("image-forensics/pattern-detection", Kind.JPEG),
+                upload("image-forensics/triage", Kind.JPEG));
+    }
+}
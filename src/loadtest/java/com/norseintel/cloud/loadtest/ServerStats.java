@@ -0,0 +1,65 @@
+package com.norseintel.cloud.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Heap and garbage collection figures of the server under test, read from its actuator metrics endpoint. Metrics
+ * that do not exist yet (no collection has happened, say) read as zero.
+ */
+final class ServerStats {
+
+    record Snapshot(long gcPauses, double gcPauseMillis, double allocatedBytes, double heapUsedBytes, double heapCommittedBytes) {
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient client;
+    private final String baseUrl;
+    private final String apiKey;
+
+    ServerStats(HttpClient client, String baseUrl, String apiKey) {
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.apiKey = apiKey;
+    }
+
+    Snapshot snapshot() throws IOException, InterruptedException {
+        return new Snapshot(
+                (long) read("jvm.gc.pause", "COUNT"),
+                read("jvm.gc.pause", "TOTAL_TIME") * 1000,
+                read("jvm.gc.memory.allocated", "COUNT"),
+                heapUsed(),
+                read("jvm.memory.committed?tag=area:heap", "VALUE"));
+    }
+
+    double heapUsed() throws IOException, InterruptedException {
+        return read("jvm.memory.used?tag=area:heap", "VALUE");
+    }
+
+    private double read(String metric, String statistic) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/metrics/" + metric))
+                .header("X-API-Key", apiKey)
+                .timeout(Duration.ofSeconds(10))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() == 404) {
+            return 0;
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("Reading " + metric + " failed with status " + response.statusCode());
+        }
+        for (JsonNode measurement : objectMapper.readTree(response.body()).path("measurements")) {
+            if (statistic.equals(measurement.path("statistic").asText())) {
+                return measurement.path("value").asDouble();
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,150 @@
+package com.norseintel.cloud.admission;
+
+import com.norseintel.cloud.exception.ForensicException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrency limit that adapts to observed latency (additive increase, multiplicative decrease). A request
+ * that took longer than the latency threshold cuts the limit by a tenth; one that finished in time while the
+ * limit was at least half used raises it by one. Requests over the limit wait in a bounded queue for at most
+ * the queue timeout and are rejected with 429 when the queue is full or the wait runs out.
+ *
+ * <p>Waiting uses a {@link ReentrantLock} rather than monitors so that virtual request threads do not pin
+ * their carrier while queued.
+ */
+public final class AdaptiveConcurrencyLimiter {
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueued;
+    private final long queueTimeoutNanos;
+    private final long latencyThresholdNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Counter rejections;
+
+    // Changed only under the lock; volatile so that gauges can read them without it
+    private volatile double limit;
+    private volatile int inFlight;
+    private volatile int queued;
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, int maxQueued,
+                                      Duration queueTimeout, Duration latencyThreshold, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+        this.maxQueued = Math.max(0, maxQueued);
+        this.queueTimeoutNanos = queueTimeout.toNanos();
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+
+        Gauge.builder("norseintel.admission.limit", this, limiter -> Math.floor(limiter.limit))
+                .tag("class", name)
+                .description("Current adaptive concurrency limit")
+                .register(meterRegistry);
+        Gauge.builder("norseintel.admission.in-flight", this, limiter -> limiter.inFlight)
+                .tag("class", name)
+                .description("Requests currently admitted")
+                .register(meterRegistry);
+        Gauge.builder("norseintel.admission.queued", this, limiter -> limiter.queued)
+                .tag("class", name)
+                .description("Requests waiting for admission")
+                .register(meterRegistry);
+        this.rejections = Counter.builder("norseintel.admission.rejected")
+                .tag("class", name)
+                .description("Requests rejected with 429 because the concurrency limit was reached")
+                .register(meterRegistry);
+    }
+
+    /** An admitted request; releasing it more than once has no effect. */
+    public final class Permit {
+
+        private final long admittedAt = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile long latencyNanos = -1;
+
+        /**
+         * Ends the latency sample now while the permit stays held, for work whose remainder is paced by the
+         * client rather than the server, such as a response that is still streaming.
+         */
+        public void stopClock() {
+            if (latencyNanos < 0) {
+                latencyNanos = System.nanoTime() - admittedAt;
+            }
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                onRelease(latencyNanos >= 0 ? latencyNanos : System.nanoTime() - admittedAt);
+            }
+        }
+    }
+
+    public Permit acquire() {
+        lock.lock();
+        try {
+            if (inFlight < currentLimit()) {
+                inFlight++;
+                return new Permit();
+            }
+            if (queued >= maxQueued) {
+                throw reject();
+            }
+
+            queued++;
+            try {
+                long remaining = queueTimeoutNanos;
+                while (inFlight >= currentLimit()) {
+                    if (remaining <= 0) {
+                        throw reject();
+                    }
+                    remaining = available.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw reject();
+            } finally {
+                queued--;
+            }
+            inFlight++;
+            return new Permit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onRelease(long latencyNanos) {
+        lock.lock();
+        try {
+            if (latencyNanos > latencyThresholdNanos) {
+                limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            } else if (inFlight * 2 >= currentLimit()) {
+                limit = Math.min(maxLimit, limit + 1);
+            }
+            inFlight--;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    private ForensicException reject() {
+        rejections.increment();
+        return new ForensicException("Too many concurrent " + name + " requests, please retry later", HttpStatus.TOO_MANY_REQUESTS);
+    }
+}
@@ -0,0 +1,14 @@
+package com.norseintel.cloud.admission;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/** Puts a handler method under the concurrency limit of its cost class; handlers without it are not limited. */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Admission {
+    
+    CostClass value();
+}
\ No newline at end of file
@@ -0,0 +1,100 @@
+package com.norseintel.cloud.admission;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Admits requests to {@link Admission}-annotated handlers against the limiter of their cost class. The permit
+ * is held until the response is complete, which for streamed responses is when the asynchronous part ends.
+ * Their latency sample ends when the handler returns, though, so a slow download does not read as an
+ * overloaded server and shrink the limit.
+ */
+@Component
+public class AdmissionInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String PERMIT_ATTRIBUTE = AdmissionInterceptor.class.getName() + ".permit";
+
+    private final Map<CostClass, AdaptiveConcurrencyLimiter> limiters = new EnumMap<>(CostClass.class);
+
+    public AdmissionInterceptor(Environment environment, MeterRegistry meterRegistry) {
+        for (CostClass costClass : CostClass.values()) {
+            String prefix = "norseintel.admission." + costClass.propertyName() + ".";
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(costClass.propertyName(),
+                    environment.getProperty(prefix + "initial-limit", Integer.class, costClass.getInitialLimit()),
+                    environment.getProperty(prefix + "min-limit", Integer.class, costClass.getMinLimit()),
+                    environment.getProperty(prefix + "max-limit", Integer.class, costClass.getMaxLimit()),
+                    environment.getProperty(prefix + "max-queued", Integer.class, costClass.getMaxQueued()),
+                    environment.getProperty(prefix + "queue-timeout", Duration.class, costClass.getQueueTimeout()),
+                    environment.getProperty(prefix + "latency-threshold", Duration.class, costClass.getLatencyThreshold()),
+                    meterRegistry);
+            limiters.put(costClass, limiter);
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // The dispatch that completes a streamed response runs under the permit taken by the original one
+        if (request.getDispatcherType() == DispatcherType.ASYNC || !(handler instanceof HandlerMethod handlerMethod)) {
+            return true;
+        }
+        Admission admission = handlerMethod.getMethodAnnotation(Admission.class);
+        if (admission != null) {
+            request.setAttribute(PERMIT_ATTRIBUTE, limiters.get(admission.value()).acquire());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        AdaptiveConcurrencyLimiter.Permit permit = takePermit(request);
+        if (permit != null) {
+            permit.stopClock();
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    permit.release();
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                    permit.release();
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                    permit.release();
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        AdaptiveConcurrencyLimiter.Permit permit = takePermit(request);
+        if (permit != null) {
+            permit.release();
+        }
+    }
+
+    private static AdaptiveConcurrencyLimiter.Permit takePermit(HttpServletRequest request) {
+        AdaptiveConcurrencyLimiter.Permit permit = (AdaptiveConcurrencyLimiter.Permit) request.getAttribute(PERMIT_ATTRIBUTE);
+        request.removeAttribute(PERMIT_ATTRIBUTE);
+        return permit;
+    }
+}
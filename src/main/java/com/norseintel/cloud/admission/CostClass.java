@@ -0,0 +1,60 @@
+package com.norseintel.cloud.admission;
+
+import java.time.Duration;
+
+/**
+ * How expensive an endpoint is to serve. Each class has its own adaptive concurrency limit, so a burst of
+ * heavy calls cannot take the capacity cheap calls need. The defaults below apply unless overridden under
+ * {@code norseintel.admission.<class>.*}.
+ */
+public enum CostClass {
+    LIGHT(64, 8, 256, 128, Duration.ofSeconds(1), Duration.ofSeconds(2)),
+    MEDIUM(16, 2, 64, 64, Duration.ofSeconds(5), Duration.ofSeconds(10)),
+    HEAVY(4, 1, 16, 16, Duration.ofSeconds(10), Duration.ofSeconds(30)),
+    // Password hashing and password-based encryption, kept apart so they cannot use up the heavy class
+    KDF(8, 1, 32, 32, Duration.ofSeconds(10), Duration.ofSeconds(30));
+    
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueued;
+    private final Duration queueTimeout;
+    private final Duration latencyThreshold;
+    
+    CostClass(int initialLimit, int minLimit, int maxLimit, int maxQueued, Duration queueTimeout, Duration latencyThreshold) {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueued = maxQueued;
+        this.queueTimeout = queueTimeout;
+        this.latencyThreshold = latencyThreshold;
+    }
+    
+    public String propertyName() {
+        return name().toLowerCase();
+    }
+    
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+    
+    public int getMinLimit() {
+        return minLimit;
+    }
+    
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+    
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+    
+    public Duration getQueueTimeout() {
+        return queueTimeout;
+    }
+    
+    public Duration getLatencyThreshold() {
+        return latencyThreshold;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,27 @@
+package com.norseintel.cloud.config;
+
+import com.norseintel.cloud.admission.AdmissionInterceptor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class AdmissionConfig implements WebMvcConfigurer {
+
+    private final AdmissionInterceptor admissionInterceptor;
+
+    @Value("${norseintel.admission.enabled:true}")
+    private boolean enabled;
+
+    public AdmissionConfig(AdmissionInterceptor admissionInterceptor) {
+        this.admissionInterceptor = admissionInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (enabled) {
+            registry.addInterceptor(admissionInterceptor).addPathPatterns("/api/**");
+        }
+    }
+}
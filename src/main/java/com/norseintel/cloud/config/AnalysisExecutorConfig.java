@@ -0,0 +1,66 @@
+package com.norseintel.cloud.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class AnalysisExecutorConfig {
+
+    public static final String ANALYSIS_JOB_EXECUTOR = "analysisJobExecutor";
+    public static final String CPU_EXECUTOR = "cpuAnalysisExecutor";
+    public static final String KEY_PAIR_REFILL_EXECUTOR = "keyPairRefillExecutor";
+
+    // Job workers hand each analysis to the CPU pool and wait for it, so this bounds the jobs in progress, not CPU use
+    @Bean(name = ANALYSIS_JOB_EXECUTOR, destroyMethod = "shutdownNow")
+    public ExecutorService analysisJobExecutor(@Value("${norseintel.jobs.executor.threads:0}") int threads) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return Executors.newFixedThreadPool(poolSize, daemonThreads("analysis-job-"));
+    }
+
+    // Request threads are virtual, so this pool is what keeps CPU-heavy work at one thread per core. It is a fork/join
+    // pool so that the parallel kernels of the analyses it runs split across its own threads instead of adding the
+    // common pool's on top, and it never adds threads beyond that, even while some of them are blocked
+    @Bean(name = CPU_EXECUTOR, destroyMethod = "shutdownNow")
+    public ForkJoinPool cpuAnalysisExecutor(@Value("${norseintel.cpu.executor.threads:0}") int threads) {
+        int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        ClassLoader classLoader = AnalysisExecutorConfig.class.getClassLoader();
+        AtomicInteger counter = new AtomicInteger();
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("cpu-" + counter.incrementAndGet());
+            // Analyses look up ImageIO and Tika providers, which must see the application's classes
+            thread.setContextClassLoader(classLoader);
+            return thread;
+        };
+        return new ForkJoinPool(parallelism, factory, null, false, 0, parallelism, 1, pool -> true, 60, TimeUnit.SECONDS);
+    }
+
+    // Pre-generating key pairs is never urgent, so it runs at the lowest priority and yields to requests
+    @Bean(name = KEY_PAIR_REFILL_EXECUTOR, destroyMethod = "shutdownNow")
+    public ExecutorService keyPairRefillExecutor(@Value("${norseintel.crypto.keypair-pool.refill-threads:1}") int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), daemonThreads("keypair-refill-", Thread.MIN_PRIORITY));
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        return daemonThreads(prefix, Thread.NORM_PRIORITY);
+    }
+
+    private static ThreadFactory daemonThreads(String prefix, int priority) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,21 @@
+package com.norseintel.cloud.config;
+
+import com.norseintel.cloud.metrics.AnalysisContextInterceptor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class MetricsConfig implements WebMvcConfigurer {
+
+    private final AnalysisContextInterceptor analysisContextInterceptor;
+
+    public MetricsConfig(AnalysisContextInterceptor analysisContextInterceptor) {
+        this.analysisContextInterceptor = analysisContextInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(analysisContextInterceptor).addPathPatterns("/api/**");
+    }
+}
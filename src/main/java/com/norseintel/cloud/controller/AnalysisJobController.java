@@ -0,0 +1,68 @@
+package com.norseintel.cloud.controller;
+
+import com.norseintel.cloud.model.ApiResponse;
+import com.norseintel.cloud.model.job.JobPriority;
+import com.norseintel.cloud.model.job.JobStatus;
+import com.norseintel.cloud.service.AnalysisJobService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@RestController
+@RequestMapping("/api/v1/jobs")
+@Tag(name = "Analysis Jobs", description = "APIs for running long analyses in the background")
+public class AnalysisJobController {
+    
+    private final AnalysisJobService analysisJobService;
+    
+    public AnalysisJobController(AnalysisJobService analysisJobService) {
+        this.analysisJobService = analysisJobService;
+    }
+    
+    @PostMapping
+    @Operation(summary = "Submit Analysis Job", description = "Stores the upload and queues the requested analyses, returning at once with the job ID. "
+            + "Further request parameters are passed to the analyses under the names their synchronous endpoints use")
+    public ResponseEntity<ApiResponse<JobStatus>> submitJob(
+            @RequestParam("file") MultipartFile file,
+            @Parameter(description = "Analyses to run in order, e.g. image-forensics/error-level-analysis") @RequestParam("analyses") List<String> analyses,
+            @Parameter(description = "high, normal or low") @RequestParam(value = "priority", defaultValue = "normal") String priority,
+            @Parameter(hidden = true) @RequestParam Map<String, String> parameters) {
+        
+        JobStatus status = analysisJobService.submit(file, analyses, JobPriority.fromString(priority), parameters);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/v1/jobs/" + status.getId()))
+                .body(ApiResponse.success(status));
+    }
+    
+    @GetMapping("/analyses")
+    @Operation(summary = "List Job Analyses", description = "Lists the analyses that can be run as jobs")
+    public ResponseEntity<ApiResponse<Set<String>>> listAnalyses() {
+        return ResponseEntity.ok(ApiResponse.success(analysisJobService.getAnalyses()));
+    }
+    
+    @GetMapping("/{id}")
+    @Operation(summary = "Get Job Status", description = "Returns the state and progress of a job")
+    public ResponseEntity<ApiResponse<JobStatus>> getJobStatus(@PathVariable("id") String id) {
+        return ResponseEntity.ok(ApiResponse.success(analysisJobService.getStatus(id)));
+    }
+    
+    @GetMapping("/{id}/result")
+    @Operation(summary = "Get Job Result", description = "Returns the report of every analysis of a finished job; 409 while the job is still queued or running")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getJobResult(@PathVariable("id") String id) {
+        return ResponseEntity.ok(ApiResponse.success(analysisJobService.getResult(id)));
+    }
+    
+    @DeleteMapping("/{id}")
+    @Operation(summary = "Cancel Job", description = "Removes a queued job, or stops a running one after its current analysis")
+    public ResponseEntity<ApiResponse<JobStatus>> cancelJob(@PathVariable("id") String id) {
+        return ResponseEntity.ok(ApiResponse.success(analysisJobService.cancel(id)));
+    }
+}
\ No newline at end of file
@@ -1,16 +1,38 @@
 package com.norseintel.cloud.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.norseintel.cloud.admission.Admission;
+import com.norseintel.cloud.admission.CostClass;
+import com.norseintel.cloud.exception.ForensicException;
+import com.norseintel.cloud.metrics.AnalysisContext;
 import com.norseintel.cloud.model.ApiResponse;
+import com.norseintel.cloud.model.crypto.PasswordVerification;
+import com.norseintel.cloud.model.crypto.PasswordVerificationResult;
+import com.norseintel.cloud.service.CpuBoundExecutor;
 import com.norseintel.cloud.service.CryptographyService;
 import com.norseintel.cloud.service.FileStorageService;
+import com.norseintel.cloud.service.crypto.KeyDerivationExecutor;
+import com.norseintel.cloud.service.crypto.KeyPairSpec;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 @RestController
 @RequestMapping("/api/v1/cryptography")
@@ -19,14 +41,31 @@ public class CryptographyController {
 
     private final CryptographyService cryptographyService;
     private final FileStorageService fileStorageService;
+    private final CpuBoundExecutor cpuBoundExecutor;
+    private final KeyDerivationExecutor keyDerivationExecutor;
+    private final ObjectMapper objectMapper;
+    private final int trustedProxies;
+    
+    private static final int MAX_KEY_PAIR_BATCH = 100;
+    private static final int MAX_PASSWORD_BATCH = 100;
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
     
     public CryptographyController(CryptographyService cryptographyService, 
-                                 FileStorageService fileStorageService) {
+                                 FileStorageService fileStorageService,
+                                 CpuBoundExecutor cpuBoundExecutor,
+                                 KeyDerivationExecutor keyDerivationExecutor,
+                                 ObjectMapper objectMapper,
+                                 @Value("${norseintel.crypto.kdf.trusted-proxies:0}") int trustedProxies) {
         this.cryptographyService = cryptographyService;
         this.fileStorageService = fileStorageService;
+        this.cpuBoundExecutor = cpuBoundExecutor;
+        this.keyDerivationExecutor = keyDerivationExecutor;
+        this.objectMapper = objectMapper;
+        this.trustedProxies = Math.max(0, trustedProxies);
     }
     
     @PostMapping("/hash-file")
+    @Admission(CostClass.MEDIUM)
     @Operation(summary = "Calculate File Hash", description = "Calculate cryptographic hash of a file")
     public ResponseEntity<ApiResponse<Map<String, String>>> calculateFileHash(
             @RequestParam("file") MultipartFile file,
@@ -34,8 +73,9 @@ public class CryptographyController {
         
         File tempFile = null;
         try {
-            tempFile = fileStorageService.storeFile(file);
-            String hash = cryptographyService.calculateHash(tempFile, algorithm);
+            File storedFile = fileStorageService.storeFile(file);
+            tempFile = storedFile;
+            String hash = cpuBoundExecutor.call(() -> cryptographyService.calculateHash(storedFile, algorithm));
             return ResponseEntity.ok(ApiResponse.success(Map.of("hash", hash, "algorithm", algorithm)));
         } finally {
             if (tempFile != null) {
@@ -45,6 +85,7 @@ public class CryptographyController {
     }
     
     @PostMapping("/hash-data")
+    @Admission(CostClass.LIGHT)
     @Operation(summary = "Calculate Data Hash", description = "Calculate cryptographic hash of text data")
     public ResponseEntity<ApiResponse<Map<String, String>>> calculateDataHash(
             @RequestParam("data") String data,
@@ -55,14 +96,16 @@ public class CryptographyController {
     }
     
     @PostMapping("/multiple-hashes")
+    @Admission(CostClass.MEDIUM)
     @Operation(summary = "Calculate Multiple Hashes", description = "Calculate multiple hash algorithms on a file")
     public ResponseEntity<ApiResponse<Map<String, String>>> calculateMultipleHashes(
             @RequestParam("file") MultipartFile file) {
         
         File tempFile = null;
         try {
-            tempFile = fileStorageService.storeFile(file);
-            Map<String, String> hashes = cryptographyService.calculateMultipleHashes(tempFile);
+            File storedFile = fileStorageService.storeFile(file);
+            tempFile = storedFile;
+            Map<String, String> hashes = cpuBoundExecutor.call(() -> cryptographyService.calculateMultipleHashes(storedFile));
             return ResponseEntity.ok(ApiResponse.success(hashes));
         } finally {
             if (tempFile != null) {
@@ -72,6 +115,7 @@ public class CryptographyController {
     }
     
     @GetMapping("/random-key")
+    @Admission(CostClass.LIGHT)
     @Operation(summary = "Generate Random Key", description = "Generate a random cryptographic key")
     public ResponseEntity<ApiResponse<Map<String, String>>> generateRandomKey(
             @RequestParam(value = "bits", defaultValue = "256") int bits) {
@@ -81,46 +125,95 @@ public class CryptographyController {
     }
     
     @GetMapping("/rsa-keypair")
+    @Admission(CostClass.HEAVY)
     @Operation(summary = "Generate RSA Key Pair", description = "Generate an RSA public/private key pair")
     public ResponseEntity<ApiResponse<Map<String, String>>> generateRSAKeyPair(
-            @RequestParam(value = "keySize", defaultValue = "2048") int keySize) {
+            @Parameter(description = "2048, 3072 or 4096") @RequestParam(value = "keySize", defaultValue = "2048") int keySize) {
         
-        Map<String, String> keyPair = cryptographyService.generateRSAKeyPair(keySize);
+        Map<String, String> keyPair = keyPair(KeyPairSpec.rsa(keySize));
         return ResponseEntity.ok(ApiResponse.success(keyPair));
     }
     
     @GetMapping("/ec-keypair")
+    @Admission(CostClass.MEDIUM)
     @Operation(summary = "Generate EC Key Pair", description = "Generate an Elliptic Curve public/private key pair")
     public ResponseEntity<ApiResponse<Map<String, String>>> generateECKeyPair(
             @RequestParam(value = "curve", defaultValue = "secp256r1") String curve) {
         
-        Map<String, String> keyPair = cryptographyService.generateECKeyPair(curve);
+        Map<String, String> keyPair = keyPair(KeyPairSpec.ec(curve));
         return ResponseEntity.ok(ApiResponse.success(keyPair));
     }
     
+    @GetMapping(value = "/keypairs", produces = "application/x-ndjson")
+    @Admission(CostClass.HEAVY)
+    @Operation(summary = "Generate Key Pairs", description = "Stream a batch of key pairs as newline-delimited JSON, one pair per line, "
+            + "each written as soon as it is ready")
+    public ResponseEntity<StreamingResponseBody> generateKeyPairs(
+            @Parameter(description = "RSA or EC") @RequestParam(value = "algorithm", defaultValue = "RSA") String algorithm,
+            @Parameter(description = "Modulus size for RSA: 2048, 3072 or 4096") @RequestParam(value = "keySize", defaultValue = "2048") int keySize,
+            @Parameter(description = "Named curve for EC") @RequestParam(value = "curve", defaultValue = "secp256r1") String curve,
+            @Parameter(description = "Number of pairs, at most 100") @RequestParam(value = "count", defaultValue = "10") int count) {
+        
+        if (count < 1 || count > MAX_KEY_PAIR_BATCH) {
+            throw new ForensicException("count must be between 1 and " + MAX_KEY_PAIR_BATCH, HttpStatus.BAD_REQUEST);
+        }
+        KeyPairSpec spec = KeyPairSpec.parse(algorithm + ":" + (KeyPairSpec.EC.equalsIgnoreCase(algorithm) ? curve : keySize));
+        // Taken before the response is committed, so that an unusable spec still gets a proper error response
+        Map<String, String> first = keyPair(spec);
+        AnalysisContext context = AnalysisContext.current();
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .body(out -> {
+                    AnalysisContext.Scope scope = context.attach();
+                    try (scope) {
+                        writeLine(out, first);
+                        for (int i = 1; i < count; i++) {
+                            writeLine(out, keyPair(spec));
+                        }
+                    }
+                });
+    }
+    
+    // Pre-generated pairs are handed out on the request thread; only a miss costs a generation on the CPU pool
+    private Map<String, String> keyPair(KeyPairSpec spec) {
+        return cryptographyService.takePooledKeyPair(spec)
+                .orElseGet(() -> cpuBoundExecutor.call(() -> cryptographyService.generateKeyPair(spec)));
+    }
+    
+    private void writeLine(OutputStream out, Object value) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(value));
+        out.write('\n');
+        out.flush();
+    }
+    
     @PostMapping("/encrypt-password")
+    @Admission(CostClass.KDF)
     @Operation(summary = "Encrypt with Password", description = "Encrypt data with a password")
     public ResponseEntity<ApiResponse<Map<String, String>>> encryptWithPassword(
             @RequestParam("plainText") String plainText,
-            @RequestParam("password") String password) {
+            @RequestParam("password") String password,
+            HttpServletRequest request) {
         
-        Map<String, String> result = cryptographyService.encryptWithPassword(plainText, password);
+        Map<String, String> result = keyDerivationExecutor.call(caller(request), () -> cryptographyService.encryptWithPassword(plainText, password));
         return ResponseEntity.ok(ApiResponse.success(result));
     }
     
     @PostMapping("/decrypt-password")
+    @Admission(CostClass.KDF)
     @Operation(summary = "Decrypt with Password", description = "Decrypt data with a password")
     public ResponseEntity<ApiResponse<Map<String, String>>> decryptWithPassword(
             @RequestParam("encryptedData") String encryptedData,
             @RequestParam("salt") String salt,
             @RequestParam("iv") String iv,
-            @RequestParam("password") String password) {
+            @RequestParam("password") String password,
+            HttpServletRequest request) {
         
-        String decrypted = cryptographyService.decryptWithPassword(encryptedData, salt, iv, password);
+        String decrypted = keyDerivationExecutor.call(caller(request), () -> cryptographyService.decryptWithPassword(encryptedData, salt, iv, password));
         return ResponseEntity.ok(ApiResponse.success(Map.of("decryptedData", decrypted)));
     }
     
     @GetMapping("/symmetric-key")
+    @Admission(CostClass.LIGHT)
     @Operation(summary = "Generate Symmetric Key", description = "Generate a symmetric encryption key")
     public ResponseEntity<ApiResponse<Map<String, String>>> generateSymmetricKey(
             @RequestParam(value = "algorithm", defaultValue = "AES") String algorithm,
@@ -131,6 +224,7 @@ public class CryptographyController {
     }
     
     @GetMapping("/generate-otp")
+    @Admission(CostClass.LIGHT)
     @Operation(summary = "Generate OTP", description = "Generate a one-time password")
     public ResponseEntity<ApiResponse<Map<String, String>>> generateOTP(
             @RequestParam(value = "length", defaultValue = "6") int length) {
@@ -140,21 +234,61 @@ public class CryptographyController {
     }
     
     @PostMapping("/password-hash")
+    @Admission(CostClass.KDF)
     @Operation(summary = "Generate Password Hash", description = "Generate a secure hash of a password")
     public ResponseEntity<ApiResponse<Map<String, String>>> generatePasswordHash(
-            @RequestParam("password") String password) {
+            @RequestParam("password") String password,
+            HttpServletRequest request) {
         
-        String hash = cryptographyService.generatePasswordHash(password);
+        String hash = keyDerivationExecutor.call(caller(request), () -> cryptographyService.generatePasswordHash(password));
         return ResponseEntity.ok(ApiResponse.success(Map.of("hash", hash)));
     }
     
     @PostMapping("/verify-password")
+    @Admission(CostClass.KDF)
     @Operation(summary = "Verify Password Hash", description = "Verify a password against a stored hash")
     public ResponseEntity<ApiResponse<Map<String, Boolean>>> verifyPasswordHash(
             @RequestParam("password") String password,
-            @RequestParam("storedHash") String storedHash) {
+            @RequestParam("storedHash") String storedHash,
+            HttpServletRequest request) {
         
-        boolean result = cryptographyService.verifyPasswordHash(password, storedHash);
+        boolean result = keyDerivationExecutor.call(caller(request), () -> cryptographyService.verifyPasswordHash(password, storedHash));
         return ResponseEntity.ok(ApiResponse.success(Map.of("valid", result)));
     }
+    
+    @PostMapping("/verify-passwords")
+    @Admission(CostClass.KDF)
+    @Operation(summary = "Verify Password Hashes", description = "Verify up to 100 passwords against their stored hashes in parallel. "
+            + "Results are in request order; a malformed pair gets an error in its result instead of failing the batch")
+    public ResponseEntity<ApiResponse<List<PasswordVerificationResult>>> verifyPasswordHashes(
+            @RequestBody List<PasswordVerification> verifications,
+            HttpServletRequest request) {
+        
+        if (verifications.isEmpty() || verifications.size() > MAX_PASSWORD_BATCH) {
+            throw new ForensicException("Between 1 and " + MAX_PASSWORD_BATCH + " verifications are allowed per request", HttpStatus.BAD_REQUEST);
+        }
+        List<Callable<PasswordVerificationResult>> tasks = verifications.stream()
+                .<Callable<PasswordVerificationResult>>map(verification -> () -> cryptographyService.verifyPasswordHash(verification))
+                .toList();
+        List<PasswordVerificationResult> results = keyDerivationExecutor.callAll(caller(request), tasks);
+        return ResponseEntity.ok(ApiResponse.success(results));
+    }
+    
+    // Every client presents the same API key, so callers are told apart by their address. Behind proxies that is the
+    // X-Forwarded-For entry added by the outermost trusted one; entries further left are whatever the client sent.
+    private String caller(HttpServletRequest request) {
+        if (trustedProxies == 0) {
+            return request.getRemoteAddr();
+        }
+        List<String> hops = new ArrayList<>();
+        for (String header : Collections.list(request.getHeaders("X-Forwarded-For"))) {
+            for (String hop : header.split(",")) {
+                if (!hop.isBlank()) {
+                    hops.add(hop.trim());
+                }
+            }
+        }
+        // Fewer hops than trusted proxies means the request bypassed some of them
+        return hops.size() < trustedProxies ? request.getRemoteAddr() : hops.get(hops.size() - trustedProxies);
+    }
 }
\ No newline at end of file
@@ -1,9 +1,21 @@
 package com.norseintel.cloud.controller;
 
+import com.norseintel.cloud.admission.Admission;
+import com.norseintel.cloud.admission.CostClass;
+import com.norseintel.cloud.metrics.AnalysisContext;
 import com.norseintel.cloud.model.ApiResponse;
+import com.norseintel.cloud.model.image.ColorFilter;
+import com.norseintel.cloud.model.image.ElaOutputMode;
 import com.norseintel.cloud.model.image.ElaResult;
+import com.norseintel.cloud.model.image.ImageDecodeOptions;
 import com.norseintel.cloud.model.image.ImageMetadata;
+import com.norseintel.cloud.model.image.ImageOutputFormat;
+import com.norseintel.cloud.model.image.NoiseAnalysisResult;
+import com.norseintel.cloud.model.image.NoiseResidualFilter;
+import com.norseintel.cloud.service.CpuBoundExecutor;
 import com.norseintel.cloud.service.ImageForensicsService;
+import com.norseintel.cloud.service.ImageTriageService;
+import com.norseintel.cloud.service.image.ImageOutputEncoder;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -18,8 +30,14 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.awt.image.BufferedImage;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/v1/image-forensics")
@@ -29,7 +47,17 @@ public class ImageForensicsController {
     @Autowired
     private ImageForensicsService imageForensicsService;
 
+    @Autowired
+    private ImageTriageService imageTriageService;
+
+    @Autowired
+    private ImageOutputEncoder imageOutputEncoder;
+
+    @Autowired
+    private CpuBoundExecutor cpuBoundExecutor;
+
     @PostMapping("/metadata")
+    @Admission(CostClass.LIGHT)
     @Operation(summary = "Extract image metadata", description = "Extracts EXIF and other metadata from an image")
     @ApiResponses({
             @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Metadata extracted successfully", content = @Content(schema = @Schema(implementation = ImageMetadata.class)))
@@ -42,88 +70,226 @@ public class ImageForensicsController {
     }
 
     @PostMapping("/jpeg-structure")
+    @Admission(CostClass.LIGHT)
     @Operation(summary = "Analyze JPEG structure", description = "Analyzes the JPEG file structure for technical metadata")
     public ResponseEntity<ApiResponse<Map<String, Object>>> analyzeJpegStructure(
             @RequestParam("file") MultipartFile file) {
 
-        Map<String, Object> result = imageForensicsService.analyzeJpegStructure(file);
+        Map<String, Object> result = cpuBoundExecutor.call(() -> imageForensicsService.analyzeJpegStructure(file));
+        return ResponseEntity.ok(ApiResponse.success(result));
+    }
+
+    @PostMapping("/triage")
+    @Admission(CostClass.HEAVY)
+    @Operation(summary = "Full Image Triage", description = "Runs metadata, JPEG structure, ELA, noise, noise map, compression history, pattern detection, "
+            + "thumbnail and hash analyses concurrently on one upload and returns a single report; analyses that fail or time out are reported individually")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> triage(
+            @RequestParam("file") MultipartFile file,
+            @Parameter(description = "Subset of analyses to run; all by default") @RequestParam(value = "analyses", required = false) List<String> analyses,
+            @Parameter(description = "Per-analysis timeout in seconds") @RequestParam(value = "timeoutSeconds", required = false) Integer timeoutSeconds,
+            @Parameter(description = "Source region to decode as x,y,width,height") @RequestParam(value = "region", required = false) String region,
+            @Parameter(description = "Decode every n-th pixel in both directions") @RequestParam(value = "subsample", defaultValue = "1") int subsample) {
+
+        Map<String, Object> result = imageTriageService.triage(file, analyses, timeoutSeconds, ImageDecodeOptions.fromRequest(region, subsample));
         return ResponseEntity.ok(ApiResponse.success(result));
     }
 
     @PostMapping("/error-level-analysis")
-    @Operation(summary = "Perform Error Level Analysis", description = "Detects image manipulation through error level analysis")
+    @Admission(CostClass.HEAVY)
+    @Operation(summary = "Perform Error Level Analysis", description = "Detects image manipulation through error level analysis. "
+            + "Returns a per-block error-level matrix with summary statistics by default; use output=image or output=full for the difference image")
     public ResponseEntity<ApiResponse<ElaResult>> performErrorLevelAnalysis(
             @RequestParam("file") MultipartFile file,
-            @RequestParam(value = "quality", defaultValue = "0.95") float quality) {
+            @RequestParam(value = "quality", defaultValue = "0.95") float quality,
+            @Parameter(description = "blocks, image or full") @RequestParam(value = "output", defaultValue = "blocks") String output,
+            @RequestParam(value = "blockSize", defaultValue = "16") int blockSize,
+            @Parameter(description = "Encoding of the difference image: png, jpeg or raw") @RequestParam(value = "format", defaultValue = "png") String format) {
 
-        ElaResult result = imageForensicsService.performErrorLevelAnalysis(file, quality);
+        ElaOutputMode outputMode = ElaOutputMode.fromString(output);
+        ImageOutputFormat imageFormat = ImageOutputFormat.fromString(format);
+        ElaResult result = cpuBoundExecutor.call(() -> imageForensicsService.performErrorLevelAnalysis(file, quality, outputMode, blockSize, imageFormat));
         return ResponseEntity.ok(ApiResponse.success(result));
     }
 
     @PostMapping("/noise-analysis")
+    @Admission(CostClass.HEAVY)
     @Operation(summary = "Perform Noise Analysis", description = "Detects image tampering by analyzing noise patterns")
-    public ResponseEntity<byte[]> analyzeNoise(@RequestParam("file") MultipartFile file) {
-        byte[] noiseImage = imageForensicsService.applyNoiseAnalysis(file);
+    public ResponseEntity<StreamingResponseBody> analyzeNoise(
+            @RequestParam("file") MultipartFile file,
+            @Parameter(description = "png, jpeg or raw") @RequestParam(value = "format", defaultValue = "png") String format,
+            @Parameter(description = "Source region to decode as x,y,width,height") @RequestParam(value = "region", required = false) String region,
+            @Parameter(description = "Decode every n-th pixel in both directions") @RequestParam(value = "subsample", defaultValue = "1") int subsample) {
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.IMAGE_PNG);
+        ImageOutputFormat outputFormat = ImageOutputFormat.fromString(format);
+        ImageDecodeOptions options = ImageDecodeOptions.fromRequest(region, subsample);
+        BufferedImage noiseImage = cpuBoundExecutor.call(() -> imageForensicsService.applyNoiseAnalysis(file, options));
+        return imageResponse(noiseImage, outputFormat);
+    }
 
-        return ResponseEntity.ok()
-                .headers(headers)
-                .body(noiseImage);
+    @PostMapping("/noise-map")
+    @Admission(CostClass.HEAVY)
+    @Operation(summary = "Map Noise Inconsistencies", description = "Measures the noise level of every block of the luma residual and reports "
+            + "blocks whose noise deviates from the rest of the image, a numeric splice indicator")
+    public ResponseEntity<ApiResponse<NoiseAnalysisResult>> mapNoise(
+            @RequestParam("file") MultipartFile file,
+            @Parameter(description = "laplacian, median or wavelet") @RequestParam(value = "filter", defaultValue = "laplacian") String filter,
+            @RequestParam(value = "blockSize", defaultValue = "32") int blockSize,
+            @Parameter(description = "Source region to decode as x,y,width,height") @RequestParam(value = "region", required = false) String region,
+            @Parameter(description = "Decode every n-th pixel in both directions") @RequestParam(value = "subsample", defaultValue = "1") int subsample) {
+
+        NoiseResidualFilter residualFilter = NoiseResidualFilter.fromString(filter);
+        ImageDecodeOptions options = ImageDecodeOptions.fromRequest(region, subsample);
+        NoiseAnalysisResult result = cpuBoundExecutor.call(() -> imageForensicsService.analyzeNoiseResidual(file, residualFilter, blockSize, options));
+        return ResponseEntity.ok(ApiResponse.success(result));
     }
 
     @PostMapping("/color-filter")
+    @Admission(CostClass.HEAVY)
     @Operation(summary = "Apply Color Filter", description = "Apply various color filters to detect manipulations")
-    public ResponseEntity<byte[]> applyColorFilter(
+    public ResponseEntity<StreamingResponseBody> applyColorFilter(
             @RequestParam("file") MultipartFile file,
-            @RequestParam(value = "filter", defaultValue = "invert") String filterType) {
+            @RequestParam(value = "filter", defaultValue = "invert") String filterType,
+            @Parameter(description = "png, jpeg or raw") @RequestParam(value = "format", defaultValue = "png") String format,
+            @Parameter(description = "Source region to decode as x,y,width,height") @RequestParam(value = "region", required = false) String region,
+            @Parameter(description = "Decode every n-th pixel in both directions") @RequestParam(value = "subsample", defaultValue = "1") int subsample) {
 
-        byte[] filteredImage = imageForensicsService.applyColorFilter(file, filterType);
+        ImageOutputFormat outputFormat = ImageOutputFormat.fromString(format);
+        ImageDecodeOptions options = ImageDecodeOptions.fromRequest(region, subsample);
+        BufferedImage filteredImage = cpuBoundExecutor.call(() -> imageForensicsService.applyColorFilter(file, filterType, options));
+        return imageResponse(filteredImage, outputFormat);
+    }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.IMAGE_PNG);
+    @PostMapping("/color-filters")
+    @Admission(CostClass.HEAVY)
+    @Operation(summary = "Apply Several Color Filters", description = "Decode once, render every requested color filter in a single pass and stream the results as a ZIP archive")
+    public ResponseEntity<StreamingResponseBody> applyColorFilters(
+            @RequestParam("file") MultipartFile file,
+            @Parameter(description = "Filters to render: invert, equalize, red, green, blue") @RequestParam(value = "filters", defaultValue = "invert,equalize,red,green,blue") List<String> filters,
+            @Parameter(description = "png, jpeg or raw") @RequestParam(value = "format", defaultValue = "png") String format,
+            @Parameter(description = "Source region to decode as x,y,width,height") @RequestParam(value = "region", required = false) String region,
+            @Parameter(description = "Decode every n-th pixel in both directions") @RequestParam(value = "subsample", defaultValue = "1") int subsample) {
 
+        ImageOutputFormat outputFormat = ImageOutputFormat.fromString(format);
+        Set<ColorFilter> requested = EnumSet.noneOf(ColorFilter.class);
+        filters.forEach(filter -> requested.add(ColorFilter.fromString(filter.trim())));
+        ImageDecodeOptions options = ImageDecodeOptions.fromRequest(region, subsample);
+        Map<ColorFilter, BufferedImage> filtered = cpuBoundExecutor.call(() -> imageForensicsService.applyColorFilters(file, requested, options));
+
+        Map<String, BufferedImage> entries = new LinkedHashMap<>();
+        filtered.forEach((filter, image) -> entries.put(filter.name().toLowerCase(), image));
+        AnalysisContext context = AnalysisContext.current();
         return ResponseEntity.ok()
-                .headers(headers)
-                .body(filteredImage);
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"color-filters.zip\"")
+                .body(out -> {
+                    AnalysisContext.Scope scope = context.attach();
+                    try (scope) {
+                        imageOutputEncoder.writeArchive(entries, outputFormat, out);
+                    }
+                });
     }
 
     @PostMapping("/thumbnail-analysis")
-    @Operation(summary = "Analyze Thumbnail", description = "Compare embedded thumbnail with full image")
+    @Admission(CostClass.LIGHT)
+    @Operation(summary = "Analyze Thumbnail", description = "Extract the embedded EXIF thumbnail without decoding the image and compare it with the image to detect stale thumbnails")
     public ResponseEntity<ApiResponse<Map<String, Object>>> analyzeThumbnail(
             @RequestParam("file") MultipartFile file) {
 
-        Map<String, Object> result = imageForensicsService.analyzeThumbnail(file);
+        Map<String, Object> result = cpuBoundExecutor.call(() -> imageForensicsService.analyzeThumbnail(file));
         return ResponseEntity.ok(ApiResponse.success(result));
     }
 
     @PostMapping("/pattern-detection")
+    @Admission(CostClass.HEAVY)
     @Operation(summary = "Detect Copy-Paste Patterns", description = "Identify recurring patterns that might indicate copy-paste manipulation")
     public ResponseEntity<ApiResponse<Map<String, Object>>> detectPatterns(
-            @RequestParam("file") MultipartFile file) {
+            @RequestParam("file") MultipartFile file,
+            @Parameter(description = "Source region to decode as x,y,width,height") @RequestParam(value = "region", required = false) String region,
+            @Parameter(description = "Decode every n-th pixel in both directions") @RequestParam(value = "subsample", defaultValue = "1") int subsample) {
 
-        Map<String, Object> result = imageForensicsService.detectPatterns(file);
+        ImageDecodeOptions options = ImageDecodeOptions.fromRequest(region, subsample);
+        Map<String, Object> result = cpuBoundExecutor.call(() -> imageForensicsService.detectPatterns(file, options));
         return ResponseEntity.ok(ApiResponse.success(result));
     }
 
     @PostMapping("/compression-analysis")
+    @Admission(CostClass.MEDIUM)
     @Operation(summary = "Analyze Compression History", description = "Detect multiple compression cycles suggesting manipulation")
     public ResponseEntity<ApiResponse<Map<String, Object>>> analyzeCompression(
-            @RequestParam("file") MultipartFile file) {
+            @RequestParam("file") MultipartFile file,
+            @Parameter(description = "Heatmap cell size in pixels (multiple of 8)") @RequestParam(value = "heatmapCellSize", defaultValue = "64") int heatmapCellSize) {
 
-        Map<String, Object> result = imageForensicsService.analyzeCompressionHistory(file);
+        Map<String, Object> result = cpuBoundExecutor.call(() -> imageForensicsService.analyzeCompressionHistory(file, heatmapCellSize));
         return ResponseEntity.ok(ApiResponse.success(result));
     }
 
     @PostMapping("/verify-hash")
+    @Admission(CostClass.MEDIUM)
     @Operation(summary = "Verify Image Hash", description = "Verify the integrity of an image using cryptographic hashing")
     public ResponseEntity<ApiResponse<Map<String, Object>>> verifyHash(
             @RequestParam("file") MultipartFile file,
             @RequestParam("hash") String providedHash,
             @RequestParam(value = "algorithm", defaultValue = "SHA-256") String algorithm) {
 
-        Map<String, Object> result = imageForensicsService.verifyImageHash(file, providedHash, algorithm);
+        Map<String, Object> result = cpuBoundExecutor.call(() -> imageForensicsService.verifyImageHash(file, providedHash, algorithm));
+        return ResponseEntity.ok(ApiResponse.success(result));
+    }
+
+    @PostMapping("/perceptual-hash")
+    @Admission(CostClass.MEDIUM)
+    @Operation(summary = "Calculate Perceptual Hashes", description = "Calculate aHash, dHash and pHash values that survive resizing and recompression")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> calculatePerceptualHashes(
+            @RequestParam("file") MultipartFile file) {
+
+        Map<String, Object> result = cpuBoundExecutor.call(() -> imageForensicsService.calculatePerceptualHashes(file));
+        return ResponseEntity.ok(ApiResponse.success(result));
+    }
+
+    @PostMapping("/perceptual-index")
+    @Admission(CostClass.MEDIUM)
+    @Operation(summary = "Add Reference Image", description = "Add an image to the persistent perceptual hash index of known images")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> addToPerceptualIndex(
+            @RequestParam("file") MultipartFile file,
+            @Parameter(description = "Reference label of at most 256 characters; defaults to the file name") @RequestParam(value = "label", required = false) String label) {
+
+        Map<String, Object> result = cpuBoundExecutor.call(() -> imageForensicsService.addToPerceptualIndex(file, label));
+        return ResponseEntity.ok(ApiResponse.success(result));
+    }
+
+    @PostMapping("/perceptual-search")
+    @Admission(CostClass.MEDIUM)
+    @Operation(summary = "Find Similar Known Images", description = "Find indexed images within a Hamming distance of the uploaded image's perceptual hash")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> searchPerceptualIndex(
+            @RequestParam("file") MultipartFile file,
+            @Parameter(description = "phash, dhash or ahash") @RequestParam(value = "algorithm", defaultValue = "phash") String algorithm,
+            @Parameter(description = "Maximum Hamming distance (0-16)") @RequestParam(value = "maxDistance", defaultValue = "10") int maxDistance,
+            @RequestParam(value = "limit", defaultValue = "50") int limit) {
+
+        Map<String, Object> result = cpuBoundExecutor.call(() -> imageForensicsService.searchPerceptualIndex(file, algorithm, maxDistance, limit));
         return ResponseEntity.ok(ApiResponse.success(result));
     }
+
+    /**
+     * Streams the encoded image into the response body; raw planes carry their geometry in headers. The body is
+     * written on another thread, which takes over the request's analysis context for the encode metrics.
+     */
+    private ResponseEntity<StreamingResponseBody> imageResponse(BufferedImage image, ImageOutputFormat format) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(format.getContentType()));
+        if (format == ImageOutputFormat.RAW) {
+            headers.add("X-Image-Width", String.valueOf(image.getWidth()));
+            headers.add("X-Image-Height", String.valueOf(image.getHeight()));
+            headers.add("X-Image-Planes", String.valueOf(ImageOutputEncoder.planeCount(image)));
+        }
+
+        AnalysisContext context = AnalysisContext.current();
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(out -> {
+                    AnalysisContext.Scope scope = context.attach();
+                    try (scope) {
+                        imageOutputEncoder.write(image, format, out);
+                    }
+                });
+    }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.norseintel.cloud.exception;
 
 import com.norseintel.cloud.model.ApiResponse;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -11,9 +12,19 @@ import org.springframework.web.multipart.MaxUploadSizeExceededException;
 public class GlobalExceptionHandler {
     
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(GlobalExceptionHandler.class);
+    
+    private static final String RETRY_AFTER_SECONDS = "5";
 
     @ExceptionHandler(ForensicException.class)
     public ResponseEntity<ApiResponse<Void>> handleForensicException(ForensicException ex) {
+        if (ex.getStatus() == HttpStatus.SERVICE_UNAVAILABLE || ex.getStatus() == HttpStatus.TOO_MANY_REQUESTS) {
+            // Expected under overload and counted by the rejection metrics; a stack trace per shed request would add to the load
+            log.debug("Request rejected with {}: {}", ex.getStatus().value(), ex.getMessage());
+            return ResponseEntity
+                    .status(ex.getStatus())
+                    .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                    .body(ApiResponse.error(ex.getMessage()));
+        }
         log.error("Forensic exception occurred: {}", ex.getMessage(), ex);
         return ResponseEntity
                 .status(ex.getStatus())
@@ -0,0 +1,112 @@
+package com.norseintel.cloud.metrics;
+
+/**
+ * What the analysis on the current thread is working on, for tagging its metrics and flight recorder events: the
+ * request ID, the endpoint or job analysis and, once the upload has been stored, its MIME type and size bucket.
+ * Contexts are thread-bound, so code that hands work to another executor captures {@link #current()} and attaches
+ * it in the task.
+ */
+public final class AnalysisContext {
+
+    public static final String UNKNOWN = "unknown";
+
+    private static final ThreadLocal<AnalysisContext> CURRENT = new ThreadLocal<>();
+
+    private final String requestId;
+    private final String endpoint;
+    // Filled in by whichever thread stores the upload, and read by the threads the analysis moves to
+    private volatile String mimeType;
+    private volatile String sizeBucket;
+
+    public AnalysisContext(String requestId, String endpoint) {
+        this(requestId, endpoint, UNKNOWN, UNKNOWN);
+    }
+
+    private AnalysisContext(String requestId, String endpoint, String mimeType, String sizeBucket) {
+        this.requestId = requestId;
+        this.endpoint = endpoint;
+        this.mimeType = mimeType;
+        this.sizeBucket = sizeBucket;
+    }
+
+    /** The context attached to this thread, or a detached one for work started outside any request or job. */
+    public static AnalysisContext current() {
+        AnalysisContext context = CURRENT.get();
+        return context != null ? context : new AnalysisContext(null, UNKNOWN);
+    }
+
+    /** A context for a sub-analysis of the same upload and request, tagged with its own endpoint name. */
+    public AnalysisContext child(String childEndpoint) {
+        return new AnalysisContext(requestId, childEndpoint, mimeType, sizeBucket);
+    }
+
+    /** Attaches this context to the current thread until the returned scope is closed. */
+    public Scope attach() {
+        AnalysisContext previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    /** The ID of the request that started the work, or null outside any request. */
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public String getSizeBucket() {
+        return sizeBucket;
+    }
+
+    void describe(String detectedMimeType, long size) {
+        this.mimeType = detectedMimeType;
+        this.sizeBucket = sizeBucket(size);
+    }
+
+    void describeSize(long size) {
+        this.sizeBucket = sizeBucket(size);
+    }
+
+    void describeMimeType(String detectedMimeType) {
+        this.mimeType = detectedMimeType;
+    }
+
+    /** Decade buckets, so that the size tag stays low-cardinality. */
+    static String sizeBucket(long bytes) {
+        if (bytes < 0) {
+            return UNKNOWN;
+        }
+        if (bytes < 100L * 1024) {
+            return "<100KB";
+        }
+        if (bytes < 1024L * 1024) {
+            return "100KB-1MB";
+        }
+        if (bytes < 10L * 1024 * 1024) {
+            return "1MB-10MB";
+        }
+        if (bytes < 100L * 1024 * 1024) {
+            return "10MB-100MB";
+        }
+        return ">=100MB";
+    }
+
+    /** An attachment of a context to a thread; closing it restores the context attached before. */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
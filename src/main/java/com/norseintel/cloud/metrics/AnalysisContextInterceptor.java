@@ -0,0 +1,69 @@
+package com.norseintel.cloud.metrics;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Attaches an {@link AnalysisContext} named after the matched endpoint to the request thread for the duration of
+ * the handler, sized by the request body until the upload has been stored and inspected. The request ID is taken
+ * from the {@value #REQUEST_ID_HEADER} header when the caller sends a well-formed one, generated otherwise, and
+ * returned in the same header.
+ */
+@Component
+public class AnalysisContextInterceptor implements AsyncHandlerInterceptor {
+
+    public static final String REQUEST_ID_HEADER = "X-Request-ID";
+
+    private static final Pattern VALID_REQUEST_ID = Pattern.compile("[A-Za-z0-9._:-]{1,64}");
+    private static final String API_PREFIX = "/api/v1/";
+    private static final String SCOPE_ATTRIBUTE = AnalysisContextInterceptor.class.getName() + ".scope";
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String endpoint = pattern != null ? pattern.toString() : AnalysisContext.UNKNOWN;
+        if (endpoint.startsWith(API_PREFIX)) {
+            endpoint = endpoint.substring(API_PREFIX.length());
+        }
+
+        String requestId = request.getHeader(REQUEST_ID_HEADER);
+        if (requestId == null || !VALID_REQUEST_ID.matcher(requestId).matches()) {
+            requestId = UUID.randomUUID().toString();
+        }
+        response.setHeader(REQUEST_ID_HEADER, requestId);
+
+        AnalysisContext context = new AnalysisContext(requestId, endpoint);
+        context.describeSize(request.getContentLengthLong());
+        request.setAttribute(SCOPE_ATTRIBUTE, context.attach());
+        return true;
+    }
+
+    // The handler has returned and the request thread is released; streamed bodies attach the context themselves
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        detach(request);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        detach(request);
+    }
+
+    private static void detach(HttpServletRequest request) {
+        AnalysisContext.Scope scope = (AnalysisContext.Scope) request.getAttribute(SCOPE_ATTRIBUTE);
+        request.removeAttribute(SCOPE_ATTRIBUTE);
+        if (scope != null) {
+            scope.close();
+        }
+    }
+}
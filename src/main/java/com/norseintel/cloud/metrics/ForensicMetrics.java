@@ -0,0 +1,194 @@
+package com.norseintel.cloud.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.apache.tika.Tika;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Timers for analyses and their stages, tagged with the {@link AnalysisContext} of the thread doing the work.
+ * {@code norseintel.analysis} measures a whole analysis call, and {@code norseintel.analysis.stage} the time
+ * spent in each {@link Stage}. Stage times are exclusive: a stage nested in another (a hash taken while
+ * decoding, say) is deducted from the outer one, so the stages of one call add up to its total.
+ *
+ * <p>Meters are looked up on every call, so each one is registered once per tag set and then served from a map.
+ */
+@Component
+public class ForensicMetrics {
+
+    @FunctionalInterface
+    public interface TimedCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    @FunctionalInterface
+    public interface TimedRun<E extends Exception> {
+        void run() throws E;
+    }
+
+    // Open stages of the current thread, innermost first
+    private static final class Frame {
+        private final Frame parent;
+        private long childNanos;
+
+        private Frame(Frame parent) {
+            this.parent = parent;
+        }
+    }
+
+    // The context's tags plus the one tag that tells the meters of a name apart (outcome or stage)
+    private record MeterKey(String endpoint, String mimeType, String sizeBucket, String qualifier) {
+
+        static MeterKey of(AnalysisContext context, String qualifier) {
+            return new MeterKey(context.getEndpoint(), context.getMimeType(), context.getSizeBucket(), qualifier);
+        }
+
+        Tags tags() {
+            return Tags.of("endpoint", endpoint, "mime", mimeType, "size", sizeBucket);
+        }
+    }
+
+    private final ThreadLocal<Frame> frames = new ThreadLocal<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<MeterKey, Timer> analysisTimers = new ConcurrentHashMap<>();
+    private final Map<MeterKey, Timer> stageTimers = new ConcurrentHashMap<>();
+    private final Map<MeterKey, DistributionSummary> uploadSizes = new ConcurrentHashMap<>();
+    private final Map<MeterKey, DistributionSummary> decodedPixels = new ConcurrentHashMap<>();
+    private final Tika tika = new Tika();
+    private final MeterRegistry meterRegistry;
+    private final Path tempDir;
+
+    public ForensicMetrics(MeterRegistry meterRegistry, @Value("${norseintel.storage.temp-dir}") String tempDir) {
+        this.meterRegistry = meterRegistry;
+        this.tempDir = Paths.get(tempDir);
+
+        Gauge.builder("norseintel.analysis.in-flight", inFlight, AtomicInteger::get)
+                .description("Analyses currently running")
+                .register(meterRegistry);
+        Gauge.builder("norseintel.storage.temp-dir.bytes", this.tempDir, dir -> tempDirUsage(dir, true))
+                .description("Bytes held by stored uploads and intermediate files")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("norseintel.storage.temp-dir.files", this.tempDir, dir -> tempDirUsage(dir, false))
+                .description("Stored uploads and intermediate files")
+                .register(meterRegistry);
+    }
+
+    /** Runs a whole analysis call, timing it as the compute stage of the current context. */
+    public <T, E extends Exception> T analysis(TimedCall<T, E> body) throws E {
+        long start = System.nanoTime();
+        String outcome = "error";
+        inFlight.incrementAndGet();
+        try {
+            T result = time(Stage.COMPUTE, body);
+            outcome = "success";
+            return result;
+        } finally {
+            inFlight.decrementAndGet();
+            analysisTimers.computeIfAbsent(MeterKey.of(AnalysisContext.current(), outcome), key -> Timer.builder("norseintel.analysis")
+                            .description("Duration of analysis calls")
+                            .tags(key.tags())
+                            .tag("outcome", key.qualifier())
+                            .register(meterRegistry))
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public <T, E extends Exception> T time(Stage stage, TimedCall<T, E> body) throws E {
+        Frame parent = frames.get();
+        Frame frame = new Frame(parent);
+        frames.set(frame);
+        long start = System.nanoTime();
+        try {
+            return body.call();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            if (parent != null) {
+                parent.childNanos += elapsed;
+                frames.set(parent);
+            } else {
+                frames.remove();
+            }
+            stageTimers.computeIfAbsent(MeterKey.of(AnalysisContext.current(), stage.tagValue()), key -> Timer.builder("norseintel.analysis.stage")
+                            .description("Time spent in each stage of an analysis, excluding nested stages")
+                            .tags(key.tags())
+                            .tag("stage", key.qualifier())
+                            .register(meterRegistry))
+                    .record(Math.max(0, elapsed - frame.childNanos), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public <E extends Exception> void run(Stage stage, TimedRun<E> body) throws E {
+        time(stage, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    /**
+     * Records the MIME type a stored upload's file name implies, with its size bucket, on the current context.
+     * Only the name is looked at, so storing an upload never reads it back; analyses that inspect the content
+     * refine the type through {@link #recordDetectedType}.
+     */
+    public void describeUpload(File file) {
+        AnalysisContext context = AnalysisContext.current();
+        long size = file.length();
+        context.describe(tika.detect(file.getName()), size);
+        uploadSizes.computeIfAbsent(new MeterKey(context.getEndpoint(), context.getMimeType(), null, null),
+                        key -> DistributionSummary.builder("norseintel.analysis.upload.size")
+                                .description("Size of stored uploads")
+                                .baseUnit("bytes")
+                                .tags(Tags.of("endpoint", key.endpoint(), "mime", key.mimeType()))
+                                .register(meterRegistry))
+                .record(size);
+    }
+
+    /** Records the MIME type an analysis detected from the content of the upload on the current context. */
+    public void recordDetectedType(String mimeType) {
+        AnalysisContext.current().describeMimeType(mimeType);
+    }
+
+    public void recordDecodedPixels(long pixels) {
+        decodedPixels.computeIfAbsent(MeterKey.of(AnalysisContext.current(), null), key -> DistributionSummary.builder("norseintel.analysis.decoded.pixels")
+                        .description("Pixels per decoded image, crop or preview")
+                        .tags(key.tags())
+                        .register(meterRegistry))
+                .record(pixels);
+    }
+
+    private static double tempDirUsage(Path tempDir, boolean bytes) {
+        if (!Files.isDirectory(tempDir)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return bytes ? files.mapToLong(ForensicMetrics::sizeOf).sum() : files.count();
+        } catch (IOException | UncheckedIOException e) {
+            return Double.NaN;
+        }
+    }
+
+    // Files may be deleted between listing and sizing
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
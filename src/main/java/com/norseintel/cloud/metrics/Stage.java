@@ -0,0 +1,15 @@
+package com.norseintel.cloud.metrics;
+
+/** The parts an analysis is timed in, tagged on {@code norseintel.analysis.stage} by their lower-case name. */
+public enum Stage {
+    STORE,
+    DECODE,
+    COMPUTE,
+    ENCODE,
+    HASH,
+    DELETE;
+
+    public String tagValue() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,136 @@
+package com.norseintel.cloud.metrics.jfr;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Starts, dumps and stops a JDK Flight Recorder recording on demand, so single slow requests can be profiled in
+ * production. {@code POST /actuator/flightrecorder} starts a recording with a JDK settings file ({@code default}
+ * or {@code profile}) and optionally a fixed duration; {@code GET /actuator/flightrecorder/dump} downloads what
+ * has been recorded so far without stopping it; {@code DELETE} stops and discards it. The recording includes
+ * the {@link ForensicEvent}s emitted by the analyses.
+ */
+@Component
+@WebEndpoint(id = "flightrecorder")
+@Slf4j
+public class FlightRecorderEndpoint {
+
+    private static final String RECORDING_NAME = "norseintel";
+    private static final String DUMP_SELECTOR = "dump";
+
+    private final String defaultSettings;
+    private final Duration maxAge;
+    private final long maxSizeBytes;
+
+    private Recording recording;
+
+    public FlightRecorderEndpoint(@Value("${norseintel.jfr.settings:profile}") String defaultSettings,
+                                  @Value("${norseintel.jfr.max-age:10m}") Duration maxAge,
+                                  @Value("${norseintel.jfr.max-size-bytes:104857600}") long maxSizeBytes) {
+        this.defaultSettings = defaultSettings;
+        this.maxAge = maxAge;
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    @ReadOperation
+    public synchronized Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        if (recording == null) {
+            status.put("state", "NONE");
+            return status;
+        }
+        status.put("state", recording.getState().name());
+        status.put("startTime", recording.getStartTime());
+        status.put("duration", recording.getDuration());
+        status.put("maxAge", recording.getMaxAge());
+        status.put("size", recording.getSize());
+        return status;
+    }
+
+    /** Starts a recording; 409 while one is already running. */
+    @WriteOperation
+    public synchronized WebEndpointResponse<Map<String, Object>> start(@Nullable String settings, @Nullable Duration duration) {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            return new WebEndpointResponse<>(Map.of("error", "A recording is already running"), HttpStatus.CONFLICT.value());
+        }
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration(settings != null ? settings : defaultSettings);
+        } catch (IOException | ParseException e) {
+            return new WebEndpointResponse<>(Map.of("error", "Unknown recording settings: " + settings), WebEndpointResponse.STATUS_BAD_REQUEST);
+        }
+
+        discard();
+        recording = new Recording(configuration);
+        recording.setName(RECORDING_NAME);
+        recording.setToDisk(true);
+        recording.setMaxAge(maxAge);
+        recording.setMaxSize(maxSizeBytes);
+        if (duration != null) {
+            recording.setDuration(duration);
+        }
+        recording.start();
+        log.info("Started flight recording with {} settings", configuration.getName());
+        return new WebEndpointResponse<>(status());
+    }
+
+    /** The data recorded so far as a {@code .jfr} file; the recording itself keeps running. */
+    @ReadOperation(produces = "application/octet-stream")
+    public synchronized WebEndpointResponse<Resource> dump(@Selector String action) throws IOException {
+        if (!DUMP_SELECTOR.equals(action)) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+        if (recording == null || recording.getState() == RecordingState.NEW || recording.getState() == RecordingState.CLOSED) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+        Path file = Files.createTempFile("norseintel-", ".jfr");
+        try {
+            recording.dump(file);
+            // The copy goes away as soon as the response has been streamed
+            return new WebEndpointResponse<>(new InputStreamResource(Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE)));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    @DeleteOperation
+    @PreDestroy
+    public synchronized void stop() {
+        if (recording != null) {
+            log.info("Discarding flight recording in state {}", recording.getState());
+        }
+        discard();
+    }
+
+    private void discard() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+}
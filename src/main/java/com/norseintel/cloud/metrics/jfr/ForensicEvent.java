@@ -0,0 +1,40 @@
+package com.norseintel.cloud.metrics.jfr;
+
+import com.norseintel.cloud.metrics.AnalysisContext;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for one step of an analysis, carrying the request and endpoint of the thread's
+ * {@link AnalysisContext}. Callers {@link #begin()} the event, do the work and {@link #finish(long)} it; when no
+ * recording wants the event, finishing costs a single check and the context is never looked up.
+ */
+@Category({"NorseIntel", "Forensics"})
+@StackTrace(false)
+public abstract class ForensicEvent extends Event {
+
+    @Label("Request ID")
+    protected String requestId;
+
+    @Label("Endpoint")
+    protected String endpoint;
+
+    @Label("Bytes")
+    @DataAmount
+    protected long bytes;
+
+    /** Ends the event and commits it with the byte count and the current analysis context. */
+    public void finish(long byteCount) {
+        end();
+        if (shouldCommit()) {
+            AnalysisContext context = AnalysisContext.current();
+            requestId = context.getRequestId();
+            endpoint = context.getEndpoint();
+            bytes = byteCount;
+            commit();
+        }
+    }
+}
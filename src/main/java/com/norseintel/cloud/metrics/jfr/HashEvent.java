@@ -0,0 +1,18 @@
+package com.norseintel.cloud.metrics.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.norseintel.Hash")
+@Label("Hash")
+@Description("A digest of a file or byte array")
+public class HashEvent extends ForensicEvent {
+
+    @Label("Algorithm")
+    private final String algorithm;
+
+    public HashEvent(String algorithm) {
+        this.algorithm = algorithm;
+    }
+}
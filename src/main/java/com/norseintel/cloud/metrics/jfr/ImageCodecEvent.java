@@ -0,0 +1,41 @@
+package com.norseintel.cloud.metrics.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.awt.image.BufferedImage;
+
+@Name("com.norseintel.ImageCodec")
+@Label("Image Codec")
+@Description("An image decoded from or encoded to its file format; bytes are the encoded size")
+public class ImageCodecEvent extends ForensicEvent {
+
+    public static final String DECODE = "decode";
+    public static final String ENCODE = "encode";
+
+    @Label("Operation")
+    private final String operation;
+
+    @Label("Format")
+    private final String format;
+
+    @Label("Width")
+    private int width;
+
+    @Label("Height")
+    private int height;
+
+    public ImageCodecEvent(String operation, String format) {
+        this.operation = operation;
+        this.format = format;
+    }
+
+    /** Records the pixel size of the decoded or encoded image; null is ignored. */
+    public void setImage(BufferedImage image) {
+        if (image != null) {
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.norseintel.cloud.metrics.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.norseintel.TikaParse")
+@Label("Tika Parse")
+@Description("A document parsed by Apache Tika")
+public class ParseEvent extends ForensicEvent {
+
+    @Label("Content Type")
+    private String contentType;
+
+    /** The type the parser detected, known only once parsing has finished. */
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+}
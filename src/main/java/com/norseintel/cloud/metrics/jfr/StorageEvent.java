@@ -0,0 +1,18 @@
+package com.norseintel.cloud.metrics.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.norseintel.Storage")
+@Label("Temporary Storage")
+@Description("An upload written to or a file deleted from temporary storage")
+public class StorageEvent extends ForensicEvent {
+
+    @Label("Operation")
+    private final String operation;
+
+    public StorageEvent(String operation) {
+        this.operation = operation;
+    }
+}
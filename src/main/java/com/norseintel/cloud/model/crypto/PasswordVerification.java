@@ -0,0 +1,14 @@
+package com.norseintel.cloud.model.crypto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** One password to check against a stored hash, as produced by the password hash endpoint. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PasswordVerification {
+    private String password;
+    private String storedHash;
+}
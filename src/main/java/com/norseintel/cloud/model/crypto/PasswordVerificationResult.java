@@ -0,0 +1,24 @@
+package com.norseintel.cloud.model.crypto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Whether a password matched; {@code error} is set instead when the pair could not be checked at all. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PasswordVerificationResult {
+    private boolean valid;
+    private String error;
+    
+    public static PasswordVerificationResult of(boolean valid) {
+        return new PasswordVerificationResult(valid, null);
+    }
+    
+    public static PasswordVerificationResult failed(String error) {
+        return new PasswordVerificationResult(false, error);
+    }
+}
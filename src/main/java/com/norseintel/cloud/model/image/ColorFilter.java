@@ -0,0 +1,21 @@
+package com.norseintel.cloud.model.image;
+
+import com.norseintel.cloud.exception.ForensicException;
+import org.springframework.http.HttpStatus;
+
+public enum ColorFilter {
+    INVERT,
+    EQUALIZE,
+    RED,
+    GREEN,
+    BLUE;
+    
+    public static ColorFilter fromString(String value) {
+        for (ColorFilter filter : values()) {
+            if (filter.name().equalsIgnoreCase(value)) {
+                return filter;
+            }
+        }
+        throw new ForensicException("Unsupported filter type: " + value, HttpStatus.BAD_REQUEST);
+    }
+}
\ No newline at end of file
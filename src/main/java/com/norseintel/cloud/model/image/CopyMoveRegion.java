@@ -0,0 +1,95 @@
+package com.norseintel.cloud.model.image;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CopyMoveRegion {
+    private int sourceX;
+    private int sourceY;
+    private int targetX;
+    private int targetY;
+    private int width;
+    private int height;
+    private int shiftX;
+    private int shiftY;
+    private int matchedBlocks;
+    
+    // Explicitly adding getters and setters
+    public int getSourceX() {
+        return sourceX;
+    }
+    
+    public void setSourceX(int sourceX) {
+        this.sourceX = sourceX;
+    }
+    
+    public int getSourceY() {
+        return sourceY;
+    }
+    
+    public void setSourceY(int sourceY) {
+        this.sourceY = sourceY;
+    }
+    
+    public int getTargetX() {
+        return targetX;
+    }
+    
+    public void setTargetX(int targetX) {
+        this.targetX = targetX;
+    }
+    
+    public int getTargetY() {
+        return targetY;
+    }
+    
+    public void setTargetY(int targetY) {
+        this.targetY = targetY;
+    }
+    
+    public int getWidth() {
+        return width;
+    }
+    
+    public void setWidth(int width) {
+        this.width = width;
+    }
+    
+    public int getHeight() {
+        return height;
+    }
+    
+    public void setHeight(int height) {
+        this.height = height;
+    }
+    
+    public int getShiftX() {
+        return shiftX;
+    }
+    
+    public void setShiftX(int shiftX) {
+        this.shiftX = shiftX;
+    }
+    
+    public int getShiftY() {
+        return shiftY;
+    }
+    
+    public void setShiftY(int shiftY) {
+        this.shiftY = shiftY;
+    }
+    
+    public int getMatchedBlocks() {
+        return matchedBlocks;
+    }
+    
+    public void setMatchedBlocks(int matchedBlocks) {
+        this.matchedBlocks = matchedBlocks;
+    }
+}
@@ -0,0 +1,68 @@
+package com.norseintel.cloud.model.image;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ElaBlock {
+    private int blockX;
+    private int blockY;
+    private int pixelX;
+    private int pixelY;
+    private double errorLevel;
+    private double deviation;
+    
+    // Explicitly adding getters and setters
+    public int getBlockX() {
+        return blockX;
+    }
+    
+    public void setBlockX(int blockX) {
+        this.blockX = blockX;
+    }
+    
+    public int getBlockY() {
+        return blockY;
+    }
+    
+    public void setBlockY(int blockY) {
+        this.blockY = blockY;
+    }
+    
+    public int getPixelX() {
+        return pixelX;
+    }
+    
+    public void setPixelX(int pixelX) {
+        this.pixelX = pixelX;
+    }
+    
+    public int getPixelY() {
+        return pixelY;
+    }
+    
+    public void setPixelY(int pixelY) {
+        this.pixelY = pixelY;
+    }
+    
+    public double getErrorLevel() {
+        return errorLevel;
+    }
+    
+    public void setErrorLevel(double errorLevel) {
+        this.errorLevel = errorLevel;
+    }
+    
+    public double getDeviation() {
+        return deviation;
+    }
+    
+    public void setDeviation(double deviation) {
+        this.deviation = deviation;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,27 @@
+package com.norseintel.cloud.model.image;
+
+import com.norseintel.cloud.exception.ForensicException;
+import org.springframework.http.HttpStatus;
+
+public enum ElaOutputMode {
+    BLOCKS,
+    IMAGE,
+    FULL;
+    
+    public boolean includesBlocks() {
+        return this != IMAGE;
+    }
+    
+    public boolean includesImage() {
+        return this != BLOCKS;
+    }
+    
+    public static ElaOutputMode fromString(String value) {
+        for (ElaOutputMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        throw new ForensicException("Unsupported ELA output mode: " + value, HttpStatus.BAD_REQUEST);
+    }
+}
\ No newline at end of file
@@ -1,19 +1,30 @@
 package com.norseintel.cloud.model.image;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class ElaResult {
     private String differenceImageBase64;
     private float quality;
     private String originalImageHash;
     private String resavedImageHash;
+    private Integer blockSize;
+    private Integer blocksWide;
+    private Integer blocksHigh;
+    private float[][] blockErrorLevels;
+    private Double meanErrorLevel;
+    private Double maxErrorLevel;
+    private List<ElaBlock> outlierBlocks;
     
     // Explicitly adding getters and setters
     public String getDifferenceImageBase64() {
@@ -47,4 +58,60 @@ public class ElaResult {
     public void setResavedImageHash(String resavedImageHash) {
         this.resavedImageHash = resavedImageHash;
     }
+    
+    public Integer getBlockSize() {
+        return blockSize;
+    }
+    
+    public void setBlockSize(Integer blockSize) {
+        this.blockSize = blockSize;
+    }
+    
+    public Integer getBlocksWide() {
+        return blocksWide;
+    }
+    
+    public void setBlocksWide(Integer blocksWide) {
+        this.blocksWide = blocksWide;
+    }
+    
+    public Integer getBlocksHigh() {
+        return blocksHigh;
+    }
+    
+    public void setBlocksHigh(Integer blocksHigh) {
+        this.blocksHigh = blocksHigh;
+    }
+    
+    public float[][] getBlockErrorLevels() {
+        return blockErrorLevels;
+    }
+    
+    public void setBlockErrorLevels(float[][] blockErrorLevels) {
+        this.blockErrorLevels = blockErrorLevels;
+    }
+    
+    public Double getMeanErrorLevel() {
+        return meanErrorLevel;
+    }
+    
+    public void setMeanErrorLevel(Double meanErrorLevel) {
+        this.meanErrorLevel = meanErrorLevel;
+    }
+    
+    public Double getMaxErrorLevel() {
+        return maxErrorLevel;
+    }
+    
+    public void setMaxErrorLevel(Double maxErrorLevel) {
+        this.maxErrorLevel = maxErrorLevel;
+    }
+    
+    public List<ElaBlock> getOutlierBlocks() {
+        return outlierBlocks;
+    }
+    
+    public void setOutlierBlocks(List<ElaBlock> outlierBlocks) {
+        this.outlierBlocks = outlierBlocks;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.norseintel.cloud.model.image;
+
+import com.norseintel.cloud.exception.ForensicException;
+import org.springframework.http.HttpStatus;
+
+import java.awt.Rectangle;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Which part of an image to decode and at what resolution: an optional source region in image pixels and
+ * a subsampling factor applied in both directions, so an analysis can run on a crop or a reduced preview.
+ */
+public record ImageDecodeOptions(Rectangle region, int subsampling) {
+    
+    public static final ImageDecodeOptions FULL = new ImageDecodeOptions(null, 1);
+    
+    private static final int MAX_SUBSAMPLING = 64;
+    
+    public boolean isFull() {
+        return region == null && subsampling == 1;
+    }
+    
+    /** Maps an x coordinate of the decoded image back to the source image. */
+    public int sourceX(int x) {
+        return (region == null ? 0 : region.x) + x * subsampling;
+    }
+    
+    /** Maps a y coordinate of the decoded image back to the source image. */
+    public int sourceY(int y) {
+        return (region == null ? 0 : region.y) + y * subsampling;
+    }
+    
+    public String cacheKey() {
+        return isFull() ? "" : (region == null ? "full" : region.x + "," + region.y + "," + region.width + "," + region.height) + "/" + subsampling;
+    }
+    
+    public Map<String, Object> describe() {
+        Map<String, Object> description = new LinkedHashMap<>();
+        if (region != null) {
+            description.put("regionX", region.x);
+            description.put("regionY", region.y);
+            description.put("regionWidth", region.width);
+            description.put("regionHeight", region.height);
+        }
+        description.put("subsampling", subsampling);
+        return description;
+    }
+    
+    /** Parses the {@code region=x,y,width,height} and {@code subsample=n} request parameters. */
+    public static ImageDecodeOptions fromRequest(String region, int subsampling) {
+        if (subsampling < 1 || subsampling > MAX_SUBSAMPLING) {
+            throw new ForensicException("Subsampling must be between 1 and " + MAX_SUBSAMPLING, HttpStatus.BAD_REQUEST);
+        }
+        if (region == null || region.isBlank()) {
+            return subsampling == 1 ? FULL : new ImageDecodeOptions(null, subsampling);
+        }
+        
+        String[] parts = region.split(",");
+        if (parts.length != 4) {
+            throw new ForensicException("Region must be given as x,y,width,height", HttpStatus.BAD_REQUEST);
+        }
+        try {
+            int x = Integer.parseInt(parts[0].trim());
+            int y = Integer.parseInt(parts[1].trim());
+            int width = Integer.parseInt(parts[2].trim());
+            int height = Integer.parseInt(parts[3].trim());
+            if (x < 0 || y < 0 || width < 1 || height < 1) {
+                throw new ForensicException("Region must have a non-negative origin and a positive size", HttpStatus.BAD_REQUEST);
+            }
+            return new ImageDecodeOptions(new Rectangle(x, y, width, height), subsampling);
+        } catch (NumberFormatException e) {
+            throw new ForensicException("Region must be given as x,y,width,height", HttpStatus.BAD_REQUEST);
+        }
+    }
+}
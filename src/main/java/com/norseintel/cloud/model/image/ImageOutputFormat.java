@@ -0,0 +1,36 @@
+package com.norseintel.cloud.model.image;
+
+import com.norseintel.cloud.exception.ForensicException;
+import org.springframework.http.HttpStatus;
+
+public enum ImageOutputFormat {
+    PNG("image/png", "png"),
+    JPEG("image/jpeg", "jpg"),
+    // One 8-bit plane per colour band, row-major, without any header
+    RAW("application/octet-stream", "raw");
+    
+    private final String contentType;
+    private final String extension;
+    
+    ImageOutputFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+    
+    public String getContentType() {
+        return contentType;
+    }
+    
+    public String getExtension() {
+        return extension;
+    }
+    
+    public static ImageOutputFormat fromString(String value) {
+        for (ImageOutputFormat format : values()) {
+            if (format.name().equalsIgnoreCase(value) || (format == JPEG && "jpg".equalsIgnoreCase(value))) {
+                return format;
+            }
+        }
+        throw new ForensicException("Unsupported output format: " + value, HttpStatus.BAD_REQUEST);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,163 @@
+package com.norseintel.cloud.model.image;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class NoiseAnalysisResult {
+    private String filter;
+    private int imageWidth;
+    private int imageHeight;
+    private int blockSize;
+    private int blocksWide;
+    private int blocksHigh;
+    private float[][] blockNoiseLevels;
+    private double medianNoiseLevel;
+    private double meanNoiseLevel;
+    private double noiseLevelSpread;
+    private int measuredBlocks;
+    private int inconsistentBlockCount;
+    private double inconsistencyScore;
+    private double maxDeviation;
+    private List<NoiseBlock> inconsistentBlocks;
+    private Map<String, Object> decodeOptions;
+    
+    // Explicitly adding getters and setters
+    public String getFilter() {
+        return filter;
+    }
+    
+    public void setFilter(String filter) {
+        this.filter = filter;
+    }
+    
+    public int getImageWidth() {
+        return imageWidth;
+    }
+    
+    public void setImageWidth(int imageWidth) {
+        this.imageWidth = imageWidth;
+    }
+    
+    public int getImageHeight() {
+        return imageHeight;
+    }
+    
+    public void setImageHeight(int imageHeight) {
+        this.imageHeight = imageHeight;
+    }
+    
+    public int getBlockSize() {
+        return blockSize;
+    }
+    
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+    
+    public int getBlocksWide() {
+        return blocksWide;
+    }
+    
+    public void setBlocksWide(int blocksWide) {
+        this.blocksWide = blocksWide;
+    }
+    
+    public int getBlocksHigh() {
+        return blocksHigh;
+    }
+    
+    public void setBlocksHigh(int blocksHigh) {
+        this.blocksHigh = blocksHigh;
+    }
+    
+    public float[][] getBlockNoiseLevels() {
+        return blockNoiseLevels;
+    }
+    
+    public void setBlockNoiseLevels(float[][] blockNoiseLevels) {
+        this.blockNoiseLevels = blockNoiseLevels;
+    }
+    
+    public double getMedianNoiseLevel() {
+        return medianNoiseLevel;
+    }
+    
+    public void setMedianNoiseLevel(double medianNoiseLevel) {
+        this.medianNoiseLevel = medianNoiseLevel;
+    }
+    
+    public double getMeanNoiseLevel() {
+        return meanNoiseLevel;
+    }
+    
+    public void setMeanNoiseLevel(double meanNoiseLevel) {
+        this.meanNoiseLevel = meanNoiseLevel;
+    }
+    
+    public double getNoiseLevelSpread() {
+        return noiseLevelSpread;
+    }
+    
+    public void setNoiseLevelSpread(double noiseLevelSpread) {
+        this.noiseLevelSpread = noiseLevelSpread;
+    }
+    
+    public int getMeasuredBlocks() {
+        return measuredBlocks;
+    }
+    
+    public void setMeasuredBlocks(int measuredBlocks) {
+        this.measuredBlocks = measuredBlocks;
+    }
+    
+    public int getInconsistentBlockCount() {
+        return inconsistentBlockCount;
+    }
+    
+    public void setInconsistentBlockCount(int inconsistentBlockCount) {
+        this.inconsistentBlockCount = inconsistentBlockCount;
+    }
+    
+    public double getInconsistencyScore() {
+        return inconsistencyScore;
+    }
+    
+    public void setInconsistencyScore(double inconsistencyScore) {
+        this.inconsistencyScore = inconsistencyScore;
+    }
+    
+    public double getMaxDeviation() {
+        return maxDeviation;
+    }
+    
+    public void setMaxDeviation(double maxDeviation) {
+        this.maxDeviation = maxDeviation;
+    }
+    
+    public List<NoiseBlock> getInconsistentBlocks() {
+        return inconsistentBlocks;
+    }
+    
+    public void setInconsistentBlocks(List<NoiseBlock> inconsistentBlocks) {
+        this.inconsistentBlocks = inconsistentBlocks;
+    }
+    
+    public Map<String, Object> getDecodeOptions() {
+        return decodeOptions;
+    }
+    
+    public void setDecodeOptions(Map<String, Object> decodeOptions) {
+        this.decodeOptions = decodeOptions;
+    }
+}
\ No newline at end of file
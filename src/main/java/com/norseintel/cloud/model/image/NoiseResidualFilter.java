@@ -0,0 +1,19 @@
+package com.norseintel.cloud.model.image;
+
+import com.norseintel.cloud.exception.ForensicException;
+import org.springframework.http.HttpStatus;
+
+public enum NoiseResidualFilter {
+    LAPLACIAN,
+    MEDIAN,
+    WAVELET;
+    
+    public static NoiseResidualFilter fromString(String value) {
+        for (NoiseResidualFilter filter : values()) {
+            if (filter.name().equalsIgnoreCase(value)) {
+                return filter;
+            }
+        }
+        throw new ForensicException("Unsupported noise residual filter: " + value, HttpStatus.BAD_REQUEST);
+    }
+}
\ No newline at end of file
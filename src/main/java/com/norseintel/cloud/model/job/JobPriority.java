@@ -0,0 +1,20 @@
+package com.norseintel.cloud.model.job;
+
+import com.norseintel.cloud.exception.ForensicException;
+import org.springframework.http.HttpStatus;
+
+// Declared from most to least urgent; queued jobs start in this order
+public enum JobPriority {
+    HIGH,
+    NORMAL,
+    LOW;
+    
+    public static JobPriority fromString(String value) {
+        for (JobPriority priority : values()) {
+            if (priority.name().equalsIgnoreCase(value)) {
+                return priority;
+            }
+        }
+        throw new ForensicException("Unsupported job priority: " + value, HttpStatus.BAD_REQUEST);
+    }
+}
\ No newline at end of file
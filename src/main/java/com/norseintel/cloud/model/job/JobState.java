@@ -0,0 +1,13 @@
+package com.norseintel.cloud.model.job;
+
+public enum JobState {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    CANCELLED;
+    
+    public boolean isFinished() {
+        return this == COMPLETED || this == FAILED || this == CANCELLED;
+    }
+}
\ No newline at end of file
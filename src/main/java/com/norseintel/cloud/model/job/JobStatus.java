@@ -0,0 +1,145 @@
+package com.norseintel.cloud.model.job;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class JobStatus {
+    private String id;
+    private String filename;
+    private List<String> analyses;
+    private JobPriority priority;
+    private JobState state;
+    private double progress;
+    private int completedAnalyses;
+    private int failedAnalyses;
+    private int totalAnalyses;
+    private String currentAnalysis;
+    private LocalDateTime submittedAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String error;
+    
+    // Explicitly adding getters and setters
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public String getFilename() {
+        return filename;
+    }
+    
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+    
+    public List<String> getAnalyses() {
+        return analyses;
+    }
+    
+    public void setAnalyses(List<String> analyses) {
+        this.analyses = analyses;
+    }
+    
+    public JobPriority getPriority() {
+        return priority;
+    }
+    
+    public void setPriority(JobPriority priority) {
+        this.priority = priority;
+    }
+    
+    public JobState getState() {
+        return state;
+    }
+    
+    public void setState(JobState state) {
+        this.state = state;
+    }
+    
+    public double getProgress() {
+        return progress;
+    }
+    
+    public void setProgress(double progress) {
+        this.progress = progress;
+    }
+    
+    public int getCompletedAnalyses() {
+        return completedAnalyses;
+    }
+    
+    public void setCompletedAnalyses(int completedAnalyses) {
+        this.completedAnalyses = completedAnalyses;
+    }
+    
+    public int getFailedAnalyses() {
+        return failedAnalyses;
+    }
+    
+    public void setFailedAnalyses(int failedAnalyses) {
+        this.failedAnalyses = failedAnalyses;
+    }
+    
+    public int getTotalAnalyses() {
+        return totalAnalyses;
+    }
+    
+    public void setTotalAnalyses(int totalAnalyses) {
+        this.totalAnalyses = totalAnalyses;
+    }
+    
+    public String getCurrentAnalysis() {
+        return currentAnalysis;
+    }
+    
+    public void setCurrentAnalysis(String currentAnalysis) {
+        this.currentAnalysis = currentAnalysis;
+    }
+    
+    public LocalDateTime getSubmittedAt() {
+        return submittedAt;
+    }
+    
+    public void setSubmittedAt(LocalDateTime submittedAt) {
+        this.submittedAt = submittedAt;
+    }
+    
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+    
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+    
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+    
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+    
+    public String getError() {
+        return error;
+    }
+    
+    public void setError(String error) {
+        this.error = error;
+    }
+}
\ No newline at end of file
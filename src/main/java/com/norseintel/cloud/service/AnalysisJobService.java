@@ -0,0 +1,346 @@
+package com.norseintel.cloud.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.norseintel.cloud.config.AnalysisExecutorConfig;
+import com.norseintel.cloud.exception.ForensicException;
+import com.norseintel.cloud.metrics.AnalysisContext;
+import com.norseintel.cloud.metrics.ForensicMetrics;
+import com.norseintel.cloud.model.image.ElaOutputMode;
+import com.norseintel.cloud.model.image.ImageDecodeOptions;
+import com.norseintel.cloud.model.image.ImageOutputFormat;
+import com.norseintel.cloud.model.image.NoiseResidualFilter;
+import com.norseintel.cloud.model.job.JobPriority;
+import com.norseintel.cloud.model.job.JobStatus;
+import com.norseintel.cloud.service.job.AnalysisJob;
+import com.norseintel.cloud.service.job.StoredUpload;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs analyses in the background so that long jobs do not hold a request thread and connection for their
+ * whole duration. A submission stores the upload and queues the job; a fixed pool of job workers picks the
+ * most urgent queued job whenever one of them is free, hands its analyses one after another to the shared CPU
+ * pool and keeps the per-analysis reports. Finished jobs are retained for polling in an expiring store that is bounded by the
+ * serialized size of their reports, so a few jobs with image results cannot hold as much heap as hundreds of
+ * small ones.
+ *
+ * <p>Each submission hands the pool one anonymous "run the next job" task, and the job itself is taken from
+ * a priority queue only once a worker starts, so the pool's own FIFO queue never decides the order.
+ */
+@Service
+@Slf4j
+public class AnalysisJobService {
+    
+    // Charged for every retained job on top of its reports, for the status and bookkeeping
+    private static final int RETAINED_JOB_OVERHEAD_BYTES = 1024;
+    // Analyses that hand their own work to the CPU pool, and would deadlock it if run there themselves
+    private static final Set<String> SELF_SCHEDULED = Set.of("image-forensics/triage");
+    
+    @FunctionalInterface
+    private interface JobAnalysis {
+        Object run(StoredUpload upload, Map<String, String> parameters) throws Exception;
+    }
+    
+    private final Map<String, JobAnalysis> catalog = new LinkedHashMap<>();
+    private final PriorityBlockingQueue<AnalysisJob> queued = new PriorityBlockingQueue<>();
+    private final Map<String, AnalysisJob> active = new ConcurrentHashMap<>();
+    private final Cache<String, AnalysisJob> finished;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final FileStorageService fileStorageService;
+    private final ForensicMetrics forensicMetrics;
+    private final CpuBoundExecutor cpuBoundExecutor;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService executor;
+    // One permit per job that may wait in the queue, taken on submission and returned when the job leaves it
+    private final Semaphore queueSlots;
+    
+    public AnalysisJobService(FileStorageService fileStorageService, FileForensicsService fileForensicsService,
+                              ImageForensicsService imageForensicsService, ImageTriageService imageTriageService,
+                              CryptographyService cryptographyService, ForensicMetrics forensicMetrics, MeterRegistry meterRegistry,
+                              ObjectMapper objectMapper, CpuBoundExecutor cpuBoundExecutor,
+                              @Qualifier(AnalysisExecutorConfig.ANALYSIS_JOB_EXECUTOR) ExecutorService executor,
+                              @Value("${norseintel.jobs.max-queued:100}") int maxQueued,
+                              @Value("${norseintel.jobs.retention.max-bytes:268435456}") long maxRetainedBytes,
+                              @Value("${norseintel.jobs.retention.ttl:1h}") Duration retention) {
+        this.fileStorageService = fileStorageService;
+        this.forensicMetrics = forensicMetrics;
+        this.cpuBoundExecutor = cpuBoundExecutor;
+        this.objectMapper = objectMapper;
+        this.executor = executor;
+        this.queueSlots = new Semaphore(maxQueued);
+        this.finished = Caffeine.newBuilder()
+                .maximumWeight(maxRetainedBytes)
+                .weigher((String id, AnalysisJob job) -> (int) Math.min(Integer.MAX_VALUE, RETAINED_JOB_OVERHEAD_BYTES + job.getResultBytes()))
+                .expireAfterWrite(retention)
+                .recordStats()
+                .build();
+        
+        catalog.put("file-forensics/file-signature", (upload, parameters) -> fileForensicsService.analyzeFileSignature(upload));
+        catalog.put("file-forensics/document-analysis", (upload, parameters) -> fileForensicsService.extractDocumentMetadata(upload));
+        catalog.put("file-forensics/binary-analysis", (upload, parameters) -> fileForensicsService.extractStringsFromBinary(upload,
+                intParameter(parameters, "minLength", 4)));
+        catalog.put("file-forensics/archive-analysis", (upload, parameters) -> fileForensicsService.analyzeArchiveFile(upload));
+        catalog.put("file-forensics/file-hash", (upload, parameters) -> fileForensicsService.calculateFileHashes(upload));
+        catalog.put("file-forensics/file-structure", (upload, parameters) -> fileForensicsService.analyzeFileStructure(upload));
+        catalog.put("file-forensics/binary-patterns", (upload, parameters) -> fileForensicsService.searchBinaryPatterns(upload,
+                requiredParameter(parameters, "pattern"), Boolean.parseBoolean(parameters.getOrDefault("isHex", "false"))));
+        catalog.put("image-forensics/metadata", (upload, parameters) -> imageForensicsService.extractMetadata(upload.getFile()));
+        catalog.put("image-forensics/jpeg-structure", (upload, parameters) -> imageForensicsService.analyzeJpegStructure(upload.getFile()));
+        catalog.put("image-forensics/triage", (upload, parameters) -> imageTriageService.triage(upload, null,
+                parameters.containsKey("timeoutSeconds") ? intParameter(parameters, "timeoutSeconds", 0) : null, decodeOptions(parameters)));
+        catalog.put("image-forensics/error-level-analysis", (upload, parameters) -> imageForensicsService.performErrorLevelAnalysis(
+                upload.getFile(), floatParameter(parameters, "quality", 0.95f),
+                ElaOutputMode.fromString(parameters.getOrDefault("output", "blocks")), intParameter(parameters, "blockSize", 16),
+                ImageOutputFormat.fromString(parameters.getOrDefault("format", "png"))));
+        catalog.put("image-forensics/noise-map", (upload, parameters) -> imageForensicsService.analyzeNoiseResidual(upload.getFile(),
+                NoiseResidualFilter.fromString(parameters.getOrDefault("filter", "laplacian")), intParameter(parameters, "blockSize", 32),
+                decodeOptions(parameters)));
+        catalog.put("image-forensics/thumbnail-analysis", (upload, parameters) -> imageForensicsService.analyzeThumbnail(upload.getFile()));
+        catalog.put("image-forensics/pattern-detection", (upload, parameters) -> imageForensicsService.detectPatterns(upload.getFile(),
+                decodeOptions(parameters)));
+        catalog.put("image-forensics/compression-analysis", (upload, parameters) -> imageForensicsService.analyzeCompressionHistory(
+                upload.getFile(), intParameter(parameters, "heatmapCellSize", 64)));
+        catalog.put("image-forensics/perceptual-hash", (upload, parameters) -> imageForensicsService.calculatePerceptualHashes(upload.getFile()));
+        catalog.put("cryptography/multiple-hashes", (upload, parameters) -> cryptographyService.calculateMultipleHashes(upload.getFile()));
+        
+        Gauge.builder("norseintel.jobs.queued", queued, PriorityBlockingQueue::size)
+                .description("Analysis jobs waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("norseintel.jobs.active", active, Map::size)
+                .description("Analysis jobs queued or running")
+                .register(meterRegistry);
+        Gauge.builder("norseintel.jobs.running", running, AtomicInteger::get)
+                .description("Analysis jobs a worker is running")
+                .register(meterRegistry);
+        CaffeineCacheMetrics.monitor(meterRegistry, finished, "retainedJobs");
+    }
+    
+    public Set<String> getAnalyses() {
+        return catalog.keySet();
+    }
+    
+    /**
+     * Stores the upload and queues its analyses. Parameters are passed to every analysis under the names the
+     * synchronous endpoints use; each analysis reads only those it knows.
+     */
+    public JobStatus submit(MultipartFile file, List<String> analyses, JobPriority priority, Map<String, String> parameters) {
+        if (analyses == null || analyses.isEmpty()) {
+            throw new ForensicException("At least one analysis is required", HttpStatus.BAD_REQUEST);
+        }
+        for (String analysis : analyses) {
+            if (!catalog.containsKey(analysis)) {
+                throw new ForensicException("Unknown analysis: " + analysis + " (supported: " + String.join(", ", catalog.keySet()) + ")",
+                        HttpStatus.BAD_REQUEST);
+            }
+        }
+        if (!queueSlots.tryAcquire()) {
+            throw new ForensicException("Too many analysis jobs are queued, please retry later", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        
+        StoredUpload upload;
+        try {
+            upload = new StoredUpload(fileStorageService.storeFile(file), file.getOriginalFilename(), file.getContentType());
+        } catch (RuntimeException e) {
+            queueSlots.release();
+            throw e;
+        }
+        AnalysisJob job = new AnalysisJob(UUID.randomUUID().toString(), analyses, parameters, priority, sequence.incrementAndGet(), upload,
+                AnalysisContext.current());
+        active.put(job.getId(), job);
+        queued.add(job);
+        try {
+            executor.execute(this::runNextJob);
+        } catch (RejectedExecutionException e) {
+            if (queued.remove(job)) {
+                queueSlots.release();
+            }
+            active.remove(job.getId());
+            fileStorageService.deleteFile(upload.getFile());
+            throw new ForensicException("Analysis jobs are not being accepted", e, HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        log.info("Queued job {} with analyses {} at {} priority", job.getId(), analyses, priority);
+        return job.toStatus();
+    }
+    
+    public JobStatus getStatus(String id) {
+        return findJob(id).toStatus();
+    }
+    
+    public Map<String, Object> getResult(String id) {
+        AnalysisJob job = findJob(id);
+        if (!job.getState().isFinished()) {
+            throw new ForensicException("Job " + id + " has not finished yet (" + job.getState() + ")", HttpStatus.CONFLICT);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("job", job.toStatus());
+        result.put("analyses", job.getReports());
+        return result;
+    }
+    
+    /** Removes a queued job, or lets a running one finish its current analysis and skips the rest. */
+    public JobStatus cancel(String id) {
+        AnalysisJob job = findJob(id);
+        if (queued.remove(job)) {
+            queueSlots.release();
+            job.cancelQueued();
+            fileStorageService.deleteFile(job.getUpload().getFile());
+            retire(job);
+        } else {
+            job.requestCancel();
+        }
+        return job.toStatus();
+    }
+    
+    @PreDestroy
+    public void discardQueuedJobs() {
+        AnalysisJob job;
+        while ((job = queued.poll()) != null) {
+            fileStorageService.deleteFile(job.getUpload().getFile());
+        }
+    }
+    
+    private void runNextJob() {
+        // Null when the job this task was submitted for has been cancelled in the meantime
+        AnalysisJob job = queued.poll();
+        if (job == null) {
+            return;
+        }
+        queueSlots.release();
+        
+        AnalysisContext.Scope scope = job.getContext().attach();
+        try (scope) {
+            runJob(job);
+        }
+    }
+    
+    private void runJob(AnalysisJob job) {
+        job.start();
+        running.incrementAndGet();
+        try {
+            for (String analysis : job.getAnalyses()) {
+                if (!job.beginAnalysis(analysis)) {
+                    break;
+                }
+                runAnalysis(job, analysis);
+            }
+        } finally {
+            running.decrementAndGet();
+            job.finish();
+            fileStorageService.deleteFile(job.getUpload().getFile());
+            retire(job);
+            log.info("Job {} finished as {}", job.getId(), job.getState());
+        }
+    }
+    
+    private void runAnalysis(AnalysisJob job, String analysis) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        long start = System.nanoTime();
+        boolean failed = false;
+        AnalysisContext context = job.getContext().child(job.getContext().getEndpoint() + "/" + analysis);
+        JobAnalysis task = catalog.get(analysis);
+        AnalysisContext.Scope scope = context.attach();
+        try (scope) {
+            Object result = SELF_SCHEDULED.contains(analysis)
+                    ? forensicMetrics.analysis(() -> task.run(job.getUpload(), job.getParameters()))
+                    : cpuBoundExecutor.callWhenQueued(() -> task.run(job.getUpload(), job.getParameters()));
+            report.put("status", "completed");
+            report.put("durationMs", (System.nanoTime() - start) / 1_000_000);
+            report.put("result", result);
+        } catch (Exception e) {
+            failed = true;
+            report.put("status", "failed");
+            report.put("durationMs", (System.nanoTime() - start) / 1_000_000);
+            report.put("error", e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+            log.warn("Analysis {} of job {} failed", analysis, job.getId(), e);
+        }
+        job.completeAnalysis(analysis, report, failed);
+    }
+    
+    // Finished jobs are visible in the retained store before they leave the active map
+    private void retire(AnalysisJob job) {
+        job.setResultBytes(serializedSize(job.getReports()));
+        finished.put(job.getId(), job);
+        active.remove(job.getId());
+    }
+    
+    /** The size of the reports as the result endpoint will render them, which is what retaining them costs. */
+    private long serializedSize(Map<String, Object> reports) {
+        try (CountingOutputStream counting = new CountingOutputStream(NullOutputStream.INSTANCE)) {
+            objectMapper.writeValue(counting, reports);
+            return counting.getByteCount();
+        } catch (IOException e) {
+            log.warn("Could not measure job reports, retaining them at minimum weight", e);
+            return 0;
+        }
+    }
+    
+    private AnalysisJob findJob(String id) {
+        AnalysisJob job = active.get(id);
+        if (job == null) {
+            job = finished.getIfPresent(id);
+        }
+        if (job == null) {
+            throw new ForensicException("Unknown or expired job: " + id, HttpStatus.NOT_FOUND);
+        }
+        return job;
+    }
+    
+    private static ImageDecodeOptions decodeOptions(Map<String, String> parameters) {
+        return ImageDecodeOptions.fromRequest(parameters.get("region"), intParameter(parameters, "subsample", 1));
+    }
+    
+    private static String requiredParameter(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new ForensicException("Missing parameter: " + name, HttpStatus.BAD_REQUEST);
+        }
+        return value;
+    }
+    
+    private static int intParameter(Map<String, String> parameters, String name, int defaultValue) {
+        String value = parameters.get(name);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ForensicException("Parameter " + name + " must be an integer: " + value, HttpStatus.BAD_REQUEST);
+        }
+    }
+    
+    private static float floatParameter(Map<String, String> parameters, String name, float defaultValue) {
+        String value = parameters.get(name);
+        try {
+            return value == null ? defaultValue : Float.parseFloat(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ForensicException("Parameter " + name + " must be a number: " + value, HttpStatus.BAD_REQUEST);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,157 @@
+package com.norseintel.cloud.service;
+
+import com.norseintel.cloud.config.AnalysisExecutorConfig;
+import com.norseintel.cloud.exception.ForensicException;
+import com.norseintel.cloud.metrics.AnalysisContext;
+import com.norseintel.cloud.metrics.ForensicMetrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves CPU-heavy service calls off the request threads. Requests are served on virtual threads, so any number
+ * of them can wait on uploads, temporary files and responses, while the analyses themselves run on a pool with
+ * one platform thread per core, and at most queue-capacity tasks wait for it. A waiting virtual thread only parks;
+ * once the queue is full, further work is rejected with 503 instead of piling up.
+ *
+ * <p>This is the one pool for analysis CPU work: the triage fan-out and background jobs hand their analyses to
+ * it as well, and the parallel kernels of the analyses split across its threads, so the number of threads
+ * computing at once stays at the pool size however the work arrived.
+ *
+ * <p>Tasks run through {@link #call} are timed as an analysis under the {@link AnalysisContext} of the calling
+ * thread. Tasks must not call back into this executor, as they would wait on the pool they are occupying.
+ */
+@Component
+public class CpuBoundExecutor {
+    
+    private final ExecutorService executor;
+    private final ForensicMetrics forensicMetrics;
+    // Tasks queued or running, so that the queue stays bounded although the fork/join pool itself is not
+    private final Semaphore slots;
+    
+    public CpuBoundExecutor(@Qualifier(AnalysisExecutorConfig.CPU_EXECUTOR) ForkJoinPool pool, ForensicMetrics forensicMetrics,
+                            MeterRegistry meterRegistry, @Value("${norseintel.cpu.executor.queue-capacity:200}") int queueCapacity) {
+        this.forensicMetrics = forensicMetrics;
+        this.executor = ExecutorServiceMetrics.monitor(meterRegistry, pool, "cpu", "norseintel");
+        this.slots = new Semaphore(pool.getParallelism() + Math.max(0, queueCapacity));
+    }
+    
+    /** Runs the task on the CPU pool and waits for its result; exceptions thrown by the task are rethrown as they are. */
+    public <T> T call(Callable<T> task) {
+        return await(submit(analysis(task)));
+    }
+    
+    /**
+     * Like {@link #call}, but waits for room in the queue instead of failing with 503, for background work that
+     * has no client to retry it.
+     */
+    public <T> T callWhenQueued(Callable<T> task) {
+        Callable<T> analysis = analysis(task);
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ForensicException("Interrupted while waiting for the analysis queue", e, HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        return await(execute(analysis));
+    }
+    
+    /**
+     * Hands the task to the CPU pool as it is and returns without waiting, for callers that fan out several tasks
+     * and decide themselves how long to wait for each; 503 when the queue is full.
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        if (!slots.tryAcquire()) {
+            throw new ForensicException("Server is busy with other analyses, please retry later", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        return execute(task);
+    }
+    
+    /** Runs the task in a slot already taken. */
+    private <T> Future<T> execute(Callable<T> task) {
+        SlotTask<T> future = new SlotTask<>(task);
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            throw new ForensicException("Analyses are no longer being accepted", e, HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        return future;
+    }
+    
+    private <T> Callable<T> analysis(Callable<T> task) {
+        AnalysisContext context = AnalysisContext.current();
+        return () -> {
+            AnalysisContext.Scope scope = context.attach();
+            try (scope) {
+                return forensicMetrics.analysis(task::call);
+            }
+        };
+    }
+    
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // The analysis itself is left to finish; interrupting it could leave a half-loaded class behind
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new ForensicException("Interrupted while waiting for the analysis", e, HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new ForensicException("Analysis failed: " + cause.getMessage(), cause, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+    
+    /**
+     * Gives its slot back once it no longer occupies the pool: when it has run, or when it is cancelled before it
+     * started. A task cancelled while running keeps the slot until it actually returns.
+     */
+    private final class SlotTask<T> extends FutureTask<T> {
+        
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        
+        private SlotTask(Callable<T> task) {
+            super(task);
+        }
+        
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                super.run();
+            } finally {
+                slots.release();
+            }
+        }
+        
+        @Override
+        protected void done() {
+            if (claimed.compareAndSet(false, true)) {
+                slots.release();
+            }
+        }
+    }
+}
@@ -1,6 +1,15 @@
 package com.norseintel.cloud.service;
 
 import com.norseintel.cloud.exception.ForensicException;
+import com.norseintel.cloud.metrics.ForensicMetrics;
+import com.norseintel.cloud.metrics.Stage;
+import com.norseintel.cloud.metrics.jfr.HashEvent;
+import com.norseintel.cloud.model.crypto.PasswordVerification;
+import com.norseintel.cloud.model.crypto.PasswordVerificationResult;
+import com.norseintel.cloud.service.crypto.KeyPairPool;
+import com.norseintel.cloud.service.crypto.KeyPairSpec;
+import com.norseintel.cloud.service.crypto.RandomnessService;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.springframework.http.HttpStatus;
@@ -18,13 +27,12 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.security.*;
-import java.security.spec.ECGenParameterSpec;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
 import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
 
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class CryptographyService {
     
@@ -42,13 +50,34 @@ public class CryptographyService {
         "SHA3-512", "SHA3-512"
     );
     
+    // Stored hashes come from callers, so a huge iteration count must not tie up a key derivation worker
+    private static final int MAX_PBKDF2_ITERATIONS = 1_000_000;
+    // The derived key length and salt size come from the stored hash too, so both are pinned
+    private static final int PASSWORD_HASH_BYTES = 64;
+    private static final int MAX_SALT_BYTES = 64;
+    
+    private final ForensicMetrics forensicMetrics;
+    private final RandomnessService randomnessService;
+    private final KeyPairPool keyPairPool;
+    
     public String calculateHash(File file, String algorithm) {
+        return forensicMetrics.time(Stage.HASH, () -> hashFile(file, algorithm));
+    }
+    
+    public String calculateHash(byte[] data, String algorithm) {
+        return forensicMetrics.time(Stage.HASH, () -> hashBytes(data, algorithm));
+    }
+    
+    private String hashFile(File file, String algorithm) {
         try {
             String hashAlgorithm = validateHashAlgorithm(algorithm);
             
+            HashEvent event = new HashEvent(hashAlgorithm);
+            event.begin();
             MessageDigest digest = MessageDigest.getInstance(hashAlgorithm);
             byte[] fileBytes = Files.readAllBytes(file.toPath());
             byte[] hashBytes = digest.digest(fileBytes);
+            event.finish(fileBytes.length);
             
             return bytesToHex(hashBytes);
         } catch (IOException | NoSuchAlgorithmException e) {
@@ -56,12 +85,15 @@ public class CryptographyService {
         }
     }
     
-    public String calculateHash(byte[] data, String algorithm) {
+    private String hashBytes(byte[] data, String algorithm) {
         try {
             String hashAlgorithm = validateHashAlgorithm(algorithm);
             
+            HashEvent event = new HashEvent(hashAlgorithm);
+            event.begin();
             MessageDigest digest = MessageDigest.getInstance(hashAlgorithm);
             byte[] hashBytes = digest.digest(data);
+            event.finish(data.length);
             
             return bytesToHex(hashBytes);
         } catch (NoSuchAlgorithmException e) {
@@ -81,48 +113,36 @@ public class CryptographyService {
     }
     
     public String generateRandomKey(int bits) {
-        byte[] bytes = new byte[bits / 8];
-        new SecureRandom().nextBytes(bytes);
-        return bytesToHex(bytes);
+        return bytesToHex(randomnessService.nextBytes(bits / 8));
     }
     
-    public Map<String, String> generateRSAKeyPair(int keySize) {
+    /** Generates a pair on the calling thread; see {@link #takePooledKeyPair} for the cheap path. */
+    public Map<String, String> generateKeyPair(KeyPairSpec spec) {
         try {
-            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
-            keyPairGenerator.initialize(keySize);
-            KeyPair keyPair = keyPairGenerator.generateKeyPair();
-            
-            Map<String, String> result = new HashMap<>();
-            result.put("publicKey", Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
-            result.put("privateKey", Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded()));
-            
-            return result;
-        } catch (NoSuchAlgorithmException e) {
-            throw new ForensicException("Failed to generate RSA key pair: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
+            return encodeKeyPair(keyPairPool.generate(spec));
+        } catch (GeneralSecurityException e) {
+            throw new ForensicException("Failed to generate " + spec.algorithm() + " key pair: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
     
-    public Map<String, String> generateECKeyPair(String curve) {
-        try {
-            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
-            keyPairGenerator.initialize(new ECGenParameterSpec(curve));
-            KeyPair keyPair = keyPairGenerator.generateKeyPair();
-            
-            Map<String, String> result = new HashMap<>();
-            result.put("publicKey", Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
-            result.put("privateKey", Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded()));
-            
-            return result;
-        } catch (NoSuchAlgorithmException | InvalidAlgorithmParameterException e) {
-            throw new ForensicException("Failed to generate EC key pair: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+    /** A pre-generated pair, if the pool of the spec has one ready. */
+    public Optional<Map<String, String>> takePooledKeyPair(KeyPairSpec spec) {
+        return keyPairPool.poll(spec).map(this::encodeKeyPair);
+    }
+    
+    private Map<String, String> encodeKeyPair(KeyPair keyPair) {
+        Map<String, String> result = new HashMap<>();
+        result.put("publicKey", Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
+        result.put("privateKey", Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded()));
+        
+        return result;
     }
     
     public Map<String, String> encryptWithPassword(String plainText, String password) {
         try {
             byte[] salt = new byte[16];
-            SecureRandom random = new SecureRandom();
-            random.nextBytes(salt);
+            byte[] iv = new byte[16];
+            randomnessService.fill(salt, iv);
             
             SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
             KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, 65536, 256);
@@ -130,8 +150,6 @@ public class CryptographyService {
             SecretKey secretKey = new SecretKeySpec(tmp.getEncoded(), "AES");
             
             Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            byte[] iv = new byte[16];
-            random.nextBytes(iv);
             IvParameterSpec ivspec = new IvParameterSpec(iv);
             
             cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivspec);
@@ -172,7 +190,7 @@ public class CryptographyService {
     public Map<String, String> generateSymmetricKey(String algorithm, int keySize) {
         try {
             KeyGenerator keyGenerator = KeyGenerator.getInstance(algorithm);
-            keyGenerator.init(keySize);
+            keyGenerator.init(keySize, randomnessService.secureRandom());
             SecretKey secretKey = keyGenerator.generateKey();
             
             Map<String, String> result = new HashMap<>();
@@ -188,14 +206,7 @@ public class CryptographyService {
     }
     
     public String generateOTP(int length) {
-        ThreadLocalRandom random = ThreadLocalRandom.current();
-        StringBuilder otp = new StringBuilder();
-        
-        for (int i = 0; i < length; i++) {
-            otp.append(random.nextInt(10));  // 0-9
-        }
-        
-        return otp.toString();
+        return randomnessService.digits(length);
     }
     
     public boolean validateOTP(String expected, String actual) {
@@ -204,12 +215,10 @@ public class CryptographyService {
     
     public String generatePasswordHash(String password) {
         try {
-            SecureRandom random = new SecureRandom();
-            byte[] salt = new byte[16];
-            random.nextBytes(salt);
+            byte[] salt = randomnessService.nextBytes(16);
             
             SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA512");
-            PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, 65536, 512);
+            PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, 65536, PASSWORD_HASH_BYTES * 8);
             byte[] hash = factory.generateSecret(spec).getEncoded();
             
             // Format: iterations:salt:hash
@@ -222,7 +231,19 @@ public class CryptographyService {
     public boolean verifyPasswordHash(String password, String storedHash) {
         try {
             String[] parts = storedHash.split(":");
+            if (parts.length != 3) {
+                throw new ForensicException("Invalid stored hash, expected iterations:salt:hash", HttpStatus.BAD_REQUEST);
+            }
             int iterations = Integer.parseInt(parts[0]);
+            if (iterations < 1 || iterations > MAX_PBKDF2_ITERATIONS) {
+                throw new ForensicException("Stored hash iterations must be between 1 and " + MAX_PBKDF2_ITERATIONS, HttpStatus.BAD_REQUEST);
+            }
+            if (parts[1].isEmpty() || parts[1].length() > MAX_SALT_BYTES * 2 || parts[1].length() % 2 != 0) {
+                throw new ForensicException("Stored hash salt must be 1 to " + MAX_SALT_BYTES + " bytes of hex", HttpStatus.BAD_REQUEST);
+            }
+            if (parts[2].length() != PASSWORD_HASH_BYTES * 2) {
+                throw new ForensicException("Stored hash must be " + PASSWORD_HASH_BYTES + " bytes of hex", HttpStatus.BAD_REQUEST);
+            }
             byte[] salt = hexToBytes(parts[1]);
             byte[] hash = hexToBytes(parts[2]);
             
@@ -236,11 +257,29 @@ public class CryptographyService {
             }
             
             return diff == 0;
+        } catch (IllegalArgumentException e) {
+            // Iterations or hex that do not parse
+            throw new ForensicException("Invalid stored hash, expected iterations:salt:hash", e, HttpStatus.BAD_REQUEST);
         } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
             throw new ForensicException("Failed to verify password: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
     
+    /** One entry of a batch: a malformed pair is reported in its result instead of failing the whole batch. */
+    public PasswordVerificationResult verifyPasswordHash(PasswordVerification verification) {
+        if (verification == null || verification.getPassword() == null || verification.getStoredHash() == null) {
+            return PasswordVerificationResult.failed("password and storedHash are required");
+        }
+        try {
+            return PasswordVerificationResult.of(verifyPasswordHash(verification.getPassword(), verification.getStoredHash()));
+        } catch (ForensicException e) {
+            if (e.getStatus() != HttpStatus.BAD_REQUEST) {
+                throw e;
+            }
+            return PasswordVerificationResult.failed(e.getMessage());
+        }
+    }
+    
     private String validateHashAlgorithm(String algorithm) {
         String normalized = algorithm.toUpperCase();
         if (HASH_ALGORITHMS.containsKey(normalized)) {
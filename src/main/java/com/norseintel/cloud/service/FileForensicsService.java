@@ -9,6 +9,7 @@ import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.tika.Tika;
+import org.apache.tika.exception.TikaException;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.parser.ParseContext;
@@ -18,8 +19,11 @@ import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
 
 import com.norseintel.cloud.exception.ForensicException;
+import com.norseintel.cloud.metrics.ForensicMetrics;
+import com.norseintel.cloud.metrics.jfr.ParseEvent;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
@@ -40,6 +44,7 @@ public class FileForensicsService {
     
     private final FileStorageService fileStorageService;
     private final CryptographyService cryptographyService;
+    private final ForensicMetrics forensicMetrics;
     private final Tika tika = new Tika();
     
     public Map<String, Object> analyzeFileSignature(MultipartFile file) {
@@ -55,6 +60,7 @@ public class FileForensicsService {
             result.put("extension", extension);
             
             String detectedMimeType = tika.detect(tempFile);
+            forensicMetrics.recordDetectedType(detectedMimeType);
             result.put("detectedMimeType", detectedMimeType);
             
             byte[] signature = readFileSignature(tempFile);
@@ -100,6 +106,7 @@ public class FileForensicsService {
             result.put("fileSize", file.getSize());
             
             String mimeType = tika.detect(tempFile);
+            forensicMetrics.recordDetectedType(mimeType);
             result.put("mimeType", mimeType);
             
             Parser parser = new AutoDetectParser();
@@ -108,7 +115,7 @@ public class FileForensicsService {
             metadata.set("resourceName", file.getOriginalFilename());
             
             try (InputStream stream = new FileInputStream(tempFile)) {
-                parser.parse(stream, handler, metadata, new ParseContext());
+                parse(parser, stream, tempFile, handler, metadata);
                 
                 Map<String, String> metadataMap = new HashMap<>();
                 for (String name : metadata.names()) {
@@ -167,7 +174,7 @@ public class FileForensicsService {
             metadata.set("resourceName", file.getOriginalFilename());
             
             try (InputStream stream = new FileInputStream(tempFile)) {
-                parser.parse(stream, handler, metadata, new ParseContext());
+                parse(parser, stream, tempFile, handler, metadata);
                 
                 Map<String, String> metadataMap = new HashMap<>();
                 for (String name : metadata.names()) {
@@ -220,8 +227,8 @@ public class FileForensicsService {
             try (InputStream stream1 = new FileInputStream(tempFile1);
                  InputStream stream2 = new FileInputStream(tempFile2)) {
                 
-                parser.parse(stream1, handler1, metadata1, new ParseContext());
-                parser.parse(stream2, handler2, metadata2, new ParseContext());
+                parse(parser, stream1, tempFile1, handler1, metadata1);
+                parse(parser, stream2, tempFile2, handler2, metadata2);
                 
                 List<Map<String, Object>> differences = new ArrayList<>();
                 
@@ -403,6 +410,7 @@ public class FileForensicsService {
         try {
             tempFile = fileStorageService.storeFile(file);
             String mimeType = tika.detect(tempFile);
+            forensicMetrics.recordDetectedType(mimeType);
             
             if (!isArchive(mimeType)) {
                 throw new ForensicException("The provided file is not a recognized archive format", HttpStatus.BAD_REQUEST);
@@ -464,6 +472,16 @@ public class FileForensicsService {
         }
     }
     
+    /** Parses the stored file with Tika, recorded as a flight recorder event. */
+    private void parse(Parser parser, InputStream stream, File file, ContentHandler handler, Metadata metadata)
+            throws IOException, SAXException, TikaException {
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        parser.parse(stream, handler, metadata, new ParseContext());
+        event.setContentType(metadata.get(Metadata.CONTENT_TYPE));
+        event.finish(file.length());
+    }
+    
     private byte[] readFileSignature(File file) throws IOException {
         byte[] signature = new byte[MAX_BYTES_FOR_SIGNATURE];
         try (FileInputStream fis = new FileInputStream(file)) {
@@ -475,7 +493,8 @@ public class FileForensicsService {
         }
     }
     
-    private String detectFileType(byte[] signature) {
+    // Package-private for the benchmarks
+    static String detectFileType(byte[] signature) {
         for (Map.Entry<String, byte[]> entry : FILE_SIGNATURES.entrySet()) {
             byte[] knownSignature = entry.getValue();
             boolean match = true;
@@ -8,6 +8,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.norseintel.cloud.exception.ForensicException;
+import com.norseintel.cloud.metrics.ForensicMetrics;
+import com.norseintel.cloud.metrics.Stage;
+import com.norseintel.cloud.metrics.jfr.StorageEvent;
 
 import java.io.File;
 import java.io.IOException;
@@ -21,10 +24,29 @@ public class FileStorageService {
     
     private static final Logger log = LoggerFactory.getLogger(FileStorageService.class);
 
+    private final ForensicMetrics forensicMetrics;
+
     @Value("${norseintel.storage.temp-dir}")
     private String tempDir;
 
+    public FileStorageService(ForensicMetrics forensicMetrics) {
+        this.forensicMetrics = forensicMetrics;
+    }
+
+    /** Writes the upload to the temporary directory and records its type and size on the analysis context. */
     public File storeFile(MultipartFile file) {
+        return forensicMetrics.time(Stage.STORE, () -> {
+            File stored = copyToTempDir(file);
+            forensicMetrics.describeUpload(stored);
+            return stored;
+        });
+    }
+    
+    public void deleteFile(File file) {
+        forensicMetrics.run(Stage.DELETE, () -> delete(file));
+    }
+    
+    private File copyToTempDir(MultipartFile file) {
         try {
             createDirectoryIfNotExists(tempDir);
             
@@ -33,7 +55,10 @@ public class FileStorageService {
             String uniqueFilename = UUID.randomUUID() + extension;
             Path targetPath = Paths.get(tempDir, uniqueFilename);
             
-            Files.copy(file.getInputStream(), targetPath);
+            StorageEvent event = new StorageEvent(Stage.STORE.tagValue());
+            event.begin();
+            long bytes = Files.copy(file.getInputStream(), targetPath);
+            event.finish(bytes);
             log.info("Stored file: {} as {}", originalFilename, targetPath);
             
             return targetPath.toFile();
@@ -42,10 +67,14 @@ public class FileStorageService {
         }
     }
     
-    public void deleteFile(File file) {
+    private void delete(File file) {
         try {
             if (file != null && file.exists()) {
+                StorageEvent event = new StorageEvent(Stage.DELETE.tagValue());
+                event.begin();
+                long bytes = file.length();
                 Files.delete(file.toPath());
+                event.finish(bytes);
                 log.info("Deleted file: {}", file.getAbsolutePath());
             }
         } catch (IOException e) {
@@ -5,17 +5,48 @@ import com.drew.imaging.ImageProcessingException;
 import com.drew.metadata.Metadata;
 import com.drew.metadata.MetadataException;
 import com.drew.metadata.exif.ExifSubIFDDirectory;
+import com.drew.metadata.exif.ExifThumbnailDirectory;
 import com.drew.metadata.exif.GpsDirectory;
 import com.drew.metadata.jpeg.JpegDirectory;
 import com.norseintel.cloud.exception.ForensicException;
+import com.norseintel.cloud.metrics.ForensicMetrics;
+import com.norseintel.cloud.metrics.Stage;
+import com.norseintel.cloud.metrics.jfr.ImageCodecEvent;
+import com.norseintel.cloud.model.image.ColorFilter;
+import com.norseintel.cloud.model.image.CopyMoveRegion;
+import com.norseintel.cloud.model.image.ElaBlock;
+import com.norseintel.cloud.model.image.ElaOutputMode;
 import com.norseintel.cloud.model.image.ElaResult;
 import com.norseintel.cloud.model.image.GpsCoordinates;
+import com.norseintel.cloud.model.image.ImageDecodeOptions;
 import com.norseintel.cloud.model.image.ImageMetadata;
+import com.norseintel.cloud.model.image.ImageOutputFormat;
+import com.norseintel.cloud.model.image.NoiseAnalysisResult;
+import com.norseintel.cloud.model.image.NoiseBlock;
+import com.norseintel.cloud.model.image.NoiseResidualFilter;
+import com.norseintel.cloud.service.image.BlockDctAnalyzer;
+import com.norseintel.cloud.service.image.ColorFilterRenderer;
+import com.norseintel.cloud.service.image.CopyMoveDetector;
+import com.norseintel.cloud.service.image.DecodeAdmissionController;
+import com.norseintel.cloud.service.image.DecodedImageCache;
+import com.norseintel.cloud.service.image.ExifThumbnailExtractor;
+import com.norseintel.cloud.service.image.ImageOutputEncoder;
+import com.norseintel.cloud.service.image.ImageStripDecoder;
+import com.norseintel.cloud.service.image.JpegCoefficientReader;
+import com.norseintel.cloud.service.image.JpegCompressionAnalyzer;
+import com.norseintel.cloud.service.image.JpegFormatException;
+import com.norseintel.cloud.service.image.JpegHeader;
+import com.norseintel.cloud.service.image.LumaPlane;
+import com.norseintel.cloud.service.image.NoiseResidualAnalyzer;
+import com.norseintel.cloud.service.image.PerceptualHash;
+import com.norseintel.cloud.service.image.PerceptualHashIndex;
+import com.norseintel.cloud.service.image.QuantizationTableDatabase;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FilenameUtils;
 import org.imgscalr.Scalr;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
@@ -30,10 +61,14 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.awt.image.ConvolveOp;
 import java.awt.image.Kernel;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
+import java.time.Instant;
 import java.util.*;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -44,28 +79,66 @@ import java.util.stream.StreamSupport;
 @Slf4j
 public class ImageForensicsService {
     
+    private static final int MIN_ELA_BLOCK_SIZE = 4;
+    private static final int MAX_ELA_BLOCK_SIZE = 256;
+    private static final double ELA_OUTLIER_SIGMA = 3.0;
+    private static final int MAX_ELA_OUTLIER_BLOCKS = 100;
+    // Robust z-score beyond which a block's noise level is reported as inconsistent with the image
+    private static final double NOISE_DEVIATION_THRESHOLD = 3.5;
+    private static final int MAX_NOISE_INCONSISTENT_BLOCKS = 100;
+    // Large enough for the APP segments in front of the scan of almost every JPEG
+    private static final int METADATA_BUFFER_SIZE = 64 * 1024;
+    private static final int THUMBNAIL_SIZE = 160;
+    private static final int PREVIEW_SIZE = 256;
+    private static final int MAX_PREVIEW_SUBSAMPLING = 64;
+    // pHash bits that may differ between a thumbnail and its own image after scaling and recompression
+    private static final int THUMBNAIL_MAX_DISTANCE = 12;
+    
     private final FileStorageService fileStorageService;
     private final CryptographyService cryptographyService;
+    private final QuantizationTableDatabase quantizationTableDatabase;
+    private final PerceptualHashIndex perceptualHashIndex;
+    private final DecodedImageCache decodedImageCache;
+    private final DecodeAdmissionController decodeAdmissionController;
+    private final ImageOutputEncoder imageOutputEncoder;
+    private final ForensicMetrics forensicMetrics;
+    
+    @Value("${norseintel.image.copy-move.max-blocks:4000000}")
+    private int copyMoveMaxBlocks;
     
+    /**
+     * Reads the metadata straight from the upload stream without storing it. JPEG parsing stops at the start
+     * of scan and PNG parsing skips the image data chunks, so only the header segments are ever read.
+     */
     public ImageMetadata extractMetadata(MultipartFile file) {
-        File tempFile = null;
+        try (InputStream in = new BufferedInputStream(file.getInputStream(), METADATA_BUFFER_SIZE)) {
+            Metadata metadata = ImageMetadataReader.readMetadata(in, file.getSize());
+            return toImageMetadata(metadata, file.getOriginalFilename(), file.getSize());
+        } catch (ImageProcessingException | IOException | MetadataException e) {
+            throw new ForensicException("Failed to extract metadata: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+    
+    public ImageMetadata extractMetadata(File file) {
         try {
-            tempFile = fileStorageService.storeFile(file);
-            return extractMetadataFromFile(tempFile);
+            return extractMetadataFromFile(file);
         } catch (ImageProcessingException | IOException | MetadataException e) {
             throw new ForensicException("Failed to extract metadata: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
-        } finally {
-            if (tempFile != null) {
-                fileStorageService.deleteFile(tempFile);
-            }
         }
     }
     
     public Map<String, Object> analyzeJpegStructure(MultipartFile file) {
-        File tempFile = null;
+        File tempFile = fileStorageService.storeFile(file);
         try {
-            tempFile = fileStorageService.storeFile(file);
-            Metadata metadata = ImageMetadataReader.readMetadata(tempFile);
+            return analyzeJpegStructure(tempFile);
+        } finally {
+            fileStorageService.deleteFile(tempFile);
+        }
+    }
+    
+    public Map<String, Object> analyzeJpegStructure(File file) {
+        try {
+            Metadata metadata = ImageMetadataReader.readMetadata(file);
             
             Map<String, Object> result = new HashMap<>();
             
@@ -88,71 +161,96 @@ public class ImageForensicsService {
                 }
             }
             
-            String fileHash = cryptographyService.calculateHash(tempFile, "SHA-256");
+            try (InputStream in = new FileInputStream(file)) {
+                JpegHeader header = JpegCoefficientReader.readHeader(in);
+                if (header.hasFrame()) {
+                    result.putAll(describeQuantizationFingerprint(header));
+                }
+            } catch (JpegFormatException e) {
+                log.debug("No quantization tables read from {}: {}", file.getName(), e.getMessage());
+            }
+            
+            String fileHash = cryptographyService.calculateHash(file, "SHA-256");
             result.put("fileHash", fileHash);
             
             return result;
         } catch (Exception e) {
             throw new ForensicException("Failed to analyze JPEG structure: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+    
+    public ElaResult performErrorLevelAnalysis(MultipartFile file, float quality, ElaOutputMode outputMode, int blockSize,
+                                               ImageOutputFormat imageFormat) {
+        if (blockSize < MIN_ELA_BLOCK_SIZE || blockSize > MAX_ELA_BLOCK_SIZE) {
+            throw new ForensicException("ELA block size must be between " + MIN_ELA_BLOCK_SIZE + " and " + MAX_ELA_BLOCK_SIZE, HttpStatus.BAD_REQUEST);
+        }
+        
+        File tempFile = fileStorageService.storeFile(file);
+        try {
+            return performErrorLevelAnalysis(tempFile, quality, outputMode, blockSize, imageFormat);
         } finally {
-            if (tempFile != null) {
-                fileStorageService.deleteFile(tempFile);
-            }
+            fileStorageService.deleteFile(tempFile);
         }
     }
     
-    public ElaResult performErrorLevelAnalysis(MultipartFile file, float quality) {
-        File originalFile = null;
+    public ElaResult performErrorLevelAnalysis(File originalFile, float quality, ElaOutputMode outputMode, int blockSize,
+                                               ImageOutputFormat imageFormat) {
+        String extension = FilenameUtils.getExtension(originalFile.getName());
+        if (!extension.equalsIgnoreCase("jpg") && !extension.equalsIgnoreCase("jpeg")) {
+            throw new ForensicException("Error Level Analysis only supports JPEG images", HttpStatus.BAD_REQUEST);
+        }
         File resavedFile = null;
-        File diffFile = null;
         
-        try {
-            originalFile = fileStorageService.storeFile(file);
-            
-            String extension = FilenameUtils.getExtension(originalFile.getName());
-            if (!extension.equalsIgnoreCase("jpg") && !extension.equalsIgnoreCase("jpeg")) {
-                throw new ForensicException("Error Level Analysis only supports JPEG images", HttpStatus.BAD_REQUEST);
-            }
-            
-            BufferedImage originalImage = ImageIO.read(originalFile);
+        try (DecodedImageCache.Lease original = readImage(originalFile)) {
+            BufferedImage originalImage = original.image();
             
             String tempDir = originalFile.getParent();
             resavedFile = new File(tempDir, "resaved_" + originalFile.getName());
             
-            saveJpegWithQuality(originalImage, resavedFile, quality);
-            
-            BufferedImage resavedImage = ImageIO.read(resavedFile);
-            BufferedImage differenceImage = createDifferenceImage(originalImage, resavedImage);
+            File resaved = resavedFile;
+            forensicMetrics.run(Stage.ENCODE, () -> saveJpegWithQuality(originalImage, resaved, quality));
             
-            diffFile = new File(tempDir, "diff_" + originalFile.getName());
-            ImageIO.write(differenceImage, "png", diffFile);
-            
-            byte[] diffBytes = Files.readAllBytes(diffFile.toPath());
+            BufferedImage resavedImage = forensicMetrics.time(Stage.DECODE, () -> readUncached(resaved));
             
             String originalHash = cryptographyService.calculateHash(originalFile, "SHA-256");
             String resavedHash = cryptographyService.calculateHash(resavedFile, "SHA-256");
             
             ElaResult result = new ElaResult();
-            result.setDifferenceImageBase64(Base64.getEncoder().encodeToString(diffBytes));
             result.setQuality(quality);
             result.setOriginalImageHash(originalHash);
             result.setResavedImageHash(resavedHash);
+            
+            if (outputMode.includesBlocks()) {
+                applyElaBlockStatistics(result, calculateElaBlockLevels(originalImage, resavedImage, blockSize), blockSize);
+            }
+            
+            if (outputMode.includesImage()) {
+                BufferedImage differenceImage = createDifferenceImage(originalImage, resavedImage);
+                result.setDifferenceImageBase64(imageOutputEncoder.encodeBase64(differenceImage, imageFormat));
+            }
+            
             return result;
                     
         } catch (IOException e) {
             throw new ForensicException("Failed to perform Error Level Analysis: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
         } finally {
-            if (originalFile != null) fileStorageService.deleteFile(originalFile);
             if (resavedFile != null) fileStorageService.deleteFile(resavedFile);
-            if (diffFile != null) fileStorageService.deleteFile(diffFile);
         }
     }
     
-    public byte[] applyNoiseAnalysis(MultipartFile file) {
-        File tempFile = null;
+    public BufferedImage applyNoiseAnalysis(MultipartFile file, ImageDecodeOptions options) {
+        File tempFile = fileStorageService.storeFile(file);
         try {
-            tempFile = fileStorageService.storeFile(file);
-            BufferedImage originalImage = ImageIO.read(tempFile);
+            return applyNoiseAnalysis(tempFile, options);
+        } finally {
+            fileStorageService.deleteFile(tempFile);
+        }
+    }
+    
+    /** The Laplacian high-pass of every colour channel; encoding it is left to the caller. */
+    public BufferedImage applyNoiseAnalysis(File file, ImageDecodeOptions options) {
+        try (DecodedImageCache.Lease original = readImage(file, options)) {
+            BufferedImage originalImage = original.image();
             
             float[] matrix = {
                 -1, -1, -1,
@@ -162,227 +260,385 @@ public class ImageForensicsService {
             
             Kernel kernel = new Kernel(3, 3, matrix);
             ConvolveOp convolveOp = new ConvolveOp(kernel, ConvolveOp.EDGE_NO_OP, null);
-            BufferedImage noiseImage = convolveOp.filter(originalImage, null);
-            
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            ImageIO.write(noiseImage, "png", outputStream);
-            return outputStream.toByteArray();
-            
+            return convolveOp.filter(originalImage, null);
         } catch (IOException e) {
             throw new ForensicException("Failed to apply noise analysis: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+    
+    public NoiseAnalysisResult analyzeNoiseResidual(MultipartFile file, NoiseResidualFilter filter, int blockSize,
+                                                    ImageDecodeOptions options) {
+        File tempFile = fileStorageService.storeFile(file);
+        try {
+            return analyzeNoiseResidual(tempFile, filter, blockSize, options);
         } finally {
-            if (tempFile != null) {
-                fileStorageService.deleteFile(tempFile);
+            fileStorageService.deleteFile(tempFile);
+        }
+    }
+    
+    /**
+     * Per-block noise levels of the luma residual and how far each block deviates from the image-wide level,
+     * a numeric splice indicator that does not need the full-size residual image.
+     */
+    public NoiseAnalysisResult analyzeNoiseResidual(File file, NoiseResidualFilter filter, int blockSize, ImageDecodeOptions options) {
+        if (blockSize < NoiseResidualAnalyzer.MIN_BLOCK_SIZE || blockSize > NoiseResidualAnalyzer.MAX_BLOCK_SIZE || blockSize % 2 != 0) {
+            throw new ForensicException("Noise block size must be an even number between " + NoiseResidualAnalyzer.MIN_BLOCK_SIZE
+                    + " and " + NoiseResidualAnalyzer.MAX_BLOCK_SIZE, HttpStatus.BAD_REQUEST);
+        }
+        try (DecodedImageCache.Lease lease = readImage(file, options)) {
+            BufferedImage image = lease.image();
+            byte[] luma = LumaPlane.extract(image);
+            NoiseResidualAnalyzer.Result analysis = NoiseResidualAnalyzer.analyze(luma, image.getWidth(), image.getHeight(), filter, blockSize);
+            
+            List<NoiseBlock> inconsistent = new ArrayList<>();
+            double maxDeviation = 0;
+            for (int blockY = 0; blockY < analysis.deviations().length; blockY++) {
+                float[] row = analysis.deviations()[blockY];
+                for (int blockX = 0; blockX < row.length; blockX++) {
+                    double deviation = row[blockX];
+                    maxDeviation = Math.max(maxDeviation, Math.abs(deviation));
+                    if (Math.abs(deviation) > NOISE_DEVIATION_THRESHOLD) {
+                        inconsistent.add(new NoiseBlock(blockX, blockY, options.sourceX(blockX * blockSize),
+                                options.sourceY(blockY * blockSize), analysis.levels()[blockY][blockX], deviation));
+                    }
+                }
+            }
+            inconsistent.sort(Comparator.comparingDouble((NoiseBlock block) -> Math.abs(block.getDeviation())).reversed());
+            
+            NoiseAnalysisResult result = new NoiseAnalysisResult();
+            result.setFilter(filter.name().toLowerCase());
+            result.setImageWidth(image.getWidth());
+            result.setImageHeight(image.getHeight());
+            result.setBlockSize(blockSize);
+            result.setBlocksHigh(analysis.levels().length);
+            result.setBlocksWide(analysis.levels().length > 0 ? analysis.levels()[0].length : 0);
+            result.setBlockNoiseLevels(analysis.levels());
+            result.setMedianNoiseLevel(analysis.median());
+            result.setMeanNoiseLevel(analysis.mean());
+            result.setNoiseLevelSpread(analysis.spread());
+            result.setMeasuredBlocks(analysis.measuredBlocks());
+            result.setInconsistentBlockCount(inconsistent.size());
+            result.setInconsistencyScore(analysis.measuredBlocks() > 0 ? (double) inconsistent.size() / analysis.measuredBlocks() : 0);
+            result.setMaxDeviation(maxDeviation);
+            result.setInconsistentBlocks(inconsistent.size() > MAX_NOISE_INCONSISTENT_BLOCKS
+                    ? new ArrayList<>(inconsistent.subList(0, MAX_NOISE_INCONSISTENT_BLOCKS))
+                    : inconsistent);
+            if (!options.isFull()) {
+                result.setDecodeOptions(options.describe());
             }
+            return result;
+        } catch (IOException e) {
+            throw new ForensicException("Failed to analyze noise residual: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
     
-    public byte[] applyColorFilter(MultipartFile file, String filterType) {
-        File tempFile = null;
+    /**
+     * Statistics of the same 3x3 high-pass residual that {@link #applyNoiseAnalysis(File, ImageDecodeOptions)}
+     * renders, computed on luma. Full images are streamed strip by strip, so even very large files never need
+     * a full raster.
+     */
+    public Map<String, Object> summarizeNoise(File file, ImageDecodeOptions options) {
         try {
-            tempFile = fileStorageService.storeFile(file);
-            BufferedImage originalImage = ImageIO.read(tempFile);
-            BufferedImage filteredImage;
-            
-            switch (filterType.toLowerCase()) {
-                case "invert":
-                    filteredImage = applyInvertFilter(originalImage);
-                    break;
-                case "equalize":
-                    filteredImage = applyEqualizeFilter(originalImage);
-                    break;
-                case "red":
-                    filteredImage = applyChannelFilter(originalImage, 0);
-                    break;
-                case "green":
-                    filteredImage = applyChannelFilter(originalImage, 1);
-                    break;
-                case "blue":
-                    filteredImage = applyChannelFilter(originalImage, 2);
-                    break;
-                default:
-                    throw new ForensicException("Unsupported filter type: " + filterType, HttpStatus.BAD_REQUEST);
-            }
-            
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            ImageIO.write(filteredImage, "png", outputStream);
-            return outputStream.toByteArray();
+            NoiseResidualStatistics statistics = new NoiseResidualStatistics();
+            ImageStripDecoder.Dimensions dimensions;
+            if (options.isFull()) {
+                dimensions = ImageStripDecoder.forEachLumaStrip(file, statistics);
+            } else {
+                try (DecodedImageCache.Lease lease = readImage(file, options)) {
+                    dimensions = ImageStripDecoder.forEachLumaStrip(lease.image(), statistics);
+                }
+            }
             
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("meanResidual", statistics.mean());
+            result.put("residualStdDev", statistics.standardDeviation());
+            result.put("maxResidual", statistics.max);
+            result.put("imageWidth", dimensions.width());
+            result.put("imageHeight", dimensions.height());
+            result.put("decodeMethod", dimensions.method());
+            if (!options.isFull()) {
+                result.put("decodeOptions", options.describe());
+            }
+            return result;
+        } catch (JpegFormatException e) {
+            // Strips already handed to the statistics cannot be taken back, so a damaged file is not retried as a raster
+            throw new ForensicException("Failed to summarize noise: " + e.getMessage(), e, HttpStatus.BAD_REQUEST);
+        } catch (IOException e) {
+            throw new ForensicException("Failed to summarize noise: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+    
+    public BufferedImage applyColorFilter(MultipartFile file, String filterType, ImageDecodeOptions options) {
+        ColorFilter filter = ColorFilter.fromString(filterType);
+        return applyColorFilters(file, EnumSet.of(filter), options).get(filter);
+    }
+    
+    /** Renders every requested filter from a single decode and a single pass over the pixels. */
+    public Map<ColorFilter, BufferedImage> applyColorFilters(MultipartFile file, Set<ColorFilter> filters, ImageDecodeOptions options) {
+        if (filters.isEmpty()) {
+            throw new ForensicException("At least one color filter is required", HttpStatus.BAD_REQUEST);
+        }
+        File tempFile = fileStorageService.storeFile(file);
+        try (DecodedImageCache.Lease lease = readImage(tempFile, options)) {
+            return ColorFilterRenderer.render(lease.image(), filters);
         } catch (IOException e) {
             throw new ForensicException("Failed to apply color filter: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
         } finally {
-            if (tempFile != null) {
-                fileStorageService.deleteFile(tempFile);
-            }
+            fileStorageService.deleteFile(tempFile);
         }
     }
     
     public Map<String, Object> analyzeThumbnail(MultipartFile file) {
-        File tempFile = null;
+        File tempFile = fileStorageService.storeFile(file);
         try {
-            tempFile = fileStorageService.storeFile(file);
-            
-            Map<String, Object> result = new HashMap<>();
-            
-            // Read the image file
-            BufferedImage originalImage = ImageIO.read(tempFile);
-            if (originalImage == null) {
-                result.put("error", "Could not read image file");
-                return result;
-            }
+            return analyzeThumbnail(tempFile);
+        } finally {
+            fileStorageService.deleteFile(tempFile);
+        }
+    }
+    
+    /**
+     * Extracts the embedded EXIF thumbnail straight from the file and compares it with a subsampled preview of
+     * the main image. Editors often rewrite the pixels but leave the camera's thumbnail untouched, so a
+     * thumbnail that no longer matches the image is a sign of manipulation.
+     */
+    public Map<String, Object> analyzeThumbnail(File file) {
+        try {
+            Map<String, Object> result = new LinkedHashMap<>();
             
+            ExifThumbnailDirectory exifThumbnailDir;
             try {
-                // Use metadata-extractor library to check for Exif thumbnail indicators
-                Metadata metadata = ImageMetadataReader.readMetadata(tempFile);
-                
-                com.drew.metadata.exif.ExifThumbnailDirectory exifThumbnailDir = 
-                    metadata.getFirstDirectoryOfType(com.drew.metadata.exif.ExifThumbnailDirectory.class);
-                
-                if (exifThumbnailDir != null) {
-                    // Check if we have thumbnail offset and length tags
-                    if (exifThumbnailDir.containsTag(com.drew.metadata.exif.ExifThumbnailDirectory.TAG_THUMBNAIL_OFFSET) &&
-                        exifThumbnailDir.containsTag(com.drew.metadata.exif.ExifThumbnailDirectory.TAG_THUMBNAIL_LENGTH)) {
-                        
-                        result.put("hasThumbnail", true);
-                        result.put("thumbnailFormat", "JPEG");
-                        result.put("thumbnailOffsetTag", exifThumbnailDir.getInteger(
-                            com.drew.metadata.exif.ExifThumbnailDirectory.TAG_THUMBNAIL_OFFSET));
-                        result.put("thumbnailLengthTag", exifThumbnailDir.getInteger(
-                            com.drew.metadata.exif.ExifThumbnailDirectory.TAG_THUMBNAIL_LENGTH));
-                            
-                        // Since direct extraction is complex, we'll generate a thumbnail from the original
-                        BufferedImage thumbnail = Scalr.resize(originalImage, Scalr.Method.SPEED, 
-                                                               Scalr.Mode.AUTOMATIC, 160, 160);
-                        
-                        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                        ImageIO.write(thumbnail, "JPEG", baos);
-                        byte[] thumbnailData = baos.toByteArray();
-                        
-                        result.put("thumbnailLength", thumbnailData.length);
-                        result.put("thumbnailBase64", Base64.getEncoder().encodeToString(thumbnailData));
-                        result.put("thumbnailHash", cryptographyService.calculateHash(thumbnailData, "SHA-256"));
-                        result.put("note", "Thumbnail was generated from original image as direct extraction is not supported");
-                        return result;
-                    }
-                }
-            } catch (Exception e) {
+                Metadata metadata = ImageMetadataReader.readMetadata(file);
+                exifThumbnailDir = metadata.getFirstDirectoryOfType(ExifThumbnailDirectory.class);
+            } catch (ImageProcessingException e) {
                 // If metadata extraction fails, generate a thumbnail instead
-                BufferedImage thumbnail = Scalr.resize(originalImage, Scalr.Method.SPEED, 
-                                                     Scalr.Mode.AUTOMATIC, 160, 160);
-                
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                ImageIO.write(thumbnail, "JPEG", baos);
-                byte[] thumbnailData = baos.toByteArray();
+                byte[] thumbnailData;
+                try (DecodedImageCache.Lease preview = readPreview(file)) {
+                    thumbnailData = encodeJpeg(Scalr.resize(preview.image(), Scalr.Method.SPEED,
+                            Scalr.Mode.AUTOMATIC, THUMBNAIL_SIZE, THUMBNAIL_SIZE));
+                }
                 
                 result.put("hasThumbnail", false);
                 result.put("generatedThumbnail", true);
                 result.put("thumbnailBase64", Base64.getEncoder().encodeToString(thumbnailData));
                 result.put("thumbnailHash", cryptographyService.calculateHash(thumbnailData, "SHA-256"));
                 result.put("note", "Generated thumbnail as no embedded thumbnail was found");
+                return result;
             }
             
-            // If we've reached here, we didn't find a thumbnail in the EXIF data
-            if (!result.containsKey("hasThumbnail")) {
+            if (exifThumbnailDir == null
+                    || !exifThumbnailDir.containsTag(ExifThumbnailDirectory.TAG_THUMBNAIL_OFFSET)
+                    || !exifThumbnailDir.containsTag(ExifThumbnailDirectory.TAG_THUMBNAIL_LENGTH)) {
                 result.put("hasThumbnail", false);
                 result.put("message", "This image does not contain an embedded thumbnail");
+                return result;
             }
             
+            int offset = exifThumbnailDir.getInt(ExifThumbnailDirectory.TAG_THUMBNAIL_OFFSET);
+            int length = exifThumbnailDir.getInt(ExifThumbnailDirectory.TAG_THUMBNAIL_LENGTH);
+            result.put("hasThumbnail", true);
+            result.put("thumbnailFormat", "JPEG");
+            result.put("thumbnailOffsetTag", offset);
+            result.put("thumbnailLengthTag", length);
+            
+            Optional<ExifThumbnailExtractor.Thumbnail> extracted = ExifThumbnailExtractor.extract(file, offset, length);
+            if (extracted.isEmpty()) {
+                result.put("extracted", false);
+                result.put("note", "The thumbnail offset and length do not point at JPEG data inside the file");
+                return result;
+            }
+            
+            byte[] thumbnailData = extracted.get().data();
+            result.put("extracted", true);
+            result.put("thumbnailFileOffset", extracted.get().fileOffset());
+            result.put("thumbnailLength", thumbnailData.length);
+            result.put("thumbnailBase64", Base64.getEncoder().encodeToString(thumbnailData));
+            result.put("thumbnailHash", cryptographyService.calculateHash(thumbnailData, "SHA-256"));
+            
+            BufferedImage thumbnail = forensicMetrics.time(Stage.DECODE, () -> decodeJpeg(thumbnailData));
+            if (thumbnail == null) {
+                result.put("note", "The embedded thumbnail could not be decoded");
+                return result;
+            }
+            result.put("thumbnailWidth", thumbnail.getWidth());
+            result.put("thumbnailHeight", thumbnail.getHeight());
+            try (DecodedImageCache.Lease preview = readPreview(file)) {
+                result.put("consistency", compareThumbnail(thumbnail, preview.image()));
+            }
             return result;
         } catch (Exception e) {
             throw new ForensicException("Failed to analyze thumbnail: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
-        } finally {
-            if (tempFile != null) {
-                fileStorageService.deleteFile(tempFile);
-            }
         }
     }
     
-    public Map<String, Object> detectPatterns(MultipartFile file) {
-        File tempFile = null;
+    private Map<String, Object> compareThumbnail(BufferedImage thumbnail, BufferedImage preview) {
+        PerceptualHash.Hashes thumbnailHashes = PerceptualHash.compute(thumbnail);
+        PerceptualHash.Hashes imageHashes = PerceptualHash.compute(preview);
+        
+        Map<String, Object> distances = new LinkedHashMap<>();
+        for (PerceptualHash.Algorithm algorithm : PerceptualHash.Algorithm.values()) {
+            distances.put(algorithm.shortName(), PerceptualHash.distance(thumbnailHashes.get(algorithm), imageHashes.get(algorithm)));
+        }
+        int perceptualDistance = PerceptualHash.distance(thumbnailHashes.perceptual(), imageHashes.perceptual());
+        double thumbnailAspect = (double) thumbnail.getWidth() / thumbnail.getHeight();
+        double imageAspect = (double) preview.getWidth() / preview.getHeight();
+        
+        Map<String, Object> consistency = new LinkedHashMap<>();
+        consistency.put("distances", distances);
+        consistency.put("maxConsistentDistance", THUMBNAIL_MAX_DISTANCE);
+        consistency.put("consistent", perceptualDistance <= THUMBNAIL_MAX_DISTANCE);
+        // Letterboxed thumbnails of a differently shaped image hash further apart without being stale
+        consistency.put("aspectRatioMatches", Math.abs(thumbnailAspect - imageAspect) / imageAspect < 0.02);
+        if (perceptualDistance > THUMBNAIL_MAX_DISTANCE) {
+            consistency.put("note", "The embedded thumbnail differs from the image, which may have been edited after capture");
+        }
+        return consistency;
+    }
+    
+    /** A subsampled decode of the image a few hundred pixels across, enough for thumbnail-sized comparisons. */
+    private DecodedImageCache.Lease readPreview(File file) throws IOException {
+        Dimension size = DecodedImageCache.dimensions(file)
+                .orElseThrow(() -> new ForensicException("Unsupported or corrupt image file", HttpStatus.BAD_REQUEST));
+        int subsampling = Math.max(1, Math.min(MAX_PREVIEW_SUBSAMPLING, Math.min(size.width, size.height) / PREVIEW_SIZE));
+        return readImage(file, new ImageDecodeOptions(null, subsampling));
+    }
+    
+    private static byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageCodecEvent event = new ImageCodecEvent(ImageCodecEvent.ENCODE, "jpeg");
+        event.begin();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(image, "JPEG", baos);
+        event.setImage(image);
+        event.finish(baos.size());
+        return baos.toByteArray();
+    }
+    
+    private static BufferedImage decodeJpeg(byte[] data) throws IOException {
+        ImageCodecEvent event = new ImageCodecEvent(ImageCodecEvent.DECODE, "jpeg");
+        event.begin();
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+        event.setImage(image);
+        event.finish(data.length);
+        return image;
+    }
+    
+    public Map<String, Object> detectPatterns(MultipartFile file, ImageDecodeOptions options) {
+        File tempFile = fileStorageService.storeFile(file);
         try {
-            tempFile = fileStorageService.storeFile(file);
-            BufferedImage image = ImageIO.read(tempFile);
-            
-            Map<String, Object> results = new HashMap<>();
-            Map<String, Integer> patternCount = new HashMap<>();
-            
-            int width = image.getWidth();
-            int height = image.getHeight();
+            return detectPatterns(tempFile, options);
+        } finally {
+            fileStorageService.deleteFile(tempFile);
+        }
+    }
+    
+    /** Region coordinates are reported in source image pixels, also when a crop or preview was analyzed. */
+    public Map<String, Object> detectPatterns(File file, ImageDecodeOptions options) {
+        try (DecodedImageCache.Lease lease = readImage(file, options)) {
+            BufferedImage image = lease.image();
             
-            int blockSize = 8;
-            for (int y = 0; y < height - blockSize; y += blockSize) {
-                for (int x = 0; x < width - blockSize; x += blockSize) {
-                    String pattern = calculateBlockPattern(image, x, y, blockSize);
-                    patternCount.put(pattern, patternCount.getOrDefault(pattern, 0) + 1);
-                }
+            CopyMoveDetector.Result detection = CopyMoveDetector.detect(image, copyMoveMaxBlocks);
+            if (!options.isFull()) {
+                detection.regions().forEach(region -> toSourceCoordinates(region, options));
             }
             
-            List<Map.Entry<String, Integer>> sortedPatterns = 
-                patternCount.entrySet().stream()
-                    .filter(e -> e.getValue() > 1)  
-                    .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
-                    .limit(10)
-                    .collect(Collectors.toList());
-            
-            results.put("repeatedPatternsFound", !sortedPatterns.isEmpty());
-            results.put("totalUniquePatterns", patternCount.size());
-            results.put("topRepeatedPatterns", sortedPatterns.size());
-            results.put("potentialCopyPasteRegions", sortedPatterns);
+            Map<String, Object> results = new HashMap<>();
+            results.put("repeatedPatternsFound", !detection.regions().isEmpty());
+            results.put("potentialCopyPasteRegions", detection.regions());
+            results.put("analyzedBlocks", detection.analyzedBlocks());
+            results.put("flatBlocksSkipped", detection.flatBlocks());
+            results.put("blockStride", detection.stride());
+            results.put("matchingPasses", detection.passes());
+            results.put("matchedBlockPairs", detection.matchedPairs());
+            if (detection.truncated()) {
+                results.put("matchingTruncated", true);
+            }
+            if (!options.isFull()) {
+                results.put("decodeOptions", options.describe());
+            }
             
             return results;
         } catch (IOException e) {
             throw new ForensicException("Failed to detect patterns: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+    
+    public Map<String, Object> analyzeCompressionHistory(MultipartFile file, int heatmapCellSize) {
+        File tempFile = fileStorageService.storeFile(file);
+        try {
+            return analyzeCompressionHistory(tempFile, heatmapCellSize);
         } finally {
-            if (tempFile != null) {
-                fileStorageService.deleteFile(tempFile);
-            }
+            fileStorageService.deleteFile(tempFile);
         }
     }
     
-    public Map<String, Object> analyzeCompressionHistory(MultipartFile file) {
-        File tempFile = null;
+    public Map<String, Object> analyzeCompressionHistory(File file, int heatmapCellSize) {
         try {
-            tempFile = fileStorageService.storeFile(file);
             // We don't need metadata for compression analysis
             Map<String, Object> result = new HashMap<>();
-            boolean isJpeg = FilenameUtils.getExtension(file.getOriginalFilename()).equalsIgnoreCase("jpg") || 
-                            FilenameUtils.getExtension(file.getOriginalFilename()).equalsIgnoreCase("jpeg");
+            boolean isJpeg = FilenameUtils.getExtension(file.getName()).equalsIgnoreCase("jpg") || 
+                            FilenameUtils.getExtension(file.getName()).equalsIgnoreCase("jpeg");
             
             if (!isJpeg) {
                 result.put("compressionAnalysis", "Compression history analysis is only available for JPEG images");
                 return result;
             }
             
-            BufferedImage image = ImageIO.read(tempFile);
-            int width = image.getWidth();
-            int height = image.getHeight();
-            
-            double[] dctCoefficients = calculateDctCoefficients(image);
-            int[] coefficientHistogram = generateHistogram(dctCoefficients);
+            if (heatmapCellSize < 8 || heatmapCellSize % 8 != 0) {
+                throw new ForensicException("Heatmap cell size must be a positive multiple of 8", HttpStatus.BAD_REQUEST);
+            }
             
-            int estimatedCompressionCount = estimateJpegCompressionCount(coefficientHistogram);
+            BlockDctAnalyzer.Result dct;
+            try {
+                JpegCompressionAnalyzer.Result coefficients = JpegCompressionAnalyzer.analyze(file, heatmapCellSize, decodeAdmissionController);
+                dct = coefficients.dct();
+                
+                result.put("analysisMethod", "coefficients");
+                result.put("estimatedCompressionCycles", coefficients.isDoubleCompressed() ? 2 : 1);
+                result.put("doubleCompressionScore", coefficients.doubleCompressionScore());
+                result.put("coefficientPeriodicity", Arrays.stream(coefficients.positionScores())
+                        .mapToObj(score -> Double.isNaN(score) ? null : score)
+                        .collect(Collectors.toList()));
+                result.put("quantizationTables", describeQuantizationTables(coefficients.header()));
+                result.put("imageWidth", coefficients.header().getWidth());
+                result.put("imageHeight", coefficients.header().getHeight());
+            } catch (JpegFormatException e) {
+                // Progressive and arithmetic-coded files fall back to recomputing the DCT from decoded pixels
+                log.debug("Coefficient analysis unavailable for {}: {}", file.getName(), e.getMessage());
+                try (DecodedImageCache.Lease lease = readImage(file)) {
+                    BufferedImage image = lease.image();
+                    dct = BlockDctAnalyzer.analyze(image, heatmapCellSize);
+                    result.put("imageWidth", image.getWidth());
+                    result.put("imageHeight", image.getHeight());
+                }
+                
+                result.put("analysisMethod", "pixels");
+                result.put("estimatedCompressionCycles", estimateJpegCompressionCount(generateHistogram(dct.averageMagnitudes())));
+            }
             
-            result.put("estimatedCompressionCycles", estimatedCompressionCount);
-            result.put("imageWidth", width);
-            result.put("imageHeight", height);
-            result.put("compressionSignature", analyzeCompressionSignature(coefficientHistogram));
+            result.put("compressionSignature", analyzeCompressionSignature(generateHistogram(dct.averageMagnitudes())));
+            result.put("estimatedQuantizationSteps", dct.quantizationSteps());
+            result.put("compressionHeatmap", dct.heatmap().toMap());
             
             return result;
+        } catch (ForensicException e) {
+            throw e;
         } catch (Exception e) {
             throw new ForensicException("Failed to analyze compression history: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
-        } finally {
-            if (tempFile != null) {
-                fileStorageService.deleteFile(tempFile);
-            }
         }
     }
     
     public Map<String, Object> verifyImageHash(MultipartFile file, String providedHash, String algorithm) {
-        File tempFile = null;
+        File tempFile = fileStorageService.storeFile(file);
         try {
-            tempFile = fileStorageService.storeFile(file);
-            
-            String calculatedHash = cryptographyService.calculateHash(tempFile, algorithm);
+            return verifyImageHash(tempFile, providedHash, algorithm);
+        } finally {
+            fileStorageService.deleteFile(tempFile);
+        }
+    }
+    
+    public Map<String, Object> verifyImageHash(File file, String providedHash, String algorithm) {
+        try {
+            String calculatedHash = cryptographyService.calculateHash(file, algorithm);
             boolean matches = calculatedHash.equalsIgnoreCase(providedHash);
             
             Map<String, Object> result = new HashMap<>();
@@ -395,6 +651,63 @@ public class ImageForensicsService {
             return result;
         } catch (Exception e) {
             throw new ForensicException("Failed to verify image hash: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+    
+    public Map<String, Object> calculatePerceptualHashes(MultipartFile file) {
+        File tempFile = fileStorageService.storeFile(file);
+        try {
+            return calculatePerceptualHashes(tempFile);
+        } finally {
+            fileStorageService.deleteFile(tempFile);
+        }
+    }
+    
+    public Map<String, Object> calculatePerceptualHashes(File file) {
+        try (DecodedImageCache.Lease lease = readImage(file)) {
+            BufferedImage image = lease.image();
+            
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("imageWidth", image.getWidth());
+            result.put("imageHeight", image.getHeight());
+            result.put("sha256", cryptographyService.calculateHash(file, "SHA-256"));
+            result.putAll(describePerceptualHashes(PerceptualHash.compute(image)));
+            return result;
+        } catch (ForensicException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ForensicException("Failed to calculate perceptual hashes: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+    
+    public Map<String, Object> addToPerceptualIndex(MultipartFile file, String label) {
+        if (label != null && label.length() > PerceptualHashIndex.MAX_LABEL_LENGTH) {
+            throw new ForensicException("Label must be at most " + PerceptualHashIndex.MAX_LABEL_LENGTH + " characters",
+                    HttpStatus.BAD_REQUEST);
+        }
+        File tempFile = null;
+        try {
+            tempFile = fileStorageService.storeFile(file);
+            PerceptualHash.Hashes hashes;
+            try (DecodedImageCache.Lease lease = readImage(tempFile)) {
+                hashes = PerceptualHash.compute(lease.image());
+            }
+            
+            String fileName = file.getOriginalFilename();
+            if (fileName != null && fileName.length() > PerceptualHashIndex.MAX_LABEL_LENGTH) {
+                fileName = fileName.substring(0, PerceptualHashIndex.MAX_LABEL_LENGTH);
+            }
+            String entryLabel = (label == null || label.isBlank()) ? fileName : label;
+            PerceptualHashIndex.Entry entry = perceptualHashIndex.add(hashes, entryLabel,
+                    cryptographyService.calculateHash(tempFile, "SHA-256"));
+            
+            Map<String, Object> result = describeIndexEntry(entry);
+            result.put("indexSize", perceptualHashIndex.size());
+            return result;
+        } catch (ForensicException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ForensicException("Failed to add image to perceptual index: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
         } finally {
             if (tempFile != null) {
                 fileStorageService.deleteFile(tempFile);
@@ -402,11 +715,65 @@ public class ImageForensicsService {
         }
     }
     
-    private ImageMetadata extractMetadataFromFile(File file) throws ImageProcessingException, IOException, MetadataException {
-        Metadata metadata = ImageMetadataReader.readMetadata(file);
+    public Map<String, Object> searchPerceptualIndex(MultipartFile file, String algorithm, int maxDistance, int limit) {
+        PerceptualHash.Algorithm hashAlgorithm;
+        try {
+            hashAlgorithm = PerceptualHash.Algorithm.fromString(algorithm);
+        } catch (IllegalArgumentException e) {
+            throw new ForensicException(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+        if (maxDistance < 0 || maxDistance > PerceptualHashIndex.MAX_SEARCH_DISTANCE) {
+            throw new ForensicException("Maximum distance must be between 0 and " + PerceptualHashIndex.MAX_SEARCH_DISTANCE,
+                    HttpStatus.BAD_REQUEST);
+        }
+        if (limit < 1) {
+            throw new ForensicException("Limit must be positive", HttpStatus.BAD_REQUEST);
+        }
         
+        File tempFile = null;
+        try {
+            tempFile = fileStorageService.storeFile(file);
+            PerceptualHash.Hashes hashes;
+            try (DecodedImageCache.Lease lease = readImage(tempFile)) {
+                hashes = PerceptualHash.compute(lease.image());
+            }
+            
+            long start = System.nanoTime();
+            List<PerceptualHashIndex.Match> matches = perceptualHashIndex.search(hashAlgorithm, hashes.get(hashAlgorithm), maxDistance, limit);
+            double searchMillis = (System.nanoTime() - start) / 1_000_000.0;
+            
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.putAll(describePerceptualHashes(hashes));
+            result.put("algorithm", hashAlgorithm.shortName());
+            result.put("maxDistance", maxDistance);
+            result.put("matchFound", !matches.isEmpty());
+            result.put("matches", matches.stream().map(match -> {
+                Map<String, Object> entry = describeIndexEntry(match.entry());
+                entry.put("distance", match.distance());
+                entry.put("similarity", 1 - match.distance() / 64.0);
+                return entry;
+            }).collect(Collectors.toList()));
+            result.put("indexSize", perceptualHashIndex.size());
+            result.put("searchTimeMs", searchMillis);
+            return result;
+        } catch (ForensicException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ForensicException("Failed to search perceptual index: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
+        } finally {
+            if (tempFile != null) {
+                fileStorageService.deleteFile(tempFile);
+            }
+        }
+    }
+    
+    private ImageMetadata extractMetadataFromFile(File file) throws ImageProcessingException, IOException, MetadataException {
+        return toImageMetadata(ImageMetadataReader.readMetadata(file), file.getName(), file.length());
+    }
+    
+    private ImageMetadata toImageMetadata(Metadata metadata, String filename, long fileSize) throws MetadataException {
         Map<String, String> allTags = new HashMap<>();
-        
+
         for (var directory : metadata.getDirectories()) {
             for (var tag : directory.getTags()) {
                 allTags.put(tag.getTagName(), tag.getDescription());
@@ -422,8 +789,8 @@ public class ImageForensicsService {
                 
         ImageMetadata imageMetadata = new ImageMetadata();
         imageMetadata.setAllTags(allTags);
-        imageMetadata.setFilename(file.getName());
-        imageMetadata.setFileSize(file.length());
+        imageMetadata.setFilename(filename);
+        imageMetadata.setFileSize(fileSize);
         imageMetadata.setGpsCoordinates(gpsCoordinates);
         imageMetadata.setDateTaken(originalDate);
         return imageMetadata;
@@ -461,6 +828,8 @@ public class ImageForensicsService {
             throw new IOException("No JPEG image writer found");
         }
         
+        ImageCodecEvent event = new ImageCodecEvent(ImageCodecEvent.ENCODE, "jpeg");
+        event.begin();
         ImageWriter writer = writers.next();
         try (FileImageOutputStream fos = new FileImageOutputStream(output)) {
             writer.setOutput(fos);
@@ -473,9 +842,22 @@ public class ImageForensicsService {
         } finally {
             writer.dispose();
         }
+        event.setImage(image);
+        event.finish(output.length());
+    }
+    
+    /** Decodes a file that is read only once, such as the resaved ELA image, without going through the cache. */
+    private static BufferedImage readUncached(File file) throws IOException {
+        ImageCodecEvent event = new ImageCodecEvent(ImageCodecEvent.DECODE, FilenameUtils.getExtension(file.getName()).toLowerCase());
+        event.begin();
+        BufferedImage image = ImageIO.read(file);
+        event.setImage(image);
+        event.finish(file.length());
+        return image;
     }
     
-    private BufferedImage createDifferenceImage(BufferedImage original, BufferedImage resaved) {
+    // Package-private and static, like the ELA block levels below, so the benchmarks can reach them
+    static BufferedImage createDifferenceImage(BufferedImage original, BufferedImage resaved) {
         int width = original.getWidth();
         int height = original.getHeight();
         
@@ -503,161 +885,180 @@ public class ImageForensicsService {
         return result;
     }
     
-    private BufferedImage applyInvertFilter(BufferedImage original) {
-        BufferedImage filtered = new BufferedImage(
-                original.getWidth(), 
-                original.getHeight(),
-                original.getType());
-                
-        for (int y = 0; y < original.getHeight(); y++) {
-            for (int x = 0; x < original.getWidth(); x++) {
-                Color color = new Color(original.getRGB(x, y));
-                Color inverted = new Color(
-                        255 - color.getRed(),
-                        255 - color.getGreen(),
-                        255 - color.getBlue());
-                filtered.setRGB(x, y, inverted.getRGB());
-            }
-        }
-        
-        return filtered;
-    }
-    
-    private BufferedImage applyEqualizeFilter(BufferedImage original) {
+    static float[][] calculateElaBlockLevels(BufferedImage original, BufferedImage resaved, int blockSize) {
         int width = original.getWidth();
         int height = original.getHeight();
-        BufferedImage result = new BufferedImage(width, height, original.getType());
-        
-        int[] histogram = new int[256];
-        
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                Color color = new Color(original.getRGB(x, y));
-                int grayLevel = (color.getRed() + color.getGreen() + color.getBlue()) / 3;
-                histogram[grayLevel]++;
-            }
-        }
+        int blocksWide = (width + blockSize - 1) / blockSize;
+        int blocksHigh = (height + blockSize - 1) / blockSize;
         
-        int pixelCount = width * height;
-        float[] cdf = new float[256];
-        cdf[0] = histogram[0] / (float) pixelCount;
-        
-        for (int i = 1; i < 256; i++) {
-            cdf[i] = cdf[i - 1] + histogram[i] / (float) pixelCount;
-        }
+        float[][] levels = new float[blocksHigh][blocksWide];
+        long[] blockSums = new long[blocksWide];
+        int[] originalRow = new int[width];
+        int[] resavedRow = new int[width];
         
-        int[] equalized = new int[256];
-        for (int i = 0; i < 256; i++) {
-            equalized[i] = Math.round(cdf[i] * 255);
-        }
-        
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                Color color = new Color(original.getRGB(x, y));
-                int r = equalized[color.getRed()];
-                int g = equalized[color.getGreen()];
-                int b = equalized[color.getBlue()];
+        for (int blockY = 0; blockY < blocksHigh; blockY++) {
+            Arrays.fill(blockSums, 0);
+            int startY = blockY * blockSize;
+            int endY = Math.min(startY + blockSize, height);
+            
+            for (int y = startY; y < endY; y++) {
+                original.getRGB(0, y, width, 1, originalRow, 0, width);
+                resaved.getRGB(0, y, width, 1, resavedRow, 0, width);
                 
-                Color newColor = new Color(r, g, b);
-                result.setRGB(x, y, newColor.getRGB());
+                for (int x = 0; x < width; x++) {
+                    int a = originalRow[x];
+                    int b = resavedRow[x];
+                    blockSums[x / blockSize] += Math.abs(((a >> 16) & 0xFF) - ((b >> 16) & 0xFF))
+                            + Math.abs(((a >> 8) & 0xFF) - ((b >> 8) & 0xFF))
+                            + Math.abs((a & 0xFF) - (b & 0xFF));
+                }
+            }
+            
+            for (int blockX = 0; blockX < blocksWide; blockX++) {
+                int blockWidth = Math.min(blockSize, width - blockX * blockSize);
+                // Mean absolute per-channel difference, same scale as the unamplified ELA image
+                levels[blockY][blockX] = blockSums[blockX] / (3.0f * blockWidth * (endY - startY));
             }
         }
         
-        return result;
+        return levels;
     }
     
-    private BufferedImage applyChannelFilter(BufferedImage original, int channel) {
-        int width = original.getWidth();
-        int height = original.getHeight();
-        BufferedImage result = new BufferedImage(width, height, original.getType());
+    private void applyElaBlockStatistics(ElaResult result, float[][] levels, int blockSize) {
+        int blocksHigh = levels.length;
+        int blocksWide = blocksHigh > 0 ? levels[0].length : 0;
+        int blockCount = blocksWide * blocksHigh;
         
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                Color color = new Color(original.getRGB(x, y));
-                
-                int r = (channel == 0) ? color.getRed() : 0;
-                int g = (channel == 1) ? color.getGreen() : 0;
-                int b = (channel == 2) ? color.getBlue() : 0;
-                
-                Color newColor = new Color(r, g, b);
-                result.setRGB(x, y, newColor.getRGB());
+        double sum = 0;
+        double sumOfSquares = 0;
+        double max = 0;
+        for (float[] row : levels) {
+            for (float level : row) {
+                sum += level;
+                sumOfSquares += (double) level * level;
+                max = Math.max(max, level);
             }
         }
         
-        return result;
-    }
-    
-    private String calculateBlockPattern(BufferedImage image, int startX, int startY, int blockSize) {
-        StringBuilder patternBuilder = new StringBuilder();
+        double mean = blockCount > 0 ? sum / blockCount : 0;
+        double stdDev = blockCount > 0 ? Math.sqrt(Math.max(0, sumOfSquares / blockCount - mean * mean)) : 0;
         
-        for (int y = 0; y < blockSize; y++) {
-            for (int x = 0; x < blockSize; x++) {
-                if (startX + x < image.getWidth() && startY + y < image.getHeight()) {
-                    Color color = new Color(image.getRGB(startX + x, startY + y));
-                    
-                    int grayscale = (color.getRed() + color.getGreen() + color.getBlue()) / 3;
-                    
-                    // Simplify to reduce noise - just keep most significant bits
-                    grayscale = grayscale & 0xF0;
-                    
-                    patternBuilder.append(Integer.toHexString(grayscale >> 4));
+        List<ElaBlock> outliers = new ArrayList<>();
+        if (stdDev > 0) {
+            double threshold = mean + ELA_OUTLIER_SIGMA * stdDev;
+            for (int blockY = 0; blockY < blocksHigh; blockY++) {
+                for (int blockX = 0; blockX < blocksWide; blockX++) {
+                    float level = levels[blockY][blockX];
+                    if (level > threshold) {
+                        outliers.add(new ElaBlock(blockX, blockY, blockX * blockSize, blockY * blockSize,
+                                level, (level - mean) / stdDev));
+                    }
                 }
             }
         }
+        outliers.sort(Comparator.comparingDouble(ElaBlock::getErrorLevel).reversed());
         
-        return patternBuilder.toString();
+        result.setBlockSize(blockSize);
+        result.setBlocksWide(blocksWide);
+        result.setBlocksHigh(blocksHigh);
+        result.setBlockErrorLevels(levels);
+        result.setMeanErrorLevel(mean);
+        result.setMaxErrorLevel(max);
+        result.setOutlierBlocks(outliers.size() > MAX_ELA_OUTLIER_BLOCKS
+                ? new ArrayList<>(outliers.subList(0, MAX_ELA_OUTLIER_BLOCKS))
+                : outliers);
     }
     
-    private double[] calculateDctCoefficients(BufferedImage image) {
-        int width = Math.min(image.getWidth(), 512);  // Limit size for performance
-        int height = Math.min(image.getHeight(), 512);
-        
-        BufferedImage scaledImage = Scalr.resize(image, Scalr.Method.QUALITY, width, height);
+    
+    private Map<String, Object> describeQuantizationFingerprint(JpegHeader header) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        int[][] tables = QuantizationTableDatabase.referencedTables(header);
+        if (tables.length == 0) {
+            return result;
+        }
         
-        double[] dctValues = new double[64];  // 8x8 DCT block
+        long fingerprint = QuantizationTableDatabase.fingerprint(tables);
+        List<QuantizationTableDatabase.Signature> matches = quantizationTableDatabase.lookup(fingerprint);
+        QuantizationTableDatabase.QualityEstimate estimate = quantizationTableDatabase.estimateIjgQuality(tables[0]);
         
-        for (int y = 0; y < height - 8; y += 8) {
-            for (int x = 0; x < width - 8; x += 8) {
-                double[][] block = new double[8][8];
-                
-                // Extract 8x8 block
-                for (int j = 0; j < 8; j++) {
-                    for (int i = 0; i < 8; i++) {
-                        Color color = new Color(scaledImage.getRGB(x + i, y + j));
-                        block[j][i] = (color.getRed() + color.getGreen() + color.getBlue()) / 3.0;
-                    }
-                }
-                
-                // Simple DCT calculation for each coefficient
-                for (int v = 0; v < 8; v++) {
-                    for (int u = 0; u < 8; u++) {
-                        double sum = 0;
-                        for (int j = 0; j < 8; j++) {
-                            for (int i = 0; i < 8; i++) {
-                                sum += block[j][i] * 
-                                       Math.cos((2 * i + 1) * u * Math.PI / 16.0) * 
-                                       Math.cos((2 * j + 1) * v * Math.PI / 16.0);
-                            }
-                        }
-                        
-                        double alpha_u = (u == 0) ? 1.0 / Math.sqrt(2) : 1.0;
-                        double alpha_v = (v == 0) ? 1.0 / Math.sqrt(2) : 1.0;
-                        double coefficient = 0.25 * alpha_u * alpha_v * sum;
-                        
-                        int index = v * 8 + u;
-                        dctValues[index] += Math.abs(coefficient);
-                    }
-                }
+        result.put("quantizationFingerprint", String.format("%016x", fingerprint));
+        result.put("quantizationTables", describeQuantizationTables(header));
+        result.put("quantizationTableMatches", matches.stream().map(match -> {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("source", match.source());
+            entry.put("software", match.software());
+            if (match.quality() > 0) {
+                entry.put("quality", match.quality());
             }
+            return entry;
+        }).collect(Collectors.toList()));
+        if (estimate.quality() > 0) {
+            result.put("estimatedJpegQuality", estimate.quality());
+            result.put("qualityEstimateDeviation", estimate.meanDeviation());
         }
         
-        // Normalize by the number of blocks
-        int numBlocks = ((width / 8) * (height / 8));
-        for (int i = 0; i < dctValues.length; i++) {
-            dctValues[i] /= numBlocks;
+        Optional<QuantizationTableDatabase.Signature> ijgMatch = matches.stream()
+                .filter(match -> QuantizationTableDatabase.IJG_SOURCE.equals(match.source()))
+                .findFirst();
+        // Neither outcome says who wrote the file: cameras and editors both use libjpeg's tables, and either may use their own
+        result.put("likelyResavedByEditor", null);
+        if (ijgMatch.isPresent()) {
+            result.put("editorVerdict", "Consistent with libjpeg at quality " + ijgMatch.get().quality()
+                    + " (cameras and editors both use these tables)");
+        } else {
+            result.put("editorVerdict", "Unknown: the quantization tables are not standard libjpeg scaling "
+                    + "(closest libjpeg quality " + estimate.quality() + ")");
         }
         
-        return dctValues;
+        return result;
+    }
+    
+    /** Borrows the shared decoded image until the lease is closed; callers must not draw into it. */
+    private DecodedImageCache.Lease readImage(File file) throws IOException {
+        return readImage(file, ImageDecodeOptions.FULL);
+    }
+    
+    private DecodedImageCache.Lease readImage(File file, ImageDecodeOptions options) throws IOException {
+        return decodedImageCache.borrow(file, options)
+                .orElseThrow(() -> new ForensicException("Unsupported or corrupt image file", HttpStatus.BAD_REQUEST));
+    }
+    
+    private static void toSourceCoordinates(CopyMoveRegion region, ImageDecodeOptions options) {
+        int subsampling = options.subsampling();
+        region.setSourceX(options.sourceX(region.getSourceX()));
+        region.setSourceY(options.sourceY(region.getSourceY()));
+        region.setTargetX(options.sourceX(region.getTargetX()));
+        region.setTargetY(options.sourceY(region.getTargetY()));
+        region.setWidth(region.getWidth() * subsampling);
+        region.setHeight(region.getHeight() * subsampling);
+        region.setShiftX(region.getShiftX() * subsampling);
+        region.setShiftY(region.getShiftY() * subsampling);
+    }
+    
+    private Map<String, Object> describePerceptualHashes(PerceptualHash.Hashes hashes) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("averageHash", PerceptualHash.toHex(hashes.average()));
+        result.put("differenceHash", PerceptualHash.toHex(hashes.difference()));
+        result.put("perceptualHash", PerceptualHash.toHex(hashes.perceptual()));
+        return result;
+    }
+    
+    private Map<String, Object> describeIndexEntry(PerceptualHashIndex.Entry entry) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("id", entry.id());
+        result.put("label", entry.label());
+        result.put("sha256", entry.sha256());
+        result.putAll(describePerceptualHashes(entry.hashes()));
+        result.put("addedAt", Instant.ofEpochMilli(entry.addedAt()).toString());
+        return result;
+    }
+    
+    private Map<String, int[]> describeQuantizationTables(JpegHeader header) {
+        Map<String, int[]> tables = new LinkedHashMap<>();
+        for (int id : header.getQuantizationTableOrder()) {
+            tables.put("table" + id, header.getQuantizationTable(id));
+        }
+        return tables;
     }
     
     private int[] generateHistogram(double[] dctCoefficients) {
@@ -705,4 +1106,54 @@ public class ImageForensicsService {
             return "Multiple compression cycles detected, with " + peaks.size() + " distinct peaks";
         }
     }
-}
\ No newline at end of file
+    
+    /** Running residual statistics over a three-row window that carries across strip boundaries. */
+    private static final class NoiseResidualStatistics implements ImageStripDecoder.StripConsumer {
+        
+        private float[] above;
+        private float[] middle;
+        private float[] below;
+        private int rowsSeen;
+        private double sum;
+        private double sumOfSquares;
+        private long count;
+        private int max;
+        
+        @Override
+        public void accept(int top, int rows, int width, float[] luma, int stride) {
+            for (int r = 0; r < rows; r++) {
+                float[] recycled = above;
+                above = middle;
+                middle = below;
+                below = recycled != null && recycled.length == width ? recycled : new float[width];
+                System.arraycopy(luma, r * stride, below, 0, width);
+                if (++rowsSeen >= 3) {
+                    accumulateRow();
+                }
+            }
+        }
+        
+        private void accumulateRow() {
+            for (int x = 1; x < middle.length - 1; x++) {
+                float neighbours = 0;
+                for (int dx = -1; dx <= 1; dx++) {
+                    neighbours += above[x + dx] + middle[x + dx] + below[x + dx];
+                }
+                int residual = Math.round(Math.abs(9 * middle[x] - neighbours));
+                sum += residual;
+                sumOfSquares += (double) residual * residual;
+                max = Math.max(max, residual);
+                count++;
+            }
+        }
+        
+        double mean() {
+            return count > 0 ? sum / count : 0;
+        }
+        
+        double standardDeviation() {
+            double mean = mean();
+            return count > 0 ? Math.sqrt(Math.max(0, sumOfSquares / count - mean * mean)) : 0;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.norseintel.cloud.service;
+
+import com.norseintel.cloud.exception.ForensicException;
+import com.norseintel.cloud.metrics.AnalysisContext;
+import com.norseintel.cloud.metrics.ForensicMetrics;
+import com.norseintel.cloud.model.image.ElaOutputMode;
+import com.norseintel.cloud.model.image.ImageDecodeOptions;
+import com.norseintel.cloud.model.image.ImageOutputFormat;
+import com.norseintel.cloud.model.image.NoiseResidualFilter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the individual image analyses on one stored upload at the same time, on the shared CPU pool, and folds
+ * their results into a single report. The analyses share the decoded image through the decode cache, each one gets the same timeout
+ * from the moment it starts, and a failed or timed-out analysis is reported in place without discarding the
+ * others. Timed-out analyses are abandoned rather than interrupted, since an interrupt during class loading
+ * leaves the class unloadable; the stored upload is deleted once the last of them has finished with it.
+ */
+@Service
+@Slf4j
+public class ImageTriageService {
+    
+    public static final List<String> ANALYSES = List.of("metadata", "jpegStructure", "errorLevelAnalysis", "noise",
+            "noiseMap", "compressionHistory", "patterns", "thumbnail", "hashes");
+    
+    private static final float ELA_QUALITY = 0.95f;
+    private static final int ELA_BLOCK_SIZE = 16;
+    private static final int HEATMAP_CELL_SIZE = 64;
+    private static final int NOISE_BLOCK_SIZE = 32;
+    
+    private final FileStorageService fileStorageService;
+    private final ImageForensicsService imageForensicsService;
+    private final CryptographyService cryptographyService;
+    private final CpuBoundExecutor cpuBoundExecutor;
+    private final ForensicMetrics forensicMetrics;
+    
+    @Value("${norseintel.image.triage.analyzer-timeout:60s}")
+    private Duration defaultTimeout;
+    
+    public ImageTriageService(FileStorageService fileStorageService, ImageForensicsService imageForensicsService,
+                              CryptographyService cryptographyService, ForensicMetrics forensicMetrics,
+                              CpuBoundExecutor cpuBoundExecutor) {
+        this.fileStorageService = fileStorageService;
+        this.imageForensicsService = imageForensicsService;
+        this.cryptographyService = cryptographyService;
+        this.cpuBoundExecutor = cpuBoundExecutor;
+        this.forensicMetrics = forensicMetrics;
+    }
+    
+    /** The decode options apply to the pixel analyses (noise, noise map and patterns); the others always read the whole file. */
+    public Map<String, Object> triage(MultipartFile file, List<String> requestedAnalyses, Integer timeoutSeconds, ImageDecodeOptions options) {
+        List<String> analyses = requestedAnalyses == null || requestedAnalyses.isEmpty() ? ANALYSES : requestedAnalyses;
+        for (String analysis : analyses) {
+            if (!ANALYSES.contains(analysis)) {
+                throw new ForensicException("Unknown analysis: " + analysis + " (supported: " + String.join(", ", ANALYSES) + ")",
+                        HttpStatus.BAD_REQUEST);
+            }
+        }
+        if (timeoutSeconds != null && timeoutSeconds < 1) {
+            throw new ForensicException("Timeout must be at least one second", HttpStatus.BAD_REQUEST);
+        }
+        Duration timeout = timeoutSeconds != null ? Duration.ofSeconds(timeoutSeconds) : defaultTimeout;
+        
+        SharedUpload stored = new SharedUpload(fileStorageService.storeFile(file));
+        try {
+            return runAnalyses(stored, file, analyses, timeout, options);
+        } finally {
+            stored.release();
+        }
+    }
+    
+    private Map<String, Object> runAnalyses(SharedUpload stored, MultipartFile upload, List<String> analyses, Duration timeout,
+                                            ImageDecodeOptions options) {
+        long start = System.nanoTime();
+        File file = stored.file;
+        boolean isJpeg = FilenameUtils.isExtension(file.getName().toLowerCase(), "jpg", "jpeg");
+        
+        AnalysisContext context = AnalysisContext.current();
+        Map<String, AnalyzerRun> runs = new LinkedHashMap<>();
+        for (String analysis : analyses) {
+            if (analysis.equals("errorLevelAnalysis") && !isJpeg) {
+                continue;
+            }
+            AnalyzerRun run = new AnalyzerRun();
+            Callable<Object> task = analyzer(analysis, file, options);
+            AnalysisContext taskContext = context.child(context.getEndpoint() + "/" + analysis);
+            stored.retain();
+            try {
+                run.future = cpuBoundExecutor.submit(() -> {
+                    if (!run.start()) {
+                        return null;
+                    }
+                    AnalysisContext.Scope scope = taskContext.attach();
+                    try (scope) {
+                        return forensicMetrics.analysis(task::call);
+                    } finally {
+                        run.durationNanos = System.nanoTime() - run.startedAt;
+                        stored.release();
+                    }
+                });
+            } catch (ForensicException e) {
+                stored.release();
+                withdrawAll(runs.values(), stored);
+                throw e;
+            }
+            runs.put(analysis, run);
+        }
+        
+        Map<String, Object> reports = new LinkedHashMap<>();
+        List<String> completed = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        List<String> timedOut = new ArrayList<>();
+        
+        for (String analysis : analyses) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            AnalyzerRun run = runs.get(analysis);
+            if (run == null) {
+                report.put("status", "skipped");
+                report.put("reason", "Error Level Analysis only supports JPEG images");
+                reports.put(analysis, report);
+                continue;
+            }
+            
+            try {
+                Object result = await(run, timeout.toNanos(), stored);
+                report.put("status", "completed");
+                report.put("durationMs", run.durationNanos / 1_000_000);
+                report.put("result", result);
+                completed.add(analysis);
+            } catch (TimeoutException e) {
+                report.put("status", "timeout");
+                report.put("timeoutMs", timeout.toMillis());
+                if (run.startedAt == 0) {
+                    report.put("reason", "The analysis did not start within the timeout");
+                }
+                timedOut.add(analysis);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                log.warn("Triage analysis {} failed for {}: {}", analysis, upload.getOriginalFilename(), cause.getMessage());
+                report.put("status", "failed");
+                report.put("error", cause.getMessage());
+                report.put("durationMs", run.durationNanos / 1_000_000);
+                failed.add(analysis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                withdrawAll(runs.values(), stored);
+                throw new ForensicException("Triage was interrupted", e, HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            reports.put(analysis, report);
+        }
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("fileName", upload.getOriginalFilename());
+        result.put("fileSize", upload.getSize());
+        result.put("complete", failed.isEmpty() && timedOut.isEmpty());
+        result.put("completedAnalyses", completed);
+        result.put("failedAnalyses", failed);
+        result.put("timedOutAnalyses", timedOut);
+        if (!options.isFull()) {
+            result.put("decodeOptions", options.describe());
+        }
+        result.put("totalDurationMs", (System.nanoTime() - start) / 1_000_000);
+        result.put("analyses", reports);
+        return result;
+    }
+    
+    /**
+     * The analysis result, waiting at most the timeout from when the analysis started. Time spent queued behind
+     * other analyses does not count, but an analysis that has not started within the timeout is withdrawn.
+     */
+    private static Object await(AnalyzerRun run, long timeoutNanos, SharedUpload stored)
+            throws ExecutionException, InterruptedException, TimeoutException {
+        long queueRemaining = run.submittedAt + timeoutNanos - System.nanoTime();
+        if (!run.started.await(Math.max(0, queueRemaining), TimeUnit.NANOSECONDS)) {
+            if (run.withdraw()) {
+                stored.release();
+                throw new TimeoutException();
+            }
+            // A worker claimed it just now and is about to record its start
+            run.started.await();
+        }
+        try {
+            return run.future.get(Math.max(0, run.startedAt + timeoutNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // Left to finish on its own; interrupting it could break class loading in the worker
+            run.future.cancel(false);
+            throw e;
+        }
+    }
+    
+    private static void withdrawAll(Iterable<AnalyzerRun> runs, SharedUpload stored) {
+        for (AnalyzerRun run : runs) {
+            if (run.withdraw()) {
+                stored.release();
+            }
+        }
+    }
+    
+    private Callable<Object> analyzer(String analysis, File file, ImageDecodeOptions options) {
+        return switch (analysis) {
+            case "metadata" -> () -> imageForensicsService.extractMetadata(file);
+            case "jpegStructure" -> () -> imageForensicsService.analyzeJpegStructure(file);
+            case "errorLevelAnalysis" -> () -> imageForensicsService.performErrorLevelAnalysis(file, ELA_QUALITY, ElaOutputMode.BLOCKS, ELA_BLOCK_SIZE, ImageOutputFormat.PNG);
+            case "noise" -> () -> imageForensicsService.summarizeNoise(file, options);
+            case "noiseMap" -> () -> imageForensicsService.analyzeNoiseResidual(file, NoiseResidualFilter.LAPLACIAN, NOISE_BLOCK_SIZE, options);
+            case "compressionHistory" -> () -> imageForensicsService.analyzeCompressionHistory(file, HEATMAP_CELL_SIZE);
+            case "patterns" -> () -> imageForensicsService.detectPatterns(file, options);
+            case "thumbnail" -> () -> imageForensicsService.analyzeThumbnail(file);
+            case "hashes" -> () -> {
+                Map<String, Object> hashes = new LinkedHashMap<>(cryptographyService.calculateMultipleHashes(file));
+                hashes.putAll(imageForensicsService.calculatePerceptualHashes(file));
+                return hashes;
+            };
+            default -> throw new IllegalArgumentException(analysis);
+        };
+    }
+    
+    /** One analysis on the CPU pool: it runs only if a worker claims it before the request withdraws it. */
+    private static final class AnalyzerRun {
+        
+        private final long submittedAt = System.nanoTime();
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile long startedAt;
+        private volatile long durationNanos;
+        private Future<Object> future;
+        
+        private boolean start() {
+            if (!claimed.compareAndSet(false, true)) {
+                return false;
+            }
+            startedAt = System.nanoTime();
+            started.countDown();
+            return true;
+        }
+        
+        /** Keeps an analysis that has not started from ever starting; false if a worker already has it. */
+        private boolean withdraw() {
+            if (!claimed.compareAndSet(false, true)) {
+                return false;
+            }
+            future.cancel(false);
+            return true;
+        }
+    }
+    
+    /** The stored upload, deleted once the request and every analysis that started on it have let go. */
+    private final class SharedUpload {
+        
+        private final File file;
+        private final AtomicInteger holders = new AtomicInteger(1);
+        
+        private SharedUpload(File file) {
+            this.file = file;
+        }
+        
+        private void retain() {
+            holders.incrementAndGet();
+        }
+        
+        private void release() {
+            if (holders.decrementAndGet() == 0) {
+                fileStorageService.deleteFile(file);
+            }
+        }
+    }
+}
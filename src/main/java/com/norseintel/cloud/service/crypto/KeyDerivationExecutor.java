@@ -0,0 +1,228 @@
+package com.norseintel.cloud.service.crypto;
+
+import com.norseintel.cloud.exception.ForensicException;
+import com.norseintel.cloud.metrics.AnalysisContext;
+import com.norseintel.cloud.metrics.ForensicMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs PBKDF2 work (password hashing, verification and password-based encryption) on a small pool of its own,
+ * so that bursts of it cannot take the CPU pool or the request threads from the rest of the API. Tasks are
+ * queued per caller and the workers serve callers in turn, one task each, so a caller with a large batch
+ * delays someone else's single request by at most one task per worker. A caller may have a limited number of
+ * tasks pending and gets 429 beyond that; once the queue as a whole is full, further work is rejected with 503.
+ *
+ * <p>Each task is timed as an analysis under the {@link AnalysisContext} of the calling thread.
+ */
+@Component
+public final class KeyDerivationExecutor {
+
+    private record Task(String caller, FutureTask<?> future, long queuedAt) {
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    // Callers with queued tasks, in the order they are served; a served caller moves to the back
+    private final LinkedHashMap<String, ArrayDeque<Task>> queues = new LinkedHashMap<>();
+    // Queued and running tasks per caller
+    private final Map<String, Integer> pending = new HashMap<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final ForensicMetrics forensicMetrics;
+    private final int maxPendingPerCaller;
+    private final int maxQueued;
+    private final Timer queueWait;
+    private final Counter callerRejections;
+    private final Counter queueRejections;
+
+    private volatile int queued;
+    private volatile int active;
+
+    public KeyDerivationExecutor(ForensicMetrics forensicMetrics, MeterRegistry meterRegistry,
+                                 @Value("${norseintel.crypto.kdf.threads:0}") int threads,
+                                 @Value("${norseintel.crypto.kdf.max-pending-per-caller:128}") int maxPendingPerCaller,
+                                 @Value("${norseintel.crypto.kdf.max-queued:512}") int maxQueued) {
+        this.forensicMetrics = forensicMetrics;
+        this.maxPendingPerCaller = Math.max(1, maxPendingPerCaller);
+        this.maxQueued = Math.max(1, maxQueued);
+
+        Gauge.builder("norseintel.crypto.kdf.queued", this, executor -> executor.queued)
+                .description("Key derivations waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("norseintel.crypto.kdf.active", this, executor -> executor.active)
+                .description("Key derivations running")
+                .register(meterRegistry);
+        this.queueWait = Timer.builder("norseintel.crypto.kdf.queue.wait")
+                .description("Time key derivations waited for a worker")
+                .register(meterRegistry);
+        this.callerRejections = rejections(meterRegistry, "caller-quota");
+        this.queueRejections = rejections(meterRegistry, "queue-full");
+
+        // Half the cores by default, so that the other half stays free for everything else
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        for (int i = 1; i <= poolSize; i++) {
+            Thread worker = new Thread(this::work, "kdf-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /** Runs the task for the caller and waits for its result; exceptions thrown by the task are rethrown as they are. */
+    public <T> T call(String caller, Callable<T> task) {
+        return callAll(caller, List.of(task)).get(0);
+    }
+
+    /**
+     * Queues all tasks for the caller at once, so that they run in parallel as workers become free, and waits for
+     * their results in order. Either all tasks are accepted or none is.
+     */
+    public <T> List<T> callAll(String caller, List<? extends Callable<T>> tasks) {
+        AnalysisContext context = AnalysisContext.current();
+        List<FutureTask<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(new FutureTask<>(() -> {
+                AnalysisContext.Scope scope = context.attach();
+                try (scope) {
+                    return forensicMetrics.analysis(task::call);
+                }
+            }));
+        }
+        enqueue(caller, futures);
+
+        List<T> results = new ArrayList<>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                // Tasks that have not started yet are dropped; running ones are left to finish
+                futures.subList(i, futures.size()).forEach(future -> future.cancel(false));
+                Thread.currentThread().interrupt();
+                throw new ForensicException("Interrupted while waiting for key derivation", e, HttpStatus.SERVICE_UNAVAILABLE);
+            } catch (ExecutionException e) {
+                futures.subList(i + 1, futures.size()).forEach(future -> future.cancel(false));
+                throw unwrap(e);
+            }
+        }
+        return results;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.forEach(Thread::interrupt);
+    }
+
+    private void enqueue(String caller, List<? extends FutureTask<?>> futures) {
+        lock.lock();
+        try {
+            int callerPending = pending.getOrDefault(caller, 0);
+            if (callerPending + futures.size() > maxPendingPerCaller) {
+                callerRejections.increment();
+                throw new ForensicException("Too many pending password operations for this caller, please retry later",
+                        HttpStatus.TOO_MANY_REQUESTS);
+            }
+            if (queued + futures.size() > maxQueued) {
+                queueRejections.increment();
+                throw new ForensicException("Server is busy with password operations, please retry later", HttpStatus.SERVICE_UNAVAILABLE);
+            }
+
+            ArrayDeque<Task> queue = queues.computeIfAbsent(caller, key -> new ArrayDeque<>());
+            long now = System.nanoTime();
+            futures.forEach(future -> queue.add(new Task(caller, future, now)));
+            pending.put(caller, callerPending + futures.size());
+            queued += futures.size();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Task task;
+            try {
+                task = next();
+            } catch (InterruptedException e) {
+                return;
+            }
+            queueWait.record(System.nanoTime() - task.queuedAt(), TimeUnit.NANOSECONDS);
+            try {
+                // A cancelled task does not run; failures end up in its future
+                task.future().run();
+            } finally {
+                finished(task.caller());
+            }
+        }
+    }
+
+    // Takes the next task of the caller at the front and moves that caller to the back
+    private Task next() throws InterruptedException {
+        lock.lock();
+        try {
+            while (queues.isEmpty()) {
+                available.await();
+            }
+            Iterator<Map.Entry<String, ArrayDeque<Task>>> callers = queues.entrySet().iterator();
+            Map.Entry<String, ArrayDeque<Task>> first = callers.next();
+            Task task = first.getValue().poll();
+            callers.remove();
+            if (!first.getValue().isEmpty()) {
+                queues.put(first.getKey(), first.getValue());
+            }
+            queued--;
+            active++;
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void finished(String caller) {
+        lock.lock();
+        try {
+            active--;
+            pending.computeIfPresent(caller, (key, count) -> count > 1 ? count - 1 : null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new ForensicException("Key derivation failed: " + cause.getMessage(), cause, HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    private static Counter rejections(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("norseintel.crypto.kdf.rejected")
+                .tag("reason", reason)
+                .description("Key derivations rejected because a caller quota or the queue was full")
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,152 @@
+package com.norseintel.cloud.service.crypto;
+
+import com.norseintel.cloud.config.AnalysisExecutorConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Key pairs generated ahead of demand, so that handing one out takes microseconds instead of the hundreds of
+ * milliseconds a 4096-bit RSA key costs. Each configured {@link KeyPairSpec} has its own pool. Whenever a pool
+ * drops below the low watermark, a low-priority worker refills it up to the high watermark. Every pair is handed
+ * out once; specs that are not pooled, and pools that have run dry, fall back to generating on the caller's
+ * thread.
+ */
+@Service
+@Slf4j
+public class KeyPairPool {
+
+    private final class Pool {
+
+        private final KeyPairSpec spec;
+        private final BlockingQueue<KeyPair> ready;
+        private final AtomicBoolean refilling = new AtomicBoolean();
+        private final Counter hits;
+        private final Counter misses;
+
+        private Pool(KeyPairSpec spec) {
+            this.spec = spec;
+            this.ready = new ArrayBlockingQueue<>(highWatermark);
+            Gauge.builder("norseintel.crypto.keypair.pool.depth", ready, BlockingQueue::size)
+                    .tag("spec", spec.toString())
+                    .description("Pre-generated key pairs ready to hand out")
+                    .register(meterRegistry);
+            this.hits = requests(spec, "hit");
+            this.misses = requests(spec, "miss");
+        }
+    }
+
+    private final Map<KeyPairSpec, Pool> pools = new LinkedHashMap<>();
+    private final RandomnessService randomnessService;
+    private final Executor refillExecutor;
+    private final MeterRegistry meterRegistry;
+    private final int lowWatermark;
+    private final int highWatermark;
+
+    public KeyPairPool(RandomnessService randomnessService,
+                       @Qualifier(AnalysisExecutorConfig.KEY_PAIR_REFILL_EXECUTOR) Executor refillExecutor,
+                       MeterRegistry meterRegistry,
+                       @Value("${norseintel.crypto.keypair-pool.specs:RSA:2048,RSA:4096,EC:secp256r1}") List<String> specs,
+                       @Value("${norseintel.crypto.keypair-pool.low-watermark:4}") int lowWatermark,
+                       @Value("${norseintel.crypto.keypair-pool.high-watermark:16}") int highWatermark) {
+        this.randomnessService = randomnessService;
+        this.refillExecutor = refillExecutor;
+        this.meterRegistry = meterRegistry;
+        this.highWatermark = Math.max(1, highWatermark);
+        this.lowWatermark = Math.max(0, Math.min(lowWatermark, this.highWatermark));
+
+        for (String spec : specs) {
+            if (!spec.isBlank()) {
+                KeyPairSpec keyPairSpec = KeyPairSpec.parse(spec);
+                pools.put(keyPairSpec, new Pool(keyPairSpec));
+            }
+        }
+        // Start filling right away, so the first requests after startup already find pairs
+        pools.values().forEach(this::startRefill);
+    }
+
+    /** A pre-generated pair if the spec is pooled and its pool is not empty. */
+    public Optional<KeyPair> poll(KeyPairSpec spec) {
+        Pool pool = pools.get(spec);
+        if (pool == null) {
+            return Optional.empty();
+        }
+        KeyPair keyPair = pool.ready.poll();
+        (keyPair != null ? pool.hits : pool.misses).increment();
+        if (pool.ready.size() < lowWatermark) {
+            startRefill(pool);
+        }
+        return Optional.ofNullable(keyPair);
+    }
+
+    /** Generates a pair on the calling thread, for misses and specs that are not pooled. */
+    public KeyPair generate(KeyPairSpec spec) throws GeneralSecurityException {
+        return generate(spec, "request");
+    }
+
+    private KeyPair generate(KeyPairSpec spec, String source) throws GeneralSecurityException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        KeyPair keyPair = spec.generate(randomnessService.secureRandom());
+        // Curves come from requests, so only pooled specs get a tag of their own
+        sample.stop(Timer.builder("norseintel.crypto.keypair.generation")
+                .tags("spec", pools.containsKey(spec) ? spec.toString() : "other", "source", source)
+                .description("Time to generate a key pair, in the background or for a request")
+                .register(meterRegistry));
+        return keyPair;
+    }
+
+    private void startRefill(Pool pool) {
+        if (!pool.refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refillExecutor.execute(() -> refill(pool));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            pool.refilling.set(false);
+        }
+    }
+
+    private void refill(Pool pool) {
+        boolean failed = false;
+        try {
+            while (pool.ready.remainingCapacity() > 0 && !Thread.currentThread().isInterrupted()) {
+                pool.ready.offer(generate(pool.spec, "refill"));
+            }
+        } catch (GeneralSecurityException | RuntimeException e) {
+            // A misconfigured spec would fail again at once; the next poll will retry
+            log.warn("Refilling the {} key pair pool failed", pool.spec, e);
+            failed = true;
+        } finally {
+            pool.refilling.set(false);
+        }
+        // Pairs taken after the queue was found full but before the flag was cleared
+        if (!failed && pool.ready.size() < lowWatermark) {
+            startRefill(pool);
+        }
+    }
+
+    private Counter requests(KeyPairSpec spec, String result) {
+        return Counter.builder("norseintel.crypto.keypair.pool.requests")
+                .tags("spec", spec.toString(), "result", result)
+                .description("Key pairs requested from the pool, by whether one was ready")
+                .register(meterRegistry);
+    }
+}
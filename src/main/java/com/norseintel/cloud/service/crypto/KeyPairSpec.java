@@ -0,0 +1,64 @@
+package com.norseintel.cloud.service.crypto;
+
+import com.norseintel.cloud.exception.ForensicException;
+import org.springframework.http.HttpStatus;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Set;
+
+/** A kind of key pair: RSA with a modulus size, or EC on a named curve. */
+public record KeyPairSpec(String algorithm, String parameter) {
+
+    public static final String RSA = "RSA";
+    public static final String EC = "EC";
+
+    /** Modulus sizes that may be generated; anything larger takes seconds per key and anything smaller is too weak. */
+    public static final Set<Integer> RSA_KEY_SIZES = Set.of(2048, 3072, 4096);
+
+    public static KeyPairSpec rsa(int keySize) {
+        if (!RSA_KEY_SIZES.contains(keySize)) {
+            throw new ForensicException("Unsupported RSA key size: " + keySize + " (expected 2048, 3072 or 4096)", HttpStatus.BAD_REQUEST);
+        }
+        return new KeyPairSpec(RSA, String.valueOf(keySize));
+    }
+
+    public static KeyPairSpec ec(String curve) {
+        return new KeyPairSpec(EC, curve);
+    }
+
+    /** Parses {@code RSA:2048} or {@code EC:secp256r1}, the form used in configuration. */
+    public static KeyPairSpec parse(String spec) {
+        String[] parts = spec.trim().split(":", 2);
+        if (parts.length == 2 && parts[0].equalsIgnoreCase(RSA)) {
+            try {
+                return rsa(Integer.parseInt(parts[1].trim()));
+            } catch (NumberFormatException e) {
+                throw new ForensicException("Invalid RSA key size: " + parts[1], HttpStatus.BAD_REQUEST);
+            }
+        }
+        if (parts.length == 2 && parts[0].equalsIgnoreCase(EC)) {
+            return ec(parts[1].trim());
+        }
+        throw new ForensicException("Invalid key pair type: " + spec + " (expected RSA:<bits> or EC:<curve>)", HttpStatus.BAD_REQUEST);
+    }
+
+    public KeyPair generate(SecureRandom random) throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+        if (algorithm.equals(RSA)) {
+            generator.initialize(Integer.parseInt(parameter), random);
+        } else {
+            generator.initialize(new ECGenParameterSpec(parameter), random);
+        }
+        return generator.generateKeyPair();
+    }
+
+    /** Metric tag value, such as {@code RSA-2048}. */
+    @Override
+    public String toString() {
+        return algorithm + "-" + parameter;
+    }
+}
@@ -0,0 +1,124 @@
+package com.norseintel.cloud.service.crypto;
+
+import com.norseintel.cloud.exception.ForensicException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Randomness for keys, salts, IVs and one-time passwords. A {@code new SecureRandom()} per call seeds itself
+ * from the system entropy source on first use and otherwise funnels every thread through the one shared native
+ * PRNG. Instead, this keeps a fixed set of DRBG instances (Hash_DRBG, 256-bit strength), instantiated and seeded
+ * at startup, and spreads callers across them at random so concurrent requests rarely wait on the same lock.
+ * Each instance is reseeded from the entropy source on a background thread at a fixed interval, staggered so
+ * that no two reseed at once.
+ */
+@Service
+@Slf4j
+public class RandomnessService {
+
+    private static final int STRENGTH = 256;
+    private static final int DIGIT_BOUND = 250;
+
+    private final SecureRandom[] stripes;
+    private final ScheduledExecutorService reseeder;
+
+    public RandomnessService(@Value("${norseintel.crypto.random.stripes:0}") int stripeCount,
+                             @Value("${norseintel.crypto.random.reseed-interval:1h}") Duration reseedInterval) {
+        int count = stripeCount > 0 ? stripeCount : Runtime.getRuntime().availableProcessors();
+        this.stripes = new SecureRandom[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = instantiate(i);
+        }
+
+        this.reseeder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "drbg-reseed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalNanos = reseedInterval.toNanos();
+        for (int i = 0; i < count; i++) {
+            SecureRandom stripe = stripes[i];
+            long initialDelay = intervalNanos + intervalNanos * i / count;
+            reseeder.scheduleWithFixedDelay(() -> reseed(stripe), initialDelay, intervalNanos, TimeUnit.NANOSECONDS);
+        }
+        log.info("Seeded {} DRBG instances, reseeded every {}", count, reseedInterval);
+    }
+
+    /** A seeded DRBG for JCA APIs that take their own {@link SecureRandom}, such as key generators. */
+    public SecureRandom secureRandom() {
+        return stripes[ThreadLocalRandom.current().nextInt(stripes.length)];
+    }
+
+    public byte[] nextBytes(int length) {
+        byte[] bytes = new byte[length];
+        secureRandom().nextBytes(bytes);
+        return bytes;
+    }
+
+    /** Fills all buffers, a salt and an IV say, from a single instance. */
+    public void fill(byte[]... buffers) {
+        SecureRandom random = secureRandom();
+        for (byte[] buffer : buffers) {
+            random.nextBytes(buffer);
+        }
+    }
+
+    /** Uniformly random decimal digits, drawn in bulk rather than one call per digit. */
+    public String digits(int length) {
+        StringBuilder digits = new StringBuilder(length);
+        SecureRandom random = secureRandom();
+        byte[] bytes = new byte[length + length / 2 + 1];
+        while (digits.length() < length) {
+            random.nextBytes(bytes);
+            for (int i = 0; i < bytes.length && digits.length() < length; i++) {
+                int value = bytes[i] & 0xff;
+                // Values of 250 and up would favour the low digits
+                if (value < DIGIT_BOUND) {
+                    digits.append((char) ('0' + value % 10));
+                }
+            }
+        }
+        return digits.toString();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reseeder.shutdownNow();
+    }
+
+    private static SecureRandom instantiate(int stripe) {
+        // The personalization string keeps instances apart even if the entropy source repeated itself
+        byte[] personalization = ("norseintel-drbg-" + stripe + "-" + System.nanoTime()).getBytes(StandardCharsets.US_ASCII);
+        try {
+            SecureRandom random = SecureRandom.getInstance("DRBG",
+                    DrbgParameters.instantiation(STRENGTH, DrbgParameters.Capability.RESEED_ONLY, personalization));
+            // DRBGs instantiate lazily, so draw once to seed now rather than on the first request
+            random.nextBytes(new byte[STRENGTH / 8]);
+            return random;
+        } catch (NoSuchAlgorithmException e) {
+            throw new ForensicException("DRBG is not available: " + e.getMessage(), e, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private static void reseed(SecureRandom stripe) {
+        try {
+            stripe.reseed();
+        } catch (RuntimeException e) {
+            // The instance stays usable on its current seed; the next interval tries again
+            log.warn("Reseeding a DRBG instance failed", e);
+        }
+    }
+}
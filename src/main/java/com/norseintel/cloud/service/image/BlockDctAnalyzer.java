@@ -0,0 +1,262 @@
+package com.norseintel.cloud.service.image;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Full-resolution 8x8 block DCT over the JPEG grid. Besides the mean coefficient magnitudes it estimates
+ * the quantization step of the low-frequency AC coefficients and scores each block by how far its
+ * coefficients sit from multiples of those steps; regions compressed differently from the rest of the
+ * image stand out in the resulting heatmap. The coefficients come either from decoded pixels or, for
+ * JPEGs read with {@link JpegCoefficientReader}, from the dequantized coefficients in the file.
+ */
+public final class BlockDctAnalyzer {
+    
+    private static final int BLOCK = Dct8x8.BLOCK_SIZE;
+    // Zig-zag positions 1..14: the AC coefficients that survive quantization in most JPEGs
+    public static final int LOW_FREQUENCY_COEFFICIENTS = 14;
+    private static final int MAX_QUANTIZATION_STEP = 64;
+    private static final int MAX_ESTIMATION_BLOCKS = 20000;
+    private static final int MIN_ESTIMATION_SAMPLES = 100;
+    private static final double MIN_STEP_SCORE = 0.3;
+    private static final double MIN_INFORMATIVE_MAGNITUDE = 1.0;
+    private static final double SUSPICIOUS_CELL_SIGMA = 3.0;
+    private static final int MAX_SUSPICIOUS_CELLS = 100;
+    
+    private BlockDctAnalyzer() {
+    }
+    
+    /** Analyzes the BT.601 luma of the image, the plane a JPEG encoder quantizes most finely. */
+    public static Result analyze(BufferedImage image, int cellSize) {
+        int width = image.getWidth();
+        byte[] luma = LumaPlane.extract(image);
+        int blocksWide = width / BLOCK;
+        int blocksHigh = image.getHeight() / BLOCK;
+        int blockCount = blocksWide * blocksHigh;
+        
+        double[][] rowMagnitudes = new double[blocksHigh][Dct8x8.COEFFICIENTS];
+        float[] lowFrequency = new float[blockCount * LOW_FREQUENCY_COEFFICIENTS];
+        
+        IntStream.range(0, blocksHigh).parallel().forEach(blockY -> {
+            double[] block = new double[Dct8x8.COEFFICIENTS];
+            double[] coefficients = new double[Dct8x8.COEFFICIENTS];
+            double[] scratch = new double[Dct8x8.COEFFICIENTS];
+            double[] magnitudes = rowMagnitudes[blockY];
+            
+            for (int blockX = 0; blockX < blocksWide; blockX++) {
+                for (int j = 0; j < BLOCK; j++) {
+                    int offset = (blockY * BLOCK + j) * width + blockX * BLOCK;
+                    for (int i = 0; i < BLOCK; i++) {
+                        block[j * BLOCK + i] = luma[offset + i] & 0xFF;
+                    }
+                }
+                
+                Dct8x8.forward(block, coefficients, scratch);
+                
+                for (int k = 0; k < Dct8x8.COEFFICIENTS; k++) {
+                    magnitudes[k] += Math.abs(coefficients[k]);
+                }
+                
+                int base = (blockY * blocksWide + blockX) * LOW_FREQUENCY_COEFFICIENTS;
+                for (int k = 0; k < LOW_FREQUENCY_COEFFICIENTS; k++) {
+                    lowFrequency[base + k] = (float) coefficients[Dct8x8.ZIGZAG[k + 1]];
+                }
+            }
+        });
+        
+        double[] averageMagnitudes = new double[Dct8x8.COEFFICIENTS];
+        for (double[] row : rowMagnitudes) {
+            for (int k = 0; k < Dct8x8.COEFFICIENTS; k++) {
+                averageMagnitudes[k] += row[k];
+            }
+        }
+        for (int k = 0; k < Dct8x8.COEFFICIENTS; k++) {
+            averageMagnitudes[k] /= Math.max(1, blockCount);
+        }
+        
+        int[] minimumSteps = new int[LOW_FREQUENCY_COEFFICIENTS];
+        Arrays.fill(minimumSteps, 1);
+        return analyzeLowFrequency(averageMagnitudes, lowFrequency, blocksWide, blocksHigh, minimumSteps, cellSize);
+    }
+    
+    /**
+     * Builds the result from precomputed coefficients: {@code lowFrequency} holds zig-zag positions
+     * 1..{@value #LOW_FREQUENCY_COEFFICIENTS} of every block, row by row. Only steps larger than
+     * {@code minimumSteps} are considered, which lets dequantized coefficients skip the file's own table.
+     */
+    public static Result analyzeLowFrequency(double[] averageMagnitudes, float[] lowFrequency, int blocksWide, int blocksHigh,
+                                             int[] minimumSteps, int cellSize) {
+        int blockCount = blocksWide * blocksHigh;
+        int[] steps = estimateQuantizationSteps(lowFrequency, blockCount, minimumSteps);
+        float[] blockResiduals = calculateBlockResiduals(lowFrequency, blockCount, steps);
+        
+        return new Result(averageMagnitudes, steps, blocksWide, blocksHigh,
+                buildHeatmap(blockResiduals, blocksWide, blocksHigh, Math.max(1, cellSize / BLOCK)));
+    }
+    
+    private static int[] estimateQuantizationSteps(float[] residualCoefficients, int blockCount, int[] minimumSteps) {
+        int[] steps = new int[LOW_FREQUENCY_COEFFICIENTS];
+        int stride = Math.max(1, blockCount / MAX_ESTIMATION_BLOCKS);
+        
+        for (int k = 0; k < LOW_FREQUENCY_COEFFICIENTS; k++) {
+            double[] scores = new double[MAX_QUANTIZATION_STEP + 1];
+            int[] samples = new int[MAX_QUANTIZATION_STEP + 1];
+            
+            for (int b = 0; b < blockCount; b += stride) {
+                double c = residualCoefficients[b * LOW_FREQUENCY_COEFFICIENTS + k];
+                double magnitude = Math.abs(c);
+                // Only coefficients that would not quantize to zero carry evidence for a step
+                int maxStep = (int) Math.min(MAX_QUANTIZATION_STEP, Math.floor(2 * magnitude));
+                for (int q = 2; q <= maxStep; q++) {
+                    scores[q] += Math.cos(2 * Math.PI * c / q);
+                    samples[q]++;
+                }
+            }
+            
+            int minimumStep = Math.max(2, minimumSteps[k] + 1);
+            double best = 0;
+            for (int q = 2; q <= MAX_QUANTIZATION_STEP; q++) {
+                if (q < minimumStep || samples[q] < MIN_ESTIMATION_SAMPLES) {
+                    scores[q] = 0;
+                    continue;
+                }
+                scores[q] /= samples[q];
+                best = Math.max(best, scores[q]);
+            }
+            if (best < MIN_STEP_SCORE) {
+                continue;
+            }
+            
+            // Divisors of the true step score just as well, so take the largest step close to the best score
+            for (int q = MAX_QUANTIZATION_STEP; q >= minimumStep; q--) {
+                if (scores[q] >= 0.9 * best) {
+                    steps[k] = q;
+                    break;
+                }
+            }
+        }
+        
+        return steps;
+    }
+    
+    private static float[] calculateBlockResiduals(float[] residualCoefficients, int blockCount, int[] steps) {
+        float[] residuals = new float[blockCount];
+        
+        IntStream.range(0, blockCount).parallel().forEach(b -> {
+            double sum = 0;
+            int count = 0;
+            for (int k = 0; k < LOW_FREQUENCY_COEFFICIENTS; k++) {
+                double c = residualCoefficients[b * LOW_FREQUENCY_COEFFICIENTS + k];
+                if (steps[k] == 0 || Math.abs(c) < MIN_INFORMATIVE_MAGNITUDE) {
+                    continue;
+                }
+                // 0 when the coefficient sits on a multiple of the step, 1 when it sits halfway between
+                sum += (1 - Math.cos(2 * Math.PI * c / steps[k])) / 2;
+                count++;
+            }
+            residuals[b] = count > 0 ? (float) (sum / count) : -1f;
+        });
+        
+        return residuals;
+    }
+    
+    private static Heatmap buildHeatmap(float[] blockResiduals, int blocksWide, int blocksHigh, int cellBlocks) {
+        int cellsWide = (blocksWide + cellBlocks - 1) / cellBlocks;
+        int cellsHigh = (blocksHigh + cellBlocks - 1) / cellBlocks;
+        float[][] values = new float[cellsHigh][cellsWide];
+        
+        float[] informative = new float[cellsWide * cellsHigh];
+        int informativeCells = 0;
+        
+        for (int cellY = 0; cellY < cellsHigh; cellY++) {
+            for (int cellX = 0; cellX < cellsWide; cellX++) {
+                double cellSum = 0;
+                int cellCount = 0;
+                for (int by = cellY * cellBlocks; by < Math.min(blocksHigh, (cellY + 1) * cellBlocks); by++) {
+                    for (int bx = cellX * cellBlocks; bx < Math.min(blocksWide, (cellX + 1) * cellBlocks); bx++) {
+                        float residual = blockResiduals[by * blocksWide + bx];
+                        if (residual >= 0) {
+                            cellSum += residual;
+                            cellCount++;
+                        }
+                    }
+                }
+                
+                if (cellCount == 0) {
+                    values[cellY][cellX] = -1f;
+                    continue;
+                }
+                
+                float value = (float) (cellSum / cellCount);
+                values[cellY][cellX] = value;
+                informative[informativeCells++] = value;
+            }
+        }
+        
+        // Median and MAD rather than mean and standard deviation so a large spliced region cannot mask itself
+        double median = median(informative, informativeCells);
+        float[] absoluteDeviations = new float[informativeCells];
+        for (int i = 0; i < informativeCells; i++) {
+            absoluteDeviations[i] = (float) Math.abs(informative[i] - median);
+        }
+        double robustStdDev = 1.4826 * median(absoluteDeviations, informativeCells);
+        
+        List<Map<String, Object>> suspiciousCells = new ArrayList<>();
+        if (robustStdDev > 0) {
+            for (int cellY = 0; cellY < cellsHigh; cellY++) {
+                for (int cellX = 0; cellX < cellsWide; cellX++) {
+                    float value = values[cellY][cellX];
+                    if (value >= 0 && value > median + SUSPICIOUS_CELL_SIGMA * robustStdDev) {
+                        Map<String, Object> cell = new LinkedHashMap<>();
+                        cell.put("cellX", cellX);
+                        cell.put("cellY", cellY);
+                        cell.put("pixelX", cellX * cellBlocks * BLOCK);
+                        cell.put("pixelY", cellY * cellBlocks * BLOCK);
+                        cell.put("inconsistency", value);
+                        cell.put("deviation", (value - median) / robustStdDev);
+                        suspiciousCells.add(cell);
+                    }
+                }
+            }
+        }
+        suspiciousCells.sort((a, b) -> Double.compare((double) b.get("deviation"), (double) a.get("deviation")));
+        if (suspiciousCells.size() > MAX_SUSPICIOUS_CELLS) {
+            suspiciousCells = new ArrayList<>(suspiciousCells.subList(0, MAX_SUSPICIOUS_CELLS));
+        }
+        
+        return new Heatmap(cellBlocks * BLOCK, cellsWide, cellsHigh, values, median, robustStdDev, suspiciousCells);
+    }
+    
+    private static double median(float[] values, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        float[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        return (count % 2 == 1) ? sorted[count / 2] : (sorted[count / 2 - 1] + sorted[count / 2]) / 2.0;
+    }
+    
+    public record Result(double[] averageMagnitudes, int[] quantizationSteps, int blocksWide, int blocksHigh, Heatmap heatmap) {
+    }
+    
+    public record Heatmap(int cellSize, int cellsWide, int cellsHigh, float[][] values, double medianInconsistency,
+                          double robustStdDev, List<Map<String, Object>> suspiciousCells) {
+        
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("cellSize", cellSize);
+            map.put("cellsWide", cellsWide);
+            map.put("cellsHigh", cellsHigh);
+            map.put("values", values);
+            map.put("medianInconsistency", medianInconsistency);
+            map.put("robustStdDev", robustStdDev);
+            map.put("suspiciousCells", suspiciousCells);
+            return map;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,94 @@
+package com.norseintel.cloud.service.image;
+
+import com.norseintel.cloud.model.image.ColorFilter;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Renders any combination of colour filters in one pass over the source: every row is read once and
+ * written to each requested output, and equalization shares a single grey-level histogram. Outputs are
+ * {@code TYPE_INT_RGB} images filled through their backing arrays.
+ */
+public final class ColorFilterRenderer {
+    
+    private static final int HISTOGRAM_BAND_ROWS = 64;
+    
+    private ColorFilterRenderer() {
+    }
+    
+    public static Map<ColorFilter, BufferedImage> render(BufferedImage source, Set<ColorFilter> filters) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int[] equalization = filters.contains(ColorFilter.EQUALIZE) ? equalizationTable(source) : null;
+        
+        Map<ColorFilter, BufferedImage> outputs = new EnumMap<>(ColorFilter.class);
+        ColorFilter[] order = filters.toArray(new ColorFilter[0]);
+        int[][] targets = new int[order.length][];
+        for (int i = 0; i < order.length; i++) {
+            BufferedImage output = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            outputs.put(order[i], output);
+            targets[i] = ((DataBufferInt) output.getRaster().getDataBuffer()).getData();
+        }
+        
+        IntStream.range(0, height).parallel().forEach(y -> {
+            int[] row = source.getRGB(0, y, width, 1, null, 0, width);
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                int r = (rgb >> 16) & 0xFF;
+                int g = (rgb >> 8) & 0xFF;
+                int b = rgb & 0xFF;
+                for (int i = 0; i < order.length; i++) {
+                    targets[i][offset + x] = switch (order[i]) {
+                        case INVERT -> ((255 - r) << 16) | ((255 - g) << 8) | (255 - b);
+                        case EQUALIZE -> (equalization[r] << 16) | (equalization[g] << 8) | equalization[b];
+                        case RED -> rgb & 0xFF0000;
+                        case GREEN -> rgb & 0x00FF00;
+                        case BLUE -> rgb & 0x0000FF;
+                    };
+                }
+            }
+        });
+        
+        return outputs;
+    }
+    
+    /** Maps each level through the cumulative histogram of the mean of the three channels. */
+    private static int[] equalizationTable(BufferedImage source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int bands = (height + HISTOGRAM_BAND_ROWS - 1) / HISTOGRAM_BAND_ROWS;
+        
+        int[] histogram = IntStream.range(0, bands).parallel().mapToObj(band -> {
+            int[] counts = new int[256];
+            int[] row = new int[width];
+            for (int y = band * HISTOGRAM_BAND_ROWS; y < Math.min(height, (band + 1) * HISTOGRAM_BAND_ROWS); y++) {
+                source.getRGB(0, y, width, 1, row, 0, width);
+                for (int rgb : row) {
+                    counts[(((rgb >> 16) & 0xFF) + ((rgb >> 8) & 0xFF) + (rgb & 0xFF)) / 3]++;
+                }
+            }
+            return counts;
+        }).reduce(new int[256], (a, b) -> {
+            int[] sum = new int[256];
+            for (int i = 0; i < 256; i++) {
+                sum[i] = a[i] + b[i];
+            }
+            return sum;
+        });
+        
+        float pixelCount = (float) width * height;
+        int[] table = new int[256];
+        float cdf = 0;
+        for (int i = 0; i < 256; i++) {
+            cdf += histogram[i] / pixelCount;
+            table[i] = Math.round(cdf * 255);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,489 @@
+package com.norseintel.cloud.service.image;
+
+import com.norseintel.cloud.model.image.CopyMoveRegion;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * Copy-move forgery detection over overlapping 8x8 luma blocks. Each textured block is reduced to its
+ * quantized DC and first five zig-zag AC coefficients, packed with the block index into one {@code long},
+ * and the keys are sorted in parallel so identical features become neighbours. Matching pairs vote for
+ * their shift vector; shifts collecting enough blocks are reported as source/target region pairs.
+ */
+public final class CopyMoveDetector {
+    
+    private static final int BLOCK = Dct8x8.BLOCK_SIZE;
+    // DC plus zig-zag positions 1..5
+    private static final int FEATURE_COEFFICIENTS = 6;
+    private static final double DC_STEP = 8.0;
+    private static final double AC_STEP = 10.0;
+    private static final int AC_BITS = 6;
+    private static final int INDEX_BITS = 25;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+    private static final int SHIFT_BITS = 17;
+    private static final int SHIFT_OFFSET = 1 << (SHIFT_BITS - 1);
+    public static final int MAX_BLOCKS = 1 << INDEX_BITS;
+    private static final double MIN_BLOCK_STDDEV = 2.0;
+    private static final int MAX_RUN_LENGTH = 16;
+    private static final int MIN_SHIFT_DISTANCE = 16;
+    // Block origins, in pixels, a shift must explain before it is reported (a 16x16 patch of origins at stride 1)
+    private static final int MIN_MATCHED_AREA = 256;
+    private static final int MIN_CLUSTER_BLOCKS = 8;
+    private static final int MIN_CANDIDATE_BLOCKS = 4;
+    private static final int BAND_ROWS = 32;
+    private static final int PARTITION_BITS = 10;
+    private static final int PARTITION_BUCKETS = 1 << PARTITION_BITS;
+    private static final int MIN_REGION_EXTENT = 2 * BLOCK;
+    private static final double MIN_REGION_DENSITY = 0.03;
+    private static final int MAX_REGIONS = 20;
+    
+    private CopyMoveDetector() {
+    }
+    
+    public record Result(List<CopyMoveRegion> regions, int stride, int passes, int analyzedBlocks, int flatBlocks,
+                         int matchedPairs, boolean truncated) {
+    }
+    
+    /**
+     * Runs the detector holding at most {@code maxBlocks} block keys and as many matched pairs in memory,
+     * roughly {@code 16 * maxBlocks} bytes. When the image has more textured blocks than that, the feature
+     * space is hash-partitioned and each partition is matched in its own pass; identical features always
+     * share a partition, so no match is lost, at the cost of recomputing the features once per pass.
+     */
+    public static Result detect(BufferedImage image, int maxBlocks) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (width < BLOCK || height < BLOCK || width >= SHIFT_OFFSET || height >= SHIFT_OFFSET) {
+            return new Result(List.of(), 1, 0, 0, 0, 0, false);
+        }
+        
+        // Block indexes must fit their bit field; only images beyond that are sampled on a coarser grid
+        int stride = 1;
+        while ((long) ((width - BLOCK) / stride + 1) * ((height - BLOCK) / stride + 1) > MAX_BLOCKS) {
+            stride++;
+        }
+        int gridWide = (width - BLOCK) / stride + 1;
+        int gridHigh = (height - BLOCK) / stride + 1;
+        long gridBlocks = (long) gridWide * gridHigh;
+        
+        byte[] luma = LumaPlane.extract(image);
+        int budget = (int) Math.max(MIN_CANDIDATE_BLOCKS, Math.min(maxBlocks, gridBlocks));
+        int[] bucketPasses = new int[PARTITION_BUCKETS];
+        int passes = gridBlocks > budget ? assignPasses(luma, width, gridWide, gridHigh, stride, budget, bucketPasses) : 1;
+        
+        long[] keys = new long[budget];
+        PairBuffer pairs = new PairBuffer(budget);
+        int analyzed = 0;
+        int flat = 0;
+        boolean truncated = false;
+        
+        for (int pass = 0; pass < passes && !pairs.saturated; pass++) {
+            int currentPass = pass;
+            AtomicInteger filled = new AtomicInteger();
+            AtomicInteger flatBlocks = new AtomicInteger();
+            
+            forEachBlockRow(luma, width, gridWide, gridHigh, stride, (rowKeys, rowCount, rowFlat) -> {
+                int selected = 0;
+                for (int i = 0; i < rowCount; i++) {
+                    if (bucketPasses[bucketOf(rowKeys[i])] == currentPass) {
+                        rowKeys[selected++] = rowKeys[i];
+                    }
+                }
+                flatBlocks.addAndGet(rowFlat);
+                int offset = filled.getAndAdd(selected);
+                if (offset < keys.length) {
+                    System.arraycopy(rowKeys, 0, keys, offset, Math.min(selected, keys.length - offset));
+                }
+            });
+            
+            int count = Math.min(filled.get(), keys.length);
+            truncated |= filled.get() > keys.length;
+            analyzed += count;
+            flat = flatBlocks.get();
+            
+            // Sorting puts equal features next to each other
+            Arrays.parallelSort(keys, 0, count);
+            collectPairs(keys, count, gridWide, stride, pairs);
+        }
+        truncated |= pairs.saturated;
+        
+        Arrays.parallelSort(pairs.values, 0, pairs.size);
+        int minBlocks = Math.max(MIN_CLUSTER_BLOCKS, MIN_MATCHED_AREA / (stride * stride));
+        List<CopyMoveRegion> regions = clusterShifts(pairs.values, pairs.size, gridWide, stride, minBlocks);
+        
+        return new Result(regions, stride, passes, analyzed, flat, pairs.size, truncated);
+    }
+    
+    @FunctionalInterface
+    private interface BlockRowConsumer {
+        void accept(long[] rowKeys, int count, int flatBlocks);
+    }
+    
+    /**
+     * Computes the keys of each grid row in parallel bands, handing the textured ones to the consumer row by
+     * row. Every image row in a band is projected once onto the three horizontal basis functions the features
+     * use, so each block only needs the vertical half of the transform.
+     */
+    private static void forEachBlockRow(byte[] luma, int width, int gridWide, int gridHigh, int stride, BlockRowConsumer consumer) {
+        int bands = (gridHigh + BAND_ROWS - 1) / BAND_ROWS;
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            int firstRow = band * BAND_ROWS;
+            int lastRow = Math.min(gridHigh, firstRow + BAND_ROWS);
+            int top = firstRow * stride;
+            int imageRows = (lastRow - 1) * stride + BLOCK - top;
+            
+            // Per image row and block column: 8-pixel sum, sum of squares and the three basis projections
+            int[] sums = new int[imageRows * gridWide];
+            int[] squares = new int[imageRows * gridWide];
+            float[] projections = new float[imageRows * gridWide * 3];
+            for (int r = 0; r < imageRows; r++) {
+                int rowOffset = (top + r) * width;
+                for (int gridX = 0; gridX < gridWide; gridX++) {
+                    int offset = rowOffset + gridX * stride;
+                    int sum = 0;
+                    int sumSquares = 0;
+                    double s0 = 0;
+                    double s1 = 0;
+                    double s2 = 0;
+                    for (int i = 0; i < BLOCK; i++) {
+                        int value = luma[offset + i] & 0xFF;
+                        sum += value;
+                        sumSquares += value * value;
+                        s0 += value * Dct8x8.cosine(0, i);
+                        s1 += value * Dct8x8.cosine(1, i);
+                        s2 += value * Dct8x8.cosine(2, i);
+                    }
+                    int cell = r * gridWide + gridX;
+                    sums[cell] = sum;
+                    squares[cell] = sumSquares;
+                    projections[cell * 3] = (float) s0;
+                    projections[cell * 3 + 1] = (float) s1;
+                    projections[cell * 3 + 2] = (float) s2;
+                }
+            }
+            
+            long[] rowKeys = new long[gridWide];
+            for (int gridY = firstRow; gridY < lastRow; gridY++) {
+                int localTop = gridY * stride - top;
+                int count = 0;
+                int flat = 0;
+                for (int gridX = 0; gridX < gridWide; gridX++) {
+                    long key = blockKey(sums, squares, projections, gridWide, localTop, gridX, gridY * gridWide + gridX);
+                    if (key < 0) {
+                        flat++;
+                    } else {
+                        rowKeys[count++] = key;
+                    }
+                }
+                consumer.accept(rowKeys, count, flat);
+            }
+        });
+    }
+    
+    /**
+     * Counting pass: histograms the textured blocks over hash buckets of their features and packs
+     * consecutive buckets into passes that each fit the budget. Returns the number of passes.
+     */
+    private static int assignPasses(byte[] luma, int width, int gridWide, int gridHigh, int stride, int budget, int[] bucketPasses) {
+        AtomicLongArray counts = new AtomicLongArray(PARTITION_BUCKETS);
+        forEachBlockRow(luma, width, gridWide, gridHigh, stride, (rowKeys, rowCount, rowFlat) -> {
+            for (int i = 0; i < rowCount; i++) {
+                counts.incrementAndGet(bucketOf(rowKeys[i]));
+            }
+        });
+        
+        int pass = 0;
+        long load = 0;
+        for (int bucket = 0; bucket < PARTITION_BUCKETS; bucket++) {
+            long bucketCount = counts.get(bucket);
+            if (load > 0 && load + bucketCount > budget) {
+                pass++;
+                load = 0;
+            }
+            bucketPasses[bucket] = pass;
+            load += bucketCount;
+        }
+        return pass + 1;
+    }
+    
+    private static int bucketOf(long key) {
+        long features = key >>> INDEX_BITS;
+        return (int) ((features * 0x9E3779B97F4A7C15L) >>> (64 - PARTITION_BITS));
+    }
+    
+    private static void collectPairs(long[] keys, int count, int gridWide, int stride, PairBuffer pairs) {
+        int runStart = 0;
+        while (runStart < count && !pairs.saturated) {
+            long features = keys[runStart] >>> INDEX_BITS;
+            int runEnd = runStart + 1;
+            while (runEnd < count && keys[runEnd] >>> INDEX_BITS == features) {
+                runEnd++;
+            }
+            
+            // Long runs come from smooth gradients and repetitive texture, not from a cloned region
+            if (runEnd - runStart > 1 && runEnd - runStart <= MAX_RUN_LENGTH) {
+                for (int i = runStart; i < runEnd; i++) {
+                    for (int j = i + 1; j < runEnd; j++) {
+                        long pair = shiftPair((int) (keys[i] & INDEX_MASK), (int) (keys[j] & INDEX_MASK), gridWide, stride);
+                        if (pair >= 0 && !pairs.add(pair)) {
+                            return;
+                        }
+                    }
+                }
+            }
+            runStart = runEnd;
+        }
+    }
+    
+    /** Packed feature key for one block of a band, or -1 when the block is too flat to be distinctive. */
+    private static long blockKey(int[] sums, int[] squares, float[] projections, int gridWide, int localTop, int gridX, int index) {
+        int sum = 0;
+        int sumSquares = 0;
+        for (int j = 0; j < BLOCK; j++) {
+            int cell = (localTop + j) * gridWide + gridX;
+            sum += sums[cell];
+            sumSquares += squares[cell];
+        }
+        double mean = (double) sum / Dct8x8.COEFFICIENTS;
+        if ((double) sumSquares / Dct8x8.COEFFICIENTS - mean * mean < MIN_BLOCK_STDDEV * MIN_BLOCK_STDDEV) {
+            return -1;
+        }
+        
+        long features = 0;
+        boolean textured = false;
+        for (int z = 0; z < FEATURE_COEFFICIENTS; z++) {
+            int vertical = Dct8x8.ZIGZAG[z] / BLOCK;
+            int horizontal = Dct8x8.ZIGZAG[z] % BLOCK;
+            double coefficient = 0;
+            for (int j = 0; j < BLOCK; j++) {
+                coefficient += Dct8x8.cosine(vertical, j) * projections[((localTop + j) * gridWide + gridX) * 3 + horizontal];
+            }
+            
+            if (z == 0) {
+                // DC is 8 * mean, so 0..2040 fits eight bits at a step of 8
+                features = Math.min(255, (long) Math.floor(coefficient / DC_STEP + 0.5));
+            } else {
+                long level = (long) Math.floor(coefficient / AC_STEP + 0.5);
+                level = Math.max(-(1 << (AC_BITS - 1)), Math.min((1 << (AC_BITS - 1)) - 1, level));
+                textured |= z >= 3 && level != 0;
+                features = (features << AC_BITS) | (level & ((1 << AC_BITS) - 1));
+            }
+        }
+        
+        // Keys carrying only brightness and a linear gradient match any smooth patch of similar tone and slope
+        return textured ? (features << INDEX_BITS) | index : -1;
+    }
+    
+    /** Shift vector packed above the source block index, or -1 for blocks too close to be a clone. */
+    private static long shiftPair(int first, int second, int gridWide, int stride) {
+        int sourceX = (first % gridWide) * stride;
+        int sourceY = (first / gridWide) * stride;
+        int dx = (second % gridWide) * stride - sourceX;
+        int dy = (second / gridWide) * stride - sourceY;
+        int source = first;
+        
+        // Normalise so each clone pair votes for one shift direction regardless of which block sorted first
+        if (dy < 0 || (dy == 0 && dx < 0)) {
+            dx = -dx;
+            dy = -dy;
+            source = second;
+        }
+        if (dx * dx + dy * dy < MIN_SHIFT_DISTANCE * MIN_SHIFT_DISTANCE) {
+            return -1;
+        }
+        
+        return (shiftKey(dx, dy) << INDEX_BITS) | source;
+    }
+    
+    private static List<CopyMoveRegion> clusterShifts(long[] pairs, int pairCount, int gridWide, int stride, int minBlocks) {
+        List<ShiftCluster> clusters = new ArrayList<>();
+        int candidateBlocks = Math.max(MIN_CANDIDATE_BLOCKS, minBlocks / 16);
+        
+        int runStart = 0;
+        while (runStart < pairCount) {
+            long shift = pairs[runStart] >>> INDEX_BITS;
+            int runEnd = runStart + 1;
+            while (runEnd < pairCount && pairs[runEnd] >>> INDEX_BITS == shift) {
+                runEnd++;
+            }
+            
+            if (runEnd - runStart >= candidateBlocks) {
+                ShiftCluster cluster = new ShiftCluster((int) (shift & ((1 << SHIFT_BITS) - 1)) - SHIFT_OFFSET,
+                        (int) (shift >>> SHIFT_BITS));
+                for (int i = runStart; i < runEnd; i++) {
+                    int source = (int) (pairs[i] & INDEX_MASK);
+                    cluster.add((source % gridWide) * stride, (source / gridWide) * stride);
+                }
+                clusters.add(cluster);
+            }
+            runStart = runEnd;
+        }
+        
+        // Recompression and resampling scatter one clone over neighbouring shifts; fold each into the
+        // strongest cluster within one grid step, found by probing the shifts around it
+        clusters.sort(Comparator.comparingInt((ShiftCluster cluster) -> cluster.count).reversed());
+        Map<Long, ShiftCluster> heads = new HashMap<>();
+        List<ShiftCluster> merged = new ArrayList<>();
+        for (ShiftCluster cluster : clusters) {
+            ShiftCluster target = null;
+            for (int dy = -stride; dy <= stride && target == null; dy++) {
+                for (int dx = -stride; dx <= stride && target == null; dx++) {
+                    target = heads.get(shiftKey(cluster.dx + dx, cluster.dy + dy));
+                }
+            }
+            if (target != null) {
+                target.merge(cluster);
+            } else {
+                heads.put(shiftKey(cluster.dx, cluster.dy), cluster);
+                merged.add(cluster);
+            }
+        }
+        merged.sort(Comparator.comparingInt((ShiftCluster cluster) -> cluster.count).reversed());
+        
+        List<CopyMoveRegion> regions = new ArrayList<>();
+        for (ShiftCluster cluster : merged) {
+            if (cluster.count < minBlocks) {
+                break;
+            }
+            // Straight edges and periodic texture match along lines or lattices; a clone fills a compact area
+            int[] bounds = cluster.bounds();
+            int width = bounds[2] - bounds[0] + BLOCK;
+            int height = bounds[3] - bounds[1] + BLOCK;
+            if (width < MIN_REGION_EXTENT || height < MIN_REGION_EXTENT || cluster.density(bounds, stride) < MIN_REGION_DENSITY) {
+                continue;
+            }
+            regions.add(CopyMoveRegion.builder()
+                    .sourceX(bounds[0])
+                    .sourceY(bounds[1])
+                    .targetX(bounds[0] + cluster.dx)
+                    .targetY(bounds[1] + cluster.dy)
+                    .width(width)
+                    .height(height)
+                    .shiftX(cluster.dx)
+                    .shiftY(cluster.dy)
+                    .matchedBlocks(cluster.count)
+                    .build());
+            if (regions.size() == MAX_REGIONS) {
+                break;
+            }
+        }
+        
+        return regions;
+    }
+    
+    private static long shiftKey(int dx, int dy) {
+        return ((long) dy << SHIFT_BITS) | (dx + SHIFT_OFFSET);
+    }
+    
+    private static final class ShiftCluster {
+        private final int dx;
+        private final int dy;
+        private int count;
+        private int[] xs = new int[64];
+        private int[] ys = new int[64];
+        
+        private ShiftCluster(int dx, int dy) {
+            this.dx = dx;
+            this.dy = dy;
+        }
+        
+        private void add(int x, int y) {
+            if (count == xs.length) {
+                xs = Arrays.copyOf(xs, count * 2);
+                ys = Arrays.copyOf(ys, count * 2);
+            }
+            xs[count] = x;
+            ys[count] = y;
+            count++;
+        }
+        
+        private void merge(ShiftCluster other) {
+            for (int i = 0; i < other.count; i++) {
+                add(other.xs[i], other.ys[i]);
+            }
+        }
+        
+        /** Bounds of the block origins between the 5th and 95th percentile in each axis, so strays do not stretch the region. */
+        private int[] bounds() {
+            int[] sortedX = Arrays.copyOf(xs, count);
+            int[] sortedY = Arrays.copyOf(ys, count);
+            Arrays.sort(sortedX);
+            Arrays.sort(sortedY);
+            int low = (int) (count * 0.05);
+            int high = Math.max(low, (int) Math.ceil(count * 0.95) - 1);
+            return new int[] {sortedX[low], sortedY[low], sortedX[high], sortedY[high]};
+        }
+        
+        /** Fraction of the grid positions inside {@code bounds} whose block voted for this shift. */
+        private double density(int[] bounds, int stride) {
+            int inside = 0;
+            for (int i = 0; i < count; i++) {
+                if (xs[i] >= bounds[0] && ys[i] >= bounds[1] && xs[i] <= bounds[2] && ys[i] <= bounds[3]) {
+                    inside++;
+                }
+            }
+            long positions = (long) ((bounds[2] - bounds[0]) / stride + 1) * ((bounds[3] - bounds[1]) / stride + 1);
+            return (double) inside / positions;
+        }
+    }
+    
+    /**
+     * Growable array of packed pairs bounded by a capacity. When it fills up, shifts with a single vote
+     * are dropped; once that no longer frees a quarter of the space it stops accepting pairs.
+     */
+    private static final class PairBuffer {
+        private final int capacity;
+        private long[] values;
+        private int size;
+        private boolean saturated;
+        
+        private PairBuffer(int capacity) {
+            this.capacity = capacity;
+            this.values = new long[Math.min(capacity, 1 << 16)];
+        }
+        
+        private boolean add(long value) {
+            if (size == values.length) {
+                if (values.length < capacity) {
+                    values = Arrays.copyOf(values, (int) Math.min(capacity, 2L * values.length));
+                } else {
+                    dropSingleVotes();
+                    if (size > capacity - capacity / 4) {
+                        saturated = true;
+                        return false;
+                    }
+                }
+            }
+            values[size++] = value;
+            return true;
+        }
+        
+        private void dropSingleVotes() {
+            Arrays.parallelSort(values, 0, size);
+            int kept = 0;
+            int runStart = 0;
+            while (runStart < size) {
+                long shift = values[runStart] >>> INDEX_BITS;
+                int runEnd = runStart + 1;
+                while (runEnd < size && values[runEnd] >>> INDEX_BITS == shift) {
+                    runEnd++;
+                }
+                if (runEnd - runStart > 1) {
+                    System.arraycopy(values, runStart, values, kept, runEnd - runStart);
+                    kept += runEnd - runStart;
+                }
+                runStart = runEnd;
+            }
+            size = kept;
+        }
+    }
+}
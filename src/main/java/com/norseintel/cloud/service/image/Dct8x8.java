@@ -0,0 +1,99 @@
+package com.norseintel.cloud.service.image;
+
+/**
+ * Separable 8x8 type-II DCT (the JPEG transform) driven by a precomputed cosine table.
+ * Blocks are 64-element row-major arrays; the row and column passes cost 1024 multiplications per block.
+ */
+public final class Dct8x8 {
+    
+    public static final int BLOCK_SIZE = 8;
+    public static final int COEFFICIENTS = 64;
+    
+    /** Natural (row-major) index of each coefficient in JPEG zig-zag order. */
+    public static final int[] ZIGZAG = {
+         0,  1,  8, 16,  9,  2,  3, 10,
+        17, 24, 32, 25, 18, 11,  4,  5,
+        12, 19, 26, 33, 40, 48, 41, 34,
+        27, 20, 13,  6,  7, 14, 21, 28,
+        35, 42, 49, 56, 57, 50, 43, 36,
+        29, 22, 15, 23, 30, 37, 44, 51,
+        58, 59, 52, 45, 38, 31, 39, 46,
+        53, 60, 61, 54, 47, 55, 62, 63
+    };
+    
+    // COSINES[u * 8 + i] = 0.5 * alpha(u) * cos((2i + 1) * u * PI / 16)
+    private static final double[] COSINES = new double[COEFFICIENTS];
+    
+    static {
+        for (int u = 0; u < BLOCK_SIZE; u++) {
+            double alpha = (u == 0) ? 1.0 / Math.sqrt(2) : 1.0;
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                COSINES[u * BLOCK_SIZE + i] = 0.5 * alpha * Math.cos((2 * i + 1) * u * Math.PI / 16.0);
+            }
+        }
+    }
+    
+    private Dct8x8() {
+    }
+    
+    /** Basis value for one frequency and sample position, for callers that need only a few coefficients. */
+    static double cosine(int frequency, int sample) {
+        return COSINES[frequency * BLOCK_SIZE + sample];
+    }
+    
+    public static void forward(double[] block, double[] coefficients) {
+        forward(block, coefficients, new double[COEFFICIENTS]);
+    }
+    
+    public static void forward(double[] block, double[] coefficients, double[] scratch) {
+        // Rows: scratch[j][u] = sum_i block[j][i] * C[u][i]
+        for (int j = 0; j < BLOCK_SIZE; j++) {
+            int row = j * BLOCK_SIZE;
+            for (int u = 0; u < BLOCK_SIZE; u++) {
+                int basis = u * BLOCK_SIZE;
+                double sum = 0;
+                for (int i = 0; i < BLOCK_SIZE; i++) {
+                    sum += block[row + i] * COSINES[basis + i];
+                }
+                scratch[row + u] = sum;
+            }
+        }
+        
+        // Columns: coefficients[v][u] = sum_j C[v][j] * scratch[j][u]
+        for (int v = 0; v < BLOCK_SIZE; v++) {
+            int basis = v * BLOCK_SIZE;
+            for (int u = 0; u < BLOCK_SIZE; u++) {
+                double sum = 0;
+                for (int j = 0; j < BLOCK_SIZE; j++) {
+                    sum += COSINES[basis + j] * scratch[j * BLOCK_SIZE + u];
+                }
+                coefficients[basis + u] = sum;
+            }
+        }
+    }
+    
+    public static void inverse(double[] coefficients, double[] block, double[] scratch) {
+        // Columns: scratch[j][u] = sum_v C[v][j] * coefficients[v][u]
+        for (int j = 0; j < BLOCK_SIZE; j++) {
+            for (int u = 0; u < BLOCK_SIZE; u++) {
+                double sum = 0;
+                for (int v = 0; v < BLOCK_SIZE; v++) {
+                    sum += COSINES[v * BLOCK_SIZE + j] * coefficients[v * BLOCK_SIZE + u];
+                }
+                scratch[j * BLOCK_SIZE + u] = sum;
+            }
+        }
+        
+        // Rows: block[j][i] = sum_u scratch[j][u] * C[u][i]
+        for (int j = 0; j < BLOCK_SIZE; j++) {
+            int row = j * BLOCK_SIZE;
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                double sum = 0;
+                for (int u = 0; u < BLOCK_SIZE; u++) {
+                    sum += scratch[row + u] * COSINES[u * BLOCK_SIZE + i];
+                }
+                block[row + i] = sum;
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,153 @@
+package com.norseintel.cloud.service.image;
+
+import com.norseintel.cloud.exception.ForensicException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A global budget of decoded pixel bytes. Decoders reserve the size of the raster they are about to allocate,
+ * known from the image header, and release it once the raster is no longer cached or in use; requests that do
+ * not fit wait in a bounded FIFO queue and are rejected with 503 when the queue is full or the wait times out,
+ * so large images held in memory turn into backpressure instead of an {@link OutOfMemoryError}.
+ */
+@Component
+@Slf4j
+public class DecodeAdmissionController {
+    
+    // Permits are kibibytes so that budgets beyond 2 GiB still fit in an int
+    private static final int KIB = 1024;
+    
+    private final Semaphore budget;
+    private final int budgetKib;
+    private final int maxQueued;
+    private final Duration queueTimeout;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger reservedKib = new AtomicInteger();
+    private final Counter rejections;
+    
+    public DecodeAdmissionController(MeterRegistry meterRegistry,
+                                     @Value("${norseintel.image.decode-budget.max-bytes:0}") long maxBytes,
+                                     @Value("${norseintel.image.decode-budget.max-queued:32}") int maxQueued,
+                                     @Value("${norseintel.image.decode-budget.queue-timeout:30s}") Duration queueTimeout) {
+        // Without an explicit budget, decoded images (cached ones included) may use half of the heap
+        long bytes = maxBytes > 0 ? maxBytes : Runtime.getRuntime().maxMemory() / 2;
+        this.budgetKib = (int) Math.min(Integer.MAX_VALUE, bytes / KIB);
+        this.budget = new Semaphore(budgetKib, true);
+        this.maxQueued = maxQueued;
+        this.queueTimeout = queueTimeout;
+        
+        Gauge.builder("norseintel.decode.budget.reserved", reservedKib, reserved -> (double) reserved.get() * KIB)
+                .baseUnit("bytes")
+                .description("Pixel bytes currently reserved by decoded images")
+                .register(meterRegistry);
+        Gauge.builder("norseintel.decode.budget.limit", () -> (double) budgetKib * KIB)
+                .baseUnit("bytes")
+                .description("Pixel bytes all decoded images may reserve together")
+                .register(meterRegistry);
+        Gauge.builder("norseintel.decode.budget.queued", queued, AtomicInteger::get)
+                .description("Decodes waiting for pixel budget")
+                .register(meterRegistry);
+        this.rejections = Counter.builder("norseintel.decode.budget.rejected")
+                .description("Decodes rejected because the pixel budget was exhausted")
+                .register(meterRegistry);
+        log.info("Decode pixel budget is {} MiB with up to {} queued decodes", budgetKib / KIB, maxQueued);
+    }
+    
+    /** Reserves room for a decoded raster, waiting for running decodes to finish if the budget is exhausted. */
+    public Reservation reserve(long bytes, String description) {
+        int permits = permits(bytes, description);
+        if (!acquireNow(permits)) {
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                rejections.increment();
+                throw new ForensicException("Server is busy decoding other images, please retry later", HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            try {
+                if (!budget.tryAcquire(permits, queueTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                    rejections.increment();
+                    throw new ForensicException("Timed out waiting for decode memory, please retry later", HttpStatus.SERVICE_UNAVAILABLE);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ForensicException("Interrupted while waiting for decode memory", e, HttpStatus.SERVICE_UNAVAILABLE);
+            } finally {
+                queued.decrementAndGet();
+            }
+        }
+        
+        reservedKib.addAndGet(permits);
+        return new Reservation(permits);
+    }
+    
+    /** Reserves room for a decoded raster only if it is available right now, without queueing. */
+    public Optional<Reservation> tryReserve(long bytes, String description) {
+        int permits = permits(bytes, description);
+        if (!acquireNow(permits)) {
+            return Optional.empty();
+        }
+        reservedKib.addAndGet(permits);
+        return Optional.of(new Reservation(permits));
+    }
+    
+    // The timed form honours the FIFO queue of waiting decodes; the untimed one would barge ahead of them
+    private boolean acquireNow(int permits) {
+        try {
+            return budget.tryAcquire(permits, 0, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ForensicException("Interrupted while waiting for decode memory", e, HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+    
+    private int permits(long bytes, String description) {
+        int permits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, (bytes + KIB - 1) / KIB));
+        if (permits > budgetKib) {
+            rejections.increment();
+            throw new ForensicException("Decoding " + description + " needs " + bytes / (KIB * KIB) + " MiB, more than the "
+                    + budgetKib / KIB + " MiB decode budget", HttpStatus.PAYLOAD_TOO_LARGE);
+        }
+        return permits;
+    }
+    
+    public long limitBytes() {
+        return (long) budgetKib * KIB;
+    }
+    
+    public long reservedBytes() {
+        return (long) reservedKib.get() * KIB;
+    }
+    
+    public int queueDepth() {
+        return queued.get();
+    }
+    
+    /** Returns its share of the budget when closed; closing twice is harmless. */
+    public final class Reservation implements AutoCloseable {
+        
+        private int permits;
+        
+        private Reservation(int permits) {
+            this.permits = permits;
+        }
+        
+        @Override
+        public void close() {
+            if (permits > 0) {
+                reservedKib.addAndGet(-permits);
+                budget.release(permits);
+                permits = 0;
+            }
+        }
+    }
+}
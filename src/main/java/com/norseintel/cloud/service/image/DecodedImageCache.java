@@ -0,0 +1,346 @@
+package com.norseintel.cloud.service.image;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.norseintel.cloud.exception.ForensicException;
+import com.norseintel.cloud.metrics.ForensicMetrics;
+import com.norseintel.cloud.metrics.Stage;
+import com.norseintel.cloud.metrics.jfr.ImageCodecEvent;
+import com.norseintel.cloud.model.image.ImageDecodeOptions;
+import com.norseintel.cloud.service.CryptographyService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.SampleModel;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decoded images shared across analyses, keyed by the SHA-256 of the file content so every upload of the
+ * same evidence item is decoded once. The cache is bounded by decoded pixel bytes rather than entry count.
+ * Crops and subsampled previews are decoded through {@link ImageReadParam}, so only the requested pixels are
+ * ever allocated, and are cached under their own keys.
+ *
+ * <p>Every decode first reserves its raster size from the {@link DecodeAdmissionController} budget, and the
+ * reservation lives as long as the raster does: it is returned once the image has been evicted and every
+ * {@link Lease} on it has been closed. The reservation is taken before the cache is entered, so a decode
+ * waiting for budget never holds up lookups of other images. The cache may fill at most half of the budget,
+ * and when a decode does not fit, cached images that nobody is borrowing are evicted, coldest first, before it
+ * queues for the rest.
+ *
+ * <p>Borrowed images are shared between concurrent analyses and must be treated as read-only; anything
+ * derived from them has to be drawn into a new image.
+ */
+@Component
+@Slf4j
+public class DecodedImageCache {
+    
+    private final CryptographyService cryptographyService;
+    private final DecodeAdmissionController admissionController;
+    private final ForensicMetrics forensicMetrics;
+    private final Cache<String, CachedImage> images;
+    // Content hash per stored file, so analyses sharing one upload hash it once
+    private final Cache<String, String> contentKeys = Caffeine.newBuilder()
+            .maximumSize(1024)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .recordStats()
+            .build();
+    
+    public DecodedImageCache(CryptographyService cryptographyService, DecodeAdmissionController admissionController,
+                             ForensicMetrics forensicMetrics, MeterRegistry meterRegistry,
+                             @Value("${norseintel.image.decode-cache.max-bytes:0}") long maxBytes,
+                             @Value("${norseintel.image.decode-cache.expire-after-access:300s}") Duration expireAfterAccess) {
+        this.cryptographyService = cryptographyService;
+        this.admissionController = admissionController;
+        this.forensicMetrics = forensicMetrics;
+        long cacheLimit = admissionController.limitBytes() / 2;
+        if (maxBytes > cacheLimit) {
+            log.warn("Decode cache limit of {} MiB exceeds half the decode budget, using {} MiB", maxBytes >> 20, cacheLimit >> 20);
+        }
+        long maxWeight = maxBytes > 0 ? Math.min(maxBytes, cacheLimit) : cacheLimit;
+        this.images = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((String key, CachedImage cached) -> (int) Math.min(Integer.MAX_VALUE, pixelBytes(cached.image)))
+                .expireAfterAccess(expireAfterAccess)
+                // Expired entries still hold budget, so they are removed on time rather than on the next access
+                .scheduler(Scheduler.systemScheduler())
+                .executor(Runnable::run)
+                .removalListener((String key, CachedImage cached, RemovalCause cause) -> {
+                    if (cached != null) {
+                        cached.release();
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, images, "decodedImages");
+        CaffeineCacheMetrics.monitor(meterRegistry, contentKeys, "imageContentKeys");
+    }
+    
+    /** The decoded image for the file, or empty when no reader supports its format. */
+    public Optional<Lease> borrow(File file) throws IOException {
+        return borrow(file, ImageDecodeOptions.FULL);
+    }
+    
+    /** The decoded crop or preview of the file described by {@code options}, cached separately from the full image. */
+    public Optional<Lease> borrow(File file, ImageDecodeOptions options) throws IOException {
+        String fileKey = file.getAbsolutePath() + ':' + file.length() + ':' + file.lastModified();
+        String key = contentKeys.get(fileKey, ignored -> cryptographyService.calculateHash(file, "SHA-256")) + options.cacheKey();
+        try {
+            while (true) {
+                CachedImage cached = images.getIfPresent(key);
+                if (cached != null && cached.retain()) {
+                    return Optional.of(new Lease(cached));
+                }
+                
+                Optional<DecodePlan> plan = plan(file, options);
+                if (plan.isEmpty()) {
+                    return Optional.empty();
+                }
+                DecodeAdmissionController.Reservation reservation = reserve(plan.get());
+                CachedImage[] loaded = new CachedImage[1];
+                try {
+                    // Concurrent requests for the same content wait for one decode instead of starting their own
+                    cached = images.get(key, ignored -> loaded[0] = forensicMetrics.time(Stage.DECODE,
+                            () -> decode(file, plan.get(), reservation)));
+                } finally {
+                    // Unused when the decode failed or another request's decode was cached first
+                    if (loaded[0] == null) {
+                        reservation.close();
+                    }
+                }
+                if (cached == null) {
+                    return Optional.empty();
+                }
+                // The loader already holds a lease, so an image too large to stay cached still reaches it
+                if (cached == loaded[0] || cached.retain()) {
+                    return Optional.of(new Lease(cached));
+                }
+                // Evicted and released between the lookup and the lease; decode it again
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+    
+    /** The image size from the file header, without decoding any pixels; empty when no reader supports the format. */
+    public static Optional<Dimension> dimensions(File file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = in == null ? Collections.emptyIterator() : ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return Optional.empty();
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return Optional.of(new Dimension(reader.getWidth(0), reader.getHeight(0)));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    public long estimatedSize() {
+        return images.estimatedSize();
+    }
+    
+    /** The pixels to decode and the bytes their raster will take, from the header alone; empty when no reader supports the format. */
+    private static Optional<DecodePlan> plan(File file, ImageDecodeOptions options) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = in == null ? Collections.emptyIterator() : ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return Optional.empty();
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                Rectangle region = new Rectangle(reader.getWidth(0), reader.getHeight(0));
+                if (options.region() != null) {
+                    region = options.region().intersection(region);
+                    if (region.isEmpty()) {
+                        throw new ForensicException("Region lies outside the " + reader.getWidth(0) + "x" + reader.getHeight(0) + " image",
+                                HttpStatus.BAD_REQUEST);
+                    }
+                }
+                int subsampling = options.subsampling();
+                long pixels = (long) ((region.width + subsampling - 1) / subsampling) * ((region.height + subsampling - 1) / subsampling);
+                return Optional.of(new DecodePlan(options, region, pixels, pixels * bytesPerPixel(reader),
+                        "a " + region.width + "x" + region.height + " image"));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    private DecodeAdmissionController.Reservation reserve(DecodePlan plan) {
+        Optional<DecodeAdmissionController.Reservation> reservation = admissionController.tryReserve(plan.bytes(), plan.description());
+        if (reservation.isPresent()) {
+            return reservation.get();
+        }
+        evictIdle(plan.bytes());
+        return admissionController.reserve(plan.bytes(), plan.description());
+    }
+    
+    /** Evicts cached images that no lease holds, coldest first, until {@code bytes} have been returned to the budget. */
+    private void evictIdle(long bytes) {
+        Map<String, CachedImage> coldest = images.policy().eviction()
+                .map(eviction -> eviction.coldest(Integer.MAX_VALUE))
+                .orElse(Map.of());
+        long freed = 0;
+        for (Map.Entry<String, CachedImage> entry : coldest.entrySet()) {
+            if (freed >= bytes) {
+                break;
+            }
+            CachedImage cached = entry.getValue();
+            // The removal listener releases the cache's reference, which returns the budget of an idle image
+            if (cached.isIdle() && images.asMap().remove(entry.getKey(), cached)) {
+                freed += pixelBytes(cached.image);
+            }
+        }
+        if (freed > 0) {
+            log.debug("Evicted {} MiB of idle decoded images to make room for a decode", freed >> 20);
+        }
+    }
+    
+    /** Decodes the planned pixels into the budget already reserved for them; the caller closes the reservation if this fails. */
+    private CachedImage decode(File file, DecodePlan plan, DecodeAdmissionController.Reservation reservation) {
+        long start = System.nanoTime();
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = in == null ? Collections.emptyIterator() : ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            
+            ImageReader reader = readers.next();
+            ImageCodecEvent event = new ImageCodecEvent(ImageCodecEvent.DECODE, reader.getFormatName().toLowerCase());
+            event.begin();
+            try {
+                reader.setInput(in, true, true);
+                ImageDecodeOptions options = plan.options();
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (options.region() != null) {
+                    param.setSourceRegion(plan.region());
+                }
+                if (options.subsampling() > 1) {
+                    param.setSourceSubsampling(options.subsampling(), options.subsampling(), 0, 0);
+                }
+                
+                BufferedImage image = reader.read(0, param);
+                forensicMetrics.recordDecodedPixels(plan.pixels());
+                event.setImage(image);
+                event.finish(file.length());
+                log.debug("Decoded {}x{} image ({}) in {} ms", image.getWidth(), image.getHeight(),
+                        options.isFull() ? "full" : options.cacheKey(), (System.nanoTime() - start) / 1_000_000);
+                return new CachedImage(image, reservation);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /** Bytes per pixel of the raster the reader will produce, assuming packed ARGB when it cannot tell. */
+    private static int bytesPerPixel(ImageReader reader) throws IOException {
+        ImageTypeSpecifier type = reader.getRawImageType(0);
+        if (type == null) {
+            return 4;
+        }
+        SampleModel sampleModel = type.getSampleModel();
+        return Math.max(1, sampleModel.getNumBands() * DataBuffer.getDataTypeSize(sampleModel.getDataType()) / 8);
+    }
+    
+    private record DecodePlan(ImageDecodeOptions options, Rectangle region, long pixels, long bytes, String description) {
+    }
+    
+    /** A borrowed image; closing it hands back the borrower's share of the decode reservation. */
+    public static final class Lease implements AutoCloseable {
+        
+        private CachedImage cached;
+        
+        private Lease(CachedImage cached) {
+            this.cached = cached;
+        }
+        
+        public BufferedImage image() {
+            if (cached == null) {
+                throw new IllegalStateException("Lease already closed");
+            }
+            return cached.image;
+        }
+        
+        @Override
+        public void close() {
+            if (cached != null) {
+                cached.release();
+                cached = null;
+            }
+        }
+    }
+    
+    /**
+     * A decoded image with the budget reserved for it. The cache holds one reference and every lease another;
+     * the reservation is returned when the last of them lets go.
+     */
+    private static final class CachedImage {
+        
+        private final BufferedImage image;
+        private final DecodeAdmissionController.Reservation reservation;
+        // Starts with the cache's reference and the loading caller's lease
+        private final AtomicInteger references = new AtomicInteger(2);
+        
+        private CachedImage(BufferedImage image, DecodeAdmissionController.Reservation reservation) {
+            this.image = image;
+            this.reservation = reservation;
+        }
+        
+        /** Whether only the cache holds the image. */
+        private boolean isIdle() {
+            return references.get() == 1;
+        }
+        
+        /** Takes another reference unless the image has already been released. */
+        private boolean retain() {
+            int count;
+            do {
+                count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(count, count + 1));
+            return true;
+        }
+        
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                reservation.close();
+            }
+        }
+    }
+    
+    private static long pixelBytes(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+}
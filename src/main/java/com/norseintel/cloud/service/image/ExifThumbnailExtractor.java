@@ -0,0 +1,97 @@
+package com.norseintel.cloud.service.image;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Reads the JPEG thumbnail embedded in IFD1 of the EXIF data straight from the file. The thumbnail offset
+ * recorded in the EXIF data is relative to the TIFF header, which for JPEG files sits inside the first
+ * {@code Exif} APP1 segment, so only the marker segments in front of the scan are walked and nothing is
+ * decoded.
+ */
+public final class ExifThumbnailExtractor {
+    
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOS = 0xDA;
+    private static final int APP1 = 0xE1;
+    private static final byte[] EXIF_PREAMBLE = "Exif\0\0".getBytes(StandardCharsets.ISO_8859_1);
+    // APP1 segments cap a JPEG file's thumbnail at 64 KiB; TIFF files have no such limit
+    private static final int MAX_THUMBNAIL_BYTES = 4 * 1024 * 1024;
+    
+    private ExifThumbnailExtractor() {
+    }
+    
+    public record Thumbnail(long fileOffset, byte[] data) {
+    }
+    
+    /**
+     * The thumbnail bytes at the given IFD1 offset and length, or empty when the file has no TIFF header or
+     * the range does not hold JPEG data.
+     */
+    public static Optional<Thumbnail> extract(File file, int offset, int length) throws IOException {
+        if (offset < 0 || length < 4 || length > MAX_THUMBNAIL_BYTES) {
+            return Optional.empty();
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long tiffHeader = tiffHeaderOffset(in);
+            if (tiffHeader < 0 || tiffHeader + offset + length > in.length()) {
+                return Optional.empty();
+            }
+            
+            byte[] data = new byte[length];
+            in.seek(tiffHeader + offset);
+            in.readFully(data);
+            if ((data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != SOI) {
+                return Optional.empty();
+            }
+            return Optional.of(new Thumbnail(tiffHeader + offset, data));
+        }
+    }
+    
+    /** File position of the TIFF header EXIF offsets are relative to, or -1 when there is none. */
+    private static long tiffHeaderOffset(RandomAccessFile in) throws IOException {
+        int first = in.read();
+        int second = in.read();
+        if ((first == 'I' && second == 'I') || (first == 'M' && second == 'M')) {
+            return 0;
+        }
+        if (first != 0xFF || second != SOI) {
+            return -1;
+        }
+        
+        while (true) {
+            int marker = in.read();
+            if (marker != 0xFF) {
+                return -1;
+            }
+            while (marker == 0xFF) {
+                marker = in.read();
+            }
+            if (marker < 0 || marker == SOS || marker == EOI) {
+                return -1;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                continue;
+            }
+            
+            int length = (in.read() << 8) | in.read();
+            if (length < 2) {
+                return -1;
+            }
+            long payload = in.getFilePointer();
+            if (marker == APP1 && length >= 2 + EXIF_PREAMBLE.length + 8) {
+                byte[] preamble = new byte[EXIF_PREAMBLE.length];
+                in.readFully(preamble);
+                if (Arrays.equals(preamble, EXIF_PREAMBLE)) {
+                    return payload + EXIF_PREAMBLE.length;
+                }
+            }
+            in.seek(payload + length - 2);
+        }
+    }
+}
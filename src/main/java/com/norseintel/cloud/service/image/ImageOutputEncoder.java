@@ -0,0 +1,175 @@
+package com.norseintel.cloud.service.image;
+
+import com.norseintel.cloud.metrics.ForensicMetrics;
+import com.norseintel.cloud.metrics.Stage;
+import com.norseintel.cloud.metrics.jfr.ImageCodecEvent;
+import com.norseintel.cloud.model.image.ImageOutputFormat;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Encodes analysis images straight into a response stream. PNG output uses a configurable deflate level,
+ * since the default level spends most of an endpoint's CPU time compressing noisy residual images, JPEG
+ * output a configurable quality, and raw output writes the bands as bare 8-bit planes.
+ *
+ * <p>Image streams are memory-cached and flushed as the writer goes; {@link ImageIO#createImageOutputStream}
+ * would otherwise spool every response through a temporary file.
+ */
+@Component
+public class ImageOutputEncoder {
+    
+    private final ForensicMetrics forensicMetrics;
+    private final int pngCompressionLevel;
+    private final float jpegQuality;
+    
+    public ImageOutputEncoder(ForensicMetrics forensicMetrics,
+                              @Value("${norseintel.image.output.png-compression-level:1}") int pngCompressionLevel,
+                              @Value("${norseintel.image.output.jpeg-quality:0.9}") float jpegQuality) {
+        this.forensicMetrics = forensicMetrics;
+        this.pngCompressionLevel = Math.max(0, Math.min(9, pngCompressionLevel));
+        this.jpegQuality = Math.max(0f, Math.min(1f, jpegQuality));
+    }
+    
+    public void write(BufferedImage image, ImageOutputFormat format, OutputStream out) throws IOException {
+        forensicMetrics.run(Stage.ENCODE, () -> encode(image, format, out));
+    }
+    
+    /**
+     * Writes each image as a ZIP entry named after its key plus the format's extension. Raw entries also carry
+     * their geometry in the name, as {@code key_WIDTHxHEIGHTxPLANES.raw}. PNG and JPEG data is stored
+     * without further compression.
+     */
+    public void writeArchive(Map<String, BufferedImage> images, ImageOutputFormat format, OutputStream out) throws IOException {
+        forensicMetrics.run(Stage.ENCODE, () -> encodeArchive(images, format, out));
+    }
+    
+    /** The encoded image as Base64 text, for embedding in JSON results. */
+    public String encodeBase64(BufferedImage image, ImageOutputFormat format) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (OutputStream base64 = Base64.getEncoder().wrap(buffer)) {
+            write(image, format, base64);
+        }
+        return buffer.toString(StandardCharsets.ISO_8859_1);
+    }
+    
+    private void encode(BufferedImage image, ImageOutputFormat format, OutputStream out) throws IOException {
+        ImageCodecEvent event = new ImageCodecEvent(ImageCodecEvent.ENCODE, format.getExtension());
+        if (!event.isEnabled()) {
+            encodeTo(image, format, out);
+            return;
+        }
+        // Bytes are only counted while a recording is taking these events
+        event.begin();
+        CountingOutputStream counting = new CountingOutputStream(out);
+        encodeTo(image, format, counting);
+        event.setImage(image);
+        event.finish(counting.getByteCount());
+    }
+    
+    private void encodeTo(BufferedImage image, ImageOutputFormat format, OutputStream out) throws IOException {
+        switch (format) {
+            // The PNG writer truncates 9 * (1 - quality) to pick its deflate level
+            case PNG -> writeWithImageIO(image, "png", Math.max(0f, 1f - (pngCompressionLevel + 0.5f) / 9f), out);
+            case JPEG -> writeWithImageIO(withoutAlpha(image), "jpeg", jpegQuality, out);
+            case RAW -> writePlanes(withoutPalette(image), out);
+        }
+    }
+    
+    private void encodeArchive(Map<String, BufferedImage> images, ImageOutputFormat format, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        zip.setLevel(format == ImageOutputFormat.RAW ? Deflater.BEST_SPEED : Deflater.NO_COMPRESSION);
+        for (Map.Entry<String, BufferedImage> entry : images.entrySet()) {
+            BufferedImage image = entry.getValue();
+            String name = format == ImageOutputFormat.RAW
+                    ? entry.getKey() + "_" + image.getWidth() + "x" + image.getHeight() + "x" + planeCount(image)
+                    : entry.getKey();
+            zip.putNextEntry(new ZipEntry(name + "." + format.getExtension()));
+            encode(image, format, zip);
+            zip.closeEntry();
+        }
+        zip.finish();
+    }
+    
+    /** Number of planes {@link ImageOutputFormat#RAW} output of the image contains. */
+    public static int planeCount(BufferedImage image) {
+        return image.getColorModel() instanceof IndexColorModel ? 3 : Math.min(3, image.getRaster().getNumBands());
+    }
+    
+    private static void writeWithImageIO(BufferedImage image, String formatName, float quality, OutputStream out) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(formatName);
+        if (!writers.hasNext()) {
+            throw new IOException("No " + formatName + " image writer found");
+        }
+        
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+    
+    private static void writePlanes(BufferedImage image, OutputStream out) throws IOException {
+        Raster raster = image.getRaster();
+        int width = image.getWidth();
+        int[] samples = new int[width];
+        byte[] row = new byte[width];
+        OutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+        for (int band = 0; band < planeCount(image); band++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                raster.getSamples(0, y, width, 1, band, samples);
+                for (int x = 0; x < width; x++) {
+                    row[x] = (byte) samples[x];
+                }
+                buffered.write(row);
+            }
+        }
+        buffered.flush();
+    }
+    
+    private static BufferedImage withoutAlpha(BufferedImage image) {
+        return image.getColorModel().hasAlpha() ? toRgb(image) : image;
+    }
+    
+    // Palette indices are meaningless as planes, so expand them to colours first
+    private static BufferedImage withoutPalette(BufferedImage image) {
+        return image.getColorModel() instanceof IndexColorModel ? toRgb(image) : image;
+    }
+    
+    private static BufferedImage toRgb(BufferedImage image) {
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return rgb;
+    }
+}
@@ -0,0 +1,165 @@
+package com.norseintel.cloud.service.image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * Decodes the luma of an image as horizontal strips, top to bottom, without ever holding the full raster.
+ * Sequential JPEGs are decoded straight from their coefficients one MCU row at a time; other formats are
+ * read in bands through {@link ImageReadParam#setSourceRegion}, which bounds memory but makes readers that
+ * cannot seek re-scan the file for every band.
+ */
+public final class ImageStripDecoder {
+    
+    private static final int BLOCK = Dct8x8.BLOCK_SIZE;
+    private static final int BAND_ROWS = 256;
+    
+    private ImageStripDecoder() {
+    }
+    
+    @FunctionalInterface
+    public interface StripConsumer {
+        /**
+         * Receives rows {@code top} to {@code top + rows - 1} of the luma plane, {@code width} pixels each,
+         * row-major with the given row stride. The array is reused for the next strip.
+         */
+        void accept(int top, int rows, int width, float[] luma, int stride);
+    }
+    
+    public record Dimensions(int width, int height, String method) {
+    }
+    
+    public static Dimensions forEachLumaStrip(File file, StripConsumer consumer) throws IOException {
+        JpegHeader header = sequentialJpegHeader(file);
+        return header != null ? decodeJpegStrips(file, header, consumer) : decodeBands(file, consumer);
+    }
+    
+    /** Strips of an image that is already in memory, for crops and previews. */
+    public static Dimensions forEachLumaStrip(BufferedImage image, StripConsumer consumer) {
+        int width = image.getWidth();
+        int[] rgb = new int[width * BAND_ROWS];
+        float[] luma = new float[width * BAND_ROWS];
+        for (int top = 0; top < image.getHeight(); top += BAND_ROWS) {
+            int rows = Math.min(BAND_ROWS, image.getHeight() - top);
+            image.getRGB(0, top, width, rows, rgb, 0, width);
+            toLuma(rgb, luma, width * rows);
+            consumer.accept(top, rows, width, luma, width);
+        }
+        return new Dimensions(width, image.getHeight(), "raster");
+    }
+    
+    /** The header of a sequential Huffman JPEG whose first component is luma, or null for anything else. */
+    private static JpegHeader sequentialJpegHeader(File file) throws IOException {
+        JpegHeader header;
+        try (InputStream in = new FileInputStream(file)) {
+            header = JpegCoefficientReader.readHeader(in);
+        } catch (JpegFormatException e) {
+            return null;
+        }
+        // Four-component files are CMYK or YCCK, where the first component is not luma
+        if (!header.hasFrame() || !header.isHuffmanSequential() || header.getComponents().size() == 4) {
+            return null;
+        }
+        JpegHeader.Component luma = header.getComponents().get(0);
+        return header.getQuantizationTable(luma.quantizationTableId()) != null ? header : null;
+    }
+    
+    private static Dimensions decodeJpegStrips(File file, JpegHeader header, StripConsumer consumer) throws IOException {
+        JpegHeader.Component luma = header.getComponents().get(0);
+        int[] table = header.getQuantizationTable(luma.quantizationTableId());
+        
+        int width = header.getWidth();
+        int height = header.getHeight();
+        int stride = header.getBlocksWide(luma) * BLOCK;
+        // Interleaved scans deliver luma one MCU row (verticalSampling block rows) at a time
+        int stripBlockRows = header.getComponents().size() > 1 ? luma.verticalSampling() : 1;
+        int stripRows = stripBlockRows * BLOCK;
+        float[] strip = new float[stride * stripRows];
+        double[] coefficients = new double[Dct8x8.COEFFICIENTS];
+        double[] block = new double[Dct8x8.COEFFICIENTS];
+        double[] scratch = new double[Dct8x8.COEFFICIENTS];
+        int[] stripStart = {0};
+        
+        try (InputStream in = new FileInputStream(file)) {
+            JpegCoefficientReader.decode(in, (componentIndex, blockX, blockY, quantized) -> {
+                if (componentIndex != 0) {
+                    return;
+                }
+                if (blockY >= stripStart[0] + stripBlockRows) {
+                    flush(consumer, stripStart[0] * BLOCK, stripRows, width, height, strip, stride);
+                    stripStart[0] = blockY - blockY % stripBlockRows;
+                }
+                
+                for (int z = 0; z < Dct8x8.COEFFICIENTS; z++) {
+                    int natural = Dct8x8.ZIGZAG[z];
+                    coefficients[natural] = quantized[z] * table[natural];
+                }
+                Dct8x8.inverse(coefficients, block, scratch);
+                
+                int offset = (blockY - stripStart[0]) * BLOCK * stride + blockX * BLOCK;
+                for (int j = 0; j < BLOCK; j++) {
+                    for (int i = 0; i < BLOCK; i++) {
+                        strip[offset + j * stride + i] = (float) Math.max(0, Math.min(255, block[j * BLOCK + i] + 128));
+                    }
+                }
+            });
+        }
+        flush(consumer, stripStart[0] * BLOCK, stripRows, width, height, strip, stride);
+        
+        return new Dimensions(width, height, "coefficients");
+    }
+    
+    private static void flush(StripConsumer consumer, int top, int stripRows, int width, int height, float[] strip, int stride) {
+        int rows = Math.min(stripRows, height - top);
+        if (rows > 0) {
+            consumer.accept(top, rows, width, strip, stride);
+        }
+    }
+    
+    private static Dimensions decodeBands(File file, StripConsumer consumer) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+            
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, false, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int[] rgb = new int[width * BAND_ROWS];
+                float[] luma = new float[width * BAND_ROWS];
+                
+                for (int top = 0; top < height; top += BAND_ROWS) {
+                    int rows = Math.min(BAND_ROWS, height - top);
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceRegion(new Rectangle(0, top, width, rows));
+                    BufferedImage band = reader.read(0, param);
+                    band.getRGB(0, 0, width, rows, rgb, 0, width);
+                    toLuma(rgb, luma, width * rows);
+                    consumer.accept(top, rows, width, luma, width);
+                }
+                return new Dimensions(width, height, "bands");
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    private static void toLuma(int[] rgb, float[] luma, int count) {
+        for (int i = 0; i < count; i++) {
+            int pixel = rgb[i];
+            luma[i] = 0.299f * ((pixel >> 16) & 0xFF) + 0.587f * ((pixel >> 8) & 0xFF) + 0.114f * (pixel & 0xFF);
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package com.norseintel.cloud.service.image;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads JPEG marker segments (SOF, DQT, DHT, DRI, SOS) and entropy-decodes the quantized DCT coefficients
+ * of baseline and extended sequential Huffman JPEGs, without dequantization, IDCT or color conversion.
+ * Progressive, lossless and arithmetic-coded files are rejected with a {@link JpegFormatException}.
+ */
+public final class JpegCoefficientReader {
+    
+    @FunctionalInterface
+    public interface BlockConsumer {
+        /**
+         * Receives one block of quantized coefficients in zig-zag order. Block coordinates are in the
+         * component's own block grid; the array is reused between calls.
+         */
+        void accept(int componentIndex, int blockX, int blockY, short[] coefficients);
+    }
+    
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOS = 0xDA;
+    private static final int DQT = 0xDB;
+    private static final int DHT = 0xC4;
+    private static final int DRI = 0xDD;
+    private static final int JPG = 0xC8;
+    private static final int DAC = 0xCC;
+    private static final int RST0 = 0xD0;
+    private static final int RST7 = 0xD7;
+    private static final int MAX_PADDING_BYTES = 1024;
+    
+    private final DataInputStream in;
+    private final JpegHeader header = new JpegHeader();
+    private final HuffmanTable[] dcTables = new HuffmanTable[JpegHeader.MAX_TABLES];
+    private final HuffmanTable[] acTables = new HuffmanTable[JpegHeader.MAX_TABLES];
+    
+    private int bitBuffer;
+    private int bitCount;
+    private int pendingMarker = -1;
+    private int paddingBytes;
+    
+    private JpegCoefficientReader(InputStream in) {
+        this.in = new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 65536));
+    }
+    
+    /** Reads the marker segments up to the first start-of-scan without touching entropy-coded data. */
+    public static JpegHeader readHeader(InputStream in) throws IOException {
+        return new JpegCoefficientReader(in).read(null);
+    }
+    
+    /** Decodes every scan of the image, passing each block's quantized coefficients to the consumer. */
+    public static JpegHeader decode(InputStream in, BlockConsumer consumer) throws IOException {
+        return new JpegCoefficientReader(in).read(consumer);
+    }
+    
+    private JpegHeader read(BlockConsumer consumer) throws IOException {
+        try {
+            readSegments(consumer);
+        } catch (EOFException e) {
+            // A file that ends inside a marker segment is malformed evidence, not an I/O failure
+            throw new JpegFormatException("Truncated JPEG marker segment", e);
+        }
+        return header;
+    }
+    
+    private void readSegments(BlockConsumer consumer) throws IOException {
+        if (in.read() != 0xFF || in.read() != SOI) {
+            throw new JpegFormatException("Not a JPEG stream");
+        }
+        
+        while (true) {
+            int marker = nextMarker();
+            if (marker < 0 || marker == EOI) {
+                return;
+            }
+            if (marker == SOI || (marker >= RST0 && marker <= RST7)) {
+                continue;
+            }
+            
+            int length = in.readUnsignedShort() - 2;
+            if (length < 0) {
+                throw new JpegFormatException("Invalid segment length for marker 0x" + Integer.toHexString(marker));
+            }
+            
+            if (marker == DQT) {
+                readQuantizationTables(length);
+            } else if (marker == DHT) {
+                readHuffmanTables(length);
+            } else if (marker == DRI) {
+                header.setRestartInterval(in.readUnsignedShort());
+                skip(length - 2);
+            } else if (marker >= 0xC0 && marker <= 0xCF && marker != JPG && marker != DAC) {
+                readFrame(marker, length);
+                if (consumer != null && !header.isHuffmanSequential()) {
+                    throw new JpegFormatException("Only baseline and extended sequential Huffman JPEGs can be decoded to coefficients");
+                }
+            } else if (marker == SOS) {
+                if (consumer == null) {
+                    return;
+                }
+                readScan(length, consumer);
+            } else {
+                skip(length);
+            }
+        }
+    }
+    
+    private void readQuantizationTables(int length) throws IOException {
+        while (length > 0) {
+            int info = in.readUnsignedByte();
+            int precision = info >> 4;
+            int id = info & 0x0F;
+            if (id >= JpegHeader.MAX_TABLES) {
+                throw new JpegFormatException("Invalid quantization table id " + id);
+            }
+            
+            int[] table = new int[Dct8x8.COEFFICIENTS];
+            for (int k = 0; k < Dct8x8.COEFFICIENTS; k++) {
+                table[Dct8x8.ZIGZAG[k]] = precision == 0 ? in.readUnsignedByte() : in.readUnsignedShort();
+            }
+            header.setQuantizationTable(id, table);
+            length -= 1 + Dct8x8.COEFFICIENTS * (precision == 0 ? 1 : 2);
+        }
+    }
+    
+    private void readHuffmanTables(int length) throws IOException {
+        while (length > 0) {
+            int info = in.readUnsignedByte();
+            int tableClass = info >> 4;
+            int id = info & 0x0F;
+            if (id >= JpegHeader.MAX_TABLES || tableClass > 1) {
+                throw new JpegFormatException("Invalid Huffman table " + Integer.toHexString(info));
+            }
+            
+            int[] counts = new int[16];
+            int total = 0;
+            for (int i = 0; i < 16; i++) {
+                counts[i] = in.readUnsignedByte();
+                total += counts[i];
+            }
+            int[] values = new int[total];
+            for (int i = 0; i < total; i++) {
+                values[i] = in.readUnsignedByte();
+            }
+            
+            HuffmanTable table = new HuffmanTable(counts, values);
+            if (tableClass == 0) {
+                dcTables[id] = table;
+            } else {
+                acTables[id] = table;
+            }
+            length -= 17 + total;
+        }
+    }
+    
+    private void readFrame(int marker, int length) throws IOException {
+        int precision = in.readUnsignedByte();
+        int height = in.readUnsignedShort();
+        int width = in.readUnsignedShort();
+        int componentCount = in.readUnsignedByte();
+        if (componentCount == 0) {
+            throw new JpegFormatException("Frame header without components");
+        }
+        
+        header.setFrame(marker, precision, width, height);
+        header.getComponents().clear();
+        for (int i = 0; i < componentCount; i++) {
+            int id = in.readUnsignedByte();
+            int sampling = in.readUnsignedByte();
+            int tableId = in.readUnsignedByte();
+            if ((sampling >> 4) == 0 || (sampling & 0x0F) == 0 || tableId >= JpegHeader.MAX_TABLES) {
+                throw new JpegFormatException("Invalid frame component " + id);
+            }
+            header.getComponents().add(new JpegHeader.Component(id, sampling >> 4, sampling & 0x0F, tableId));
+        }
+        skip(length - 6 - 3 * componentCount);
+    }
+    
+    private void readScan(int length, BlockConsumer consumer) throws IOException {
+        if (!header.hasFrame() || header.getHeight() == 0) {
+            throw new JpegFormatException("Scan without a usable frame header");
+        }
+        
+        int scanComponentCount = in.readUnsignedByte();
+        List<JpegHeader.Component> components = header.getComponents();
+        int[] componentIndexes = new int[scanComponentCount];
+        HuffmanTable[] dc = new HuffmanTable[scanComponentCount];
+        HuffmanTable[] ac = new HuffmanTable[scanComponentCount];
+        
+        for (int i = 0; i < scanComponentCount; i++) {
+            int id = in.readUnsignedByte();
+            int tables = in.readUnsignedByte();
+            componentIndexes[i] = -1;
+            for (int c = 0; c < components.size(); c++) {
+                if (components.get(c).id() == id) {
+                    componentIndexes[i] = c;
+                }
+            }
+            dc[i] = dcTables[tables >> 4];
+            ac[i] = acTables[tables & 0x0F];
+            if (componentIndexes[i] < 0 || dc[i] == null || ac[i] == null) {
+                throw new JpegFormatException("Scan references an undefined component or Huffman table");
+            }
+        }
+        skip(length - 1 - 2 * scanComponentCount);
+        
+        bitBuffer = 0;
+        bitCount = 0;
+        int[] predictions = new int[scanComponentCount];
+        short[] coefficients = new short[Dct8x8.COEFFICIENTS];
+        int restartInterval = header.getRestartInterval();
+        
+        int[] blocksWide = new int[scanComponentCount];
+        int[] blocksHigh = new int[scanComponentCount];
+        for (int i = 0; i < scanComponentCount; i++) {
+            JpegHeader.Component component = components.get(componentIndexes[i]);
+            blocksWide[i] = header.getBlocksWide(component);
+            blocksHigh[i] = header.getBlocksHigh(component);
+        }
+        
+        int mcusWide;
+        int mcusHigh;
+        if (scanComponentCount == 1) {
+            // Non-interleaved scans code exactly the component's own blocks, one block per MCU
+            mcusWide = blocksWide[0];
+            mcusHigh = blocksHigh[0];
+        } else {
+            mcusWide = (header.getWidth() + 8 * header.getMaxHorizontalSampling() - 1) / (8 * header.getMaxHorizontalSampling());
+            mcusHigh = (header.getHeight() + 8 * header.getMaxVerticalSampling() - 1) / (8 * header.getMaxVerticalSampling());
+        }
+        
+        int mcuCount = 0;
+        for (int mcuY = 0; mcuY < mcusHigh; mcuY++) {
+            for (int mcuX = 0; mcuX < mcusWide; mcuX++) {
+                if (restartInterval > 0 && mcuCount > 0 && mcuCount % restartInterval == 0) {
+                    processRestart();
+                    Arrays.fill(predictions, 0);
+                }
+                mcuCount++;
+                
+                for (int i = 0; i < scanComponentCount; i++) {
+                    JpegHeader.Component component = components.get(componentIndexes[i]);
+                    int horizontal = scanComponentCount == 1 ? 1 : component.horizontalSampling();
+                    int vertical = scanComponentCount == 1 ? 1 : component.verticalSampling();
+                    
+                    for (int v = 0; v < vertical; v++) {
+                        for (int h = 0; h < horizontal; h++) {
+                            predictions[i] = decodeBlock(dc[i], ac[i], predictions[i], coefficients);
+                            int blockX = mcuX * horizontal + h;
+                            int blockY = mcuY * vertical + v;
+                            // Interleaved MCUs pad components to whole MCUs; padding blocks are not reported
+                            if (blockX < blocksWide[i] && blockY < blocksHigh[i]) {
+                                consumer.accept(componentIndexes[i], blockX, blockY, coefficients);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        
+        bitBuffer = 0;
+        bitCount = 0;
+    }
+    
+    private int decodeBlock(HuffmanTable dc, HuffmanTable ac, int prediction, short[] coefficients) throws IOException {
+        Arrays.fill(coefficients, (short) 0);
+        
+        int dcSize = decodeHuffman(dc);
+        int dcValue = prediction + receiveExtend(dcSize);
+        coefficients[0] = (short) dcValue;
+        
+        int k = 1;
+        while (k < Dct8x8.COEFFICIENTS) {
+            int symbol = decodeHuffman(ac);
+            int run = symbol >> 4;
+            int size = symbol & 0x0F;
+            if (size == 0) {
+                if (run != 15) {
+                    break;
+                }
+                k += 16;
+                continue;
+            }
+            k += run;
+            if (k >= Dct8x8.COEFFICIENTS) {
+                throw new JpegFormatException("AC coefficient run past the end of a block");
+            }
+            coefficients[k++] = (short) receiveExtend(size);
+        }
+        
+        return dcValue;
+    }
+    
+    private int decodeHuffman(HuffmanTable table) throws IOException {
+        fillBits();
+        int entry = table.lookup[peekBits(HuffmanTable.LOOKUP_BITS)];
+        if (entry != 0) {
+            bitCount -= entry >> 8;
+            return entry & 0xFF;
+        }
+        
+        for (int length = HuffmanTable.LOOKUP_BITS + 1; length <= 16; length++) {
+            int code = peekBits(length);
+            if (code <= table.maxCode[length]) {
+                bitCount -= length;
+                return table.values[table.valuePointer[length] + code - table.minCode[length]];
+            }
+        }
+        throw new JpegFormatException("Corrupt Huffman code in entropy-coded data");
+    }
+    
+    private int receiveExtend(int size) throws IOException {
+        if (size == 0) {
+            return 0;
+        }
+        fillBits();
+        int value = peekBits(size);
+        bitCount -= size;
+        return value < (1 << (size - 1)) ? value - (1 << size) + 1 : value;
+    }
+    
+    private int peekBits(int count) {
+        return (bitBuffer >>> (bitCount - count)) & ((1 << count) - 1);
+    }
+    
+    private void fillBits() throws IOException {
+        while (bitCount <= 24) {
+            int value = 0;
+            // Once a marker is reached the decoder is fed zero bits, as the specification requires
+            if (pendingMarker < 0) {
+                value = in.read();
+                if (value < 0) {
+                    if (++paddingBytes > MAX_PADDING_BYTES) {
+                        throw new JpegFormatException("Truncated JPEG entropy-coded data");
+                    }
+                    value = 0;
+                } else if (value == 0xFF) {
+                    int next = in.read();
+                    while (next == 0xFF) {
+                        next = in.read();
+                    }
+                    if (next == 0) {
+                        value = 0xFF;
+                    } else {
+                        pendingMarker = next < 0 ? EOI : next;
+                        value = 0;
+                    }
+                }
+            }
+            bitBuffer = (bitBuffer << 8) | value;
+            bitCount += 8;
+        }
+    }
+    
+    private void processRestart() throws IOException {
+        bitBuffer = 0;
+        bitCount = 0;
+        int marker = nextMarker();
+        if (marker < RST0 || marker > RST7) {
+            throw new JpegFormatException("Expected a restart marker but found 0x" + Integer.toHexString(marker));
+        }
+    }
+    
+    private int nextMarker() throws IOException {
+        if (pendingMarker >= 0) {
+            int marker = pendingMarker;
+            pendingMarker = -1;
+            return marker;
+        }
+        
+        int value = in.read();
+        while (value >= 0) {
+            if (value == 0xFF) {
+                int next = in.read();
+                while (next == 0xFF) {
+                    next = in.read();
+                }
+                if (next < 0) {
+                    return -1;
+                }
+                if (next != 0) {
+                    return next;
+                }
+            }
+            value = in.read();
+        }
+        return -1;
+    }
+    
+    private void skip(int count) throws IOException {
+        if (count > 0) {
+            in.skipNBytes(count);
+        }
+    }
+    
+    private static final class HuffmanTable {
+        static final int LOOKUP_BITS = 9;
+        
+        final int[] lookup = new int[1 << LOOKUP_BITS];
+        final int[] maxCode = new int[17];
+        final int[] minCode = new int[17];
+        final int[] valuePointer = new int[17];
+        final int[] values;
+        
+        HuffmanTable(int[] counts, int[] values) throws JpegFormatException {
+            this.values = values;
+            int code = 0;
+            int index = 0;
+            for (int length = 1; length <= 16; length++) {
+                int count = counts[length - 1];
+                valuePointer[length] = index;
+                minCode[length] = code;
+                code += count;
+                index += count;
+                maxCode[length] = count > 0 ? code - 1 : -1;
+                if (code > (1 << length)) {
+                    throw new JpegFormatException("Invalid Huffman code lengths");
+                }
+                
+                if (length <= LOOKUP_BITS) {
+                    for (int c = minCode[length]; c <= maxCode[length]; c++) {
+                        int entry = (length << 8) | values[valuePointer[length] + c - minCode[length]];
+                        int shift = LOOKUP_BITS - length;
+                        Arrays.fill(lookup, c << shift, (c + 1) << shift, entry);
+                    }
+                }
+                code <<= 1;
+            }
+        }
+    }
+}
\ No newline at end of file
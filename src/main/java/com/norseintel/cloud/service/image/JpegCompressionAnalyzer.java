@@ -0,0 +1,160 @@
+package com.norseintel.cloud.service.image;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compression-history analysis on the quantized luma coefficients stored in a sequential JPEG. A second
+ * compression with a different table leaves periodic gaps or peaks in the coefficient histograms, which
+ * shows up as large log-domain second differences between neighbouring bins; a single compression gives
+ * smooth, roughly Laplacian histograms.
+ */
+public final class JpegCompressionAnalyzer {
+    
+    // Zig-zag positions 1..9 are populated enough in almost every photo to give stable histograms
+    private static final int HISTOGRAM_COEFFICIENTS = 9;
+    private static final int HISTOGRAM_RANGE = 64;
+    private static final int MIN_BIN_COUNT = 5;
+    private static final int MIN_SCORED_BINS = 3;
+    private static final double DOUBLE_COMPRESSION_THRESHOLD = 0.2;
+    
+    private JpegCompressionAnalyzer() {
+    }
+    
+    public record Result(JpegHeader header, int blockCount, double[] positionScores, double doubleCompressionScore,
+                         BlockDctAnalyzer.Result dct) {
+        
+        public boolean isDoubleCompressed() {
+            return doubleCompressionScore > DOUBLE_COMPRESSION_THRESHOLD;
+        }
+    }
+    
+    /**
+     * The per-block arrays are sized from the frame header before any entropy-coded data is read, so they are
+     * reserved from the decode budget first: a tiny file declaring a huge frame is rejected instead of
+     * allocating gigabytes.
+     */
+    public static Result analyze(File file, int cellSize, DecodeAdmissionController admissionController) throws IOException {
+        JpegHeader header;
+        try (InputStream in = new FileInputStream(file)) {
+            header = JpegCoefficientReader.readHeader(in);
+        }
+        if (!header.hasFrame() || header.getComponents().isEmpty() || !header.isHuffmanSequential()) {
+            throw new JpegFormatException("Only sequential Huffman JPEGs can be analyzed in the coefficient domain");
+        }
+        
+        JpegHeader.Component luma = header.getComponents().get(0);
+        int[] table = header.getQuantizationTable(luma.quantizationTableId());
+        if (table == null) {
+            throw new JpegFormatException("Missing quantization table " + luma.quantizationTableId());
+        }
+        
+        int blocksWide = header.getBlocksWide(luma);
+        int blocksHigh = header.getBlocksHigh(luma);
+        int blockCount = blocksWide * blocksHigh;
+        // The low-frequency coefficients of every block, and one residual per block while building the heatmap
+        long workingBytes = (long) blockCount * (BlockDctAnalyzer.LOW_FREQUENCY_COEFFICIENTS + 1) * Float.BYTES;
+        DecodeAdmissionController.Reservation reservation = admissionController.reserve(workingBytes,
+                "the coefficients of a " + header.getWidth() + "x" + header.getHeight() + " JPEG");
+        try (reservation) {
+            return analyze(file, cellSize, header, table, blocksWide, blocksHigh);
+        }
+    }
+    
+    private static Result analyze(File file, int cellSize, JpegHeader header, int[] table, int blocksWide, int blocksHigh)
+            throws IOException {
+        int blockCount = blocksWide * blocksHigh;
+        int[][] histograms = new int[HISTOGRAM_COEFFICIENTS][2 * HISTOGRAM_RANGE + 1];
+        double[] magnitudeSums = new double[Dct8x8.COEFFICIENTS];
+        float[] lowFrequency = new float[blockCount * BlockDctAnalyzer.LOW_FREQUENCY_COEFFICIENTS];
+        
+        try (InputStream in = new FileInputStream(file)) {
+            JpegCoefficientReader.decode(in, (componentIndex, blockX, blockY, coefficients) -> {
+                if (componentIndex != 0) {
+                    return;
+                }
+                for (int z = 1; z <= HISTOGRAM_COEFFICIENTS; z++) {
+                    int value = coefficients[z];
+                    if (value >= -HISTOGRAM_RANGE && value <= HISTOGRAM_RANGE) {
+                        histograms[z - 1][value + HISTOGRAM_RANGE]++;
+                    }
+                }
+                for (int z = 0; z < Dct8x8.COEFFICIENTS; z++) {
+                    int natural = Dct8x8.ZIGZAG[z];
+                    magnitudeSums[natural] += Math.abs(coefficients[z] * table[natural]);
+                }
+                int base = (blockY * blocksWide + blockX) * BlockDctAnalyzer.LOW_FREQUENCY_COEFFICIENTS;
+                for (int k = 0; k < BlockDctAnalyzer.LOW_FREQUENCY_COEFFICIENTS; k++) {
+                    lowFrequency[base + k] = coefficients[k + 1] * table[Dct8x8.ZIGZAG[k + 1]];
+                }
+            });
+        }
+        
+        double[] averageMagnitudes = new double[Dct8x8.COEFFICIENTS];
+        for (int i = 0; i < Dct8x8.COEFFICIENTS; i++) {
+            averageMagnitudes[i] = magnitudeSums[i] / blockCount;
+        }
+        
+        double[] positionScores = new double[HISTOGRAM_COEFFICIENTS];
+        List<Double> scored = new ArrayList<>();
+        for (int k = 0; k < HISTOGRAM_COEFFICIENTS; k++) {
+            positionScores[k] = scoreHistogram(histograms[k]);
+            if (!Double.isNaN(positionScores[k])) {
+                scored.add(positionScores[k]);
+            }
+        }
+        double doubleCompressionScore = median(scored);
+        
+        // Dequantized values all sit on the file's own lattice, and steps just above it align spuriously
+        // with small multiples; an earlier step only stands out once it is at least twice as coarse
+        int[] minimumSteps = new int[BlockDctAnalyzer.LOW_FREQUENCY_COEFFICIENTS];
+        for (int k = 0; k < minimumSteps.length; k++) {
+            minimumSteps[k] = 2 * table[Dct8x8.ZIGZAG[k + 1]] - 1;
+        }
+        BlockDctAnalyzer.Result dct = BlockDctAnalyzer.analyzeLowFrequency(averageMagnitudes, lowFrequency,
+                blocksWide, blocksHigh, minimumSteps, cellSize);
+        
+        return new Result(header, blockCount, positionScores, doubleCompressionScore, dct);
+    }
+    
+    /**
+     * Mean log-domain second difference of the histogram folded around zero, less a three-sigma allowance
+     * for counting noise, or NaN when too few bins are populated to judge.
+     */
+    private static double scoreHistogram(int[] histogram) {
+        int[] folded = new int[HISTOGRAM_RANGE + 1];
+        for (int i = 1; i <= HISTOGRAM_RANGE; i++) {
+            folded[i] = histogram[HISTOGRAM_RANGE + i] + histogram[HISTOGRAM_RANGE - i];
+        }
+        
+        double sum = 0;
+        int bins = 0;
+        for (int i = 2; i < HISTOGRAM_RANGE; i++) {
+            if (Math.min(folded[i - 1], folded[i + 1]) < MIN_BIN_COUNT) {
+                continue;
+            }
+            double deviation = Math.log(folded[i] + 1) - (Math.log(folded[i - 1] + 1) + Math.log(folded[i + 1] + 1)) / 2;
+            // Poisson noise on a log count has variance of roughly one over the count
+            double noise = Math.sqrt(1.0 / (folded[i] + 1) + (1.0 / (folded[i - 1] + 1) + 1.0 / (folded[i + 1] + 1)) / 4);
+            sum += Math.max(0, Math.abs(deviation) - 3 * noise);
+            bins++;
+        }
+        
+        return bins >= MIN_SCORED_BINS ? sum / bins : Double.NaN;
+    }
+    
+    private static double median(List<Double> values) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        double[] sorted = values.stream().mapToDouble(Double::doubleValue).toArray();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+}
@@ -0,0 +1,14 @@
+package com.norseintel.cloud.service.image;
+
+import java.io.IOException;
+
+public class JpegFormatException extends IOException {
+    
+    public JpegFormatException(String message) {
+        super(message);
+    }
+    
+    public JpegFormatException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,111 @@
+package com.norseintel.cloud.service.image;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Frame, quantization and restart information read from the marker segments of a JPEG stream.
+ * Quantization tables are held in natural (row-major) order.
+ */
+public class JpegHeader {
+    
+    public static final int MAX_TABLES = 4;
+    
+    private final int[][] quantizationTables = new int[MAX_TABLES][];
+    private final List<Integer> quantizationTableOrder = new ArrayList<>();
+    private final List<Component> components = new ArrayList<>();
+    private int frameMarker;
+    private int precision;
+    private int width;
+    private int height;
+    private int restartInterval;
+    
+    public int[][] getQuantizationTables() {
+        return quantizationTables;
+    }
+    
+    public int[] getQuantizationTable(int id) {
+        return quantizationTables[id];
+    }
+    
+    /** Table ids in the order their DQT definitions appeared in the file. */
+    public List<Integer> getQuantizationTableOrder() {
+        return quantizationTableOrder;
+    }
+    
+    public List<Component> getComponents() {
+        return components;
+    }
+    
+    public int getFrameMarker() {
+        return frameMarker;
+    }
+    
+    public int getPrecision() {
+        return precision;
+    }
+    
+    public int getWidth() {
+        return width;
+    }
+    
+    public int getHeight() {
+        return height;
+    }
+    
+    public int getRestartInterval() {
+        return restartInterval;
+    }
+    
+    public boolean hasFrame() {
+        return frameMarker != 0;
+    }
+    
+    public boolean isProgressive() {
+        return frameMarker == 0xC2 || frameMarker == 0xC6 || frameMarker == 0xCA || frameMarker == 0xCE;
+    }
+    
+    public boolean isHuffmanSequential() {
+        return frameMarker == 0xC0 || frameMarker == 0xC1;
+    }
+    
+    public int getMaxHorizontalSampling() {
+        return components.stream().mapToInt(Component::horizontalSampling).max().orElse(1);
+    }
+    
+    public int getMaxVerticalSampling() {
+        return components.stream().mapToInt(Component::verticalSampling).max().orElse(1);
+    }
+    
+    /** Number of 8x8 blocks across the visible area of a component. */
+    public int getBlocksWide(Component component) {
+        int componentWidth = (int) Math.ceil(width * (double) component.horizontalSampling() / getMaxHorizontalSampling());
+        return (componentWidth + 7) / 8;
+    }
+    
+    /** Number of 8x8 block rows in the visible area of a component. */
+    public int getBlocksHigh(Component component) {
+        int componentHeight = (int) Math.ceil(height * (double) component.verticalSampling() / getMaxVerticalSampling());
+        return (componentHeight + 7) / 8;
+    }
+    
+    void setQuantizationTable(int id, int[] table) {
+        quantizationTables[id] = table;
+        quantizationTableOrder.remove(Integer.valueOf(id));
+        quantizationTableOrder.add(id);
+    }
+    
+    void setFrame(int frameMarker, int precision, int width, int height) {
+        this.frameMarker = frameMarker;
+        this.precision = precision;
+        this.width = width;
+        this.height = height;
+    }
+    
+    void setRestartInterval(int restartInterval) {
+        this.restartInterval = restartInterval;
+    }
+    
+    public record Component(int id, int horizontalSampling, int verticalSampling, int quantizationTableId) {
+    }
+}
\ No newline at end of file
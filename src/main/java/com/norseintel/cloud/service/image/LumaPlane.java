@@ -0,0 +1,46 @@
+package com.norseintel.cloud.service.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.stream.IntStream;
+
+/**
+ * 8-bit luma of a whole image as one row-major byte array. Interleaved byte rasters, which is what the JPEG
+ * and PNG readers produce, are read straight from the raster; other layouts go through {@code getRGB}.
+ */
+public final class LumaPlane {
+    
+    private LumaPlane() {
+    }
+    
+    public static byte[] extract(BufferedImage image) {
+        int width = image.getWidth();
+        byte[] luma = new byte[width * image.getHeight()];
+        Raster raster = image.getRaster();
+        int type = image.getType();
+        boolean interleavedRgb = type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR;
+        
+        IntStream.range(0, image.getHeight()).parallel().forEach(y -> {
+            int offset = y * width;
+            if (type == BufferedImage.TYPE_BYTE_GRAY) {
+                byte[] row = (byte[]) raster.getDataElements(0, y, width, 1, null);
+                System.arraycopy(row, 0, luma, offset, width);
+            } else if (interleavedRgb) {
+                // Data elements come back in band order, R G B (A), whatever the layout in memory
+                int bands = raster.getNumBands();
+                byte[] row = (byte[]) raster.getDataElements(0, y, width, 1, null);
+                for (int x = 0, i = 0; x < width; x++, i += bands) {
+                    luma[offset + x] = (byte) (((row[i] & 0xFF) * 77 + (row[i + 1] & 0xFF) * 150 + (row[i + 2] & 0xFF) * 29) >> 8);
+                }
+            } else {
+                int[] row = image.getRGB(0, y, width, 1, null, 0, width);
+                for (int x = 0; x < width; x++) {
+                    int rgb = row[x];
+                    luma[offset + x] = (byte) ((((rgb >> 16) & 0xFF) * 77 + ((rgb >> 8) & 0xFF) * 150 + (rgb & 0xFF) * 29) >> 8);
+                }
+            }
+        });
+        
+        return luma;
+    }
+}
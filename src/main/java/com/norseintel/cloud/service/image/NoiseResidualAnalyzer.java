@@ -0,0 +1,221 @@
+package com.norseintel.cloud.service.image;
+
+import com.norseintel.cloud.model.image.NoiseResidualFilter;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Per-block noise levels of a luma plane. A residual filter removes the image content, and each block's
+ * noise level is the robust (median absolute deviation) sigma of its residual, so edges and texture inside
+ * a block do not inflate it. Regions pasted from another camera or another compression history tend to
+ * carry a noise level of their own, which shows up as blocks that deviate from the image-wide median.
+ *
+ * <p>Block rows are independent tiles and are processed in parallel. The Laplacian residual uses a
+ * separable 3x3 box sum, the median residual a 3x3 median, and the wavelet residual the diagonal (HH)
+ * detail of a one-level Haar transform.
+ */
+public final class NoiseResidualAnalyzer {
+    
+    public static final int MIN_BLOCK_SIZE = 8;
+    public static final int MAX_BLOCK_SIZE = 256;
+    // Level of blocks with fewer than MIN_BLOCK_SAMPLES residual samples, such as one-pixel slivers at the border
+    public static final float NOT_MEASURED = -1f;
+    private static final int MIN_BLOCK_SAMPLES = 16;
+    // Residuals are integers; larger magnitudes than this are far beyond any noise and share the last bin
+    private static final int HISTOGRAM_BINS = 1024;
+    private static final double MAD_TO_SIGMA = 1.4826;
+    // 9c - (sum of the 3x3 neighbourhood) has a standard deviation of sqrt(72) sigma on white noise
+    private static final double LAPLACIAN_GAIN = 1 / Math.sqrt(72);
+    // a - b - c + d of a Haar cell has a standard deviation of 2 sigma
+    private static final double WAVELET_GAIN = 0.5;
+    // Keeps deviations finite on images whose blocks all share the same level
+    private static final double MIN_RELATIVE_SPREAD = 0.1;
+    
+    private NoiseResidualAnalyzer() {
+    }
+    
+    public record Result(float[][] levels, double median, double mean, double spread, int measuredBlocks,
+                         float[][] deviations) {
+    }
+    
+    public static Result analyze(byte[] luma, int width, int height, NoiseResidualFilter filter, int blockSize) {
+        int blocksWide = (width + blockSize - 1) / blockSize;
+        int blocksHigh = (height + blockSize - 1) / blockSize;
+        float[][] levels = new float[blocksHigh][];
+        
+        IntStream.range(0, blocksHigh).parallel().forEach(blockY -> {
+            int[][] histograms = new int[blocksWide][HISTOGRAM_BINS];
+            int top = blockY * blockSize;
+            int bottom = Math.min(height, top + blockSize);
+            switch (filter) {
+                case LAPLACIAN -> laplacianResiduals(luma, width, height, top, bottom, blockSize, histograms);
+                case MEDIAN -> medianResiduals(luma, width, height, top, bottom, blockSize, histograms);
+                case WAVELET -> waveletResiduals(luma, width, height, top, bottom, blockSize, histograms);
+            }
+            
+            double gain = switch (filter) {
+                case LAPLACIAN -> LAPLACIAN_GAIN;
+                case MEDIAN -> 1;
+                case WAVELET -> WAVELET_GAIN;
+            };
+            float[] row = new float[blocksWide];
+            for (int blockX = 0; blockX < blocksWide; blockX++) {
+                row[blockX] = robustSigma(histograms[blockX], gain);
+            }
+            levels[blockY] = row;
+        });
+        
+        return summarize(levels);
+    }
+    
+    private static void laplacianResiduals(byte[] luma, int width, int height, int top, int bottom, int blockSize, int[][] histograms) {
+        int first = Math.max(1, top);
+        int last = Math.min(height - 1, bottom);
+        if (first >= last || width < 3) {
+            return;
+        }
+        
+        // Horizontal 3-sums of rows first-1 .. last, then the vertical pass completes the box sum
+        int rows = last - first + 2;
+        int[] horizontal = new int[rows * width];
+        for (int r = 0; r < rows; r++) {
+            int offset = (first - 1 + r) * width;
+            int target = r * width;
+            for (int x = 1; x < width - 1; x++) {
+                horizontal[target + x] = (luma[offset + x - 1] & 0xFF) + (luma[offset + x] & 0xFF) + (luma[offset + x + 1] & 0xFF);
+            }
+        }
+        
+        for (int y = first; y < last; y++) {
+            int above = (y - first) * width;
+            int offset = y * width;
+            for (int x = 1; x < width - 1; x++) {
+                int box = horizontal[above + x] + horizontal[above + width + x] + horizontal[above + 2 * width + x];
+                record(histograms[x / blockSize], 9 * (luma[offset + x] & 0xFF) - box);
+            }
+        }
+    }
+    
+    private static void medianResiduals(byte[] luma, int width, int height, int top, int bottom, int blockSize, int[][] histograms) {
+        int[] window = new int[9];
+        for (int y = Math.max(1, top); y < Math.min(height - 1, bottom); y++) {
+            for (int x = 1; x < width - 1; x++) {
+                int i = 0;
+                for (int dy = -1; dy <= 1; dy++) {
+                    int offset = (y + dy) * width + x;
+                    window[i++] = luma[offset - 1] & 0xFF;
+                    window[i++] = luma[offset] & 0xFF;
+                    window[i++] = luma[offset + 1] & 0xFF;
+                }
+                record(histograms[x / blockSize], (luma[y * width + x] & 0xFF) - median9(window));
+            }
+        }
+    }
+    
+    private static void waveletResiduals(byte[] luma, int width, int height, int top, int bottom, int blockSize, int[][] histograms) {
+        // Block sizes are even, so every 2x2 Haar cell lies inside a single block
+        for (int y = top; y + 1 < bottom; y += 2) {
+            int offset = y * width;
+            for (int x = 0; x + 1 < width; x += 2) {
+                int a = luma[offset + x] & 0xFF;
+                int b = luma[offset + x + 1] & 0xFF;
+                int c = luma[offset + width + x] & 0xFF;
+                int d = luma[offset + width + x + 1] & 0xFF;
+                record(histograms[x / blockSize], a - b - c + d);
+            }
+        }
+    }
+    
+    private static void record(int[] histogram, int residual) {
+        histogram[Math.min(HISTOGRAM_BINS - 1, Math.abs(residual))]++;
+    }
+    
+    /**
+     * Median absolute residual scaled to a Gaussian sigma. The median is interpolated within its bin, treating
+     * each integer value as spread over the unit interval around it, so that smooth images whose residuals
+     * are mostly 0 and 1 still get distinct levels.
+     */
+    private static float robustSigma(int[] histogram, double gain) {
+        int count = 0;
+        for (int bin : histogram) {
+            count += bin;
+        }
+        if (count < MIN_BLOCK_SAMPLES) {
+            return NOT_MEASURED;
+        }
+        
+        double half = count / 2.0;
+        int seen = 0;
+        for (int bin = 0; bin < HISTOGRAM_BINS; bin++) {
+            if (seen + histogram[bin] >= half) {
+                // Absolute values fold the bin of zero onto [0, 0.5)
+                double lower = bin == 0 ? 0 : bin - 0.5;
+                double width = bin == 0 ? 0.5 : 1;
+                double median = lower + width * (half - seen) / histogram[bin];
+                return (float) (median * MAD_TO_SIGMA * gain);
+            }
+            seen += histogram[bin];
+        }
+        return (float) (HISTOGRAM_BINS * MAD_TO_SIGMA * gain);
+    }
+    
+    /** Robust z-score of every block against the median and median absolute deviation of all measured blocks. */
+    private static Result summarize(float[][] levels) {
+        int measured = 0;
+        double sum = 0;
+        float[] values = new float[levels.length * (levels.length > 0 ? levels[0].length : 0)];
+        for (float[] row : levels) {
+            for (float level : row) {
+                if (level != NOT_MEASURED) {
+                    values[measured++] = level;
+                    sum += level;
+                }
+            }
+        }
+        
+        double median = median(values, measured);
+        for (int i = 0; i < measured; i++) {
+            values[i] = (float) Math.abs(values[i] - median);
+        }
+        double spread = Math.max(median(values, measured) * MAD_TO_SIGMA, median * MIN_RELATIVE_SPREAD);
+        
+        float[][] deviations = new float[levels.length][];
+        for (int blockY = 0; blockY < levels.length; blockY++) {
+            deviations[blockY] = new float[levels[blockY].length];
+            for (int blockX = 0; blockX < levels[blockY].length; blockX++) {
+                float level = levels[blockY][blockX];
+                deviations[blockY][blockX] = level == NOT_MEASURED || spread == 0 ? 0 : (float) ((level - median) / spread);
+            }
+        }
+        return new Result(levels, median, measured > 0 ? sum / measured : 0, spread, measured, deviations);
+    }
+    
+    private static double median(float[] values, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        Arrays.sort(values, 0, count);
+        return count % 2 == 1 ? values[count / 2] : (values[count / 2 - 1] + values[count / 2]) / 2.0;
+    }
+    
+    /** Median of nine values with a fixed exchange network; reorders the window. */
+    private static int median9(int[] p) {
+        sort(p, 1, 2); sort(p, 4, 5); sort(p, 7, 8);
+        sort(p, 0, 1); sort(p, 3, 4); sort(p, 6, 7);
+        sort(p, 1, 2); sort(p, 4, 5); sort(p, 7, 8);
+        sort(p, 0, 3); sort(p, 5, 8); sort(p, 4, 7);
+        sort(p, 3, 6); sort(p, 1, 4); sort(p, 2, 5);
+        sort(p, 4, 7); sort(p, 4, 2); sort(p, 6, 4);
+        sort(p, 4, 2);
+        return p[4];
+    }
+    
+    private static void sort(int[] p, int a, int b) {
+        if (p[a] > p[b]) {
+            int swap = p[a];
+            p[a] = p[b];
+            p[b] = swap;
+        }
+    }
+}
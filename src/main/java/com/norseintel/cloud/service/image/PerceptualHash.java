@@ -0,0 +1,183 @@
+package com.norseintel.cloud.service.image;
+
+import org.imgscalr.Scalr;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * 64-bit perceptual hashes that survive resizing and recompression: average hash (aHash), difference
+ * hash (dHash) and DCT hash (pHash). All three start from one 32x32 grayscale thumbnail, so an image is
+ * scaled down only once.
+ */
+public final class PerceptualHash {
+    
+    private static final int SIZE = 32;
+    private static final int HASH_SIZE = 8;
+    
+    // DCT_COSINES[u * 32 + i] = cos((2i + 1) * u * PI / 64); scaling is irrelevant to a median threshold
+    private static final double[] DCT_COSINES = new double[HASH_SIZE * SIZE];
+    
+    static {
+        for (int u = 0; u < HASH_SIZE; u++) {
+            for (int i = 0; i < SIZE; i++) {
+                DCT_COSINES[u * SIZE + i] = Math.cos((2 * i + 1) * u * Math.PI / (2.0 * SIZE));
+            }
+        }
+    }
+    
+    private PerceptualHash() {
+    }
+    
+    public record Hashes(long average, long difference, long perceptual) {
+        
+        public long get(Algorithm algorithm) {
+            return switch (algorithm) {
+                case AVERAGE -> average;
+                case DIFFERENCE -> difference;
+                case PERCEPTUAL -> perceptual;
+            };
+        }
+    }
+    
+    public enum Algorithm {
+        AVERAGE,
+        DIFFERENCE,
+        PERCEPTUAL;
+        
+        public static Algorithm fromString(String value) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.name().equalsIgnoreCase(value) || algorithm.shortName().equalsIgnoreCase(value)) {
+                    return algorithm;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported perceptual hash algorithm: " + value);
+        }
+        
+        /** The conventional names: ahash, dhash and phash. */
+        public String shortName() {
+            return Character.toLowerCase(name().charAt(0)) + "hash";
+        }
+    }
+    
+    public static Hashes compute(BufferedImage image) {
+        BufferedImage thumbnail = Scalr.resize(image, Scalr.Method.QUALITY, Scalr.Mode.FIT_EXACT, SIZE, SIZE);
+        double[] luma = luma(thumbnail);
+        thumbnail.flush();
+        return new Hashes(averageHash(luma), differenceHash(luma), perceptualHash(luma));
+    }
+    
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+    
+    public static String toHex(long hash) {
+        return String.format("%016x", hash);
+    }
+    
+    public static long fromHex(String hex) {
+        return Long.parseUnsignedLong(hex.trim(), 16);
+    }
+    
+    private static double[] luma(BufferedImage thumbnail) {
+        int[] rgb = thumbnail.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE);
+        double[] luma = new double[SIZE * SIZE];
+        for (int i = 0; i < luma.length; i++) {
+            luma[i] = 0.299 * ((rgb[i] >> 16) & 0xFF) + 0.587 * ((rgb[i] >> 8) & 0xFF) + 0.114 * (rgb[i] & 0xFF);
+        }
+        return luma;
+    }
+    
+    /** Each of the 8x8 cells of 4x4 pixels against the mean of all cells. */
+    private static long averageHash(double[] luma) {
+        int cell = SIZE / HASH_SIZE;
+        double[] cells = new double[HASH_SIZE * HASH_SIZE];
+        double total = 0;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                cells[(y / cell) * HASH_SIZE + x / cell] += luma[y * SIZE + x];
+                total += luma[y * SIZE + x];
+            }
+        }
+        // Cells hold sums, so compare them with the mean cell sum
+        double mean = total / cells.length;
+        
+        long hash = 0;
+        for (double value : cells) {
+            hash = (hash << 1) | (value > mean ? 1 : 0);
+        }
+        return hash;
+    }
+    
+    /** Horizontal gradient signs on a 9x8 grid sampled from the thumbnail. */
+    private static long differenceHash(double[] luma) {
+        double[] grid = new double[(HASH_SIZE + 1) * HASH_SIZE];
+        for (int y = 0; y < HASH_SIZE; y++) {
+            for (int x = 0; x <= HASH_SIZE; x++) {
+                grid[y * (HASH_SIZE + 1) + x] = sampleBox(luma, x * SIZE / (HASH_SIZE + 1.0), y * SIZE / (double) HASH_SIZE,
+                        SIZE / (HASH_SIZE + 1.0), SIZE / (double) HASH_SIZE);
+            }
+        }
+        
+        long hash = 0;
+        for (int y = 0; y < HASH_SIZE; y++) {
+            for (int x = 0; x < HASH_SIZE; x++) {
+                int offset = y * (HASH_SIZE + 1) + x;
+                hash = (hash << 1) | (grid[offset + 1] > grid[offset] ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+    
+    /** Signs of the lowest 8x8 DCT frequencies of the thumbnail against their median. */
+    private static long perceptualHash(double[] luma) {
+        // Rows first: rows[y * 8 + u] = sum_x luma[y][x] * C[u][x]
+        double[] rows = new double[SIZE * HASH_SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int u = 0; u < HASH_SIZE; u++) {
+                double sum = 0;
+                for (int x = 0; x < SIZE; x++) {
+                    sum += luma[y * SIZE + x] * DCT_COSINES[u * SIZE + x];
+                }
+                rows[y * HASH_SIZE + u] = sum;
+            }
+        }
+        
+        double[] coefficients = new double[HASH_SIZE * HASH_SIZE];
+        for (int v = 0; v < HASH_SIZE; v++) {
+            for (int u = 0; u < HASH_SIZE; u++) {
+                double sum = 0;
+                for (int y = 0; y < SIZE; y++) {
+                    sum += rows[y * HASH_SIZE + u] * DCT_COSINES[v * SIZE + y];
+                }
+                coefficients[v * HASH_SIZE + u] = sum;
+            }
+        }
+        
+        // The DC term only tracks overall brightness, so it is left out of the median
+        double[] sorted = Arrays.copyOfRange(coefficients, 1, coefficients.length);
+        Arrays.sort(sorted);
+        double median = (sorted[sorted.length / 2 - 1] + sorted[sorted.length / 2]) / 2;
+        
+        long hash = 0;
+        for (double coefficient : coefficients) {
+            hash = (hash << 1) | (coefficient > median ? 1 : 0);
+        }
+        return hash;
+    }
+    
+    /** Mean over a fractional box, weighting edge pixels by their coverage. */
+    private static double sampleBox(double[] luma, double left, double top, double width, double height) {
+        double sum = 0;
+        double weight = 0;
+        for (int y = (int) top; y < Math.min(SIZE, Math.ceil(top + height)); y++) {
+            double coverageY = Math.min(y + 1, top + height) - Math.max(y, top);
+            for (int x = (int) left; x < Math.min(SIZE, Math.ceil(left + width)); x++) {
+                double coverage = coverageY * (Math.min(x + 1, left + width) - Math.max(x, left));
+                sum += luma[y * SIZE + x] * coverage;
+                weight += coverage;
+            }
+        }
+        return sum / weight;
+    }
+}
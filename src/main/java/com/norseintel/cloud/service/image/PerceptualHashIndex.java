@@ -0,0 +1,348 @@
+package com.norseintel.cloud.service.image;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process similarity index over 64-bit perceptual hashes using multi-index hashing: every hash is split
+ * into four 16-bit chunks, each with its own table of 65536 buckets. Two hashes within Hamming distance k
+ * agree to within k / 4 bits on at least one chunk, so a query only probes the buckets near its own chunks
+ * and checks the full distance of the few entries found there. Entries are persisted to an append-only file
+ * of length-prefixed records and replayed on startup.
+ */
+@Component
+@Slf4j
+public class PerceptualHashIndex {
+    
+    public static final int MAX_SEARCH_DISTANCE = 16;
+    public static final int MAX_LABEL_LENGTH = 256;
+    
+    private static final int CHUNKS = 4;
+    private static final int CHUNK_BITS = Long.SIZE / CHUNKS;
+    private static final int BUCKETS = 1 << CHUNK_BITS;
+    private static final int FILE_MAGIC = 0x4E495048; // "NIPH"
+    private static final int FILE_VERSION = 1;
+    private static final int MAX_RECORD_LENGTH = 1 << 16;
+    // NEIGHBOUR_MASKS[r] holds every chunk mask with at most r bits set
+    private static final int[][] NEIGHBOUR_MASKS = new int[MAX_SEARCH_DISTANCE / CHUNKS + 1][];
+    
+    static {
+        for (int radius = 0; radius < NEIGHBOUR_MASKS.length; radius++) {
+            int[] masks = new int[BUCKETS];
+            int count = 0;
+            for (int mask = 0; mask < BUCKETS; mask++) {
+                if (Integer.bitCount(mask) <= radius) {
+                    masks[count++] = mask;
+                }
+            }
+            NEIGHBOUR_MASKS[radius] = Arrays.copyOf(masks, count);
+        }
+    }
+    
+    @Value("${norseintel.image.perceptual-index.file:./data/perceptual-hash-index.bin}")
+    private String indexFile;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final PerceptualHash.Algorithm[] algorithms = PerceptualHash.Algorithm.values();
+    
+    private volatile boolean loaded;
+    private long[][] hashes = new long[algorithms.length][1024];
+    private String[] labels = new String[1024];
+    private String[] sha256s = new String[1024];
+    private long[] addedAt = new long[1024];
+    private int size;
+    private final int[][][] buckets = new int[algorithms.length * CHUNKS][BUCKETS][];
+    private final int[][] bucketSizes = new int[algorithms.length * CHUNKS][BUCKETS];
+    private DataOutputStream output;
+    
+    public record Entry(int id, String label, String sha256, PerceptualHash.Hashes hashes, long addedAt) {
+    }
+    
+    public record Match(Entry entry, int distance) {
+    }
+    
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        ensureLoaded();
+    }
+    
+    public Entry add(PerceptualHash.Hashes entryHashes, String label, String sha256) {
+        if (label != null && label.length() > MAX_LABEL_LENGTH) {
+            throw new IllegalArgumentException("Labels may be at most " + MAX_LABEL_LENGTH + " characters");
+        }
+        ensureLoaded();
+        long now = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            // Persist first, so an entry that is searchable has always reached the file
+            appendRecord(entryHashes, label, sha256, now);
+            int id = insert(entryHashes, label, sha256, now);
+            return entry(id);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to append to perceptual hash index " + indexFile, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /** Entries within {@code maxDistance} bits of {@code hash}, nearest first. */
+    public List<Match> search(PerceptualHash.Algorithm algorithm, long hash, int maxDistance, int limit) {
+        if (maxDistance < 0 || maxDistance > MAX_SEARCH_DISTANCE) {
+            throw new IllegalArgumentException("Search distance must be between 0 and " + MAX_SEARCH_DISTANCE);
+        }
+        ensureLoaded();
+        
+        int radius = maxDistance / CHUNKS;
+        int[] neighbours = NEIGHBOUR_MASKS[radius];
+        List<Match> matches = new ArrayList<>();
+        
+        lock.readLock().lock();
+        try {
+            long[] column = hashes[algorithm.ordinal()];
+            for (int chunk = 0; chunk < CHUNKS; chunk++) {
+                int[][] table = buckets[algorithm.ordinal() * CHUNKS + chunk];
+                int[] sizes = bucketSizes[algorithm.ordinal() * CHUNKS + chunk];
+                int value = chunk(hash, chunk);
+                
+                for (int mask : neighbours) {
+                    int bucket = value ^ mask;
+                    for (int i = 0; i < sizes[bucket]; i++) {
+                        int id = table[bucket][i];
+                        // An entry close on an earlier chunk was already seen through that chunk's table
+                        if (foundEarlier(column[id], hash, chunk, radius)) {
+                            continue;
+                        }
+                        int distance = PerceptualHash.distance(column[id], hash);
+                        if (distance <= maxDistance) {
+                            matches.add(new Match(entry(id), distance));
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        
+        matches.sort(Comparator.comparingInt(Match::distance).thenComparingInt(match -> match.entry().id()));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+    
+    public int size() {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public String getIndexFile() {
+        return indexFile;
+    }
+    
+    @PreDestroy
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (output != null) {
+                output.close();
+                output = null;
+            }
+        } catch (IOException e) {
+            log.warn("Failed to close perceptual hash index {}: {}", indexFile, e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                load();
+                loaded = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private void load() {
+        long start = System.nanoTime();
+        Path path = Path.of(indexFile);
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            
+            long validLength = 0;
+            if (Files.exists(path) && Files.size(path) > 0) {
+                validLength = replay(path);
+            }
+            
+            // A crash mid-append leaves a partial record; cut it off so new records stay aligned
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                if (channel.size() > validLength) {
+                    log.warn("Truncating {} bytes of incomplete records from {}", channel.size() - validLength, indexFile);
+                    channel.truncate(validLength);
+                }
+            }
+            
+            OutputStream stream = Files.newOutputStream(path, StandardOpenOption.APPEND);
+            output = new DataOutputStream(new BufferedOutputStream(stream));
+            if (validLength == 0) {
+                output.writeInt(FILE_MAGIC);
+                output.writeInt(FILE_VERSION);
+                output.flush();
+            }
+        } catch (IOException e) {
+            log.error("Failed to open perceptual hash index {}; entries will not be persisted", indexFile, e);
+        }
+        log.info("Loaded {} perceptual hash index entries in {} ms", size, (System.nanoTime() - start) / 1_000_000);
+    }
+    
+    /** Replays the records in the file and returns the length of its intact prefix. */
+    private long replay(Path path) throws IOException {
+        try (InputStream stream = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Not a perceptual hash index file: " + path);
+            }
+            
+            long validLength = 2L * Integer.BYTES;
+            while (true) {
+                byte[] record;
+                try {
+                    int length = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                        log.warn("Invalid record length {} at offset {} of {}", length, validLength, path);
+                        return validLength;
+                    }
+                    record = new byte[length];
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    return validLength;
+                }
+                
+                DataInputStream fields = new DataInputStream(new ByteArrayInputStream(record));
+                PerceptualHash.Hashes entryHashes = new PerceptualHash.Hashes(fields.readLong(), fields.readLong(), fields.readLong());
+                long timestamp = fields.readLong();
+                String label = fields.readUTF();
+                String sha256 = fields.readUTF();
+                insert(entryHashes, label, sha256.isEmpty() ? null : sha256, timestamp);
+                validLength += Integer.BYTES + record.length;
+            }
+        }
+    }
+    
+    private void appendRecord(PerceptualHash.Hashes entryHashes, String label, String sha256, long timestamp) throws IOException {
+        if (output == null) {
+            throw new IOException("Index file is not open");
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+        DataOutputStream record = new DataOutputStream(buffer);
+        record.writeLong(entryHashes.average());
+        record.writeLong(entryHashes.difference());
+        record.writeLong(entryHashes.perceptual());
+        record.writeLong(timestamp);
+        record.writeUTF(label == null ? "" : label);
+        record.writeUTF(sha256 == null ? "" : sha256);
+        // Replay treats longer records as corruption and cuts the file there, so they must never be written
+        if (buffer.size() > MAX_RECORD_LENGTH) {
+            throw new IllegalArgumentException("Index record of " + buffer.size() + " bytes exceeds " + MAX_RECORD_LENGTH + " bytes");
+        }
+        
+        output.writeInt(buffer.size());
+        buffer.writeTo(output);
+        output.flush();
+    }
+    
+    private int insert(PerceptualHash.Hashes entryHashes, String label, String sha256, long timestamp) {
+        if (size == labels.length) {
+            int capacity = size * 2;
+            for (int a = 0; a < algorithms.length; a++) {
+                hashes[a] = Arrays.copyOf(hashes[a], capacity);
+            }
+            labels = Arrays.copyOf(labels, capacity);
+            sha256s = Arrays.copyOf(sha256s, capacity);
+            addedAt = Arrays.copyOf(addedAt, capacity);
+        }
+        
+        int id = size++;
+        labels[id] = label;
+        sha256s[id] = sha256;
+        addedAt[id] = timestamp;
+        for (PerceptualHash.Algorithm algorithm : algorithms) {
+            long hash = entryHashes.get(algorithm);
+            hashes[algorithm.ordinal()][id] = hash;
+            for (int chunk = 0; chunk < CHUNKS; chunk++) {
+                addToBucket(algorithm.ordinal() * CHUNKS + chunk, chunk(hash, chunk), id);
+            }
+        }
+        return id;
+    }
+    
+    private void addToBucket(int table, int bucket, int id) {
+        int[] ids = buckets[table][bucket];
+        int count = bucketSizes[table][bucket];
+        if (ids == null) {
+            ids = new int[2];
+        } else if (count == ids.length) {
+            ids = Arrays.copyOf(ids, count * 2);
+        }
+        ids[count] = id;
+        buckets[table][bucket] = ids;
+        bucketSizes[table][bucket] = count + 1;
+    }
+    
+    private Entry entry(int id) {
+        PerceptualHash.Hashes entryHashes = new PerceptualHash.Hashes(
+                hashes[PerceptualHash.Algorithm.AVERAGE.ordinal()][id],
+                hashes[PerceptualHash.Algorithm.DIFFERENCE.ordinal()][id],
+                hashes[PerceptualHash.Algorithm.PERCEPTUAL.ordinal()][id]);
+        return new Entry(id, labels[id], sha256s[id], entryHashes, addedAt[id]);
+    }
+    
+    private static boolean foundEarlier(long candidate, long hash, int chunk, int radius) {
+        for (int earlier = 0; earlier < chunk; earlier++) {
+            if (Integer.bitCount(chunk(candidate, earlier) ^ chunk(hash, earlier)) <= radius) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static int chunk(long hash, int chunk) {
+        return (int) (hash >>> (chunk * CHUNK_BITS)) & (BUCKETS - 1);
+    }
+}
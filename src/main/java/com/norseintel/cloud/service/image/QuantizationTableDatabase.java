@@ -0,0 +1,210 @@
+package com.norseintel.cloud.service.image;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Signature database of known JPEG quantization tables. Entries are read from the bundled CSV and an
+ * optional external file, and indexed by a 64-bit FNV-1a fingerprint of their tables in a sorted
+ * {@code long[]} so a lookup is a binary search. The index is built in the background once the
+ * application is ready, or on first use if a request arrives earlier.
+ */
+@Component
+@Slf4j
+public class QuantizationTableDatabase {
+    
+    public static final String IJG_SOURCE = "ijg";
+    
+    private static final String BUNDLED_DATABASE = "forensics/jpeg-quantization-tables.csv";
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    
+    @Value("${norseintel.image.quantization-tables.external-file:}")
+    private String externalFile;
+    
+    private volatile Index index;
+    
+    public record Signature(String source, String software, int quality, int[][] tables) {
+    }
+    
+    public record QualityEstimate(int quality, double meanDeviation) {
+    }
+    
+    private record Index(long[] fingerprints, int[] signatureIds, List<Signature> signatures) {
+    }
+    
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        index();
+    }
+    
+    /** The distinct tables referenced by the frame's components, in component order. */
+    public static int[][] referencedTables(JpegHeader header) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (JpegHeader.Component component : header.getComponents()) {
+            if (header.getQuantizationTable(component.quantizationTableId()) != null) {
+                ids.add(component.quantizationTableId());
+            }
+        }
+        return ids.stream().map(header::getQuantizationTable).toArray(int[][]::new);
+    }
+    
+    public static long fingerprint(int[][] tables) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int[] table : tables) {
+            for (int value : table) {
+                hash = (hash ^ (value & 0xFF)) * FNV_PRIME;
+                hash = (hash ^ (value >>> 8 & 0xFF)) * FNV_PRIME;
+            }
+            // Table separator, so two 64-value tables never hash like one differently split sequence
+            hash = (hash ^ 0x100) * FNV_PRIME;
+        }
+        return hash;
+    }
+    
+    public List<Signature> lookup(long fingerprint) {
+        Index current = index();
+        int position = Arrays.binarySearch(current.fingerprints(), fingerprint);
+        if (position < 0) {
+            return Collections.emptyList();
+        }
+        
+        // Several encoders can share identical tables, so collect the whole run of equal keys
+        int start = position;
+        while (start > 0 && current.fingerprints()[start - 1] == fingerprint) {
+            start--;
+        }
+        List<Signature> matches = new ArrayList<>();
+        for (int i = start; i < current.fingerprints().length && current.fingerprints()[i] == fingerprint; i++) {
+            matches.add(current.signatures().get(current.signatureIds()[i]));
+        }
+        return matches;
+    }
+    
+    /** Nearest IJG quality for a luminance table, by mean absolute difference of the 64 steps. */
+    public QualityEstimate estimateIjgQuality(int[] luminanceTable) {
+        int bestQuality = 0;
+        double bestDeviation = Double.MAX_VALUE;
+        
+        for (Signature signature : index().signatures()) {
+            if (!IJG_SOURCE.equals(signature.source())) {
+                continue;
+            }
+            int[] reference = signature.tables()[0];
+            double deviation = 0;
+            for (int i = 0; i < Dct8x8.COEFFICIENTS; i++) {
+                deviation += Math.abs(reference[i] - luminanceTable[i]);
+            }
+            deviation /= Dct8x8.COEFFICIENTS;
+            if (deviation < bestDeviation) {
+                bestDeviation = deviation;
+                bestQuality = signature.quality();
+            }
+        }
+        
+        return new QualityEstimate(bestQuality, bestQuality == 0 ? Double.NaN : bestDeviation);
+    }
+    
+    private Index index() {
+        Index current = index;
+        if (current == null) {
+            synchronized (this) {
+                current = index;
+                if (current == null) {
+                    current = loadIndex();
+                    index = current;
+                }
+            }
+        }
+        return current;
+    }
+    
+    private Index loadIndex() {
+        long start = System.nanoTime();
+        List<Signature> signatures = new ArrayList<>();
+        
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ClassPathResource(BUNDLED_DATABASE).getInputStream(), StandardCharsets.UTF_8))) {
+            readSignatures(reader, BUNDLED_DATABASE, signatures);
+        } catch (IOException e) {
+            log.error("Failed to load bundled quantization table database", e);
+        }
+        
+        if (externalFile != null && !externalFile.isBlank()) {
+            try (BufferedReader reader = Files.newBufferedReader(Path.of(externalFile), StandardCharsets.UTF_8)) {
+                readSignatures(reader, externalFile, signatures);
+            } catch (IOException e) {
+                log.warn("Failed to load quantization table database {}: {}", externalFile, e.getMessage());
+            }
+        }
+        
+        // Grayscale files carry only the luminance table, so multi-table entries are also keyed by table 0 alone
+        List<long[]> keys = new ArrayList<>();
+        for (int id = 0; id < signatures.size(); id++) {
+            int[][] tables = signatures.get(id).tables();
+            keys.add(new long[] {fingerprint(tables), id});
+            if (tables.length > 1) {
+                keys.add(new long[] {fingerprint(new int[][] {tables[0]}), id});
+            }
+        }
+        keys.sort((a, b) -> Long.compare(a[0], b[0]));
+        
+        long[] fingerprints = new long[keys.size()];
+        int[] signatureIds = new int[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            fingerprints[i] = keys.get(i)[0];
+            signatureIds[i] = (int) keys.get(i)[1];
+        }
+        
+        log.info("Loaded {} quantization table signatures in {} ms", signatures.size(), (System.nanoTime() - start) / 1_000_000);
+        return new Index(fingerprints, signatureIds, List.copyOf(signatures));
+    }
+    
+    private void readSignatures(BufferedReader reader, String name, List<Signature> signatures) throws IOException {
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            
+            String[] fields = line.split(",", 4);
+            try {
+                String[] tableFields = fields[3].split("\\|");
+                int[][] tables = new int[tableFields.length][];
+                for (int t = 0; t < tableFields.length; t++) {
+                    tables[t] = Arrays.stream(tableFields[t].trim().split("\\s+")).mapToInt(Integer::parseInt).toArray();
+                    if (tables[t].length != Dct8x8.COEFFICIENTS) {
+                        throw new IllegalArgumentException("expected 64 values per table");
+                    }
+                }
+                // Camera entries usually have no quality setting; those leave the column empty
+                int quality = fields[2].isBlank() ? 0 : Integer.parseInt(fields[2].trim());
+                signatures.add(new Signature(fields[0].trim(), fields[1].trim(), quality, tables));
+            } catch (RuntimeException e) {
+                log.warn("Skipping invalid quantization table signature at {}:{}: {}", name, lineNumber, e.getMessage());
+            }
+        }
+    }
+}
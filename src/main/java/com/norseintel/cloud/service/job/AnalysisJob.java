@@ -0,0 +1,171 @@
+package com.norseintel.cloud.service.job;
+
+import com.norseintel.cloud.metrics.AnalysisContext;
+import com.norseintel.cloud.model.job.JobPriority;
+import com.norseintel.cloud.model.job.JobState;
+import com.norseintel.cloud.model.job.JobStatus;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * State of one submitted job. The worker running the job records progress as each analysis finishes, while
+ * request threads read a {@link JobStatus} snapshot or ask for cancellation. Cancellation is cooperative: the
+ * worker is never interrupted, since an interrupt that lands while a class is being loaded from the application
+ * archive leaves that class unloadable for the rest of the process, so a running job stops before its next
+ * analysis.
+ */
+public class AnalysisJob implements Comparable<AnalysisJob> {
+    
+    private final String id;
+    private final List<String> analyses;
+    private final Map<String, String> parameters;
+    private final JobPriority priority;
+    private final long sequence;
+    private final StoredUpload upload;
+    // The submission's context, which already describes the stored upload
+    private final AnalysisContext context;
+    private final LocalDateTime submittedAt = LocalDateTime.now();
+    private final Map<String, Object> reports = new LinkedHashMap<>();
+    
+    private JobState state = JobState.QUEUED;
+    private String currentAnalysis;
+    private int failedAnalyses;
+    private boolean cancelRequested;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String error;
+    private long resultBytes;
+    
+    public AnalysisJob(String id, List<String> analyses, Map<String, String> parameters, JobPriority priority, long sequence,
+                       StoredUpload upload, AnalysisContext context) {
+        this.id = id;
+        this.analyses = List.copyOf(analyses);
+        this.parameters = Map.copyOf(parameters);
+        this.priority = priority;
+        this.sequence = sequence;
+        this.upload = upload;
+        this.context = context;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public List<String> getAnalyses() {
+        return analyses;
+    }
+    
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+    
+    public StoredUpload getUpload() {
+        return upload;
+    }
+    
+    public AnalysisContext getContext() {
+        return context;
+    }
+    
+    /** Higher priorities first, then in submission order. */
+    @Override
+    public int compareTo(AnalysisJob other) {
+        int byPriority = priority.compareTo(other.priority);
+        return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+    }
+    
+    public synchronized void start() {
+        this.state = JobState.RUNNING;
+        this.startedAt = LocalDateTime.now();
+    }
+    
+    /** Whether the next analysis should run; false once cancellation has been requested. */
+    public synchronized boolean beginAnalysis(String analysis) {
+        if (cancelRequested) {
+            return false;
+        }
+        currentAnalysis = analysis;
+        return true;
+    }
+    
+    public synchronized void completeAnalysis(String analysis, Map<String, Object> report, boolean failed) {
+        reports.put(analysis, report);
+        if (failed) {
+            failedAnalyses++;
+        }
+        currentAnalysis = null;
+    }
+    
+    /** Requests cancellation before the next analysis. Has no effect on a finished job. */
+    public synchronized void requestCancel() {
+        if (!state.isFinished()) {
+            cancelRequested = true;
+        }
+    }
+    
+    /** Marks a job that never started as cancelled. */
+    public synchronized void cancelQueued() {
+        cancelRequested = true;
+        state = JobState.CANCELLED;
+        finishedAt = LocalDateTime.now();
+    }
+    
+    public synchronized void finish() {
+        currentAnalysis = null;
+        finishedAt = LocalDateTime.now();
+        if (reports.size() < analyses.size()) {
+            // A cancel that arrives during the last analysis comes too late to skip anything
+            if (cancelRequested) {
+                state = JobState.CANCELLED;
+            } else {
+                state = JobState.FAILED;
+                error = "The job stopped before all analyses had run";
+            }
+        } else if (failedAnalyses == analyses.size()) {
+            state = JobState.FAILED;
+            error = "Every analysis failed";
+        } else {
+            state = JobState.COMPLETED;
+        }
+    }
+    
+    /** Serialized size of the reports, measured once the job has finished. */
+    public synchronized long getResultBytes() {
+        return resultBytes;
+    }
+    
+    public synchronized void setResultBytes(long resultBytes) {
+        this.resultBytes = resultBytes;
+    }
+    
+    public synchronized JobState getState() {
+        return state;
+    }
+    
+    /** Per-analysis reports in the order the analyses were requested. */
+    public synchronized Map<String, Object> getReports() {
+        return new LinkedHashMap<>(reports);
+    }
+    
+    public synchronized JobStatus toStatus() {
+        return JobStatus.builder()
+                .id(id)
+                .filename(upload.getOriginalFilename())
+                .analyses(analyses)
+                .priority(priority)
+                .state(state)
+                .progress((double) reports.size() / analyses.size())
+                .completedAnalyses(reports.size())
+                .failedAnalyses(failedAnalyses)
+                .totalAnalyses(analyses.size())
+                .currentAnalysis(currentAnalysis)
+                .submittedAt(submittedAt)
+                .startedAt(startedAt)
+                .finishedAt(finishedAt)
+                .error(error)
+                .build();
+    }
+}
\ No newline at end of file
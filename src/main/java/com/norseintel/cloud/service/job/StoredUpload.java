@@ -0,0 +1,70 @@
+package com.norseintel.cloud.service.job;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * An upload that has already been written to temporary storage, presented as a {@link MultipartFile} so that
+ * analyses written against request uploads can run after the request has completed.
+ */
+public class StoredUpload implements MultipartFile {
+    
+    private final File file;
+    private final String originalFilename;
+    private final String contentType;
+    
+    public StoredUpload(File file, String originalFilename, String contentType) {
+        this.file = file;
+        this.originalFilename = originalFilename;
+        this.contentType = contentType;
+    }
+    
+    public File getFile() {
+        return file;
+    }
+    
+    @Override
+    public String getName() {
+        return "file";
+    }
+    
+    @Override
+    public String getOriginalFilename() {
+        return originalFilename;
+    }
+    
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        return file.length() == 0;
+    }
+    
+    @Override
+    public long getSize() {
+        return file.length();
+    }
+    
+    @Override
+    public byte[] getBytes() throws IOException {
+        return Files.readAllBytes(file.toPath());
+    }
+    
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return Files.newInputStream(file.toPath());
+    }
+    
+    @Override
+    public void transferTo(File dest) throws IOException {
+        Files.copy(file.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
\ No newline at end of file
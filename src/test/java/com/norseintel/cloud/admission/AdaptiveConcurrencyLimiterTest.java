@@ -0,0 +1,124 @@
+package com.norseintel.cloud.admission;
+
+import com.norseintel.cloud.exception.ForensicException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final Duration NO_WAIT = Duration.ZERO;
+    private static final Duration NEVER_SLOW = Duration.ofHours(1);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void admitsUpToTheLimitAndRejectsWhenTheQueueIsFull() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 0, NO_WAIT, NEVER_SLOW);
+
+        limiter.acquire();
+        limiter.acquire();
+
+        assertThatThrownBy(limiter::acquire)
+                .isInstanceOfSatisfying(ForensicException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS));
+        assertThat(meterRegistry.get("norseintel.admission.rejected").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void queuedRequestIsAdmittedOnceAPermitIsReleased() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, Duration.ofSeconds(10), NEVER_SLOW);
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire();
+
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> second = CompletableFuture.supplyAsync(limiter::acquire);
+        awaitGauge("norseintel.admission.queued", 1);
+        assertThat(second).isNotDone();
+
+        first.release();
+        assertThat(second.get(5, TimeUnit.SECONDS)).isNotNull();
+        assertThat(gauge("norseintel.admission.queued")).isZero();
+    }
+
+    @Test
+    void queuedRequestIsRejectedWhenTheQueueTimeoutRunsOut() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, Duration.ofMillis(50), NEVER_SLOW);
+        limiter.acquire();
+
+        long start = System.nanoTime();
+        assertThatThrownBy(limiter::acquire).isInstanceOf(ForensicException.class);
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    void slowRequestCutsTheLimitByATenth() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 0, NO_WAIT, Duration.ofNanos(1));
+
+        limiter.acquire().release();
+
+        assertThat(gauge("norseintel.admission.limit")).isEqualTo(9);
+    }
+
+    @Test
+    void fastRequestRaisesTheLimitOnlyWhenAtLeastHalfIsUsed() {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 0, NO_WAIT, NEVER_SLOW);
+
+        limiter.acquire().release();
+        assertThat(gauge("norseintel.admission.limit")).isEqualTo(4);
+
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire();
+        limiter.acquire();
+        first.release();
+        assertThat(gauge("norseintel.admission.limit")).isEqualTo(5);
+    }
+
+    @Test
+    void releasingTwiceCountsOnce() {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 0, NO_WAIT, NEVER_SLOW);
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire();
+
+        permit.release();
+        permit.release();
+
+        assertThat(gauge("norseintel.admission.in-flight")).isZero();
+    }
+
+    @Test
+    void timeAfterStopClockDoesNotCountAsLatency() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 0, NO_WAIT, Duration.ofMillis(50));
+
+        AdaptiveConcurrencyLimiter.Permit stopped = limiter.acquire();
+        stopped.stopClock();
+        Thread.sleep(100);
+        stopped.release();
+        assertThat(gauge("norseintel.admission.limit")).isEqualTo(4);
+
+        AdaptiveConcurrencyLimiter.Permit running = limiter.acquire();
+        Thread.sleep(100);
+        running.release();
+        assertThat(gauge("norseintel.admission.limit")).isEqualTo(3);
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(int initialLimit, int maxQueued, Duration queueTimeout, Duration latencyThreshold) {
+        return new AdaptiveConcurrencyLimiter("test", initialLimit, 1, 64, maxQueued, queueTimeout, latencyThreshold, meterRegistry);
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).tag("class", "test").gauge().value();
+    }
+
+    private void awaitGauge(String name, double value) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (gauge(name) != value && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(gauge(name)).isEqualTo(value);
+    }
+}
@@ -0,0 +1,128 @@
+package com.norseintel.cloud.service.crypto;
+
+import com.norseintel.cloud.exception.ForensicException;
+import com.norseintel.cloud.metrics.ForensicMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KeyDerivationExecutorTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch unblock = new CountDownLatch(1);
+    private KeyDerivationExecutor executor;
+
+    @AfterEach
+    void shutdown() {
+        unblock.countDown();
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void returnsResultsInOrderAndRethrowsTaskExceptions() {
+        executor = executor(2, 8, 8);
+
+        assertThat(executor.callAll("caller", List.of(() -> 1, () -> 2, () -> 3))).containsExactly(1, 2, 3);
+        assertThatThrownBy(() -> executor.call("caller", () -> {
+            throw new ForensicException("bad salt", HttpStatus.BAD_REQUEST);
+        })).hasMessage("bad salt");
+    }
+
+    @Test
+    void callerOverItsQuotaIsRejectedWith429WhileOthersAreServed() throws Exception {
+        executor = executor(1, 2, 8);
+        CompletableFuture<Object> blocker = block("greedy");
+
+        assertThatThrownBy(() -> executor.callAll("greedy", List.of(() -> 1, () -> 2)))
+                .isInstanceOfSatisfying(ForensicException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS));
+        CompletableFuture<Integer> other = CompletableFuture.supplyAsync(() -> executor.call("other", () -> 42));
+
+        unblock.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        assertThat(other.get(5, TimeUnit.SECONDS)).isEqualTo(42);
+        assertThat(meterRegistry.get("norseintel.crypto.kdf.rejected").tag("reason", "caller-quota").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void fullQueueIsRejectedWith503AndAcceptsNothing() throws Exception {
+        executor = executor(1, 8, 2);
+        CompletableFuture<Object> blocker = block("first");
+
+        assertThatThrownBy(() -> executor.callAll("second", List.of(() -> 1, () -> 2, () -> 3)))
+                .isInstanceOfSatisfying(ForensicException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+        assertThat(gauge("norseintel.crypto.kdf.queued")).isZero();
+
+        unblock.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        assertThat(executor.callAll("second", List.of(() -> 1, () -> 2))).containsExactly(1, 2);
+    }
+
+    @Test
+    void callersAreServedInTurn() throws Exception {
+        executor = executor(1, 16, 16);
+        CompletableFuture<Object> blocker = block("first");
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        List<Callable<Object>> batch = Collections.nCopies(4, () -> order.add("batch"));
+        CompletableFuture<List<Object>> batchCall = CompletableFuture.supplyAsync(() -> executor.callAll("batch", batch));
+        awaitQueued(4);
+        CompletableFuture<Object> single = CompletableFuture.supplyAsync(() -> executor.call("single", () -> order.add("single")));
+        awaitQueued(5);
+
+        unblock.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        batchCall.get(5, TimeUnit.SECONDS);
+        single.get(5, TimeUnit.SECONDS);
+
+        // The single task waits for at most one task of the batch that was queued before it
+        assertThat(order).containsExactly("batch", "single", "batch", "batch", "batch");
+    }
+
+    private KeyDerivationExecutor executor(int threads, int maxPendingPerCaller, int maxQueued) {
+        return new KeyDerivationExecutor(new ForensicMetrics(meterRegistry, "target/kdf-test"), meterRegistry, threads,
+                maxPendingPerCaller, maxQueued);
+    }
+
+    // Occupies the single worker until the test releases it
+    private CompletableFuture<Object> block(String caller) throws InterruptedException {
+        CompletableFuture<Object> blocker = CompletableFuture.supplyAsync(() -> executor.call(caller, () -> {
+            unblock.await();
+            return null;
+        }));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (gauge("norseintel.crypto.kdf.active") < 1 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(gauge("norseintel.crypto.kdf.active")).isEqualTo(1);
+        return blocker;
+    }
+
+    private void awaitQueued(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (gauge("norseintel.crypto.kdf.queued") < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(gauge("norseintel.crypto.kdf.queued")).isEqualTo(count);
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).gauge().value();
+    }
+}
@@ -0,0 +1,168 @@
+package com.norseintel.cloud.service.image;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JpegCoefficientReaderTest {
+    
+    private static final int WIDTH = 96;
+    private static final int HEIGHT = 64;
+    
+    @Test
+    void readsFrameAndTablesFromHeader() throws IOException {
+        JpegHeader header = JpegCoefficientReader.readHeader(new ByteArrayInputStream(encode(0)));
+        
+        assertThat(header.hasFrame()).isTrue();
+        assertThat(header.isHuffmanSequential()).isTrue();
+        assertThat(header.getWidth()).isEqualTo(WIDTH);
+        assertThat(header.getHeight()).isEqualTo(HEIGHT);
+        assertThat(header.getComponents()).hasSize(3);
+        assertThat(header.getQuantizationTable(header.getComponents().get(0).quantizationTableId())).isNotNull();
+    }
+    
+    @Test
+    void decodesEveryBlockOfEveryComponent() throws IOException {
+        List<String> blocks = decodeBlocks(encode(0));
+        
+        // 4:2:0 sampling: 12x8 luma blocks and 6x4 blocks for each chroma component
+        assertThat(blocks).hasSize(12 * 8 + 2 * 6 * 4);
+    }
+    
+    @Test
+    void restartIntervalsDoNotChangeTheCoefficients() throws IOException {
+        byte[] plain = encode(0);
+        byte[] restarts = encode(1);
+        
+        assertThat(JpegCoefficientReader.readHeader(new ByteArrayInputStream(restarts)).getRestartInterval()).isEqualTo(1);
+        assertThat(countRestartMarkers(restarts)).isGreaterThan(1);
+        assertThat(decodeBlocks(restarts)).containsExactlyElementsOf(decodeBlocks(plain));
+    }
+    
+    @Test
+    void truncatedEntropyCodedDataIsAFormatError() {
+        byte[] jpeg = encode(0);
+        byte[] truncated = Arrays.copyOf(jpeg, jpeg.length / 2);
+        
+        assertThatThrownBy(() -> decodeBlocks(truncated))
+                .isInstanceOf(JpegFormatException.class)
+                .hasMessageContaining("Truncated");
+    }
+    
+    @Test
+    void truncatedHeaderIsAFormatError() {
+        byte[] jpeg = encode(0);
+        int frame = indexOfMarker(jpeg, 0xC0);
+        byte[] truncated = Arrays.copyOf(jpeg, frame + 6);
+        
+        assertThatThrownBy(() -> JpegCoefficientReader.readHeader(new ByteArrayInputStream(truncated)))
+                .isInstanceOf(JpegFormatException.class)
+                .hasMessageContaining("Truncated");
+    }
+    
+    @Test
+    void frameWithoutComponentsIsRejected() {
+        byte[] jpeg = {
+            (byte) 0xFF, (byte) 0xD8,
+            (byte) 0xFF, (byte) 0xC0, 0x00, 0x08, 0x08, 0x00, 0x10, 0x00, 0x10, 0x00,
+            (byte) 0xFF, (byte) 0xD9
+        };
+        
+        assertThatThrownBy(() -> JpegCoefficientReader.readHeader(new ByteArrayInputStream(jpeg)))
+                .isInstanceOf(JpegFormatException.class);
+    }
+    
+    @Test
+    void nonJpegInputIsRejected() {
+        assertThatThrownBy(() -> JpegCoefficientReader.readHeader(new ByteArrayInputStream(new byte[] {'G', 'I', 'F', '8'})))
+                .isInstanceOf(JpegFormatException.class);
+    }
+    
+    private static List<String> decodeBlocks(byte[] jpeg) throws IOException {
+        List<String> blocks = new ArrayList<>();
+        JpegCoefficientReader.decode(new ByteArrayInputStream(jpeg), (componentIndex, blockX, blockY, coefficients) ->
+                blocks.add(componentIndex + ":" + blockX + ":" + blockY + ":" + Arrays.toString(coefficients)));
+        return blocks;
+    }
+    
+    /** A noisy gradient encoded at quality 0.8, with a restart marker every {@code restartInterval} MCUs when positive. */
+    private static byte[] encode(int restartInterval) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int red = Math.min(255, x * 2 + random.nextInt(32));
+                int green = Math.min(255, y * 3 + random.nextInt(32));
+                int blue = (x * y) & 0xFF;
+                image.setRGB(x, y, red << 16 | green << 8 | blue);
+            }
+        }
+        
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(0.8f);
+            IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), param);
+            if (restartInterval > 0) {
+                String format = metadata.getNativeMetadataFormatName();
+                Node tree = metadata.getAsTree(format);
+                IIOMetadataNode dri = new IIOMetadataNode("dri");
+                dri.setAttribute("interval", Integer.toString(restartInterval));
+                Node markerSequence = ((Element) tree).getElementsByTagName("markerSequence").item(0);
+                markerSequence.insertBefore(dri, markerSequence.getFirstChild());
+                metadata.setFromTree(format, tree);
+            }
+            
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+                writer.setOutput(stream);
+                writer.write(null, new IIOImage(image, null, metadata), param);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        } finally {
+            writer.dispose();
+        }
+    }
+    
+    private static int countRestartMarkers(byte[] jpeg) {
+        int count = 0;
+        for (int i = indexOfMarker(jpeg, 0xDA); i < jpeg.length - 1; i++) {
+            if ((jpeg[i] & 0xFF) == 0xFF && (jpeg[i + 1] & 0xFF) >= 0xD0 && (jpeg[i + 1] & 0xFF) <= 0xD7) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    private static int indexOfMarker(byte[] jpeg, int marker) {
+        for (int i = 0; i < jpeg.length - 1; i++) {
+            if ((jpeg[i] & 0xFF) == 0xFF && (jpeg[i + 1] & 0xFF) == marker) {
+                return i;
+            }
+        }
+        throw new AssertionError("Marker 0x" + Integer.toHexString(marker) + " not found");
+    }
+}
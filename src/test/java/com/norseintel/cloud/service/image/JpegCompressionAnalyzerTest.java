@@ -0,0 +1,77 @@
+package com.norseintel.cloud.service.image;
+
+import com.norseintel.cloud.exception.ForensicException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JpegCompressionAnalyzerTest {
+    
+    private static final long BUDGET_BYTES = 64L * 1024 * 1024;
+    
+    @TempDir
+    Path tempDir;
+    
+    private final DecodeAdmissionController admissionController =
+            new DecodeAdmissionController(new SimpleMeterRegistry(), BUDGET_BYTES, 4, Duration.ofSeconds(1));
+    
+    @Test
+    void headerDeclaringAHugeFrameIsRejectedBeforeAllocating() throws IOException {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        jpeg.write(new byte[] {(byte) 0xFF, (byte) 0xD8});
+        // DQT: one 8-bit table with id 0
+        jpeg.write(new byte[] {(byte) 0xFF, (byte) 0xDB, 0x00, 0x43, 0x00});
+        for (int i = 0; i < 64; i++) {
+            jpeg.write(1);
+        }
+        // SOF0: 8-bit, 65535x65535, one component using table 0
+        jpeg.write(new byte[] {(byte) 0xFF, (byte) 0xC0, 0x00, 0x0B, 0x08, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+            0x01, 0x01, 0x11, 0x00});
+        jpeg.write(new byte[] {(byte) 0xFF, (byte) 0xD9});
+        File file = write("huge.jpg", jpeg.toByteArray());
+        
+        assertThatThrownBy(() -> JpegCompressionAnalyzer.analyze(file, 64, admissionController))
+                .isInstanceOfSatisfying(ForensicException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+        assertThat(admissionController.reservedBytes()).isZero();
+    }
+    
+    @Test
+    void analyzesARealJpegAndReturnsItsReservation() throws IOException {
+        BufferedImage image = new BufferedImage(128, 96, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(3);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, (x + random.nextInt(16)) << 16 | (y + random.nextInt(16)) << 8 | (x ^ y));
+            }
+        }
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", jpeg);
+        File file = write("photo.jpg", jpeg.toByteArray());
+        
+        JpegCompressionAnalyzer.Result result = JpegCompressionAnalyzer.analyze(file, 64, admissionController);
+        
+        assertThat(result.blockCount()).isEqualTo(16 * 12);
+        assertThat(admissionController.reservedBytes()).isZero();
+    }
+    
+    private File write(String name, byte[] bytes) throws IOException {
+        Path path = tempDir.resolve(name);
+        Files.write(path, bytes);
+        return path.toFile();
+    }
+}
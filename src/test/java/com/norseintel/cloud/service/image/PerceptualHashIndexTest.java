@@ -0,0 +1,151 @@
+package com.norseintel.cloud.service.image;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PerceptualHashIndexTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    private final List<PerceptualHashIndex> opened = new ArrayList<>();
+    
+    @AfterEach
+    void close() {
+        opened.forEach(PerceptualHashIndex::close);
+    }
+    
+    @Test
+    void searchFindsExactlyWhatABruteForceScanFinds() {
+        PerceptualHashIndex index = open();
+        Random random = new Random(7);
+        List<PerceptualHash.Hashes> stored = new ArrayList<>();
+        // Clusters of near-duplicates around random centres, so that every distance up to the maximum occurs
+        for (int cluster = 0; cluster < 100; cluster++) {
+            PerceptualHash.Hashes centre = new PerceptualHash.Hashes(random.nextLong(), random.nextLong(), random.nextLong());
+            for (int member = 0; member < 20; member++) {
+                PerceptualHash.Hashes hashes = new PerceptualHash.Hashes(near(centre.average(), random),
+                        near(centre.difference(), random), near(centre.perceptual(), random));
+                index.add(hashes, "entry-" + stored.size(), null);
+                stored.add(hashes);
+            }
+        }
+        
+        int compared = 0;
+        for (int query = 0; query < 50; query++) {
+            PerceptualHash.Hashes target = stored.get(random.nextInt(stored.size()));
+            for (PerceptualHash.Algorithm algorithm : PerceptualHash.Algorithm.values()) {
+                long hash = near(target.get(algorithm), random);
+                for (int maxDistance = 0; maxDistance <= PerceptualHashIndex.MAX_SEARCH_DISTANCE; maxDistance++) {
+                    List<String> found = index.search(algorithm, hash, maxDistance, Integer.MAX_VALUE).stream()
+                            .map(match -> match.entry().id() + "@" + match.distance())
+                            .toList();
+                    assertThat(found).as("%s within %d of %x", algorithm, maxDistance, hash)
+                            .containsExactlyElementsOf(bruteForce(stored, algorithm, hash, maxDistance));
+                    compared += found.size();
+                }
+            }
+        }
+        assertThat(compared).isGreaterThan(1000);
+    }
+    
+    @Test
+    void searchReturnsTheNearestEntriesFirstUpToTheLimit() {
+        PerceptualHashIndex index = open();
+        long hash = 0x0123456789ABCDEFL;
+        index.add(hashes(hash ^ 0b111), "three", null);
+        index.add(hashes(hash), "exact", null);
+        index.add(hashes(hash ^ 0b1), "one", null);
+        
+        assertThat(index.search(PerceptualHash.Algorithm.PERCEPTUAL, hash, 8, 2))
+                .extracting(match -> match.entry().label())
+                .containsExactly("exact", "one");
+    }
+    
+    @Test
+    void entriesSurviveAReopenAndAPartialRecordIsDropped() throws IOException {
+        PerceptualHashIndex index = open();
+        index.add(hashes(42L), "kept", "abc123");
+        index.close();
+        
+        Files.write(tempDir.resolve("index.bin"), new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+        
+        PerceptualHashIndex reopened = open();
+        assertThat(reopened.size()).isEqualTo(1);
+        reopened.add(hashes(43L), "added", null);
+        reopened.close();
+        
+        PerceptualHashIndex again = open();
+        assertThat(again.search(PerceptualHash.Algorithm.AVERAGE, 42L, 1, 10))
+                .extracting(match -> match.entry().label())
+                .containsExactly("kept", "added");
+        assertThat(again.search(PerceptualHash.Algorithm.AVERAGE, 42L, 0, 10).get(0).entry().sha256()).isEqualTo("abc123");
+    }
+    
+    @Test
+    void overlongLabelsAreRejectedAndLeaveTheFileReplayable() {
+        PerceptualHashIndex index = open();
+        index.add(hashes(1L), "before", null);
+        
+        assertThatThrownBy(() -> index.add(hashes(2L), "x".repeat(PerceptualHashIndex.MAX_LABEL_LENGTH + 1), null))
+                .isInstanceOf(IllegalArgumentException.class);
+        index.add(hashes(3L), "y".repeat(PerceptualHashIndex.MAX_LABEL_LENGTH), null);
+        index.close();
+        
+        assertThat(open().size()).isEqualTo(2);
+    }
+    
+    @Test
+    void searchDistanceIsBounded() {
+        PerceptualHashIndex index = open();
+        
+        assertThatThrownBy(() -> index.search(PerceptualHash.Algorithm.AVERAGE, 0L, PerceptualHashIndex.MAX_SEARCH_DISTANCE + 1, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+    
+    private PerceptualHashIndex open() {
+        PerceptualHashIndex index = new PerceptualHashIndex();
+        ReflectionTestUtils.setField(index, "indexFile", tempDir.resolve("index.bin").toString());
+        opened.add(index);
+        return index;
+    }
+    
+    private static List<String> bruteForce(List<PerceptualHash.Hashes> stored, PerceptualHash.Algorithm algorithm, long hash, int maxDistance) {
+        List<int[]> matches = new ArrayList<>();
+        for (int id = 0; id < stored.size(); id++) {
+            int distance = PerceptualHash.distance(stored.get(id).get(algorithm), hash);
+            if (distance <= maxDistance) {
+                matches.add(new int[] {id, distance});
+            }
+        }
+        matches.sort(Comparator.<int[]>comparingInt(match -> match[1]).thenComparingInt(match -> match[0]));
+        return matches.stream().map(match -> match[0] + "@" + match[1]).toList();
+    }
+    
+    /** The hash with up to 20 random bits flipped. */
+    private static long near(long hash, Random random) {
+        int flips = random.nextInt(21);
+        for (int i = 0; i < flips; i++) {
+            hash ^= 1L << random.nextInt(Long.SIZE);
+        }
+        return hash;
+    }
+    
+    private static PerceptualHash.Hashes hashes(long hash) {
+        return new PerceptualHash.Hashes(hash, hash, hash);
+    }
+}